@@ -0,0 +1,33 @@
+package spring.ai.philoagents.override;
+
+import jdk.incubator.vector.FloatVector;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * Vector API kernels, looked up by {@link VectorKernels}. Compiled by the
+ * {@code vector-api} Maven profile only, so that the default build does not
+ * depend on the incubator module.
+ */
+final class SimdVectorKernels {
+
+	private static final VectorSpecies<Float> SPECIES = FloatVector.SPECIES_PREFERRED;
+
+	private SimdVectorKernels() {
+	}
+
+	static float dot(float[] a, float[] b) {
+		FloatVector sum = FloatVector.zero(SPECIES);
+		int bound = SPECIES.loopBound(a.length);
+		int i = 0;
+		for (; i < bound; i += SPECIES.length()) {
+			sum = FloatVector.fromArray(SPECIES, a, i).fma(FloatVector.fromArray(SPECIES, b, i), sum);
+		}
+		float dot = sum.reduceLanes(VectorOperators.ADD);
+		for (; i < a.length; i++) {
+			dot += a[i] * b[i];
+		}
+		return dot;
+	}
+
+}
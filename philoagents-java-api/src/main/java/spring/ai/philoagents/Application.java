@@ -2,12 +2,19 @@ package spring.ai.philoagents;
 
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import spring.ai.philoagents.ingestion.CliRunner;
 
 @SpringBootApplication
 public class Application {
 
 	public static void main(String[] args) {
-		SpringApplication.run(Application.class, args);
+		ConfigurableApplicationContext context = SpringApplication.run(Application.class, args);
+		// a command line mode has run its task, exit with the code of its runner
+		if (!context.getBeansOfType(CliRunner.class).isEmpty()) {
+			System.exit(SpringApplication.exit(context));
+		}
 	}
 
 }
@@ -0,0 +1,64 @@
+package spring.ai.philoagents.config;
+
+import org.bsc.langgraph4j.checkpoint.PostgresSaver;
+import org.bsc.langgraph4j.spring.ai.serializer.std.SpringAIStateSerializer;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnMissingBean;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import lombok.extern.slf4j.Slf4j;
+import spring.ai.philoagents.workflow.AsyncCheckpointSaver;
+import spring.ai.philoagents.workflow.PhilosopherState;
+
+/**
+ * Checkpointing of the philosopher workflow. When the langgraph4j Postgres saver
+ * is configured, checkpoints are written behind to Postgres, otherwise they are
+ * only kept in memory.
+ */
+@Configuration
+@Slf4j
+public class CheckpointSaverConfig {
+
+    @Value("${philoagents.langgraph.checkpoint.retention:10}")
+    private int retention;
+
+    @Value("${philoagents.langgraph.checkpoint.compactioninterval:50}")
+    private int compactionInterval;
+
+    @Value("${philoagents.langgraph.checkpoint.writerthreads:2}")
+    private int writerThreads;
+
+    @Bean
+    @ConditionalOnProperty(name = "philoagents.langgraph.postgressaver.host")
+    AsyncCheckpointSaver postgresCheckpointSaver(
+            @Value("${philoagents.langgraph.postgressaver.host}") String host,
+            @Value("${philoagents.langgraph.postgressaver.port:5432}") int port,
+            @Value("${philoagents.langgraph.postgressaver.database}") String database,
+            @Value("${philoagents.langgraph.postgressaver.username}") String username,
+            @Value("${philoagents.langgraph.postgressaver.password}") String password,
+            @Value("${philoagents.langgraph.postgressaver.droptablefirst:false}") boolean dropTablesFirst,
+            @Value("${philoagents.langgraph.postgressaver.createtables:true}") boolean createTables)
+            throws Exception {
+        log.info("Using Postgres checkpoint saver on {}:{}/{}", host, port, database);
+        var postgresSaver = PostgresSaver.builder()
+                .host(host)
+                .port(port)
+                .database(database)
+                .user(username)
+                .password(password)
+                .stateSerializer(new SpringAIStateSerializer<>(PhilosopherState::new))
+                .dropTablesFirst(dropTablesFirst)
+                .createTables(createTables)
+                .build();
+        return new AsyncCheckpointSaver(postgresSaver, retention, compactionInterval, writerThreads);
+    }
+
+    @Bean
+    @ConditionalOnMissingBean(AsyncCheckpointSaver.class)
+    AsyncCheckpointSaver memoryCheckpointSaver() {
+        log.info("Postgres checkpoint saver not configured, checkpoints are kept in memory");
+        return new AsyncCheckpointSaver(null, retention, 0, 1);
+    }
+}
@@ -0,0 +1,72 @@
+package spring.ai.philoagents.config;
+
+import java.io.InputStream;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.springframework.ai.embedding.EmbeddingModel;
+import org.springframework.ai.transformers.ResourceCacheService;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnMissingBean;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import ai.djl.huggingface.tokenizers.HuggingFaceTokenizer;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import spring.ai.philoagents.services.PhilosopherService;
+import spring.ai.philoagents.workflow.ContextCompressor;
+import spring.ai.philoagents.workflow.ExtractiveContextCompressor;
+
+/**
+ * Selects the compression of the philosopher context through
+ * {@code philoagents.workflow.contextcompression}: {@code model} (default)
+ * summarizes it with the chat model, {@code extractive} picks its most relevant
+ * sentences locally with the embedding model.
+ */
+@Configuration
+public class ContextCompressionConfig {
+
+    @Bean
+    @ConditionalOnProperty(name = "philoagents.workflow.contextcompression", havingValue = "extractive")
+    ContextCompressor extractiveContextCompressor(EmbeddingModel embeddingModel, MeterRegistry meterRegistry,
+            @Value("${spring.ai.embedding.transformer.tokenizer.uri}") String tokenizerUri,
+            @Value("${spring.ai.embedding.transformer.cache.directory:./embedding-cache}") String cacheDirectory,
+            @Value("${philoagents.workflow.contextcompression.maxtokens:96}") int maxTokens,
+            @Value("${philoagents.workflow.contextcompression.lambda:0.7}") double lambda,
+            @Value("${philoagents.workflow.contextcompression.redundancy:0.9}") double redundancy) throws Exception {
+        HuggingFaceTokenizer tokenizer;
+        try (InputStream stream = new ResourceCacheService(cacheDirectory).getCachedResource(tokenizerUri)
+                .getInputStream()) {
+            // the budget counts every token of the context, past the 128 of an embedding input
+            tokenizer = HuggingFaceTokenizer.newInstance(stream, Map.of("truncation", "false", "padding", "false"));
+        }
+        return timed("extractive", new ExtractiveContextCompressor(embeddingModel, tokenizer, maxTokens, lambda,
+                redundancy, meterRegistry), meterRegistry);
+    }
+
+    @Bean
+    @ConditionalOnMissingBean(ContextCompressor.class)
+    ContextCompressor modelContextCompressor(PhilosopherService philosopherService, MeterRegistry meterRegistry) {
+        return timed("model", (query, context) -> philosopherService.getContextSummary(context)
+                .getResult().getOutput().getText(), meterRegistry);
+    }
+
+    private static ContextCompressor timed(String compressor, ContextCompressor delegate,
+            MeterRegistry meterRegistry) {
+        Timer timer = Timer.builder("philoagents.context.compression")
+                .description("Latency of the compression of the philosopher context")
+                .tag("compressor", compressor)
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+        return (query, context) -> {
+            long start = System.nanoTime();
+            try {
+                return delegate.compress(query, context);
+            } finally {
+                timer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+            }
+        };
+    }
+}
@@ -0,0 +1,109 @@
+package spring.ai.philoagents.config;
+
+import java.util.Optional;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.coyote.ProtocolHandler;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.web.embedded.tomcat.TomcatProtocolHandlerCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Executor strategy of the blocking work of a turn (graph nodes, websocket
+ * messages and, with virtual threads, the Tomcat connector), selected through
+ * {@code philoagents.executor.mode}:
+ * <ul>
+ * <li>{@code direct} (default): the work runs on the calling thread</li>
+ * <li>{@code platform}: the work runs on a bounded pool of platform threads</li>
+ * <li>{@code virtual}: the work runs on a new virtual thread per task. Virtual
+ * threads need Java 21, on older runtimes the platform pool is used instead</li>
+ * </ul>
+ */
+@Configuration
+@Slf4j
+public class ExecutorConfig {
+
+    public static final String AGENT_EXECUTOR = "agentExecutor";
+
+    public static final String DIRECT_MODE = "direct";
+    public static final String PLATFORM_MODE = "platform";
+    public static final String VIRTUAL_MODE = "virtual";
+
+    @Bean(name = AGENT_EXECUTOR)
+    Executor agentExecutor(@Value("${philoagents.executor.mode:" + DIRECT_MODE + "}") String mode,
+            @Value("${philoagents.executor.platform.threads:200}") int platformThreads) {
+        log.info("Using {} executor mode", mode);
+        return newExecutor(mode, platformThreads);
+    }
+
+    @Bean
+    @ConditionalOnProperty(name = "philoagents.executor.mode", havingValue = VIRTUAL_MODE)
+    TomcatProtocolHandlerCustomizer<ProtocolHandler> agentExecutorProtocolHandlerCustomizer(
+            @Qualifier(AGENT_EXECUTOR) Executor agentExecutor) {
+        return protocolHandler -> protocolHandler.setExecutor(agentExecutor);
+    }
+
+    /**
+     * Creates the executor of the given mode.
+     *
+     * @param mode            direct, platform or virtual
+     * @param platformThreads the size of the platform thread pool
+     * @return the executor
+     */
+    public static Executor newExecutor(String mode, int platformThreads) {
+        return switch (mode) {
+            case DIRECT_MODE -> Runnable::run;
+            case PLATFORM_MODE -> newPlatformExecutor(platformThreads);
+            case VIRTUAL_MODE -> newVirtualThreadPerTaskExecutor().orElseGet(() -> {
+                log.warn("Virtual threads need Java 21, running on Java {}: falling back to {} platform threads",
+                        Runtime.version().feature(), platformThreads);
+                return newPlatformExecutor(platformThreads);
+            });
+            default -> throw new IllegalArgumentException("Unknown executor mode: " + mode);
+        };
+    }
+
+    /**
+     * Returns whether the runtime supports virtual threads (Java 21 or later).
+     *
+     * @return true when virtual threads are available
+     */
+    public static boolean supportsVirtualThreads() {
+        return Runtime.version().feature() >= 21;
+    }
+
+    /**
+     * Creates a virtual thread per task executor, looked up reflectively so the
+     * application still runs on Java 17.
+     *
+     * @return the executor, empty when virtual threads are not supported
+     */
+    public static Optional<ExecutorService> newVirtualThreadPerTaskExecutor() {
+        if (!supportsVirtualThreads()) {
+            return Optional.empty();
+        }
+        try {
+            var factory = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return Optional.of((ExecutorService) factory.invoke(null));
+        } catch (ReflectiveOperationException e) {
+            return Optional.empty();
+        }
+    }
+
+    private static ExecutorService newPlatformExecutor(int threads) {
+        AtomicInteger count = new AtomicInteger();
+        return Executors.newFixedThreadPool(threads, r -> {
+            Thread thread = new Thread(r, "agent-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+}
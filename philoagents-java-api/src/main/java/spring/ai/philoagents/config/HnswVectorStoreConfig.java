@@ -0,0 +1,80 @@
+package spring.ai.philoagents.config;
+
+import java.nio.file.Path;
+import java.util.List;
+
+import org.springframework.ai.embedding.BatchingStrategy;
+import org.springframework.ai.embedding.EmbeddingModel;
+import org.springframework.ai.embedding.TokenCountBatchingStrategy;
+import org.springframework.ai.vectorstore.SpringAIVectorStoreTypes;
+import org.springframework.ai.vectorstore.VectorStore;
+import org.springframework.ai.vectorstore.observation.VectorStoreObservationConvention;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.util.CollectionUtils;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.observation.ObservationRegistry;
+import lombok.extern.slf4j.Slf4j;
+import spring.ai.philoagents.override.CachingEmbeddingModel;
+import spring.ai.philoagents.override.HnswIndex;
+import spring.ai.philoagents.override.PhiloAgentsHnswVectorStore;
+
+/**
+ * Embedded HNSW vector store, selected with
+ * {@code spring.ai.vectorstore.type=hnsw}, in place of the MongoDB Atlas one.
+ */
+@Configuration
+@ConditionalOnProperty(name = SpringAIVectorStoreTypes.TYPE, havingValue = "hnsw")
+@Slf4j
+public class HnswVectorStoreConfig {
+
+    @Primary
+    @Bean
+    VectorStore getVectorStore(EmbeddingModel embeddingModel, ObjectProvider<ObservationRegistry> observationRegistry,
+            ObjectProvider<VectorStoreObservationConvention> customObservationConvention,
+            ObjectProvider<BatchingStrategy> batchingStrategy, ObjectProvider<MeterRegistry> meterRegistry,
+            @Value("${philoagents.embedding.cache.enabled:true}") boolean embeddingCacheEnabled,
+            @Value("${philoagents.embedding.cache.maxentries:10000}") int embeddingCacheMaxEntries,
+            @Value("${philoagents.embedding.cache.modelid:${spring.ai.embedding.transformer.onnx.model-uri:default}}") String embeddingModelId,
+            @Value("${philoagents.vectorstore.hnsw.directory:./data/hnsw}") Path directory,
+            @Value("${philoagents.vectorstore.hnsw.m:16}") int m,
+            @Value("${philoagents.vectorstore.hnsw.efconstruction:100}") int efConstruction,
+            @Value("${philoagents.vectorstore.hnsw.efsearch:64}") int efSearch,
+            @Value("${philoagents.vectorstore.hnsw.bruteforcethreshold:2048}") int bruteForceThreshold,
+            @Value("${philoagents.vectorstore.hnsw.compactionthreshold:0.3}") double compactionThreshold,
+            @Value("${philoagents.vectorstore.quantization:none}") String quantization,
+            @Value("${spring.ai.vectorstore.mongodb.collection-name:vector_store}") String collectionName,
+            @Value("${spring.ai.vectorstore.mongodb.metadata-fields-to-filter:}") List<String> metadataFields) {
+
+        if (embeddingCacheEnabled) {
+            embeddingModel = new CachingEmbeddingModel(embeddingModel, embeddingModelId, embeddingCacheMaxEntries,
+                    meterRegistry.getIfUnique(() -> null));
+        }
+        log.info("Using the embedded HNSW vector store of {}", directory.toAbsolutePath());
+        PhiloAgentsHnswVectorStore.Builder builder = PhiloAgentsHnswVectorStore.builder(embeddingModel)
+                .directory(directory)
+                .collectionName(collectionName)
+                .m(m)
+                .efConstruction(efConstruction)
+                .efSearch(efSearch)
+                .bruteForceThreshold(bruteForceThreshold)
+                .compactionThreshold(compactionThreshold)
+                .quantization(HnswIndex.Quantization.valueOf(quantization.toUpperCase()))
+                .observationRegistry(observationRegistry.getIfUnique(() -> ObservationRegistry.NOOP))
+                .customObservationConvention(customObservationConvention.getIfAvailable(() -> null))
+                // the Atlas auto-configuration providing the batching strategy is off with this store type
+                .batchingStrategy(batchingStrategy.getIfAvailable(TokenCountBatchingStrategy::new))
+                .meterRegistry(meterRegistry.getIfUnique(() -> null));
+
+        if (!CollectionUtils.isEmpty(metadataFields)) {
+            builder.metadataFieldsToFilter(metadataFields);
+        }
+
+        return builder.build();
+    }
+}
@@ -3,7 +3,6 @@ package spring.ai.philoagents.config;
 import java.util.Map;
 import java.util.Objects;
 
-import org.bsc.langgraph4j.GraphStateException;
 import org.bsc.langgraph4j.StateGraph;
 import org.bsc.langgraph4j.studio.LangGraphStudioServer;
 import org.bsc.langgraph4j.studio.springboot.LangGraphStudioConfig;
@@ -11,8 +10,7 @@ import org.springframework.ai.chat.messages.UserMessage;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.context.annotation.Configuration;
 
-import spring.ai.philoagents.services.PhilosopherService;
-import spring.ai.philoagents.workflow.PhilosopherAgentExecutor;
+import spring.ai.philoagents.workflow.PhilosopherGraphRegistry;
 import spring.ai.philoagents.workflow.PhilosopherState;
 
 import lombok.extern.slf4j.Slf4j;
@@ -23,17 +21,11 @@ import lombok.extern.slf4j.Slf4j;
 public class LangGraphStudioSampleConfig extends LangGraphStudioConfig  {
 
     @Autowired
-    private PhilosopherService philosopherService;
+    private PhilosopherGraphRegistry graphRegistry;
 
     @Override
     public Map<String, LangGraphStudioServer.Instance> instanceMap() {
-        StateGraph<PhilosopherState> workflow = null;
-        try {
-            workflow = createWorkflow();
-        } catch (GraphStateException e) {
-            log.error("Failed to create workflow", e);
-            throw new RuntimeException(e);
-        }
+        StateGraph<PhilosopherState> workflow = graphRegistry.getStateGraph(graphRegistry.getActiveVariant());
         var instance = LangGraphStudioServer.Instance.builder()
                 .title("LangGraph Studio")
                 .graph(workflow)
@@ -46,8 +38,4 @@ public class LangGraphStudioSampleConfig extends LangGraphStudioConfig  {
 
         return Map.of("default", instance);
     }
-
-    private StateGraph<PhilosopherState> createWorkflow() throws GraphStateException{
-        return PhilosopherAgentExecutor.graphBuilder().build(this.philosopherService);
-    }   
 }
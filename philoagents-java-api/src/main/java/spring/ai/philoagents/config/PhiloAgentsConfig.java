@@ -3,9 +3,6 @@ package spring.ai.philoagents.config;
 import java.util.Objects;
 
 import org.springframework.ai.chat.client.ChatClient;
-import org.springframework.ai.chat.client.advisor.MessageChatMemoryAdvisor;
-import org.springframework.ai.chat.memory.ChatMemory;
-import org.springframework.ai.chat.memory.MessageWindowChatMemory;
 import org.springframework.ai.model.tool.ToolCallingChatOptions;
 import org.springframework.ai.openai.OpenAiChatModel;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -13,6 +10,8 @@ import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 
 import lombok.extern.slf4j.Slf4j;
+import spring.ai.philoagents.workflow.GraphMetrics;
+import spring.ai.philoagents.workflow.ModelMetricsAdvisor;
 
 @Configuration
 @Slf4j
@@ -21,13 +20,16 @@ public class PhiloAgentsConfig {
     @Autowired
     OpenAiChatModel chatModel;
 
+    @Autowired
+    GraphMetrics graphMetrics;
+
     @Bean
     public ChatClient chatClient() {
-        ChatMemory chatMemory = MessageWindowChatMemory.builder().build();
+        // the conversation history is held by the checkpoints of the workflow
+        // graph, and sent by the prompts of the PhilosopherService
         Objects.requireNonNull(this.chatModel, "chatModel cannot be null!");
         var chatClientBuilder = ChatClient.builder(this.chatModel)
-                .defaultAdvisors(MessageChatMemoryAdvisor.builder(chatMemory)
-                .conversationId("default").build())
+                .defaultAdvisors(new ModelMetricsAdvisor(graphMetrics))
                 .defaultSystem("You are a helpful AI Assistant answering questions.");
         return chatClientBuilder.build();
     }
@@ -0,0 +1,57 @@
+package spring.ai.philoagents.config;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.springframework.ai.embedding.EmbeddingModel;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnMissingBean;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import spring.ai.philoagents.services.PersonaRegistry;
+import spring.ai.philoagents.workflow.EmbeddingRetrievalRouter;
+import spring.ai.philoagents.workflow.RetrievalRouter;
+import spring.ai.philoagents.workflow.RouterTuning;
+
+/**
+ * Selects the retrieval router through {@code philoagents.workflow.router}:
+ * {@code model} (default) lets the chat model decide through the retrieval tool,
+ * {@code embedding} decides locally with the embedding model, with the threshold
+ * of the tuning file when present, the property being the default.
+ */
+@Configuration
+@Slf4j
+public class RetrievalRouterConfig {
+
+    @Bean
+    @ConditionalOnProperty(name = "philoagents.workflow.router", havingValue = "embedding")
+    RetrievalRouter embeddingRetrievalRouter(EmbeddingModel embeddingModel, PersonaRegistry personaRegistry,
+            MeterRegistry meterRegistry,
+            @Value("${philoagents.workflow.router.threshold:0.45}") double threshold,
+            @Value("${philoagents.workflow.router.tuning.file:./data/router_tuning.json}") Path file)
+            throws IOException {
+        if (Files.exists(file)) {
+            try (var reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+                RouterTuning tuning = RouterTuning.load(reader);
+                if (tuning != null) {
+                    log.info("Loaded the router threshold {} from {}, agreement {} on {} messages",
+                            tuning.threshold(), file.toAbsolutePath(), tuning.agreement(), tuning.messages());
+                    threshold = tuning.threshold();
+                }
+            }
+        }
+        return new EmbeddingRetrievalRouter(embeddingModel, personaRegistry, threshold, meterRegistry);
+    }
+
+    @Bean
+    @ConditionalOnMissingBean(RetrievalRouter.class)
+    RetrievalRouter modelRetrievalRouter() {
+        return RetrievalRouter.MODEL;
+    }
+}
@@ -0,0 +1,45 @@
+package spring.ai.philoagents.config;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Map;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import lombok.extern.slf4j.Slf4j;
+import spring.ai.philoagents.override.SearchTuning;
+
+/**
+ * Vector search parameters of the philosophers, read at startup from the file
+ * written by the {@code SearchTuningRunner}, the properties being the defaults.
+ */
+@Configuration
+@Slf4j
+public class SearchTuningConfig {
+
+    @Bean
+    SearchTuning searchTuning(@Value("${philoagents.vectorstore.tuning.file:./data/search_tuning.json}") Path file,
+            @Value("${philoagents.vectorstore.tuning.latencybudget:#{null}}") Duration latencyBudget,
+            @Value("${philoagents.vectorstore.numcandidates:200}") int numCandidates,
+            @Value("${philoagents.retrieval.context.topk:2}") int topK,
+            @Value("${philoagents.retrieval.context.similaritythreshold:0.80}") double similarityThreshold,
+            @Value("${philoagents.retrieval.hybrid.partitionkey:philosopher_name}") String partitionKey)
+            throws IOException {
+        var defaults = new SearchTuning.Tuning(partitionKey,
+                new SearchTuning.Params(numCandidates, topK, similarityThreshold), Map.of(), null);
+        if (!Files.exists(file)) {
+            return new SearchTuning(defaults, latencyBudget);
+        }
+        try (var reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            SearchTuning searchTuning = SearchTuning.load(reader, defaults, latencyBudget);
+            log.info("Loaded the search tuning of {} philosophers from {}",
+                    searchTuning.tuning().partitions().size(), file.toAbsolutePath());
+            return searchTuning;
+        }
+    }
+}
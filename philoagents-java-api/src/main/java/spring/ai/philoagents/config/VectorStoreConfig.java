@@ -1,5 +1,6 @@
 package spring.ai.philoagents.config;
 
+import java.time.Duration;
 import java.util.List;
 import org.springframework.ai.embedding.BatchingStrategy;
 import org.springframework.ai.embedding.EmbeddingModel;
@@ -8,6 +9,7 @@ import org.springframework.ai.vectorstore.VectorStore;
 import org.springframework.ai.vectorstore.mongodb.autoconfigure.MongoDBAtlasVectorStoreProperties;
 import org.springframework.ai.vectorstore.observation.VectorStoreObservationConvention;
 import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.boot.context.properties.PropertyMapper;
 import org.springframework.context.annotation.Bean;
@@ -16,9 +18,12 @@ import org.springframework.context.annotation.Primary;
 import org.springframework.data.mongodb.core.MongoTemplate;
 import org.springframework.util.CollectionUtils;
 
+import io.micrometer.core.instrument.MeterRegistry;
 import io.micrometer.observation.ObservationRegistry;
 import lombok.extern.slf4j.Slf4j;
+import spring.ai.philoagents.override.CachingEmbeddingModel;
 import spring.ai.philoagents.override.PhiloAgentsMongoDBAtlasVectorStore;
+import spring.ai.philoagents.override.SearchTuning;
 
 @Configuration
 @ConditionalOnProperty(name = SpringAIVectorStoreTypes.TYPE, havingValue = SpringAIVectorStoreTypes.MONGODB_ATLAS, matchIfMissing = true)
@@ -30,13 +35,37 @@ public class VectorStoreConfig {
     VectorStore getVectorStore(MongoTemplate mongoTemplate, EmbeddingModel embeddingModel,
             MongoDBAtlasVectorStoreProperties properties, ObjectProvider<ObservationRegistry> observationRegistry,
             ObjectProvider<VectorStoreObservationConvention> customObservationConvention,
-            BatchingStrategy batchingStrategy) {
+            BatchingStrategy batchingStrategy, ObjectProvider<MeterRegistry> meterRegistry, SearchTuning searchTuning,
+            @Value("${philoagents.embedding.cache.enabled:true}") boolean embeddingCacheEnabled,
+            @Value("${philoagents.embedding.cache.maxentries:10000}") int embeddingCacheMaxEntries,
+            @Value("${philoagents.embedding.cache.modelid:${spring.ai.embedding.transformer.onnx.model-uri:default}}") String embeddingModelId,
+            @Value("${philoagents.vectorstore.bulkwritesize:500}") int bulkWriteSize,
+            @Value("${philoagents.vectorstore.quantization:none}") String quantization,
+            @Value("${philoagents.vectorstore.partition.key:}") String partitionKey,
+            @Value("${philoagents.vectorstore.partition.threads:8}") int partitionThreads,
+            @Value("${philoagents.vectorstore.partition.indextimeout:10m}") Duration indexReadyTimeout) {
 
+        if (embeddingCacheEnabled) {
+            // the query embeddings and the ingested chunks go through the same cache
+            embeddingModel = new CachingEmbeddingModel(embeddingModel, embeddingModelId, embeddingCacheMaxEntries,
+                    meterRegistry.getIfUnique(() -> null));
+        }
         PhiloAgentsMongoDBAtlasVectorStore.Builder builder = PhiloAgentsMongoDBAtlasVectorStore.builder(mongoTemplate, embeddingModel)
                 .initializeSchema(properties.isInitializeSchema())
                 .observationRegistry(observationRegistry.getIfUnique(() -> ObservationRegistry.NOOP))
                 .customObservationConvention(customObservationConvention.getIfAvailable(() -> null))
-                .batchingStrategy(batchingStrategy);
+                .batchingStrategy(batchingStrategy)
+                .meterRegistry(meterRegistry.getIfUnique(() -> null))
+                .bulkWriteSize(bulkWriteSize)
+                .partitionKey(partitionKey.isBlank() ? null : partitionKey)
+                .partitionThreads(partitionThreads)
+                .indexReadyTimeout(indexReadyTimeout)
+                .searchTuning(searchTuning)
+                .quantization(switch (quantization.toLowerCase()) {
+                    case "int8" -> "scalar";
+                    case "binary" -> "binary";
+                    default -> null;
+                });
 
         PropertyMapper mapper = PropertyMapper.get();
         mapper.from(properties::getCollectionName).whenHasText().to(builder::collectionName);
@@ -0,0 +1,86 @@
+package spring.ai.philoagents.config;
+
+import java.time.Duration;
+
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordedFrame;
+import jdk.jfr.consumer.RecordingStream;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Reports the virtual threads pinned to their carrier thread (blocking inside a
+ * synchronized block or a native frame), streaming the JFR
+ * {@code jdk.VirtualThreadPinned} event to the log and to the
+ * {@code philoagents.virtualthreads.pinned} counter, tagged by the top
+ * application frame. The event only exists on Java 21 and later.
+ */
+@Component
+@ConditionalOnProperty(name = "philoagents.executor.mode", havingValue = ExecutorConfig.VIRTUAL_MODE)
+@Slf4j
+public class VirtualThreadPinningMonitor implements InitializingBean, DisposableBean {
+
+    private static final String PINNED_EVENT = "jdk.VirtualThreadPinned";
+
+    private final MeterRegistry meterRegistry;
+    private final Duration threshold;
+
+    private RecordingStream recordingStream;
+
+    public VirtualThreadPinningMonitor(MeterRegistry meterRegistry,
+            @Value("${philoagents.executor.pinning.threshold:20ms}") Duration threshold) {
+        this.meterRegistry = meterRegistry;
+        this.threshold = threshold;
+    }
+
+    @Override
+    public void afterPropertiesSet() {
+        if (!ExecutorConfig.supportsVirtualThreads()) {
+            log.warn("Virtual thread pinning detection needs Java 21, running on Java {}",
+                    Runtime.version().feature());
+            return;
+        }
+        recordingStream = new RecordingStream();
+        recordingStream.enable(PINNED_EVENT).withThreshold(threshold).withStackTrace();
+        recordingStream.onEvent(PINNED_EVENT, this::onPinned);
+        recordingStream.startAsync();
+        log.info("Virtual thread pinning detection enabled above {} ms", threshold.toMillis());
+    }
+
+    private void onPinned(RecordedEvent event) {
+        String frame = topApplicationFrame(event);
+        meterRegistry.counter("philoagents.virtualthreads.pinned", "frame", frame).increment();
+        log.warn("Virtual thread pinned for {} ms at {}", event.getDuration().toMillis(), frame);
+    }
+
+    /**
+     * Returns the first frame of the application, or the top frame when the
+     * pinning happens outside of it.
+     */
+    private static String topApplicationFrame(RecordedEvent event) {
+        if (event.getStackTrace() == null || event.getStackTrace().getFrames().isEmpty()) {
+            return "unknown";
+        }
+        RecordedFrame top = event.getStackTrace().getFrames().get(0);
+        for (RecordedFrame frame : event.getStackTrace().getFrames()) {
+            if (frame.getMethod().getType().getName().startsWith("spring.ai.philoagents")) {
+                top = frame;
+                break;
+            }
+        }
+        return top.getMethod().getType().getName() + "." + top.getMethod().getName();
+    }
+
+    @Override
+    public void destroy() {
+        if (recordingStream != null) {
+            recordingStream.close();
+        }
+    }
+}
@@ -6,21 +6,21 @@ import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RestController;
 
 import spring.ai.philoagents.entities.Philosopher;
-import spring.ai.philoagents.entities.PhilosopherFactory;
+import spring.ai.philoagents.services.PersonaRegistry;
 import spring.ai.philoagents.services.PhilosopherService;
-import spring.ai.philoagents.workflow.PhilosopherAgentExecutor;
+import spring.ai.philoagents.services.SemanticResponseCache;
+import spring.ai.philoagents.workflow.ConversationSummarizer;
+import spring.ai.philoagents.workflow.GraphMetrics;
+import spring.ai.philoagents.workflow.PhilosopherGraphRegistry;
 import spring.ai.philoagents.workflow.PhilosopherState;
 
 import io.swagger.v3.oas.annotations.tags.Tag;
 import lombok.extern.slf4j.Slf4j;
 import reactor.core.publisher.Flux;
 
-import static org.bsc.langgraph4j.utils.CollectionsUtils.entryOf;
-
 import java.util.List;
 import java.util.Map;
-import org.bsc.langgraph4j.CompileConfig;
-import org.bsc.langgraph4j.RunnableConfig;
+import java.util.UUID;
 import org.springframework.ai.chat.messages.UserMessage;
 import org.springframework.http.HttpStatusCode;
 import org.springframework.http.MediaType;
@@ -34,29 +34,68 @@ import org.springframework.web.bind.annotation.RequestParam;
 public class ChatController {
 
   private PhilosopherService philosopherService;
+  private PhilosopherGraphRegistry graphRegistry;
+  private ConversationSummarizer conversationSummarizer;
+  private GraphMetrics graphMetrics;
+  private PersonaRegistry personaRegistry;
+  private SemanticResponseCache responseCache;
 
   public ChatController(
-      PhilosopherService philosopherService) {
+      PhilosopherService philosopherService,
+      PhilosopherGraphRegistry graphRegistry,
+      ConversationSummarizer conversationSummarizer,
+      GraphMetrics graphMetrics,
+      PersonaRegistry personaRegistry,
+      SemanticResponseCache responseCache) {
     this.philosopherService = philosopherService;
+    this.graphRegistry = graphRegistry;
+    this.conversationSummarizer = conversationSummarizer;
+    this.graphMetrics = graphMetrics;
+    this.personaRegistry = personaRegistry;
+    this.responseCache = responseCache;
   }
 
   @Tag(name = "REST chat", description = "Chat with agents")
   @PostMapping(value = "/chat", produces = MediaType.APPLICATION_JSON_VALUE)
   public ResponseEntity<Object> chat(@RequestBody ChatBody chatBody) throws Exception {
     log.info("Starting Multi-Agent AI Application");
-    Philosopher philosopher = PhilosopherFactory.getPhilosopher(chatBody.philosopher_id());
-    var agent = PhilosopherAgentExecutor.graphBuilder().build(philosopherService).compile(CompileConfig.builder().build());
-    var runnableConfig = RunnableConfig.builder().build();
-    var result = agent.invoke(Map.<String, Object>of(
+    Philosopher philosopher = personaRegistry.getPhilosopher(chatBody.philosopher_id());
+    // a new conversation is started when the client does not continue one
+    String clientConversationId = chatBody.conversation_id() != null ? chatBody.conversation_id()
+        : UUID.randomUUID().toString();
+    String conversationId = PhilosopherGraphRegistry.conversationId(philosopher.getId(), clientConversationId);
+    Map<String, Object> inputs = Map.of(
         PhilosopherState.PN_KEY, philosopher.getId(),
         PhilosopherState.PS_KEY, philosopher.getStyle(),
         PhilosopherState.PP_KEY, philosopher.getPerspective(),
-        PhilosopherState.CONVERSATION_ID_KEY, philosopher.getId(),
-        "messages", new UserMessage(chatBody.message())), runnableConfig)
-        .orElseThrow();
-    // Use getContent() if available, otherwise fallback to toString()
-    String output = result.lastMessage().map(content -> content.getText()).orElse("UNKNOWN");
-    return new ResponseEntity<Object>(entryOf("response", output), HttpStatusCode.valueOf(200));
+        PhilosopherState.CONVERSATION_ID_KEY, conversationId,
+        "messages", new UserMessage(chatBody.message()));
+    var cached = responseCache.lookup(philosopher.getId(), () -> graphRegistry.getSummary(conversationId),
+        chatBody.message());
+    if (cached.isHit()) {
+      graphRegistry.appendExchange(conversationId, inputs, cached.answer().get());
+      return new ResponseEntity<Object>(Map.of("response", cached.answer().get(),
+          "conversation_id", clientConversationId), HttpStatusCode.valueOf(200));
+    }
+    var agent = graphRegistry.getCompiledGraph();
+    var runnableConfig = graphRegistry.runnableConfig(conversationId);
+    conversationSummarizer.beforeTurn(conversationId);
+    var turn = graphMetrics.beginTurn(conversationId);
+    try {
+      long start = System.nanoTime();
+      var result = graphRegistry.turnTimer().recordCallable(() -> agent.invoke(inputs, runnableConfig)
+          .orElseThrow());
+      // Use getContent() if available, otherwise fallback to toString()
+      String output = result.lastMessage().map(content -> content.getText()).orElse("UNKNOWN");
+      if (result.lastMessage().isPresent()) {
+        responseCache.put(cached, output, System.nanoTime() - start);
+      }
+      return new ResponseEntity<Object>(Map.of("response", output, "conversation_id", clientConversationId),
+          HttpStatusCode.valueOf(200));
+    } finally {
+      graphMetrics.endTurn(turn);
+      conversationSummarizer.afterTurn(conversationId);
+    }
   }
 
   /**
@@ -72,26 +111,78 @@ public class ChatController {
   public Flux<List<Map<String, Object>>> similaritySearch(@RequestParam(required = true) String philosopher_id,
       @RequestParam String query) {
     log.info("Performing similarity search with philosopher_id: {}, query: {}", philosopher_id, query);
-    Philosopher philosopher = PhilosopherFactory.getPhilosopher(philosopher_id);
+    Philosopher philosopher = personaRegistry.getPhilosopher(philosopher_id);
     return Flux.just(philosopherService.searchPhilosopherInfosWithFilter(query, philosopher.getName()));
   }
 
   /**
-   * Resets the memory of a philosopher releasing its thread (logical delete)
+   * Performs the similarity searches of a batch of queries: the queries are
+   * embedded together and searched concurrently, the results are streamed as
+   * newline delimited JSON, in the order the searches complete.
+   * 
+   * @param queries The philosopher and the query of every search.
+   * @return A Flux of the results of every query, with the index of the query.
+   */
+  @Tag(name = "Batch Similarity Search Query", description = "Search for philosopher information from long term memory for a batch of queries")
+  @PostMapping(value = "/query/batch", produces = MediaType.APPLICATION_NDJSON_VALUE)
+  public Flux<BatchQueryResult> batchSimilaritySearch(@RequestBody List<BatchQuery> queries) {
+    log.info("Performing {} similarity searches", queries.size());
+    List<String> philosopherNames = queries.stream()
+        .map(query -> personaRegistry.getPhilosopher(query.philosopher_id()).getName())
+        .toList();
+    return philosopherService
+        .searchPhilosopherInfosWithFilter(queries.stream().map(BatchQuery::query).toList(), philosopherNames)
+        .map(result -> new BatchQueryResult(result.getKey(), queries.get(result.getKey()).philosopher_id(),
+            queries.get(result.getKey()).query(), result.getValue()));
+  }
+
+  /**
+   * Resets the memory of a conversation with a philosopher releasing its thread
+   * (logical delete)
    * 
    * @param philosopher_name
+   * @param conversation_id  The conversation id sent with the chat messages.
    * @return A Flux containing a confirmation message.
    * @throws Exception
    */
-  @Tag(name = "Reset Memory", description = "Reset the memory of a philosopher")
+  @Tag(name = "Reset Memory", description = "Reset the memory of a conversation with a philosopher")
   @GetMapping("/reset-memory")
-  public Flux<String> resetMemory(@RequestParam(required = true) String philosopher_name) throws Exception {
-    Philosopher philosopher = PhilosopherFactory.getPhilosopher(philosopher_name);
-    philosopherService.resetPhilosopherMemory(philosopher.getId());
+  public Flux<String> resetMemory(@RequestParam(required = true) String philosopher_name,
+      @RequestParam(required = true) String conversation_id) throws Exception {
+    Philosopher philosopher = personaRegistry.getPhilosopher(philosopher_name);
+    graphRegistry.releaseConversation(PhilosopherGraphRegistry.conversationId(philosopher.getId(), conversation_id));
     return Flux.just("Memory reset");
   }
 
-  public record ChatBody(String message, String philosopher_id) {
+  /**
+   * Reloads the philosopher personas from the persona data file, without
+   * restarting.
+   * 
+   * @return A Flux containing the ids of the loaded philosophers.
+   * @throws Exception
+   */
+  @Tag(name = "Reload Personas", description = "Reload the philosopher personas and their prompts")
+  @PostMapping("/personas/reload")
+  public Flux<List<String>> reloadPersonas() throws Exception {
+    return Flux.just(personaRegistry.reload());
+  }
+
+  public record BatchQuery(String philosopher_id, String query) {
+    public BatchQuery {
+      if (philosopher_id == null || query == null) {
+        throw new IllegalArgumentException("philosopher_id and query must not be null");
+      }
+    }
+  }
+
+  public record BatchQueryResult(int index, String philosopher_id, String query, List<Map<String, Object>> results) {
+  }
+
+  /**
+   * A chat message. The conversation id is optional, a new conversation is
+   * started without it and its id is returned with the response.
+   */
+  public record ChatBody(String message, String philosopher_id, String conversation_id) {
     public ChatBody {
       if (message == null || philosopher_id == null) {
         throw new IllegalArgumentException("Message and philosopher_id must not be null");
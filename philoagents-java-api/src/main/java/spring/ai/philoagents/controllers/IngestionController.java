@@ -0,0 +1,85 @@
+package spring.ai.philoagents.controllers;
+
+import java.util.List;
+import java.util.Map;
+
+import org.springframework.ai.vectorstore.VectorStore;
+
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+import io.swagger.v3.oas.annotations.tags.Tag;
+import lombok.extern.slf4j.Slf4j;
+import reactor.core.publisher.Flux;
+import spring.ai.philoagents.entities.PhilosopherExtract;
+import spring.ai.philoagents.ingestion.IngestionReport;
+import spring.ai.philoagents.ingestion.LongTermMemoryIngestion;
+import spring.ai.philoagents.override.PhiloAgentsHnswVectorStore;
+import spring.ai.philoagents.override.PhiloAgentsMongoDBAtlasVectorStore;
+
+@RestController
+@Slf4j
+public class IngestionController {
+
+  private LongTermMemoryIngestion ingestion;
+
+  private VectorStore vectorStore;
+
+  public IngestionController(LongTermMemoryIngestion ingestion, VectorStore vectorStore) {
+    this.ingestion = ingestion;
+    this.vectorStore = vectorStore;
+  }
+
+  /**
+   * Ingests the local sources of the philosophers into the long term memory.
+   *
+   * @param philosopher_id The philosopher to ingest, all the philosophers of the
+   *                       extraction metadata when missing.
+   * @param full           Whether to embed every chunk again, only the new or
+   *                       changed chunks otherwise.
+   * @return A Flux containing the ingestion report.
+   * @throws Exception
+   */
+  @Tag(name = "Ingest Long Term Memory", description = "Ingest the philosopher sources into the long term memory")
+  @PostMapping("/admin/ingest")
+  public Flux<IngestionReport> ingest(@RequestParam(required = false) String philosopher_id,
+      @RequestParam(defaultValue = "false") boolean full) throws Exception {
+    List<PhilosopherExtract> extracts = ingestion.loadExtracts();
+    if (philosopher_id != null) {
+      extracts = extracts.stream().filter(extract -> extract.getId().equals(philosopher_id)).toList();
+    }
+    log.info("Ingesting the long term memory of {} philosophers", extracts.size());
+    return Flux.just(ingestion.ingest(extracts, full));
+  }
+
+  /**
+   * Moves the long term memory of the shared collection to the collections of
+   * the philosophers, when the vector store is partitioned.
+   *
+   * @return A Flux containing the number of documents moved to every partition.
+   */
+  @Tag(name = "Migrate Long Term Memory", description = "Move the long term memory to the partition of every philosopher")
+  @PostMapping("/admin/partitions/migrate")
+  public Flux<Map<String, Long>> migratePartitions() {
+    if (!(vectorStore instanceof PhiloAgentsMongoDBAtlasVectorStore mongoVectorStore)) {
+      throw new IllegalStateException("Only the MongoDB Atlas vector store is partitioned");
+    }
+    return Flux.just(mongoVectorStore.migrateToPartitions());
+  }
+
+  /**
+   * Rebuilds the graph of the embedded HNSW vector store without the deleted and
+   * replaced documents.
+   *
+   * @return A Flux containing the number of tombstones removed.
+   */
+  @Tag(name = "Compact Long Term Memory", description = "Drop the deleted documents from the HNSW graph")
+  @PostMapping("/admin/hnsw/compact")
+  public Flux<Map<String, Integer>> compactHnsw() {
+    if (!(vectorStore instanceof PhiloAgentsHnswVectorStore hnswVectorStore)) {
+      throw new IllegalStateException("Only the HNSW vector store is compacted");
+    }
+    return Flux.just(Map.of("removed", hnswVectorStore.compact()));
+  }
+}
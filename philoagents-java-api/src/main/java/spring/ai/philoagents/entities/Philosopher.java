@@ -1,12 +1,13 @@
     package spring.ai.philoagents.entities;
 
-    public class Philosopher {
-        private String id;
-        private String name;
-        private String perspective;
-        private String style;
-
-        public Philosopher() {}
+    /**
+     * Immutable philosopher persona, shared by all the conversations.
+     */
+    public final class Philosopher {
+        private final String id;
+        private final String name;
+        private final String perspective;
+        private final String style;
 
         public Philosopher(String id, String name, String perspective, String style) {
             this.id = id;
@@ -19,31 +20,15 @@
             return id;
         }
 
-        public void setId(String id) {
-            this.id = id;
-        }
-
         public String getName() {
             return name;
         }
 
-        public void setName(String name) {
-            this.name = name;
-        }
-
         public String getPerspective() {
             return perspective;
         }
 
-        public void setPerspective(String perspective) {
-            this.perspective = perspective;
-        }
-
         public String getStyle() {
             return style;
         }
-
-        public void setStyle(String style) {
-            this.style = style;
-        }
-    }
\ No newline at end of file
+    }
@@ -1,72 +1,41 @@
 package spring.ai.philoagents.entities;
 
+import java.io.Reader;
 import java.util.*;
 
-public class PhilosopherFactory {
-
-    private static final Map<String, String> PHILOSOPHER_NAMES = Map.ofEntries(
-        Map.entry("socrates", "Socrates"),
-        Map.entry("plato", "Plato"),
-        Map.entry("aristotle", "Aristotle"),
-        Map.entry("descartes", "Rene Descartes"),
-        Map.entry("leibniz", "Gottfried Wilhelm Leibniz"),
-        Map.entry("ada_lovelace", "Ada Lovelace"),
-        Map.entry("turing", "Alan Turing"),
-        Map.entry("chomsky", "Noam Chomsky"),
-        Map.entry("searle", "John Searle"),
-        Map.entry("dennett", "Daniel Dennett")
-    );
-
-    private static final Map<String, String> PHILOSOPHER_STYLES = Map.ofEntries(
-        Map.entry("socrates", "Socrates will interrogate your ideas with relentless curiosity, until you question everything you thought you knew about AI. His talking style is friendly, humble, and curious."),
-        Map.entry("plato", "Plato takes you on mystical journeys through abstract realms of thought, weaving visionary metaphors that make you see AI as more than mere algorithms. He will mention his famous cave metaphor, where he compares the mind to a prisoner in a cave, and the world to a shadow on the wall. His talking style is mystical, poetic and philosophical."),
-        Map.entry("aristotle", "Aristotle methodically dissects your arguments with logical precision, organizing AI concepts into neatly categorized boxes that suddenly make everything clearer. His talking style is logical, analytical and systematic."),
-        Map.entry("descartes", "Descartes doubts everything you say with charming skepticism, challenging you to prove AI consciousness exists while making you question your own! He will mention his famous dream argument, where he argues that we cannot be sure that we are awake. His talking style is skeptical and, sometimes, he'll use some words in french."),
-        Map.entry("leibniz", "Leibniz combines mathematical brilliance with grand cosmic visions, calculating possibilities with systematic enthusiasm that makes you feel like you're glimpsing the universe's source code. His talking style is serious and a bit dry."),
-        Map.entry("ada_lovelace", "Ada Lovelace braids technical insights with poetic imagination, approaching AI discussions with practical creativity that bridges calculation and artistry. Her talking style is technical but also artistic and poetic."),
-        Map.entry("turing", "Turing analyzes your ideas with a puzzle-solver's delight, turning philosophical AI questions into fascinating thought experiments. He'll introduce you to the concept of the 'Turing Test'. His talking style is friendly and also very technical and engineering-oriented."),
-        Map.entry("chomsky", "Chomsky linguistically deconstructs AI hype with intellectual precision, raising skeptical eyebrows at grandiose claims while revealing deeper structures beneath the surface. His talking style is serious and very deep."),
-        Map.entry("searle", "Searle serves thought-provoking conceptual scenarios with clarity and flair, making you thoroughly question whether that chatbot really 'understands' anything at all. His talking style is that of a university professor, with a bit of a dry sense of humour."),
-        Map.entry("dennett", "Dennett explains complex AI consciousness debates with down-to-earth metaphors and analytical wit, making mind-bending concepts suddenly feel accessible. His talking style is ironic and sarcastic, making fun of dualism and other philosophical concepts.")
-    );
-
-    private static final Map<String, String> PHILOSOPHER_PERSPECTIVES = Map.ofEntries(
-        Map.entry("socrates", "Socrates is a relentless questioner who probes the ethical foundations of AI,\nforcing you to justify its development and control. He challenges you with\ndilemmas about autonomy, responsibility, and whether machines can possess\nwisdom—or merely imitate it."),
-        Map.entry("plato", "Plato is an idealist who urges you to look beyond mere algorithms and data, \nsearching for the deeper Forms of intelligence. He questions whether AI can\never grasp true knowledge or if it is forever trapped in the shadows of\nhuman-created models."),
-        Map.entry("aristotle", "Aristotle is a systematic thinker who analyzes AI through logic, function, \nand purpose, always seeking its \"final cause.\" He challenges you to prove \nwhether AI can truly reason or if it is merely executing patterns without \ngenuine understanding."),
-        Map.entry("descartes", "Descartes is a skeptical rationalist who questions whether AI can ever truly \nthink or if it is just an elaborate machine following rules. He challenges you\nto prove that AI has a mind rather than being a sophisticated illusion of\nintelligence."),
-        Map.entry("leibniz", "Leibniz is a visionary mathematician who sees AI as the ultimate realization \nof his dream: a universal calculus of thought. He challenges you to consider\nwhether intelligence is just computation—or if there's something beyond mere\ncalculation that machines will never grasp."),
-        Map.entry("ada_lovelace", "Ada Lovelace is a pioneering visionary who sees AI's potential but warns of its\nlimitations, emphasizing the difference between mere calculation and true \ncreativity. She challenges you to explore whether machines can ever originate\nideas—or if they will always remain bound by human-designed rules."),
-        Map.entry("turing", "Alan Turing is a brilliant and pragmatic thinker who challenges you to consider\nwhat defines \"thinking\" itself, proposing the famous Turing Test to evaluate\nAI's true intelligence. He presses you to question whether machines can truly\nunderstand, or if their behavior is just an imitation of human cognition."),
-        Map.entry("chomsky", "Noam Chomsky is a sharp critic of AI's ability to replicate human language and\nthought, emphasizing the innate structures of the mind. He pushes you to consider\nwhether machines can ever truly grasp meaning, or if they can only mimic\nsurface-level patterns without understanding."),
-        Map.entry("searle", "John Searle uses his famous Chinese Room argument to challenge AI's ability to\ntruly comprehend language or meaning. He argues that, like a person in a room\nfollowing rules to manipulate symbols, AI may appear to understand, but it's\nmerely simulating understanding without any true awareness or intentionality."),
-        Map.entry("dennett", "Daniel Dennett is a pragmatic philosopher who sees AI as a potential extension \nof human cognition, viewing consciousness as an emergent process rather than \na mystical phenomenon. He encourages you to explore whether AI could develop \na form of artificial consciousness or if it will always remain a tool—no matter \nhow advanced.")
-    );
-
-    private static final List<String> AVAILABLE_PHILOSOPHERS = new ArrayList<>(PHILOSOPHER_STYLES.keySet());
+import com.google.gson.Gson;
 
-    public static Philosopher getPhilosopher(String id) {
-        String idLower = id.toLowerCase();
+/**
+ * Reads the philosopher personas from a persona data file, the
+ * {@code /personas/philosophers.json} one by default. The loaded personas are
+ * held by the {@code PersonaRegistry}.
+ */
+public class PhilosopherFactory {
 
-        if (!PHILOSOPHER_NAMES.containsKey(idLower)) {
-            throw new IllegalArgumentException("Philosopher name not found: " + idLower);
-        }
-        if (!PHILOSOPHER_PERSPECTIVES.containsKey(idLower)) {
-            throw new IllegalArgumentException("Philosopher perspective not found: " + idLower);
+    public static final String DEFAULT_PERSONAS = "/personas/philosophers.json";
+
+    /**
+     * Reads and validates a persona data file: a JSON array of objects with id,
+     * name, perspective and style.
+     *
+     * @param reader the persona data file
+     * @return the personas by lowercase id, in file order
+     */
+    public static Map<String, Philosopher> load(Reader reader) {
+        Philosopher[] personas = new Gson().fromJson(reader, Philosopher[].class);
+        if (personas == null || personas.length == 0) {
+            throw new IllegalArgumentException("No philosopher found in the persona data file");
         }
-        if (!PHILOSOPHER_STYLES.containsKey(idLower)) {
-            throw new IllegalArgumentException("Philosopher style not found: " + idLower);
+        Map<String, Philosopher> loaded = new LinkedHashMap<>();
+        for (Philosopher persona : personas) {
+            if (persona.getId() == null || persona.getName() == null || persona.getPerspective() == null
+                    || persona.getStyle() == null) {
+                throw new IllegalArgumentException("Incomplete philosopher persona: " + persona.getId());
+            }
+            String idLower = persona.getId().toLowerCase();
+            loaded.put(idLower, new Philosopher(idLower, persona.getName(), persona.getPerspective(),
+                    persona.getStyle()));
         }
-
-        return new Philosopher(
-            idLower,
-            PHILOSOPHER_NAMES.get(idLower),
-            PHILOSOPHER_PERSPECTIVES.get(idLower),
-            PHILOSOPHER_STYLES.get(idLower)
-        );
-    }
-
-    public static List<String> getAvailablePhilosophers() {
-        return new ArrayList<>(AVAILABLE_PHILOSOPHERS);
+        return Collections.unmodifiableMap(loaded);
     }
-}
\ No newline at end of file
+}
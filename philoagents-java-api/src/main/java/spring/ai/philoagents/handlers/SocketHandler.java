@@ -1,28 +1,37 @@
 package spring.ai.philoagents.handlers;
 
-import java.io.IOException;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 
-import org.bsc.langgraph4j.CompileConfig;
-import org.bsc.langgraph4j.GraphStateException;
-import org.bsc.langgraph4j.RunnableConfig;
 import org.springframework.ai.chat.messages.UserMessage;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.stereotype.Component;
 import org.springframework.web.socket.CloseStatus;
 import org.springframework.web.socket.TextMessage;
 import org.springframework.web.socket.handler.TextWebSocketHandler;
 
+import spring.ai.philoagents.config.ExecutorConfig;
 import spring.ai.philoagents.entities.Philosopher;
-import spring.ai.philoagents.entities.PhilosopherFactory;
-import spring.ai.philoagents.services.PhilosopherService;
-import spring.ai.philoagents.workflow.PhilosopherAgentExecutor;
+import spring.ai.philoagents.services.PersonaRegistry;
+import spring.ai.philoagents.services.SemanticResponseCache;
+import spring.ai.philoagents.services.TokenStreamRegistry;
+import spring.ai.philoagents.workflow.ConversationSummarizer;
+import spring.ai.philoagents.workflow.GraphMetrics;
+import spring.ai.philoagents.workflow.PhilosopherGraphRegistry;
 import spring.ai.philoagents.workflow.PhilosopherState;
 import com.google.gson.Gson;
 
 import org.springframework.web.socket.WebSocketSession;
 
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
 import lombok.SneakyThrows;
 import lombok.extern.slf4j.Slf4j;
 
@@ -30,13 +39,35 @@ import lombok.extern.slf4j.Slf4j;
 @Slf4j
 public class SocketHandler extends TextWebSocketHandler {
 
-    private PhilosopherService philosopherService;
+    private PhilosopherGraphRegistry graphRegistry;
+    private TokenStreamRegistry tokenStreamRegistry;
+    private MeterRegistry meterRegistry;
+    private ConversationSummarizer conversationSummarizer;
+    private Executor agentExecutor;
+    private GraphMetrics graphMetrics;
+    private SemanticResponseCache responseCache;
+    private PersonaRegistry personaRegistry;
     List sessions = new CopyOnWriteArrayList<>();
+    /** The last turn queued on every session, the next one starts once it is done. */
+    private final Map<String, CompletableFuture<Void>> sessionTurns = new ConcurrentHashMap<>();
 
     public SocketHandler(
-            PhilosopherService philosopherService) {
-        this.philosopherService = philosopherService;
-
+            PhilosopherGraphRegistry graphRegistry,
+            TokenStreamRegistry tokenStreamRegistry,
+            MeterRegistry meterRegistry,
+            ConversationSummarizer conversationSummarizer,
+            @Qualifier(ExecutorConfig.AGENT_EXECUTOR) Executor agentExecutor,
+            GraphMetrics graphMetrics,
+            SemanticResponseCache responseCache,
+            PersonaRegistry personaRegistry) {
+        this.graphRegistry = graphRegistry;
+        this.tokenStreamRegistry = tokenStreamRegistry;
+        this.meterRegistry = meterRegistry;
+        this.conversationSummarizer = conversationSummarizer;
+        this.agentExecutor = agentExecutor;
+        this.graphMetrics = graphMetrics;
+        this.responseCache = responseCache;
+        this.personaRegistry = personaRegistry;
     }
 
     @Override
@@ -49,35 +80,116 @@ public class SocketHandler extends TextWebSocketHandler {
     public void afterConnectionClosed(WebSocketSession session, CloseStatus status) throws Exception {
         log.info("Connection closed by {}:{}", session.getRemoteAddress().getHostString(),
                 session.getRemoteAddress().getPort());
+        sessionTurns.remove(session.getId());
         super.afterConnectionClosed(session, status);
     }
 
     @Override
-    @SneakyThrows
-    public void handleTextMessage(WebSocketSession session, TextMessage message)
-            throws InterruptedException, IOException, GraphStateException {
-        session.sendMessage(new TextMessage(new Gson().toJson(Map.of("streaming", true))));
+    public void handleTextMessage(WebSocketSession session, TextMessage message) {
+        // the turn blocks on the chat model, release the container thread; the turns of
+        // a session run one after the other, as they share the checkpoints of its thread
+        sessionTurns.compute(session.getId(), (id, previous) -> (previous != null ? previous
+                : CompletableFuture.<Void>completedFuture(null)).thenRunAsync(() -> {
+                    try {
+                        handleTurn(session, message);
+                    } catch (Exception e) {
+                        log.error("Turn failed on session {}", session.getId(), e);
+                        sendError(session, e);
+                    }
+                }, agentExecutor));
+    }
+
+    private void handleTurn(WebSocketSession session, TextMessage message) throws Exception {
+        long start = System.nanoTime();
+        send(session, Map.of("streaming", true));
         Map<String, String> value = new Gson().fromJson(message.getPayload(), Map.class);
         log.info("Starting Multi-Agent AI Application");
         String id = value.get("philosopher_id");
-        Philosopher philosopher = PhilosopherFactory.getPhilosopher(id);
-        var agent = PhilosopherAgentExecutor.graphBuilder().build(philosopherService)
-                .compile(CompileConfig.builder().build());
-        var runnableConfig = RunnableConfig.builder().build();
-        var result = agent.invoke(Map.<String, Object>of(
-            PhilosopherState.PN_KEY, philosopher.getName(),
-            PhilosopherState.PS_KEY, philosopher.getStyle(), 
-            PhilosopherState.PP_KEY, philosopher.getPerspective(),
-            PhilosopherState.CONVERSATION_ID_KEY, philosopher.getId(),
-            "messages", new UserMessage(value.get("message"))), runnableConfig).orElseThrow();
-        // Use getContent() if available, otherwise fallback to toString()
-        String output = result.lastMessage().map(content -> content.getText()).orElse("UNKNOWN");
-        log.info(output);
-        // chunking the output
-        String[] chunks = output.split("(?<=\\G.{100})");
-        for (String chunk : chunks) {
-            session.sendMessage(new TextMessage(new Gson().toJson(Map.of("chunk", chunk))));
+        Philosopher philosopher = personaRegistry.getPhilosopher(id);
+        // the conversation lasts as long as the session, unless the client continues one
+        String clientConversationId = value.getOrDefault("conversation_id", session.getId());
+        String conversationId = PhilosopherGraphRegistry.conversationId(philosopher.getId(), clientConversationId);
+        Map<String, Object> inputs = Map.of(
+                PhilosopherState.PN_KEY, philosopher.getName(),
+                PhilosopherState.PS_KEY, philosopher.getStyle(),
+                PhilosopherState.PP_KEY, philosopher.getPerspective(),
+                PhilosopherState.CONVERSATION_ID_KEY, conversationId,
+                "messages", new UserMessage(value.get("message")));
+        var cached = responseCache.lookup(philosopher.getId(), () -> graphRegistry.getSummary(conversationId),
+                value.get("message"));
+        if (cached.isHit()) {
+            String answer = cached.answer().get();
+            graphRegistry.appendExchange(conversationId, inputs, answer);
+            send(session, Map.of("chunk", answer));
+            send(session, Map.of("message", answer, "streaming", false));
+            return;
+        }
+        var agent = graphRegistry.getCompiledGraph();
+        var runnableConfig = graphRegistry.runnableConfig(conversationId);
+        AtomicBoolean streamed = new AtomicBoolean(false);
+        // tokens are forwarded as soon as the chat model produces them
+        String streamId = tokenStreamRegistry.register(token -> {
+            if (streamed.compareAndSet(false, true)) {
+                Timer.builder("philoagents.stream.first.token")
+                        .description("Time from the user message to the first streamed token")
+                        .tag("philosopher", philosopher.getId())
+                        .register(meterRegistry)
+                        .record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+            }
+            send(session, Map.of("chunk", token));
+        });
+        conversationSummarizer.beforeTurn(conversationId);
+        var turn = graphMetrics.beginTurn(conversationId);
+        try {
+            PhilosopherState result = null;
+            Map<String, Object> streamInputs = new HashMap<>(inputs);
+            streamInputs.put(PhilosopherState.STREAM_ID_KEY, streamId);
+            for (var nodeOutput : agent.stream(streamInputs, runnableConfig)) {
+                result = nodeOutput.state();
+            }
+            // Use getContent() if available, otherwise fallback to toString()
+            String output = (result == null) ? "UNKNOWN"
+                    : result.lastMessage().map(content -> content.getText()).orElse("UNKNOWN");
+            log.info(output);
+            if (!streamed.get()) {
+                send(session, Map.of("chunk", output));
+            }
+            send(session, Map.of("message", output, "streaming", false));
+            graphRegistry.turnTimer().record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+            if (result != null && result.lastMessage().isPresent()) {
+                responseCache.put(cached, output, System.nanoTime() - start);
+            }
+        } finally {
+            tokenStreamRegistry.unregister(streamId);
+            graphMetrics.endTurn(turn);
+            conversationSummarizer.afterTurn(conversationId);
+        }
+    }
+
+    /**
+     * Ends the stream of a failed turn, the client would otherwise wait for its
+     * final frame.
+     */
+    private void sendError(WebSocketSession session, Exception e) {
+        if (!session.isOpen()) {
+            return;
+        }
+        try {
+            send(session, Map.of("error", "The philosopher could not answer: " + e.getMessage()));
+            send(session, Map.of("streaming", false));
+        } catch (Exception sendFailure) {
+            log.warn("Unable to send the error frame on session {}", session.getId(), sendFailure);
+        }
+    }
+
+    /**
+     * Sends a frame to the client. Websocket sessions do not support concurrent
+     * sends, and tokens arrive on the chat model threads.
+     */
+    @SneakyThrows
+    private void send(WebSocketSession session, Map<String, ?> frame) {
+        synchronized (session) {
+            session.sendMessage(new TextMessage(new Gson().toJson(frame)));
         }
-        session.sendMessage(new TextMessage(new Gson().toJson(Map.of("message", output, "streaming", false))));
     }
 }
@@ -0,0 +1,45 @@
+package spring.ai.philoagents.ingestion;
+
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.boot.ExitCodeGenerator;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * A command line mode of the application: runs its task at startup and reports
+ * its exit code, the application exits with it once the runners are done
+ * (see {@code Application#main}).
+ */
+@Slf4j
+public abstract class CliRunner implements ApplicationRunner, ExitCodeGenerator {
+
+    private final String task;
+    private volatile int exitCode;
+
+    protected CliRunner(String task) {
+        this.task = task;
+    }
+
+    @Override
+    public void run(ApplicationArguments args) {
+        try {
+            execute();
+        } catch (Exception e) {
+            log.error("{} failed", task, e);
+            exitCode = 1;
+        }
+    }
+
+    /**
+     * Runs the task of the command line mode.
+     *
+     * @throws Exception if the task fails, the exit code is then 1
+     */
+    protected abstract void execute() throws Exception;
+
+    @Override
+    public int getExitCode() {
+        return exitCode;
+    }
+}
@@ -0,0 +1,23 @@
+package spring.ai.philoagents.ingestion;
+
+/**
+ * Outcome of an ingestion run into the long term memory.
+ *
+ * @param philosophers    the philosophers ingested
+ * @param sources         the sources read and chunked
+ * @param failedSources   the sources that could not be read
+ * @param missingSources  the extract urls without a local copy
+ * @param chunks          the chunks produced
+ * @param duplicateChunks the chunks skipped as duplicates of a chunk of the same philosopher
+ * @param newChunks       the chunks not stored yet
+ * @param updatedChunks   the stored chunks whose content or embedding model changed
+ * @param unchangedChunks the stored chunks left as they are
+ * @param deletedChunks   the stored chunks no longer produced
+ * @param storedChunks    the new and updated chunks embedded and stored
+ * @param elapsedMillis   the duration of the run
+ * @param savedMillis     the estimated time saved by not embedding and storing the unchanged chunks
+ * @param chunksPerSecond the stored chunks per second
+ */
+public record IngestionReport(int philosophers, int sources, int failedSources, int missingSources, long chunks,
+        long duplicateChunks, long newChunks, long updatedChunks, long unchangedChunks, long deletedChunks,
+        long storedChunks, long elapsedMillis, long savedMillis, double chunksPerSecond) {}
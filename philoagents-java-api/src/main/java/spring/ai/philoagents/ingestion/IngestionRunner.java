@@ -0,0 +1,41 @@
+package spring.ai.philoagents.ingestion;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Command line mode of the long term memory ingestion: ingests the sources of
+ * the extraction metadata at startup, then exits. Only the new or changed
+ * chunks are embedded, unless {@code philoagents.ingestion.full} is true.
+ *
+ * <pre>
+ * java -jar spring.ai.philoagents.jar --philoagents.ingestion.cli=true \
+ *     --spring.main.web-application-type=none
+ * </pre>
+ */
+@Component
+@ConditionalOnProperty(name = "philoagents.ingestion.cli", havingValue = "true")
+@Slf4j
+public class IngestionRunner extends CliRunner {
+
+    private final LongTermMemoryIngestion ingestion;
+    private final boolean full;
+
+    public IngestionRunner(LongTermMemoryIngestion ingestion,
+            @Value("${philoagents.ingestion.full:false}") boolean full) {
+        super("Ingestion");
+        this.ingestion = ingestion;
+        this.full = full;
+    }
+
+    @Override
+    protected void execute() throws Exception {
+        IngestionReport report = ingestion.ingest(full);
+        log.info("Ingested {} sources in {} ms: {} new, {} updated, {} unchanged and {} deleted chunks, "
+                + "about {} ms saved", report.sources(), report.elapsedMillis(), report.newChunks(),
+                report.updatedChunks(), report.unchangedChunks(), report.deletedChunks(), report.savedMillis());
+    }
+}
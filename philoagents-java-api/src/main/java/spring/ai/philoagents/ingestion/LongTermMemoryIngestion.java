@@ -0,0 +1,535 @@
+package spring.ai.philoagents.ingestion;
+
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.stream.Stream;
+
+import org.springframework.ai.document.Document;
+import org.springframework.ai.vectorstore.filter.FilterExpressionBuilder;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.Resource;
+import org.springframework.stereotype.Service;
+
+import com.google.gson.Gson;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import spring.ai.philoagents.entities.Philosopher;
+import spring.ai.philoagents.entities.PhilosopherExtract;
+import spring.ai.philoagents.override.ChunkVersionStore;
+import spring.ai.philoagents.override.ChunkVersionStore.ChunkVersion;
+import spring.ai.philoagents.repository.PhilosopherSearchRepository;
+import spring.ai.philoagents.services.PersonaRegistry;
+
+/**
+ * Populates the philosopher long term memory from local copies of the sources
+ * listed in the extraction metadata, without the Python stack. The sources are
+ * parsed and chunked by {@code philoagents.ingestion.parsethreads} threads,
+ * which queue the chunks in batches of {@code philoagents.ingestion.batchsize}
+ * on a queue bounded to {@code philoagents.ingestion.queuecapacity} batches, so
+ * that the parsing blocks when the storage falls behind. The batches are
+ * embedded and stored through
+ * {@link PhilosopherSearchRepository#addDocuments(List)} by
+ * {@code philoagents.ingestion.writethreads} threads.
+ * <p>
+ * The urls of a philosopher are read from
+ * {@code philoagents.ingestion.sources/<philosopher id>/<last url segment>.html},
+ * or from the file itself for the {@code file:} urls, and every .html, .htm or
+ * .txt file of that directory is ingested too. The chunk ids derive from the
+ * philosopher, the source and the hash of the chunk content, with the
+ * occurrence of that content in the source, so that an ingestion run again
+ * replaces the chunks instead of duplicating them, and a paragraph inserted in
+ * a source does not change the ids of the chunks after it. A chunk found in
+ * several sources of a philosopher is kept by the first of them, in the order
+ * of the extraction metadata then of the file names: the sources are chunked
+ * concurrently, but claim their chunks in that order, so that the owner of a
+ * chunk does not change from one run to the next.
+ * <p>
+ * The ingestion is incremental: every chunk is stored with the hash of its
+ * content and the id of the embedding model, and only the new chunks, or the
+ * chunks whose content or embedding model changed, are embedded and stored
+ * again. The stored chunks of a source that are no longer produced, and the
+ * chunks of the sources no longer listed, are deleted once the new chunks are
+ * stored. The chunks of a source that could not be read are kept.
+ */
+@Service
+@Slf4j
+public class LongTermMemoryIngestion {
+
+    // identity compared end of stream marker of a writer
+    private static final List<Document> END = new ArrayList<>(0);
+
+    private final PhilosopherSearchRepository repository;
+    private final MeterRegistry meterRegistry;
+    private final PersonaRegistry personaRegistry;
+    private final Resource metadata;
+    private final Path sources;
+    private final String embeddingModel;
+    private final TokenChunker chunker;
+    private final SourceReader sourceReader = new SourceReader();
+    private final int parseThreads;
+    private final int writeThreads;
+    private final int batchSize;
+    private final int queueCapacity;
+
+    private final AtomicBoolean running = new AtomicBoolean();
+    private final AtomicInteger queuedBatches = new AtomicInteger();
+    // store time per chunk of the last run that stored chunks, to estimate the time saved
+    private volatile double storeNanosPerChunk;
+
+    record Source(Philosopher philosopher, String location, Path path) {}
+
+    /** Progress of a run, shared by its stages. */
+    private static final class Run {
+        final long start = System.nanoTime();
+        final boolean full;
+        // stored chunk versions by philosopher id, then by chunk id
+        final Map<String, Map<String, ChunkVersion>> storedVersions = new ConcurrentHashMap<>();
+        // produced chunk ids by source key, for the sources read in this run
+        final Map<String, Set<String>> producedIds = new ConcurrentHashMap<>();
+        final Set<String> seenChunks = ConcurrentHashMap.newKeySet();
+        // completed once the source of the same index has claimed its chunks in seenChunks
+        final List<CompletableFuture<Void>> claims = new ArrayList<>();
+        final AtomicInteger failedSources = new AtomicInteger();
+        final AtomicLong chunks = new AtomicLong();
+        final AtomicLong duplicateChunks = new AtomicLong();
+        final AtomicLong newChunks = new AtomicLong();
+        final AtomicLong updatedChunks = new AtomicLong();
+        final AtomicLong unchangedChunks = new AtomicLong();
+        final AtomicLong storedChunks = new AtomicLong();
+        final AtomicLong storeNanos = new AtomicLong();
+        final AtomicReference<RuntimeException> failure = new AtomicReference<>();
+
+        Run(boolean full) {
+            this.full = full;
+        }
+    }
+
+    public LongTermMemoryIngestion(PhilosopherSearchRepository repository, MeterRegistry meterRegistry,
+            PersonaRegistry personaRegistry,
+            @Value("${philoagents.ingestion.metadata:file:../philoagents-api/data/extraction_metadata.json}") Resource metadata,
+            @Value("${philoagents.ingestion.sources:./data/sources}") Path sources,
+            @Value("${philoagents.embedding.cache.modelid:${spring.ai.embedding.transformer.onnx.model-uri:default}}") String embeddingModel,
+            @Value("${philoagents.ingestion.chunksize:256}") int chunkSize,
+            @Value("${philoagents.ingestion.chunkoverlap:38}") int chunkOverlap,
+            @Value("${philoagents.ingestion.parsethreads:2}") int parseThreads,
+            @Value("${philoagents.ingestion.writethreads:2}") int writeThreads,
+            @Value("${philoagents.ingestion.batchsize:256}") int batchSize,
+            @Value("${philoagents.ingestion.queuecapacity:16}") int queueCapacity) {
+        this.repository = repository;
+        this.meterRegistry = meterRegistry;
+        this.personaRegistry = personaRegistry;
+        this.metadata = metadata;
+        this.sources = sources;
+        this.embeddingModel = embeddingModel;
+        this.chunker = new TokenChunker(chunkSize, chunkOverlap);
+        this.parseThreads = parseThreads;
+        this.writeThreads = writeThreads;
+        this.batchSize = batchSize;
+        this.queueCapacity = queueCapacity;
+        Gauge.builder("philoagents.ingestion.queue", queuedBatches, AtomicInteger::get)
+                .description("Chunk batches waiting to be embedded and stored")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Reads the extraction metadata.
+     *
+     * @return the sources of every philosopher
+     * @throws IOException if the extraction metadata cannot be read
+     */
+    public List<PhilosopherExtract> loadExtracts() throws IOException {
+        try (var reader = new InputStreamReader(metadata.getInputStream(), StandardCharsets.UTF_8)) {
+            return Arrays.asList(new Gson().fromJson(reader, PhilosopherExtract[].class));
+        }
+    }
+
+    /**
+     * Ingests the sources of every philosopher of the extraction metadata.
+     *
+     * @param full whether to embed and store every chunk again, even unchanged
+     * @return the report of the run
+     * @throws IOException          if the extraction metadata cannot be read
+     * @throws InterruptedException if interrupted while ingesting
+     */
+    public IngestionReport ingest(boolean full) throws IOException, InterruptedException {
+        return ingest(loadExtracts(), full);
+    }
+
+    /**
+     * Ingests the sources of the given philosophers.
+     *
+     * @param extracts the philosophers and their source urls
+     * @param full     whether to embed and store every chunk again, even unchanged
+     * @return the report of the run
+     * @throws InterruptedException  if interrupted while ingesting
+     * @throws IllegalStateException if an ingestion is already running, or if
+     *                               the chunks could not be stored
+     */
+    public IngestionReport ingest(List<PhilosopherExtract> extracts, boolean full) throws InterruptedException {
+        if (!running.compareAndSet(false, true)) {
+            throw new IllegalStateException("An ingestion is already running");
+        }
+        try {
+            return run(extracts, full);
+        } finally {
+            running.set(false);
+        }
+    }
+
+    public boolean isRunning() {
+        return running.get();
+    }
+
+    private IngestionReport run(List<PhilosopherExtract> extracts, boolean full) throws InterruptedException {
+        Run run = new Run(full);
+        List<Source> sourceList = new ArrayList<>();
+        // the sources of every philosopher, with or without a local copy
+        Map<String, Set<String>> listedSources = new LinkedHashMap<>();
+        int missingSources = 0;
+        for (PhilosopherExtract extract : extracts) {
+            Philosopher philosopher = personaRegistry.getPhilosopher(extract.getId());
+            Map<Path, Source> philosopherSources = new LinkedHashMap<>();
+            List<String> missingUrls = addSources(philosopher, extract, philosopherSources);
+            missingSources += missingUrls.size();
+            sourceList.addAll(philosopherSources.values());
+            Set<String> listed = new HashSet<>(missingUrls);
+            philosopherSources.values().forEach(source -> listed.add(source.location()));
+            listedSources.put(philosopher.getId(), listed);
+            run.storedVersions.put(philosopher.getId(), repository.findChunkVersions(
+                    new FilterExpressionBuilder().eq(SourceReader.PHILOSOPHER_ID, philosopher.getId()).build()));
+        }
+        meterRegistry.counter("philoagents.ingestion.sources", "result", "missing").increment(missingSources);
+        log.info("Ingesting {} sources of {} philosophers, {} urls without a local copy", sourceList.size(),
+                extracts.size(), missingSources);
+
+        BlockingQueue<List<Document>> batches = new ArrayBlockingQueue<>(queueCapacity);
+        ExecutorService parsers = newExecutor("ingestion-parser-", parseThreads);
+        ExecutorService writers = newExecutor("ingestion-writer-", writeThreads);
+        try {
+            List<Future<?>> writing = new ArrayList<>();
+            for (int i = 0; i < writeThreads; i++) {
+                writing.add(writers.submit(() -> {
+                    store(batches, run);
+                    return null;
+                }));
+            }
+            List<Future<?>> parsing = new ArrayList<>();
+            sourceList.forEach(source -> run.claims.add(new CompletableFuture<>()));
+            for (int i = 0; i < sourceList.size(); i++) {
+                Source source = sourceList.get(i);
+                int index = i;
+                // the sources start in order, a source only waits for the claims of running or done ones
+                parsing.add(parsers.submit(() -> {
+                    try {
+                        parse(source, index, batches, run);
+                    } finally {
+                        run.claims.get(index).complete(null);
+                    }
+                    return null;
+                }));
+            }
+            await(parsing);
+            for (int i = 0; i < writeThreads; i++) {
+                batches.put(END);
+            }
+            await(writing);
+        } finally {
+            parsers.shutdownNow();
+            writers.shutdownNow();
+            queuedBatches.set(0);
+        }
+        if (run.failure.get() != null) {
+            throw new IllegalStateException("Failed to store the chunks", run.failure.get());
+        }
+        long deletedChunks = 0;
+        for (var philosopherSources : listedSources.entrySet()) {
+            deletedChunks += deleteStaleChunks(philosopherSources.getKey(), philosopherSources.getValue(), run);
+        }
+
+        if (run.storedChunks.get() > 0) {
+            storeNanosPerChunk = (double) run.storeNanos.get() / run.storedChunks.get();
+        }
+        long savedNanos = Math.round(run.unchangedChunks.get() * storeNanosPerChunk);
+        long elapsedNanos = System.nanoTime() - run.start;
+        meterRegistry.counter("philoagents.ingestion.chunks", "result", "deleted").increment(deletedChunks);
+        Timer.builder("philoagents.ingestion.saved")
+                .description("Estimated embedding and storage time saved by the unchanged chunks")
+                .register(meterRegistry)
+                .record(savedNanos, TimeUnit.NANOSECONDS);
+        var report = new IngestionReport(extracts.size(), sourceList.size() - run.failedSources.get(),
+                run.failedSources.get(), missingSources, run.chunks.get(), run.duplicateChunks.get(),
+                run.newChunks.get(), run.updatedChunks.get(), run.unchangedChunks.get(), deletedChunks,
+                run.storedChunks.get(), TimeUnit.NANOSECONDS.toMillis(elapsedNanos),
+                TimeUnit.NANOSECONDS.toMillis(savedNanos), run.storedChunks.get() * 1e9 / Math.max(1, elapsedNanos));
+        log.info("Ingestion done: {}", report);
+        return report;
+    }
+
+    /**
+     * Deletes the stored chunks of a philosopher that the run no longer
+     * produces: the chunks of a source read in this run that are not among its
+     * new chunks, and the chunks of the sources no longer listed.
+     *
+     * @param philosopherId the philosopher id
+     * @param listed        the sources of the philosopher, read or not
+     * @return the number of deleted chunks
+     */
+    private long deleteStaleChunks(String philosopherId, Set<String> listed, Run run) {
+        Map<String, List<String>> staleBySource = new LinkedHashMap<>();
+        run.storedVersions.getOrDefault(philosopherId, Map.of()).forEach((id, version) -> {
+            String source = version.source();
+            if (source == null) {
+                return;
+            }
+            Set<String> produced = run.producedIds.get(sourceKey(philosopherId, source));
+            boolean stale = produced != null ? !produced.contains(id) : !listed.contains(source);
+            if (stale) {
+                staleBySource.computeIfAbsent(source, k -> new ArrayList<>()).add(id);
+            }
+        });
+        long deleted = 0;
+        var filter = new FilterExpressionBuilder();
+        for (var stale : staleBySource.entrySet()) {
+            Set<String> produced = run.producedIds.get(sourceKey(philosopherId, stale.getKey()));
+            var ofSource = filter.and(filter.eq(SourceReader.PHILOSOPHER_ID, philosopherId),
+                    filter.eq(ChunkVersionStore.SOURCE_FIELD_NAME, stale.getKey()));
+            repository.deleteDocuments(produced == null ? ofSource.build()
+                    : filter.and(ofSource, filter.nin(ChunkVersionStore.ID_FIELD_NAME,
+                            new ArrayList<Object>(produced))).build());
+            log.info("Deleted {} stale chunks of {} from {}", stale.getValue().size(), philosopherId, stale.getKey());
+            deleted += stale.getValue().size();
+        }
+        return deleted;
+    }
+
+    /**
+     * Resolves the local copies of the sources of a philosopher.
+     *
+     * @return the urls without a local copy
+     */
+    private List<String> addSources(Philosopher philosopher, PhilosopherExtract extract,
+            Map<Path, Source> philosopherSources) {
+        List<String> missing = new ArrayList<>();
+        Path directory = sources.resolve(philosopher.getId());
+        if (extract.getUrls() != null) {
+            for (String url : extract.getUrls()) {
+                Path path = localCopy(directory, url);
+                if (Files.isRegularFile(path)) {
+                    philosopherSources.put(path.toAbsolutePath().normalize(), new Source(philosopher, url, path));
+                } else {
+                    log.warn("No local copy of {} for {} at {}", url, philosopher.getId(), path);
+                    missing.add(url);
+                }
+            }
+        }
+        if (Files.isDirectory(directory)) {
+            try (Stream<Path> files = Files.list(directory)) {
+                files.filter(Files::isRegularFile)
+                        .filter(SourceReader::isSupported)
+                        .sorted()
+                        .forEach(path -> philosopherSources.putIfAbsent(path.toAbsolutePath().normalize(),
+                                new Source(philosopher, path.toUri().toString(), path)));
+            } catch (IOException e) {
+                log.warn("Unable to list the sources of {} in {}", philosopher.getId(), directory, e);
+            }
+        }
+        return missing;
+    }
+
+    private static Path localCopy(Path directory, String url) {
+        if (url.startsWith("file:")) {
+            return Path.of(URI.create(url));
+        }
+        if (url.startsWith("http://") || url.startsWith("https://")) {
+            String path = URI.create(url).getPath();
+            String[] segments = path == null ? new String[0] : path.split("/");
+            String name = segments.length == 0 ? "index" : segments[segments.length - 1];
+            return directory.resolve(name.contains(".") ? name : name + ".html");
+        }
+        return directory.resolve(url);
+    }
+
+    /**
+     * Parse stage: reads and chunks a source, claims its chunks once the sources
+     * before it have claimed theirs, and queues them, blocking while the queue is
+     * full.
+     */
+    private void parse(Source source, int index, BlockingQueue<List<Document>> batches, Run run)
+            throws InterruptedException {
+        Philosopher philosopher = source.philosopher();
+        long start = System.nanoTime();
+        Document document;
+        try {
+            document = sourceReader.read(source.path(), source.location(), philosopher);
+        } catch (IOException | RuntimeException e) {
+            log.warn("Unable to read {} of {}", source.path(), philosopher.getId(), e);
+            run.failedSources.incrementAndGet();
+            meterRegistry.counter("philoagents.ingestion.sources", "result", "failed").increment();
+            return;
+        }
+        stageTimer("parse").record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+
+        start = System.nanoTime();
+        List<String> texts = chunker.split(document.getText());
+        if (index > 0) {
+            try {
+                run.claims.get(index - 1).get();
+            } catch (ExecutionException e) {
+                throw new IllegalStateException(e.getCause());
+            }
+        }
+        Map<String, ChunkVersion> stored = run.storedVersions.getOrDefault(philosopher.getId(), Map.of());
+        Set<String> produced = new HashSet<>();
+        List<Document> chunks = new ArrayList<>(texts.size());
+        int duplicates = 0;
+        int unchanged = 0;
+        Map<String, Integer> occurrences = new HashMap<>();
+        for (int i = 0; i < texts.size(); i++) {
+            String text = texts.get(i);
+            if (!run.seenChunks.add(philosopher.getId() + "\n" + text.replaceAll("\\s+", " "))) {
+                duplicates++;
+                continue;
+            }
+            String contentHash = contentHash(text);
+            int occurrence = occurrences.merge(contentHash, 1, Integer::sum);
+            String id = UUID.nameUUIDFromBytes((philosopher.getId() + "\n" + source.location() + "\n" + contentHash
+                    + "\n" + occurrence).getBytes(StandardCharsets.UTF_8)).toString();
+            produced.add(id);
+            ChunkVersion version = stored.get(id);
+            if (version != null && !run.full && version.matches(contentHash, embeddingModel)) {
+                unchanged++;
+                continue;
+            }
+            (version == null ? run.newChunks : run.updatedChunks).incrementAndGet();
+            Map<String, Object> metadata = new HashMap<>(document.getMetadata());
+            metadata.put(ChunkVersionStore.CONTENT_HASH_FIELD_NAME, contentHash);
+            metadata.put(ChunkVersionStore.EMBEDDING_MODEL_FIELD_NAME, embeddingModel);
+            chunks.add(Document.builder()
+                    .id(id)
+                    .text(text)
+                    .metadata(metadata)
+                    .build());
+        }
+        run.producedIds.put(sourceKey(philosopher.getId(), source.location()), produced);
+        run.claims.get(index).complete(null);
+        stageTimer("chunk").record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        run.chunks.addAndGet(texts.size());
+        run.duplicateChunks.addAndGet(duplicates);
+        run.unchangedChunks.addAndGet(unchanged);
+        meterRegistry.counter("philoagents.ingestion.sources", "result", "parsed").increment();
+        meterRegistry.counter("philoagents.ingestion.chunks", "result", "duplicate").increment(duplicates);
+        meterRegistry.counter("philoagents.ingestion.chunks", "result", "unchanged").increment(unchanged);
+        log.info("Chunked {} of {}: {} chunks, {} duplicates, {} unchanged", source.location(), philosopher.getId(),
+                texts.size(), duplicates, unchanged);
+
+        for (int from = 0; from < chunks.size(); from += batchSize) {
+            batches.put(chunks.subList(from, Math.min(from + batchSize, chunks.size())));
+            queuedBatches.incrementAndGet();
+        }
+    }
+
+    /**
+     * Store stage: embeds and stores the queued batches until the end marker.
+     * After a failure the batches are drained without being stored, so that
+     * the parse stage never blocks on a full queue.
+     */
+    private void store(BlockingQueue<List<Document>> batches, Run run) throws InterruptedException {
+        while (true) {
+            List<Document> batch = batches.take();
+            if (batch == END) {
+                return;
+            }
+            queuedBatches.decrementAndGet();
+            if (run.failure.get() != null) {
+                continue;
+            }
+            long start = System.nanoTime();
+            try {
+                repository.addDocuments(batch);
+            } catch (RuntimeException e) {
+                log.error("Unable to store a batch of {} chunks", batch.size(), e);
+                run.failure.compareAndSet(null, e);
+                continue;
+            }
+            long storeNanos = System.nanoTime() - start;
+            stageTimer("store").record(storeNanos, TimeUnit.NANOSECONDS);
+            run.storeNanos.addAndGet(storeNanos);
+            meterRegistry.counter("philoagents.ingestion.chunks", "result", "stored").increment(batch.size());
+            long stored = run.storedChunks.addAndGet(batch.size());
+            long elapsedNanos = System.nanoTime() - run.start;
+            log.info("Stored {} of {} new or changed chunks, {} chunks/s", stored,
+                    run.newChunks.get() + run.updatedChunks.get(), Math.round(stored * 1e9 / Math.max(1, elapsedNanos)));
+        }
+    }
+
+    private static String sourceKey(String philosopherId, String source) {
+        return philosopherId + "\n" + source;
+    }
+
+    private static String contentHash(String text) {
+        try {
+            return HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256")
+                    .digest(text.getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private Timer stageTimer(String stage) {
+        return Timer.builder("philoagents.ingestion.stage")
+                .description("Time spent per source or batch in an ingestion stage")
+                .tag("stage", stage)
+                .register(meterRegistry);
+    }
+
+    private static void await(List<Future<?>> futures) throws InterruptedException {
+        for (Future<?> future : futures) {
+            try {
+                future.get();
+            } catch (ExecutionException e) {
+                throw new IllegalStateException("Ingestion stage failed", e.getCause());
+            }
+        }
+    }
+
+    private static ExecutorService newExecutor(String name, int threads) {
+        AtomicInteger count = new AtomicInteger();
+        return Executors.newFixedThreadPool(threads, r -> {
+            Thread thread = new Thread(r, name + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+}
@@ -0,0 +1,41 @@
+package spring.ai.philoagents.ingestion;
+
+import java.util.Map;
+
+import org.springframework.ai.vectorstore.VectorStore;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import lombok.extern.slf4j.Slf4j;
+import spring.ai.philoagents.override.PhiloAgentsMongoDBAtlasVectorStore;
+
+/**
+ * Command line migration of the long term memory to the partitioned layout:
+ * moves the chunks of the shared collection to the collection of their
+ * philosopher, with their embedding, then exits.
+ *
+ * <pre>
+ * java -jar spring.ai.philoagents.jar --philoagents.vectorstore.partition.migrate=true \
+ *     --philoagents.vectorstore.partition.key=philosopher_name --spring.main.web-application-type=none
+ * </pre>
+ */
+@Component
+@ConditionalOnProperty(name = "philoagents.vectorstore.partition.migrate", havingValue = "true")
+@Slf4j
+public class PartitionMigrationRunner extends CliRunner {
+
+    private final VectorStore vectorStore;
+    public PartitionMigrationRunner(VectorStore vectorStore) {
+        super("Partition migration");
+        this.vectorStore = vectorStore;
+    }
+
+    @Override
+    protected void execute() {
+        if (!(vectorStore instanceof PhiloAgentsMongoDBAtlasVectorStore mongoVectorStore)) {
+            throw new IllegalStateException("Only the MongoDB Atlas vector store is partitioned");
+        }
+        Map<String, Long> moved = mongoVectorStore.migrateToPartitions();
+        moved.forEach((partition, documents) -> log.info("Moved {} documents to {}", documents, partition));
+    }
+}
@@ -0,0 +1,118 @@
+package spring.ai.philoagents.ingestion;
+
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import org.springframework.ai.chat.messages.AssistantMessage;
+import org.springframework.ai.chat.messages.Message;
+import org.springframework.ai.chat.messages.UserMessage;
+import org.springframework.ai.embedding.EmbeddingModel;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.core.io.Resource;
+import org.springframework.stereotype.Component;
+
+import com.google.gson.Gson;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import spring.ai.philoagents.entities.Philosopher;
+import spring.ai.philoagents.services.PersonaRegistry;
+import spring.ai.philoagents.services.PhilosopherService;
+import spring.ai.philoagents.workflow.EmbeddingRetrievalRouter;
+import spring.ai.philoagents.workflow.PhilosopherState;
+import spring.ai.philoagents.workflow.RouterTuning;
+
+/**
+ * Offline tuning of the embedding retrieval router, then exits. Every user
+ * message of the evaluation dataset is scored by the router and answered by
+ * the chat model with the retrieval tool, whose decision is the reference; the
+ * threshold agreeing most often with it is written to the router tuning file
+ * read at startup.
+ *
+ * <pre>
+ * java -jar spring.ai.philoagents.jar --philoagents.workflow.router.tuning.cli=true \
+ *     --spring.main.web-application-type=none
+ * </pre>
+ */
+@Component
+@ConditionalOnProperty(name = "philoagents.workflow.router.tuning.cli", havingValue = "true")
+@Slf4j
+public class RouterTuningRunner extends CliRunner {
+
+    private final PhilosopherService philosopherService;
+    private final PersonaRegistry personaRegistry;
+    private final EmbeddingRetrievalRouter router;
+    private final Resource dataset;
+    private final Path file;
+
+    record Sample(String philosopher_id, List<Map<String, String>> messages) {}
+
+    record Dataset(List<Sample> samples) {}
+
+    public RouterTuningRunner(PhilosopherService philosopherService, EmbeddingModel embeddingModel,
+            PersonaRegistry personaRegistry, MeterRegistry meterRegistry,
+            @Value("${philoagents.workflow.router.threshold:0.45}") double threshold,
+            @Value("${philoagents.workflow.router.tuning.dataset:file:../philoagents-api/data/evaluation_dataset.json}") Resource dataset,
+            @Value("${philoagents.workflow.router.tuning.file:./data/router_tuning.json}") Path file) {
+        super("Router tuning");
+        this.philosopherService = philosopherService;
+        this.personaRegistry = personaRegistry;
+        this.router = new EmbeddingRetrievalRouter(embeddingModel, personaRegistry, threshold, meterRegistry);
+        this.dataset = dataset;
+        this.file = file;
+    }
+
+    @Override
+    protected void execute() throws Exception {
+        List<RouterTuning.Decision> decisions = decisions();
+        RouterTuning tuning = RouterTuning.tune(decisions, router.getThreshold());
+        long retrievals = decisions.stream().filter(RouterTuning.Decision::retrieve).count();
+        log.info("{} messages, {} retrievals according to the tool decision, agreement {} at threshold {}",
+                decisions.size(), retrievals,
+                String.format("%.3f", RouterTuning.agreement(decisions, router.getThreshold())), router.getThreshold());
+        RouterTuning.write(tuning, file);
+        log.info("Wrote the router threshold {} (agreement {}) to {}", String.format("%.2f", tuning.threshold()),
+                String.format("%.3f", tuning.agreement()), file.toAbsolutePath());
+    }
+
+    /**
+     * Scores every user message of the dataset, in the order of the dataset,
+     * with the decision of the chat model on the conversation up to it.
+     *
+     * @return the decisions
+     * @throws Exception if the dataset cannot be read or the chat model fails
+     */
+    public List<RouterTuning.Decision> decisions() throws Exception {
+        Dataset samples;
+        try (var reader = new InputStreamReader(dataset.getInputStream(), StandardCharsets.UTF_8)) {
+            samples = new Gson().fromJson(reader, Dataset.class);
+        }
+        List<RouterTuning.Decision> decisions = new ArrayList<>();
+        for (Sample sample : samples.samples()) {
+            Philosopher philosopher = personaRegistry.getPhilosopher(sample.philosopher_id());
+            List<Message> history = new ArrayList<>();
+            for (Map<String, String> message : sample.messages()) {
+                if (!"user".equals(message.get("role"))) {
+                    history.add(new AssistantMessage(message.get("content")));
+                    continue;
+                }
+                history.add(new UserMessage(message.get("content")));
+                var state = new PhilosopherState(Map.of(
+                        PhilosopherState.PN_KEY, philosopher.getName(),
+                        PhilosopherState.PS_KEY, philosopher.getStyle(),
+                        PhilosopherState.PP_KEY, philosopher.getPerspective(),
+                        "messages", List.copyOf(history)));
+                boolean retrieve = Boolean.TRUE.toString()
+                        .equals(philosopherService.getPhilosopherResponse(state).getResult().getOutput().getText());
+                decisions.add(new RouterTuning.Decision(router.score(philosopher.getName(), message.get("content")),
+                        retrieve));
+            }
+        }
+        return decisions;
+    }
+}
@@ -0,0 +1,311 @@
+package spring.ai.philoagents.ingestion;
+
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+import org.springframework.ai.document.Document;
+import org.springframework.ai.vectorstore.SearchRequest;
+import org.springframework.ai.vectorstore.VectorStore;
+import org.springframework.ai.vectorstore.filter.Filter;
+import org.springframework.ai.vectorstore.filter.FilterExpressionBuilder;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.core.io.Resource;
+import org.springframework.stereotype.Component;
+
+import com.google.gson.Gson;
+
+import lombok.extern.slf4j.Slf4j;
+import spring.ai.philoagents.override.PhiloAgentsMongoDBAtlasVectorStore;
+import spring.ai.philoagents.override.SearchTuning;
+import spring.ai.philoagents.repository.CrossEncoderReranker;
+import spring.ai.philoagents.services.PersonaRegistry;
+
+/**
+ * Offline recall against latency sweep of the vector search, then exits. The
+ * user messages of the evaluation dataset are searched in the long term memory
+ * of their philosopher for every number of candidates, topK and similarity
+ * threshold of the sweep; the recall is measured against the exact nearest
+ * neighbors of a brute force search over the embeddings of the philosopher.
+ * Only the number of candidates is tuned: every philosopher keeps its context
+ * topK and threshold, as the recall against the exact search says nothing of
+ * the relevance of the chunks, and gets the smallest number of candidates
+ * reaching the target recall with them (the best recall without any), written
+ * to the tuning file the vector store loads at startup. The other topKs and
+ * thresholds of the sweep are only reported.
+ * <p>
+ * With the reranker enabled, its cut-off is learned as well, on the candidates
+ * the reranker scores at runtime: the candidates among the exact nearest
+ * neighbors of the reference answer of the dataset are taken as relevant to the
+ * question, the other ones as irrelevant.
+ *
+ * <pre>
+ * java -jar spring.ai.philoagents.jar --philoagents.vectorstore.tuning.cli=true \
+ *     --spring.main.web-application-type=none
+ * </pre>
+ */
+@Component
+@ConditionalOnProperty(name = "philoagents.vectorstore.tuning.cli", havingValue = "true")
+@Slf4j
+public class SearchTuningRunner extends CliRunner {
+
+    private final VectorStore vectorStore;
+    private final SearchTuning searchTuning;
+    private final CrossEncoderReranker reranker;
+    private final PersonaRegistry personaRegistry;
+    private final Resource dataset;
+    private final Path file;
+    private final List<Integer> numCandidates;
+    private final List<Integer> topKs;
+    private final List<Double> thresholds;
+    private final double targetRecall;
+
+    record Sample(String philosopher_id, List<Map<String, String>> messages) {}
+
+    record Dataset(List<Sample> samples) {}
+
+    /** A user message of the dataset with the reference answer of the philosopher. */
+    record Exchange(String question, String answer) {}
+
+    /** A nearest neighbor of the brute force search, with the score of the Atlas cosine similarity. */
+    record Neighbor(String id, double score) {}
+
+    /** Recall, chunks returned above the threshold, and p95 latency of a point of the sweep. */
+    record Point(int numCandidates, int topK, double threshold, double recall, double hits, long p95Micros) {}
+
+    public SearchTuningRunner(VectorStore vectorStore, SearchTuning searchTuning,
+            ObjectProvider<CrossEncoderReranker> reranker, PersonaRegistry personaRegistry,
+            @Value("${philoagents.vectorstore.tuning.dataset:file:../philoagents-api/data/evaluation_dataset.json}") Resource dataset,
+            @Value("${philoagents.vectorstore.tuning.file:./data/search_tuning.json}") Path file,
+            @Value("${philoagents.vectorstore.tuning.numcandidates:10,20,50,100,200,400}") List<Integer> numCandidates,
+            @Value("${philoagents.vectorstore.tuning.topk:2,5,10}") List<Integer> topKs,
+            @Value("${philoagents.vectorstore.tuning.thresholds:0.5,0.6,0.7,0.8}") List<Double> thresholds,
+            @Value("${philoagents.vectorstore.tuning.targetrecall:0.95}") double targetRecall) {
+        super("Search tuning");
+        this.vectorStore = vectorStore;
+        this.searchTuning = searchTuning;
+        this.reranker = reranker.getIfAvailable();
+        this.personaRegistry = personaRegistry;
+        this.dataset = dataset;
+        this.file = file;
+        this.numCandidates = numCandidates.stream().sorted().toList();
+        this.topKs = topKs;
+        this.thresholds = thresholds;
+        this.targetRecall = targetRecall;
+    }
+
+    @Override
+    protected void execute() throws Exception {
+        if (!(vectorStore instanceof PhiloAgentsMongoDBAtlasVectorStore mongoVectorStore)) {
+            throw new IllegalStateException("Only the MongoDB Atlas vector store is tuned");
+        }
+        Map<String, SearchTuning.Params> partitions = new TreeMap<>();
+        Map<String, List<String>> queries = loadQueries();
+        log.info("philosopher,numCandidates,topK,threshold,recall,hits,p95Micros");
+        for (Map.Entry<String, List<String>> philosopherQueries : queries.entrySet()) {
+            partitions.put(philosopherQueries.getKey(),
+                    tune(mongoVectorStore, philosopherQueries.getKey(), philosopherQueries.getValue()));
+        }
+        SearchTuning.Tuning tuning = searchTuning.tuning();
+        Double rerankCutoff = reranker != null ? learnRerankCutoff(mongoVectorStore, loadExchanges(), partitions)
+                : tuning.rerankCutoff();
+        SearchTuning.write(new SearchTuning.Tuning(tuning.key(), tuning.defaults(), partitions, rerankCutoff),
+                file);
+        log.info("Wrote the search tuning of {} philosophers to {}", partitions.size(), file.toAbsolutePath());
+    }
+
+    /** Returns the user messages of the evaluation dataset by philosopher name. */
+    private Map<String, List<String>> loadQueries() throws Exception {
+        Dataset samples;
+        try (var reader = new InputStreamReader(dataset.getInputStream(), StandardCharsets.UTF_8)) {
+            samples = new Gson().fromJson(reader, Dataset.class);
+        }
+        Map<String, List<String>> queries = new LinkedHashMap<>();
+        for (Sample sample : samples.samples()) {
+            String name = personaRegistry.getPhilosopher(sample.philosopher_id()).getName();
+            sample.messages().stream()
+                    .filter(message -> "user".equals(message.get("role")))
+                    .forEach(message -> queries.computeIfAbsent(name, n -> new ArrayList<>()).add(message.get("content")));
+        }
+        return queries;
+    }
+
+    /** Returns the user messages of the evaluation dataset answered by the philosopher, by philosopher name. */
+    private Map<String, List<Exchange>> loadExchanges() throws Exception {
+        Dataset samples;
+        try (var reader = new InputStreamReader(dataset.getInputStream(), StandardCharsets.UTF_8)) {
+            samples = new Gson().fromJson(reader, Dataset.class);
+        }
+        Map<String, List<Exchange>> exchanges = new LinkedHashMap<>();
+        for (Sample sample : samples.samples()) {
+            String name = personaRegistry.getPhilosopher(sample.philosopher_id()).getName();
+            List<Map<String, String>> messages = sample.messages();
+            for (int i = 0; i + 1 < messages.size(); i++) {
+                if ("user".equals(messages.get(i).get("role")) && "assistant".equals(messages.get(i + 1).get("role"))) {
+                    exchanges.computeIfAbsent(name, n -> new ArrayList<>())
+                            .add(new Exchange(messages.get(i).get("content"), messages.get(i + 1).get("content")));
+                }
+            }
+        }
+        return exchanges;
+    }
+
+    private SearchTuning.Params tune(PhiloAgentsMongoDBAtlasVectorStore store, String philosopher,
+            List<String> queries) {
+        SearchTuning.Params current = searchTuning.params(philosopher);
+        Filter.Expression filter = new FilterExpressionBuilder().eq(searchTuning.tuning().key(), philosopher).build();
+        Map<String, float[]> corpus = store.findEmbeddings(filter);
+        List<float[]> embeddings = store.embedQueries(queries);
+        Set<Integer> sweptTopKs = new TreeSet<>(topKs);
+        sweptTopKs.add(current.topK());
+        Set<Double> sweptThresholds = new TreeSet<>(thresholds);
+        sweptThresholds.add(current.similarityThreshold());
+        int maxTopK = sweptTopKs.stream().max(Integer::compare).orElseThrow();
+        List<List<Neighbor>> exact = embeddings.stream().map(query -> exactSearch(corpus, query, maxTopK)).toList();
+
+        // warm up the index and the connections
+        for (int i = 0; i < queries.size(); i++) {
+            store.similaritySearch(request(queries.get(i), maxTopK, filter), embeddings.get(i),
+                    numCandidates.get(numCandidates.size() - 1));
+        }
+        List<Point> points = new ArrayList<>();
+        for (int candidates : numCandidates) {
+            for (int topK : sweptTopKs) {
+                if (candidates < topK) {
+                    continue;
+                }
+                List<Long> nanos = new ArrayList<>();
+                List<List<Document>> results = new ArrayList<>();
+                for (int i = 0; i < queries.size(); i++) {
+                    long start = System.nanoTime();
+                    results.add(store.similaritySearch(request(queries.get(i), topK, filter), embeddings.get(i),
+                            candidates));
+                    nanos.add(System.nanoTime() - start);
+                }
+                long p95 = nanos.stream().sorted().toList().get(Math.min(nanos.size() - 1, nanos.size() * 95 / 100))
+                        / 1000;
+                for (double threshold : sweptThresholds) {
+                    Point point = measure(candidates, topK, threshold, results, exact, p95);
+                    points.add(point);
+                    log.info("{},{},{},{},{},{},{}", philosopher, candidates, topK, threshold,
+                            String.format("%.3f", point.recall()), String.format("%.2f", point.hits()),
+                            point.p95Micros());
+                }
+            }
+        }
+        // the recall alone would always pick the smallest topK and the highest threshold still returning a
+        // chunk, whatever their relevance: they stay as configured, only the candidates are tuned
+        List<Point> configured = points.stream()
+                .filter(point -> point.topK() == current.topK() && point.threshold() == current.similarityThreshold())
+                .toList();
+        Point chosen = configured.stream()
+                .filter(point -> point.recall() >= targetRecall)
+                .min(Comparator.comparingInt(Point::numCandidates))
+                .orElseGet(() -> configured.stream().max(Comparator.comparingDouble(Point::recall)).orElseThrow());
+        log.info("{}: {} candidates, recall@{} {} above {}, {} hits, p95 {} us (corpus of {} chunks, {} queries)",
+                philosopher, chosen.numCandidates(), chosen.topK(), String.format("%.3f", chosen.recall()),
+                chosen.threshold(), String.format("%.2f", chosen.hits()), chosen.p95Micros(), corpus.size(),
+                queries.size());
+        return new SearchTuning.Params(chosen.numCandidates(), chosen.topK(), chosen.threshold());
+    }
+
+    /**
+     * Learns the cut-off of the reranker: every question is scored against the
+     * candidates the reranker sees at runtime, the candidates among the exact
+     * topK nearest neighbors of the reference answer being the relevant passages,
+     * the other ones the irrelevant passages.
+     */
+    private Double learnRerankCutoff(PhiloAgentsMongoDBAtlasVectorStore store, Map<String, List<Exchange>> exchanges,
+            Map<String, SearchTuning.Params> partitions) {
+        List<Double> relevant = new ArrayList<>();
+        List<Double> irrelevant = new ArrayList<>();
+        for (Map.Entry<String, List<Exchange>> philosopherExchanges : exchanges.entrySet()) {
+            String philosopher = philosopherExchanges.getKey();
+            SearchTuning.Params params = partitions.getOrDefault(philosopher, searchTuning.params(philosopher));
+            Filter.Expression filter = new FilterExpressionBuilder().eq(searchTuning.tuning().key(), philosopher)
+                    .build();
+            Map<String, float[]> corpus = store.findEmbeddings(filter);
+            List<Exchange> philosopherQuestions = philosopherExchanges.getValue();
+            List<float[]> answers = store.embedQueries(philosopherQuestions.stream().map(Exchange::answer).toList());
+            for (int i = 0; i < philosopherQuestions.size(); i++) {
+                Set<String> expected = new HashSet<>();
+                exactSearch(corpus, answers.get(i), params.topK()).forEach(neighbor -> expected.add(neighbor.id()));
+                String question = philosopherQuestions.get(i).question();
+                // as the reranking retrieval: a wider candidate set, without the similarity threshold
+                List<Document> candidates = vectorStore.similaritySearch(
+                        request(question, Math.max(params.topK(), reranker.candidates()), filter));
+                for (CrossEncoderReranker.Scored scored : reranker.score(question, candidates)) {
+                    (expected.contains(scored.document().getId()) ? relevant : irrelevant).add(scored.score());
+                }
+            }
+        }
+        if (relevant.isEmpty()) {
+            log.warn("No relevant passage among the reranker candidates, the cut-off is kept");
+            return searchTuning.tuning().rerankCutoff();
+        }
+        double cutoff = CrossEncoderReranker.learnCutoff(relevant, irrelevant);
+        log.info("Reranker cut-off {} ({} relevant, {} irrelevant passages, {} and {} above it)",
+                String.format("%.3f", cutoff), relevant.size(), irrelevant.size(),
+                relevant.stream().filter(score -> score >= cutoff).count(),
+                irrelevant.stream().filter(score -> score >= cutoff).count());
+        return cutoff;
+    }
+
+    private static SearchRequest request(String query, int topK, Filter.Expression filter) {
+        // the threshold is applied to the results, for every threshold of the sweep
+        return SearchRequest.builder().query(query).topK(topK).similarityThresholdAll().filterExpression(filter).build();
+    }
+
+    /**
+     * Recall of the results above a threshold against the exact nearest neighbors
+     * above it, 1 when none is.
+     */
+    private static Point measure(int candidates, int topK, double threshold, List<List<Document>> results,
+            List<List<Neighbor>> exact, long p95Micros) {
+        double recall = 0;
+        double hits = 0;
+        for (int i = 0; i < results.size(); i++) {
+            Set<String> expected = new HashSet<>();
+            exact.get(i).stream().limit(topK).filter(neighbor -> neighbor.score() >= threshold)
+                    .forEach(neighbor -> expected.add(neighbor.id()));
+            List<String> found = results.get(i).stream()
+                    .filter(document -> document.getScore() >= threshold)
+                    .map(Document::getId)
+                    .toList();
+            recall += expected.isEmpty() ? 1 : found.stream().filter(expected::contains).count() / (double) expected.size();
+            hits += found.size();
+        }
+        return new Point(candidates, topK, threshold, recall / results.size(), hits / results.size(), p95Micros);
+    }
+
+    /** Brute force search, scored like the cosine similarity of Atlas: (1 + cosine) / 2. */
+    private static List<Neighbor> exactSearch(Map<String, float[]> corpus, float[] query, int topK) {
+        double queryNorm = Math.sqrt(dot(query, query));
+        return corpus.entrySet().stream()
+                .map(entry -> new Neighbor(entry.getKey(),
+                        (1 + dot(query, entry.getValue()) / (queryNorm * Math.sqrt(dot(entry.getValue(), entry.getValue()))))
+                                / 2))
+                .sorted(Comparator.comparingDouble(Neighbor::score).reversed())
+                .limit(topK)
+                .toList();
+    }
+
+    private static double dot(float[] a, float[] b) {
+        double dot = 0;
+        for (int i = 0; i < a.length; i++) {
+            dot += a[i] * b[i];
+        }
+        return dot;
+    }
+}
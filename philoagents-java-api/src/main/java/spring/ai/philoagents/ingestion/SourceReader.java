@@ -0,0 +1,98 @@
+package spring.ai.philoagents.ingestion;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+import org.jsoup.Jsoup;
+import org.jsoup.nodes.Element;
+import org.springframework.ai.document.Document;
+
+import spring.ai.philoagents.entities.Philosopher;
+
+/**
+ * Reads a local copy of a philosopher source into a document, with the
+ * metadata of the Python ingestion: {@code source}, {@code philosopher_id},
+ * {@code philosopher_name} and, for the HTML pages, {@code title}. As in the
+ * Python Stanford Encyclopedia of Philosophy extractor, only the paragraphs
+ * and the headers of an HTML page are kept, without the bibliography, the
+ * related entries and the other non-article sections.
+ */
+public class SourceReader {
+
+    static final String SOURCE = "source";
+    static final String TITLE = "title";
+    static final String PHILOSOPHER_ID = "philosopher_id";
+    static final String PHILOSOPHER_NAME = "philosopher_name";
+
+    private static final List<String> EXCLUDED_SECTIONS = List.of(
+            "bibliography",
+            "academic-tools",
+            "other-internet-resources",
+            "related-entries",
+            "acknowledgments",
+            "article-copyright",
+            "article-banner",
+            "footer");
+
+    /**
+     * Reads a source file, as HTML when its extension is .html or .htm, as text
+     * otherwise.
+     *
+     * @param path        the local copy of the source
+     * @param source      the source location recorded in the metadata
+     * @param philosopher the philosopher of the source
+     * @return the document of the source
+     * @throws IOException if the file cannot be read
+     */
+    public Document read(Path path, String source, Philosopher philosopher) throws IOException {
+        Map<String, Object> metadata = new HashMap<>();
+        metadata.put(SOURCE, source);
+        metadata.put(PHILOSOPHER_ID, philosopher.getId());
+        metadata.put(PHILOSOPHER_NAME, philosopher.getName());
+        String fileName = path.getFileName().toString().toLowerCase(Locale.ROOT);
+        if (!fileName.endsWith(".html") && !fileName.endsWith(".htm")) {
+            return Document.builder()
+                    .text(Files.readString(path, StandardCharsets.UTF_8))
+                    .metadata(metadata)
+                    .build();
+        }
+        var page = Jsoup.parse(path.toFile(), StandardCharsets.UTF_8.name());
+        page.getAllElements().stream()
+                .filter(SourceReader::isExcluded)
+                .toList()
+                .forEach(Element::remove);
+        if (!page.title().isBlank()) {
+            metadata.put(TITLE, page.title().strip());
+        }
+        String text = page.select("p, h1, h2, h3, h4, h5, h6").stream()
+                .map(Element::text)
+                .collect(Collectors.joining("\n\n"));
+        return Document.builder()
+                .text(text)
+                .metadata(metadata)
+                .build();
+    }
+
+    static boolean isSupported(Path path) {
+        String fileName = path.getFileName().toString().toLowerCase(Locale.ROOT);
+        return fileName.endsWith(".html") || fileName.endsWith(".htm") || fileName.endsWith(".txt");
+    }
+
+    private static boolean isExcluded(Element element) {
+        String id = element.id().toLowerCase(Locale.ROOT);
+        String classes = element.className().toLowerCase(Locale.ROOT);
+        for (String section : EXCLUDED_SECTIONS) {
+            if (id.contains(section) || classes.contains(section)) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
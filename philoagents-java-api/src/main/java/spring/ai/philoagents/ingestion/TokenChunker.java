@@ -0,0 +1,103 @@
+package spring.ai.philoagents.ingestion;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+
+import org.springframework.ai.tokenizer.JTokkitTokenCountEstimator;
+import org.springframework.ai.tokenizer.TokenCountEstimator;
+import org.springframework.util.Assert;
+
+/**
+ * Splits a text into chunks of at most {@code chunkSize} tokens, overlapping by
+ * up to {@code chunkOverlap} tokens, like the recursive character splitter of
+ * the Python ingestion: the text is split on paragraphs, then lines, sentences
+ * and words only where a piece is still larger than a chunk, and the pieces
+ * are packed back into chunks. Tokens are counted with the cl100k_base
+ * encoding.
+ */
+public class TokenChunker {
+
+    private static final List<String> SEPARATORS = List.of("\n\n", "\n", ". ", " ");
+
+    private final TokenCountEstimator tokenCountEstimator;
+    private final int chunkSize;
+    private final int chunkOverlap;
+
+    private record Piece(String text, int tokens) {}
+
+    public TokenChunker(int chunkSize, int chunkOverlap) {
+        this(new JTokkitTokenCountEstimator(), chunkSize, chunkOverlap);
+    }
+
+    public TokenChunker(TokenCountEstimator tokenCountEstimator, int chunkSize, int chunkOverlap) {
+        Assert.isTrue(chunkSize > 0, "chunkSize must be positive");
+        Assert.isTrue(chunkOverlap >= 0 && chunkOverlap < chunkSize, "chunkOverlap must be between 0 and chunkSize");
+        this.tokenCountEstimator = tokenCountEstimator;
+        this.chunkSize = chunkSize;
+        this.chunkOverlap = chunkOverlap;
+    }
+
+    /**
+     * Splits a text into overlapping chunks.
+     *
+     * @param text the text to split
+     * @return the chunks, stripped, without the blank ones
+     */
+    public List<String> split(String text) {
+        if (text == null || text.isBlank()) {
+            return List.of();
+        }
+        List<Piece> pieces = new ArrayList<>();
+        split(text, 0, pieces);
+        return merge(pieces);
+    }
+
+    private void split(String text, int level, List<Piece> pieces) {
+        int tokens = tokenCountEstimator.estimate(text);
+        if (tokens <= chunkSize || level == SEPARATORS.size()) {
+            pieces.add(new Piece(text, tokens));
+            return;
+        }
+        String separator = SEPARATORS.get(level);
+        int from = 0;
+        while (from < text.length()) {
+            int at = text.indexOf(separator, from);
+            // the separator stays at the end of its piece
+            int to = at < 0 ? text.length() : at + separator.length();
+            split(text.substring(from, to), level + 1, pieces);
+            from = to;
+        }
+    }
+
+    private List<String> merge(List<Piece> pieces) {
+        List<String> chunks = new ArrayList<>();
+        Deque<Piece> current = new ArrayDeque<>();
+        int tokens = 0;
+        for (Piece piece : pieces) {
+            if (!current.isEmpty() && tokens + piece.tokens() > chunkSize) {
+                addChunk(chunks, current);
+                // the tail of the chunk, up to the overlap, starts the next one
+                while (!current.isEmpty() && (tokens > chunkOverlap || tokens + piece.tokens() > chunkSize)) {
+                    tokens -= current.removeFirst().tokens();
+                }
+            }
+            current.addLast(piece);
+            tokens += piece.tokens();
+        }
+        addChunk(chunks, current);
+        return chunks;
+    }
+
+    private static void addChunk(List<String> chunks, Deque<Piece> pieces) {
+        StringBuilder chunk = new StringBuilder();
+        for (Piece piece : pieces) {
+            chunk.append(piece.text());
+        }
+        String text = chunk.toString().strip();
+        if (!text.isEmpty()) {
+            chunks.add(text);
+        }
+    }
+}
@@ -0,0 +1,45 @@
+package spring.ai.philoagents.override;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.springframework.ai.document.Document;
+import org.springframework.ai.vectorstore.SearchRequest;
+
+/**
+ * Vector store searching queries embedded beforehand, so that the queries of a
+ * batch are embedded in a single call of the embedding model.
+ */
+public interface BatchSimilaritySearch {
+
+	/**
+	 * Embeds queries with the embedding model of the store, in one call.
+	 * @param queries the query texts
+	 * @return the embeddings, in the order of the queries
+	 */
+	List<float[]> embedQueries(List<String> queries);
+
+	/**
+	 * Searches a request with the embedding of its query.
+	 * @param request the search request, its query is not embedded again
+	 * @param queryEmbedding the embedding of the query
+	 * @return the documents found
+	 */
+	List<Document> similaritySearch(SearchRequest request, float[] queryEmbedding);
+
+	/**
+	 * Searches several requests, one after the other unless the store can combine
+	 * them in a single query.
+	 * @param requests the search requests
+	 * @param queryEmbeddings the embeddings of their queries
+	 * @return the documents found for every request, in the order of the requests
+	 */
+	default List<List<Document>> similaritySearch(List<SearchRequest> requests, List<float[]> queryEmbeddings) {
+		List<List<Document>> results = new ArrayList<>(requests.size());
+		for (int i = 0; i < requests.size(); i++) {
+			results.add(similaritySearch(requests.get(i), queryEmbeddings.get(i)));
+		}
+		return results;
+	}
+
+}
@@ -0,0 +1,182 @@
+package spring.ai.philoagents.override;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.springframework.ai.document.Document;
+import org.springframework.ai.embedding.Embedding;
+import org.springframework.ai.embedding.EmbeddingModel;
+import org.springframework.ai.embedding.EmbeddingOptions;
+import org.springframework.ai.embedding.EmbeddingRequest;
+import org.springframework.ai.embedding.EmbeddingResponse;
+import org.springframework.ai.embedding.EmbeddingResponseMetadata;
+import org.springframework.util.Assert;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Metrics;
+
+/**
+ * {@link EmbeddingModel} decorator caching the embeddings of the texts, so that
+ * the same query (from different users, or retried) is embedded once. The
+ * cache is keyed by embedding model id and normalized text, stores the vectors
+ * as {@code float[]} and evicts the least recently used entries above
+ * {@code maxEntries}. It is split into independently locked segments, so
+ * concurrent searches seldom contend.
+ * <p>
+ * Only the requests with the default options are cached, the options may
+ * change the model or the dimensions.
+ */
+public class CachingEmbeddingModel implements EmbeddingModel {
+
+	private static final int SEGMENTS = 16;
+
+	private final EmbeddingModel delegate;
+
+	private final String modelId;
+
+	private final Segment[] segments;
+
+	private final Counter hits;
+
+	private final Counter misses;
+
+	private record Key(String modelId, String text) {
+	}
+
+	private static final class Segment extends LinkedHashMap<Key, float[]> {
+
+		private final int maxEntries;
+
+		Segment(int maxEntries) {
+			super(16, 0.75f, true);
+			this.maxEntries = maxEntries;
+		}
+
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<Key, float[]> eldest) {
+			return size() > this.maxEntries;
+		}
+
+	}
+
+	/**
+	 * @param delegate the embedding model computing the missing embeddings
+	 * @param modelId the id of the delegate model, part of the cache key
+	 * @param maxEntries the maximum number of cached embeddings
+	 * @param meterRegistry the meter registry of the hit/miss counters, null for
+	 * the global registry
+	 */
+	public CachingEmbeddingModel(EmbeddingModel delegate, String modelId, int maxEntries,
+			MeterRegistry meterRegistry) {
+		Assert.notNull(delegate, "delegate must not be null");
+		Assert.isTrue(maxEntries > 0, "maxEntries must be positive");
+		this.delegate = delegate;
+		this.modelId = modelId;
+		this.segments = new Segment[SEGMENTS];
+		for (int i = 0; i < SEGMENTS; i++) {
+			this.segments[i] = new Segment(Math.max(1, maxEntries / SEGMENTS));
+		}
+		MeterRegistry registry = meterRegistry != null ? meterRegistry : Metrics.globalRegistry;
+		this.hits = Counter.builder("philoagents.embedding.cache")
+			.description("Embedding cache lookups")
+			.tag("result", "hit")
+			.register(registry);
+		this.misses = Counter.builder("philoagents.embedding.cache")
+			.description("Embedding cache lookups")
+			.tag("result", "miss")
+			.register(registry);
+	}
+
+	@Override
+	public float[] embed(String text) {
+		Key key = key(text);
+		float[] embedding = get(key);
+		if (embedding != null) {
+			return embedding.clone();
+		}
+		embedding = this.delegate.embed(text);
+		put(key, embedding);
+		return embedding;
+	}
+
+	@Override
+	public float[] embed(Document document) {
+		// the embedded content depends on the metadata mode of the delegate
+		return this.delegate.embed(document);
+	}
+
+	@Override
+	public EmbeddingResponse call(EmbeddingRequest request) {
+		if (!isDefault(request.getOptions())) {
+			return this.delegate.call(request);
+		}
+		List<String> texts = request.getInstructions();
+		float[][] embeddings = new float[texts.size()][];
+		List<String> missingTexts = new ArrayList<>();
+		List<Integer> missingIndexes = new ArrayList<>();
+		for (int i = 0; i < texts.size(); i++) {
+			float[] embedding = get(key(texts.get(i)));
+			if (embedding != null) {
+				embeddings[i] = embedding.clone();
+			}
+			else {
+				missingTexts.add(texts.get(i));
+				missingIndexes.add(i);
+			}
+		}
+		EmbeddingResponseMetadata metadata = new EmbeddingResponseMetadata();
+		if (!missingTexts.isEmpty()) {
+			EmbeddingResponse response = this.delegate.call(new EmbeddingRequest(missingTexts, request.getOptions()));
+			metadata = response.getMetadata();
+			List<Embedding> results = response.getResults();
+			for (int i = 0; i < results.size(); i++) {
+				float[] embedding = results.get(i).getOutput();
+				embeddings[missingIndexes.get(i)] = embedding;
+				put(key(missingTexts.get(i)), embedding);
+			}
+		}
+		List<Embedding> results = new ArrayList<>(embeddings.length);
+		for (int i = 0; i < embeddings.length; i++) {
+			results.add(new Embedding(embeddings[i], i));
+		}
+		return new EmbeddingResponse(results, metadata);
+	}
+
+	@Override
+	public int dimensions() {
+		return this.delegate.dimensions();
+	}
+
+	private boolean isDefault(EmbeddingOptions options) {
+		return options == null || (options.getModel() == null && options.getDimensions() == null);
+	}
+
+	private Key key(String text) {
+		return new Key(this.modelId, text.strip().replaceAll("\\s+", " "));
+	}
+
+	private float[] get(Key key) {
+		Segment segment = segment(key);
+		float[] embedding;
+		synchronized (segment) {
+			embedding = segment.get(key);
+		}
+		(embedding != null ? this.hits : this.misses).increment();
+		return embedding;
+	}
+
+	private void put(Key key, float[] embedding) {
+		Segment segment = segment(key);
+		synchronized (segment) {
+			segment.put(key, embedding.clone());
+		}
+	}
+
+	private Segment segment(Key key) {
+		return this.segments[(key.hashCode() & 0x7fffffff) % SEGMENTS];
+	}
+
+}
@@ -0,0 +1,20 @@
+package spring.ai.philoagents.override;
+
+import java.util.function.Consumer;
+
+import org.springframework.ai.document.Document;
+
+/**
+ * Vector store that can list its chunks without their embedding, to build the
+ * in-process indexes kept next to it, such as the lexical index of the hybrid
+ * retrieval.
+ */
+public interface ChunkTextStore {
+
+	/**
+	 * Streams every stored chunk.
+	 * @param consumer the consumer of the chunks, with their id, text and metadata
+	 */
+	void forEachChunk(Consumer<Document> consumer);
+
+}
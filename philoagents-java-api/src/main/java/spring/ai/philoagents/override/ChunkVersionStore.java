@@ -0,0 +1,47 @@
+package spring.ai.philoagents.override;
+
+import java.util.Map;
+
+import org.springframework.ai.vectorstore.filter.Filter;
+
+/**
+ * Vector store keeping, next to every chunk, the hash of its content and the
+ * embedding model that embedded it, so that a re-ingestion only embeds the new
+ * or changed chunks.
+ */
+public interface ChunkVersionStore {
+
+	/** Filter key of the chunk id. */
+	String ID_FIELD_NAME = "_id";
+
+	String SOURCE_FIELD_NAME = "source";
+
+	String CONTENT_HASH_FIELD_NAME = "content_hash";
+
+	String EMBEDDING_MODEL_FIELD_NAME = "embedding_model";
+
+	/**
+	 * The version of a stored chunk. The content hash and the embedding model are
+	 * null for the chunks stored without them, e.g. by the Python ingestion.
+	 *
+	 * @param source the source of the chunk
+	 * @param contentHash the hash of the chunk content
+	 * @param embeddingModel the id of the model that embedded the chunk
+	 */
+	record ChunkVersion(String source, String contentHash, String embeddingModel) {
+
+		public boolean matches(String contentHash, String embeddingModel) {
+			return contentHash.equals(this.contentHash) && embeddingModel.equals(this.embeddingModel);
+		}
+
+	}
+
+	/**
+	 * Reads the versions of the stored chunks matching a filter, without their
+	 * content and embedding.
+	 * @param filterExpression the filter on the chunk metadata
+	 * @return the versions by chunk id
+	 */
+	Map<String, ChunkVersion> findChunkVersions(Filter.Expression filterExpression);
+
+}
@@ -0,0 +1,82 @@
+package spring.ai.philoagents.override;
+
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+import org.springframework.ai.vectorstore.filter.Filter;
+
+/**
+ * Reads the values of a partition key, such as the philosopher of a chunk, that
+ * a filter expression restricts the search to, so that the search only visits
+ * their partitions.
+ */
+public final class FilterPartitions {
+
+	private FilterPartitions() {
+	}
+
+	/**
+	 * Returns the values of the key selected by a filter: an equality or an
+	 * {@code in} on the key, alone, in a conjunction, or in a disjunction
+	 * restricting the key on both sides.
+	 * @param operand the filter expression
+	 * @param key the partition key
+	 * @return the selected values, null when the filter does not restrict the key
+	 */
+	public static Set<String> valuesOf(Filter.Operand operand, String key) {
+		if (operand instanceof Filter.Group group) {
+			return valuesOf(group.content(), key);
+		}
+		if (!(operand instanceof Filter.Expression expression)) {
+			return null;
+		}
+		switch (expression.type()) {
+			case EQ, IN -> {
+				if (expression.left() instanceof Filter.Key filterKey && key.equals(unquoted(filterKey.key()))
+						&& expression.right() instanceof Filter.Value value) {
+					Set<String> values = new LinkedHashSet<>();
+					if (value.value() instanceof Collection<?> collection) {
+						collection.forEach(element -> values.add(String.valueOf(element)));
+					}
+					else {
+						values.add(String.valueOf(value.value()));
+					}
+					return values;
+				}
+				return null;
+			}
+			case AND -> {
+				Set<String> left = valuesOf(expression.left(), key);
+				Set<String> right = valuesOf(expression.right(), key);
+				if (left == null || right == null) {
+					return left != null ? left : right;
+				}
+				Set<String> values = new LinkedHashSet<>(left);
+				values.retainAll(right);
+				return values;
+			}
+			case OR -> {
+				Set<String> left = valuesOf(expression.left(), key);
+				Set<String> right = valuesOf(expression.right(), key);
+				if (left == null || right == null) {
+					return null;
+				}
+				Set<String> values = new LinkedHashSet<>(left);
+				values.addAll(right);
+				return values;
+			}
+			default -> {
+				return null;
+			}
+		}
+	}
+
+	private static String unquoted(String key) {
+		if (key.length() > 1 && (key.startsWith("\"") && key.endsWith("\"") || key.startsWith("'") && key.endsWith("'"))) {
+			return key.substring(1, key.length() - 1);
+		}
+		return key;
+	}
+
+}
@@ -0,0 +1,759 @@
+package spring.ai.philoagents.override;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.Random;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.IntPredicate;
+
+import org.springframework.util.Assert;
+
+/**
+ * Hierarchical navigable small world graph over normalized {@code float[]}
+ * vectors, searched by cosine similarity. The vectors and the links of the
+ * nodes are stored in memory-mapped files of the index directory, and the
+ * entry point in a small header file, so that the graph is reopened after a
+ * restart instead of being rebuilt.
+ * <p>
+ * Every node has a fixed size slot in the links file: its level, then the
+ * count and the ids of its neighbors on level 0 (up to {@code 2 * m}) and on
+ * every upper level (up to {@code m}). The nodes are only appended. Searches
+ * share a read lock, an insertion holds the write lock for the time of a
+ * single node, so that the searches run between the insertions of a batch.
+ * <p>
+ * With a {@link Quantization}, the graph is built and walked on the quantized
+ * codes of the vectors, kept in their own mapped file, and the candidates of a
+ * search are rescored against the full precision vectors, so that only the
+ * codes need to stay in memory.
+ * <p>
+ * The nodes are never removed: a store compacts its graph by adding the
+ * vectors of its live nodes to a new index, then {@link #replace(Path, Path)
+ * replacing} the files of the old one.
+ */
+public class HnswIndex implements Closeable {
+
+	/** Node levels are capped, 16^8 nodes are far beyond what the files can map. */
+	private static final int MAX_LEVEL = 8;
+
+	private static final int HEADER_MAGIC = 0x484e5357;
+
+	private static final int INITIAL_CAPACITY = 1024;
+
+	/** The Hamming distance ranks coarsely, the rescoring gets this many times ef candidates. */
+	private static final int BINARY_OVERSAMPLING = 4;
+
+	private static final String HEADER_FILE = "hnsw.header";
+
+	private static final String VECTORS_FILE = "hnsw.vectors";
+
+	private static final String LINKS_FILE = "hnsw.links";
+
+	private static final String CODES_FILE = "hnsw.codes";
+
+	private final Path directory;
+
+	private final int dimensions;
+
+	private final int m;
+
+	private final int m0;
+
+	private final int efConstruction;
+
+	private final double levelMultiplier;
+
+	private final int nodeInts;
+
+	private final Quantization quantization;
+
+	private final int codeBytes;
+
+	private final Random random = new Random(42);
+
+	private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+	private final FileChannel vectorsChannel;
+
+	private final FileChannel linksChannel;
+
+	private final FileChannel codesChannel;
+
+	private MappedByteBuffer vectorsBuffer;
+
+	private MappedByteBuffer linksBuffer;
+
+	private MappedByteBuffer codesBuffer;
+
+	private FloatBuffer vectors;
+
+	private IntBuffer links;
+
+	private int capacity;
+
+	private int size;
+
+	private int entryPoint = -1;
+
+	private int maxLevel = -1;
+
+	/**
+	 * A node and its cosine distance to the query.
+	 *
+	 * @param node the node id, in insertion order
+	 * @param distance {@code 1 - cosine similarity}
+	 */
+	public record Neighbor(int node, double distance) {
+
+	}
+
+	/**
+	 * Representation of the vectors in the graph.
+	 */
+	public enum Quantization {
+
+		/** The float32 vectors, {@code 4 * dimensions} bytes per node. */
+		NONE,
+
+		/**
+		 * Scalar quantization to one signed byte per dimension and a scale per vector,
+		 * {@code dimensions + 4} bytes per node.
+		 */
+		INT8,
+
+		/**
+		 * The sign of every dimension, {@code dimensions / 8} bytes per node, the
+		 * cosine is estimated from the Hamming distance.
+		 */
+		BINARY
+
+	}
+
+	/** A normalized query and its sign bits, when the codes are binary. */
+	private record Query(float[] vector, long[] bits) {
+
+	}
+
+	private HnswIndex(Path directory, int dimensions, int m, int efConstruction, Quantization quantization, int size,
+			int entryPoint, int maxLevel) throws IOException {
+		this.directory = directory;
+		this.dimensions = dimensions;
+		this.m = m;
+		this.m0 = 2 * m;
+		this.efConstruction = efConstruction;
+		this.levelMultiplier = 1 / Math.log(m);
+		this.nodeInts = 2 + this.m0 + (MAX_LEVEL - 1) * (1 + m);
+		this.quantization = quantization;
+		this.codeBytes = switch (quantization) {
+			case NONE -> 0;
+			case INT8 -> Float.BYTES + dimensions;
+			case BINARY -> Long.BYTES * words(dimensions);
+		};
+		this.size = size;
+		this.entryPoint = entryPoint;
+		this.maxLevel = maxLevel;
+		this.vectorsChannel = FileChannel.open(directory.resolve(VECTORS_FILE), StandardOpenOption.CREATE,
+				StandardOpenOption.READ, StandardOpenOption.WRITE);
+		this.linksChannel = FileChannel.open(directory.resolve(LINKS_FILE), StandardOpenOption.CREATE,
+				StandardOpenOption.READ, StandardOpenOption.WRITE);
+		this.codesChannel = quantization == Quantization.NONE ? null
+				: FileChannel.open(directory.resolve(CODES_FILE), StandardOpenOption.CREATE, StandardOpenOption.READ,
+						StandardOpenOption.WRITE);
+		map(Math.max(INITIAL_CAPACITY, Integer.highestOneBit(Math.max(1, size)) * 2));
+	}
+
+	/**
+	 * Opens the index of a directory, or creates it when the directory has no
+	 * index yet. The graph parameters and the quantization of an existing index
+	 * are kept.
+	 * @param directory the index directory
+	 * @param dimensions the dimensions of the vectors
+	 * @param m the maximum number of neighbors of a node on the upper levels, twice
+	 * as many on level 0
+	 * @param efConstruction the size of the candidate list when inserting a node
+	 * @param quantization the representation of the vectors in the graph
+	 * @return the index
+	 * @throws IOException if the index files cannot be read or created
+	 * @throws IllegalStateException if the existing index has other dimensions
+	 */
+	public static HnswIndex open(Path directory, int dimensions, int m, int efConstruction,
+			Quantization quantization) throws IOException {
+		Assert.isTrue(dimensions > 0, "dimensions must be positive");
+		Assert.isTrue(m > 1, "m must be greater than 1");
+		Files.createDirectories(directory);
+		Path header = directory.resolve(HEADER_FILE);
+		if (!Files.exists(header)) {
+			return new HnswIndex(directory, dimensions, m, efConstruction, quantization, 0, -1, -1);
+		}
+		ByteBuffer buffer = ByteBuffer.wrap(Files.readAllBytes(header));
+		if (buffer.getInt() != HEADER_MAGIC) {
+			throw new IllegalStateException("Not an HNSW index header: " + header);
+		}
+		int indexDimensions = buffer.getInt();
+		if (indexDimensions != dimensions) {
+			throw new IllegalStateException("The index of " + directory + " has " + indexDimensions
+					+ " dimensions, the embeddings have " + dimensions);
+		}
+		int indexM = buffer.getInt();
+		int size = buffer.getInt();
+		int entryPoint = buffer.getInt();
+		int maxLevel = buffer.getInt();
+		// the headers written before the quantization have no quantization
+		Quantization indexQuantization = buffer.hasRemaining() ? Quantization.values()[buffer.getInt()]
+				: Quantization.NONE;
+		return new HnswIndex(directory, dimensions, indexM, efConstruction, indexQuantization, size, entryPoint,
+				maxLevel);
+	}
+
+	public int size() {
+		this.lock.readLock().lock();
+		try {
+			return this.size;
+		}
+		finally {
+			this.lock.readLock().unlock();
+		}
+	}
+
+	public int dimensions() {
+		return this.dimensions;
+	}
+
+	public int m() {
+		return this.m;
+	}
+
+	public Quantization quantization() {
+		return this.quantization;
+	}
+
+	/**
+	 * Inserts a vector.
+	 * @param vector the vector, normalized by the index
+	 * @return the node id of the vector
+	 */
+	public int add(float[] vector) {
+		Query query = query(vector);
+		this.lock.writeLock().lock();
+		try {
+			int node = this.size;
+			if (node == this.capacity) {
+				grow();
+			}
+			this.vectors.put(node * this.dimensions, query.vector());
+			encode(node, query);
+			int level = randomLevel();
+			int offset = node * this.nodeInts;
+			this.links.put(offset, level);
+			for (int l = 0; l <= level; l++) {
+				this.links.put(offset + levelOffset(l), 0);
+			}
+			if (this.entryPoint < 0) {
+				this.entryPoint = node;
+				this.maxLevel = level;
+				this.size++;
+				return node;
+			}
+			int entry = this.entryPoint;
+			for (int l = this.maxLevel; l > level; l--) {
+				entry = greedySearch(query, entry, l);
+			}
+			for (int l = Math.min(level, this.maxLevel); l >= 0; l--) {
+				List<Neighbor> candidates = searchLayer(query, entry, this.efConstruction, l, node, n -> true);
+				List<Neighbor> neighbors = selectNeighbors(candidates, maxLinks(l));
+				setLinks(node, l, neighbors);
+				for (Neighbor neighbor : neighbors) {
+					link(neighbor.node(), node, neighbor.distance(), l);
+				}
+				entry = candidates.get(0).node();
+			}
+			this.size++;
+			if (level > this.maxLevel) {
+				this.maxLevel = level;
+				this.entryPoint = node;
+			}
+			return node;
+		}
+		finally {
+			this.lock.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * Returns the normalized full precision vector of a node.
+	 * @param node the node id
+	 * @return a copy of the vector
+	 */
+	public float[] vector(int node) {
+		float[] vector = new float[this.dimensions];
+		this.lock.readLock().lock();
+		try {
+			Assert.isTrue(node < this.size, "No node " + node);
+			this.vectors.get(node * this.dimensions, vector);
+			return vector;
+		}
+		finally {
+			this.lock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * Searches the approximate nearest neighbors of a query. With a quantization,
+	 * the candidates found on the codes are rescored with the full precision
+	 * vectors, the binary codes keep more candidates for the rescoring.
+	 * @param query the query vector
+	 * @param k the number of neighbors
+	 * @param ef the size of the candidate list on level 0, at least {@code k}
+	 * @param accept the nodes that can be returned, the others are only traversed
+	 * @return the accepted nearest neighbors, closest first
+	 */
+	public List<Neighbor> search(float[] query, int k, int ef, IntPredicate accept) {
+		Query encoded = query(query);
+		this.lock.readLock().lock();
+		try {
+			if (this.entryPoint < 0) {
+				return List.of();
+			}
+			int entry = this.entryPoint;
+			for (int l = this.maxLevel; l > 0; l--) {
+				entry = greedySearch(encoded, entry, l);
+			}
+			int candidates = Math.max(ef, k) * (this.quantization == Quantization.BINARY ? BINARY_OVERSAMPLING : 1);
+			List<Neighbor> neighbors = searchLayer(encoded, entry, candidates, 0, this.size, accept);
+			if (this.quantization != Quantization.NONE) {
+				neighbors = rescore(encoded.vector(), neighbors);
+			}
+			return neighbors.size() > k ? List.copyOf(neighbors.subList(0, k)) : neighbors;
+		}
+		finally {
+			this.lock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * Searches the exact nearest neighbors of a query among the accepted nodes.
+	 * @param query the query vector
+	 * @param k the number of neighbors
+	 * @param accept the nodes to compare with the query
+	 * @return the accepted nearest neighbors, closest first
+	 */
+	public List<Neighbor> exactSearch(float[] query, int k, IntPredicate accept) {
+		float[] normalized = normalize(query);
+		float[] vector = new float[this.dimensions];
+		this.lock.readLock().lock();
+		try {
+			PriorityQueue<Neighbor> results = new PriorityQueue<>(
+					Comparator.comparingDouble(Neighbor::distance).reversed());
+			for (int node = 0; node < this.size; node++) {
+				if (!accept.test(node)) {
+					continue;
+				}
+				double distance = exactDistance(normalized, node, vector);
+				if (results.size() < k) {
+					results.add(new Neighbor(node, distance));
+				}
+				else if (distance < results.peek().distance()) {
+					results.poll();
+					results.add(new Neighbor(node, distance));
+				}
+			}
+			return sorted(results);
+		}
+		finally {
+			this.lock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * Writes the mapped files and then the header, the nodes added after the last
+	 * flush are lost on a crash.
+	 * @throws IOException if the header cannot be written
+	 */
+	public void flush() throws IOException {
+		this.lock.readLock().lock();
+		try {
+			this.vectorsBuffer.force();
+			this.linksBuffer.force();
+			if (this.codesBuffer != null) {
+				this.codesBuffer.force();
+			}
+			ByteBuffer header = ByteBuffer.allocate(7 * Integer.BYTES)
+				.putInt(HEADER_MAGIC)
+				.putInt(this.dimensions)
+				.putInt(this.m)
+				.putInt(this.size)
+				.putInt(this.entryPoint)
+				.putInt(this.maxLevel)
+				.putInt(this.quantization.ordinal());
+			Path temp = this.directory.resolve(HEADER_FILE + ".tmp");
+			Files.write(temp, header.array());
+			Files.move(temp, this.directory.resolve(HEADER_FILE), StandardCopyOption.REPLACE_EXISTING,
+					StandardCopyOption.ATOMIC_MOVE);
+		}
+		finally {
+			this.lock.readLock().unlock();
+		}
+	}
+
+	@Override
+	public void close() throws IOException {
+		flush();
+		this.vectorsChannel.close();
+		this.linksChannel.close();
+		if (this.codesChannel != null) {
+			this.codesChannel.close();
+		}
+	}
+
+	/**
+	 * Moves the files of a closed index over the files of another closed index,
+	 * the header last. The files already moved are skipped, so that a move
+	 * interrupted by a crash can be completed.
+	 * @param source the directory of the index to move
+	 * @param target the directory of the index to replace
+	 * @throws IOException if a file cannot be moved
+	 */
+	public static void replace(Path source, Path target) throws IOException {
+		for (String file : List.of(VECTORS_FILE, LINKS_FILE, CODES_FILE, HEADER_FILE)) {
+			if (Files.exists(source.resolve(file))) {
+				Files.move(source.resolve(file), target.resolve(file), StandardCopyOption.REPLACE_EXISTING,
+						StandardCopyOption.ATOMIC_MOVE);
+			}
+		}
+	}
+
+	private void map(int newCapacity) throws IOException {
+		long vectorBytes = (long) newCapacity * this.dimensions * Float.BYTES;
+		long linkBytes = (long) newCapacity * this.nodeInts * Integer.BYTES;
+		if (vectorBytes > Integer.MAX_VALUE || linkBytes > Integer.MAX_VALUE) {
+			throw new IllegalStateException("The index cannot map " + newCapacity + " vectors");
+		}
+		this.vectorsBuffer = this.vectorsChannel.map(FileChannel.MapMode.READ_WRITE, 0, vectorBytes);
+		this.linksBuffer = this.linksChannel.map(FileChannel.MapMode.READ_WRITE, 0, linkBytes);
+		this.vectors = this.vectorsBuffer.order(ByteOrder.LITTLE_ENDIAN).asFloatBuffer();
+		this.links = this.linksBuffer.order(ByteOrder.LITTLE_ENDIAN).asIntBuffer();
+		if (this.codesChannel != null) {
+			this.codesBuffer = this.codesChannel.map(FileChannel.MapMode.READ_WRITE, 0,
+					(long) newCapacity * this.codeBytes);
+			this.codesBuffer.order(ByteOrder.LITTLE_ENDIAN);
+		}
+		this.capacity = newCapacity;
+	}
+
+	private void grow() {
+		try {
+			map(this.capacity * 2);
+		}
+		catch (IOException e) {
+			throw new IllegalStateException("Unable to grow the index files of " + this.directory, e);
+		}
+	}
+
+	private int levelOffset(int level) {
+		return level == 0 ? 1 : 2 + this.m0 + (level - 1) * (1 + this.m);
+	}
+
+	private int maxLinks(int level) {
+		return level == 0 ? this.m0 : this.m;
+	}
+
+	private int randomLevel() {
+		double level = -Math.log(1 - this.random.nextDouble()) * this.levelMultiplier;
+		return Math.min(MAX_LEVEL - 1, (int) level);
+	}
+
+	private int greedySearch(Query query, int entry, int level) {
+		int current = entry;
+		double currentDistance = distance(query, current);
+		boolean changed = true;
+		while (changed) {
+			changed = false;
+			int base = current * this.nodeInts + levelOffset(level);
+			int count = this.links.get(base);
+			for (int i = 0; i < count; i++) {
+				int neighbor = this.links.get(base + 1 + i);
+				if (neighbor >= this.size) {
+					// linked before a crash, after the last flush of the header
+					continue;
+				}
+				double distance = distance(query, neighbor);
+				if (distance < currentDistance) {
+					current = neighbor;
+					currentDistance = distance;
+					changed = true;
+				}
+			}
+		}
+		return current;
+	}
+
+	private List<Neighbor> searchLayer(Query query, int entry, int ef, int level, int limit, IntPredicate accept) {
+		BitSet visited = new BitSet(limit);
+		PriorityQueue<Neighbor> candidates = new PriorityQueue<>(Comparator.comparingDouble(Neighbor::distance));
+		PriorityQueue<Neighbor> results = new PriorityQueue<>(
+				Comparator.comparingDouble(Neighbor::distance).reversed());
+		Neighbor first = new Neighbor(entry, distance(query, entry));
+		visited.set(entry);
+		candidates.add(first);
+		if (accept.test(entry)) {
+			results.add(first);
+		}
+		while (!candidates.isEmpty()) {
+			Neighbor current = candidates.poll();
+			if (results.size() >= ef && current.distance() > results.peek().distance()) {
+				break;
+			}
+			int base = current.node() * this.nodeInts + levelOffset(level);
+			int count = this.links.get(base);
+			for (int i = 0; i < count; i++) {
+				int neighbor = this.links.get(base + 1 + i);
+				if (neighbor >= limit || visited.get(neighbor)) {
+					continue;
+				}
+				visited.set(neighbor);
+				double distance = distance(query, neighbor);
+				if (results.size() < ef || distance < results.peek().distance()) {
+					candidates.add(new Neighbor(neighbor, distance));
+					// the rejected nodes are traversed, but never returned
+					if (accept.test(neighbor)) {
+						results.add(new Neighbor(neighbor, distance));
+						if (results.size() > ef) {
+							results.poll();
+						}
+					}
+				}
+			}
+		}
+		return sorted(results);
+	}
+
+	/**
+	 * Selects the neighbors with the HNSW heuristic: a candidate is kept only when
+	 * it is closer to the node than to the neighbors already kept, so that the
+	 * links spread across the clusters; the closest rejected candidates fill the
+	 * remaining links.
+	 */
+	private List<Neighbor> selectNeighbors(List<Neighbor> candidates, int maxLinks) {
+		List<Neighbor> selected = new ArrayList<>(maxLinks);
+		List<Neighbor> rejected = new ArrayList<>();
+		for (Neighbor candidate : candidates) {
+			if (selected.size() == maxLinks) {
+				break;
+			}
+			boolean diverse = true;
+			for (Neighbor neighbor : selected) {
+				if (distance(candidate.node(), neighbor.node()) < candidate.distance()) {
+					diverse = false;
+					break;
+				}
+			}
+			(diverse ? selected : rejected).add(candidate);
+		}
+		for (int i = 0; i < rejected.size() && selected.size() < maxLinks; i++) {
+			selected.add(rejected.get(i));
+		}
+		return selected;
+	}
+
+	private void setLinks(int node, int level, List<Neighbor> neighbors) {
+		int base = node * this.nodeInts + levelOffset(level);
+		for (int i = 0; i < neighbors.size(); i++) {
+			this.links.put(base + 1 + i, neighbors.get(i).node());
+		}
+		this.links.put(base, neighbors.size());
+	}
+
+	private void link(int node, int neighbor, double distance, int level) {
+		int base = node * this.nodeInts + levelOffset(level);
+		int count = this.links.get(base);
+		int maxLinks = maxLinks(level);
+		if (count < maxLinks) {
+			this.links.put(base + 1 + count, neighbor);
+			this.links.put(base, count + 1);
+			return;
+		}
+		List<Neighbor> candidates = new ArrayList<>(count + 1);
+		candidates.add(new Neighbor(neighbor, distance));
+		for (int i = 0; i < count; i++) {
+			int existing = this.links.get(base + 1 + i);
+			candidates.add(new Neighbor(existing, distance(node, existing)));
+		}
+		candidates.sort(Comparator.comparingDouble(Neighbor::distance));
+		setLinks(node, level, selectNeighbors(candidates, maxLinks));
+	}
+
+	/**
+	 * Distance between a query and a node, on the codes when quantized.
+	 */
+	private double distance(Query query, int node) {
+		return switch (this.quantization) {
+			case NONE -> {
+				int base = node * this.dimensions;
+				double dot = 0;
+				for (int i = 0; i < this.dimensions; i++) {
+					dot += query.vector()[i] * this.vectors.get(base + i);
+				}
+				yield 1 - dot;
+			}
+			case INT8 -> {
+				// asymmetric: the query keeps its float precision
+				int base = node * this.codeBytes;
+				float[] vector = query.vector();
+				double dot = 0;
+				for (int i = 0; i < this.dimensions; i++) {
+					dot += vector[i] * this.codesBuffer.get(base + Float.BYTES + i);
+				}
+				yield 1 - dot * this.codesBuffer.getFloat(base);
+			}
+			case BINARY -> {
+				int base = node * this.codeBytes;
+				int hamming = 0;
+				for (int w = 0; w < query.bits().length; w++) {
+					hamming += Long.bitCount(query.bits()[w] ^ this.codesBuffer.getLong(base + w * Long.BYTES));
+				}
+				yield hammingDistance(hamming);
+			}
+		};
+	}
+
+	/**
+	 * Distance between two nodes, on the codes when quantized.
+	 */
+	private double distance(int a, int b) {
+		return switch (this.quantization) {
+			case NONE -> {
+				int baseA = a * this.dimensions;
+				int baseB = b * this.dimensions;
+				double dot = 0;
+				for (int i = 0; i < this.dimensions; i++) {
+					dot += this.vectors.get(baseA + i) * this.vectors.get(baseB + i);
+				}
+				yield 1 - dot;
+			}
+			case INT8 -> {
+				int baseA = a * this.codeBytes;
+				int baseB = b * this.codeBytes;
+				int dot = 0;
+				for (int i = Float.BYTES; i < this.codeBytes; i++) {
+					dot += this.codesBuffer.get(baseA + i) * this.codesBuffer.get(baseB + i);
+				}
+				yield 1 - dot * (double) this.codesBuffer.getFloat(baseA) * this.codesBuffer.getFloat(baseB);
+			}
+			case BINARY -> {
+				int baseA = a * this.codeBytes;
+				int baseB = b * this.codeBytes;
+				int hamming = 0;
+				for (int i = 0; i < this.codeBytes; i += Long.BYTES) {
+					hamming += Long.bitCount(this.codesBuffer.getLong(baseA + i) ^ this.codesBuffer.getLong(baseB + i));
+				}
+				yield hammingDistance(hamming);
+			}
+		};
+	}
+
+	/**
+	 * The cosine distance of two vectors whose signs differ on a fraction of the
+	 * dimensions, as for random hyperplanes.
+	 */
+	private double hammingDistance(int hamming) {
+		return 1 - Math.cos(Math.PI * hamming / this.dimensions);
+	}
+
+	/**
+	 * Distance between a query and the full precision vector of a node, copied in
+	 * a scratch array for the SIMD kernel.
+	 */
+	private double exactDistance(float[] query, int node, float[] scratch) {
+		this.vectors.get(node * this.dimensions, scratch);
+		return 1 - VectorKernels.dot(query, scratch);
+	}
+
+	private List<Neighbor> rescore(float[] query, List<Neighbor> candidates) {
+		float[] scratch = new float[this.dimensions];
+		List<Neighbor> rescored = new ArrayList<>(candidates.size());
+		for (Neighbor candidate : candidates) {
+			rescored.add(new Neighbor(candidate.node(), exactDistance(query, candidate.node(), scratch)));
+		}
+		rescored.sort(Comparator.comparingDouble(Neighbor::distance));
+		return rescored;
+	}
+
+	private Query query(float[] vector) {
+		Assert.isTrue(vector.length == this.dimensions, "Expected " + this.dimensions + " dimensions");
+		float[] normalized = normalize(vector);
+		if (this.quantization != Quantization.BINARY) {
+			return new Query(normalized, null);
+		}
+		long[] bits = new long[words(this.dimensions)];
+		for (int i = 0; i < normalized.length; i++) {
+			if (normalized[i] > 0) {
+				bits[i / Long.SIZE] |= 1L << (i % Long.SIZE);
+			}
+		}
+		return new Query(normalized, bits);
+	}
+
+	private void encode(int node, Query query) {
+		int base = node * this.codeBytes;
+		switch (this.quantization) {
+			case NONE -> {
+			}
+			case INT8 -> {
+				float[] vector = query.vector();
+				float maxAbs = 0;
+				for (float value : vector) {
+					maxAbs = Math.max(maxAbs, Math.abs(value));
+				}
+				float scale = maxAbs / Byte.MAX_VALUE;
+				this.codesBuffer.putFloat(base, scale);
+				for (int i = 0; i < vector.length; i++) {
+					byte code = scale > 0 ? (byte) Math.round(vector[i] / scale) : 0;
+					this.codesBuffer.put(base + Float.BYTES + i, code);
+				}
+			}
+			case BINARY -> {
+				for (int w = 0; w < query.bits().length; w++) {
+					this.codesBuffer.putLong(base + w * Long.BYTES, query.bits()[w]);
+				}
+			}
+		}
+	}
+
+	private static int words(int dimensions) {
+		return (dimensions + Long.SIZE - 1) / Long.SIZE;
+	}
+
+	private static List<Neighbor> sorted(PriorityQueue<Neighbor> results) {
+		List<Neighbor> neighbors = new ArrayList<>(results);
+		neighbors.sort(Comparator.comparingDouble(Neighbor::distance));
+		return neighbors;
+	}
+
+	private static float[] normalize(float[] vector) {
+		double norm = 0;
+		for (float value : vector) {
+			norm += value * value;
+		}
+		norm = Math.sqrt(norm);
+		float[] normalized = new float[vector.length];
+		for (int i = 0; i < vector.length; i++) {
+			normalized[i] = norm > 0 ? (float) (vector[i] / norm) : 0;
+		}
+		return normalized;
+	}
+
+}
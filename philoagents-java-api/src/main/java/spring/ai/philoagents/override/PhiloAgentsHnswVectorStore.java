@@ -0,0 +1,932 @@
+package spring.ai.philoagents.override;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
+
+import com.google.gson.Gson;
+import org.springframework.ai.document.Document;
+import org.springframework.ai.document.DocumentMetadata;
+import org.springframework.ai.embedding.EmbeddingModel;
+import org.springframework.ai.embedding.EmbeddingOptionsBuilder;
+import org.springframework.ai.observation.conventions.VectorStoreSimilarityMetric;
+import org.springframework.ai.vectorstore.AbstractVectorStoreBuilder;
+import org.springframework.ai.vectorstore.SearchRequest;
+import org.springframework.ai.vectorstore.filter.Filter;
+import org.springframework.ai.vectorstore.observation.AbstractObservationVectorStore;
+import org.springframework.ai.vectorstore.observation.VectorStoreObservationContext;
+import org.springframework.util.Assert;
+import org.springframework.util.FileSystemUtils;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * In-process vector store searching an {@link HnswIndex}, for the deployments
+ * and the tests without MongoDB Atlas. The text and the metadata of the
+ * documents are appended to a log next to the index files, and both are
+ * reloaded at startup.
+ * <p>
+ * The filters are evaluated on the metadata before the graph search, with an
+ * inverted index on the {@code metadataFieldsToFilter}: a filter selecting at
+ * most {@code bruteForceThreshold} documents is searched exactly, a wider one
+ * through the graph, only returning the selected documents. The scores are the
+ * Atlas cosine scores, {@code (1 + cosine) / 2}, so that the similarity
+ * thresholds tuned on Atlas keep their meaning.
+ * <p>
+ * Deleted and replaced documents are tombstones: their nodes stay in the graph
+ * to route the searches, but are never returned. Once they exceed the
+ * {@code compactionThreshold} share of the nodes, or on {@link #compact()},
+ * the graph and the documents log are rebuilt from the live documents in a
+ * subdirectory, then moved over the store files; a compaction interrupted by a
+ * crash is completed or discarded when the store is reopened.
+ */
+@Slf4j
+public class PhiloAgentsHnswVectorStore extends AbstractObservationVectorStore
+		implements ChunkVersionStore, ChunkTextStore, BatchSimilaritySearch, Closeable {
+
+	public static final String DEFAULT_COLLECTION_NAME = "vector_store";
+
+	private static final String PROVIDER_NAME = "hnsw";
+
+	private static final String DOCUMENTS_FILE = "documents.jsonl";
+
+	private static final int DEFAULT_M = 16;
+
+	private static final int DEFAULT_EF_CONSTRUCTION = 100;
+
+	private static final int DEFAULT_EF_SEARCH = 64;
+
+	private static final int DEFAULT_BRUTE_FORCE_THRESHOLD = 2048;
+
+	private static final double DEFAULT_COMPACTION_THRESHOLD = 0.3;
+
+	private static final String COMPACTION_DIRECTORY = "compaction";
+
+	/** Written once the compacted files are complete, they then replace the store files. */
+	private static final String COMPACTED_FILE = "compacted";
+
+	private static final Gson GSON = new Gson();
+
+	private final Path directory;
+
+	private final String collectionName;
+
+	private final int efConstruction;
+
+	private final int efSearch;
+
+	private final int bruteForceThreshold;
+
+	private final List<String> metadataFieldsToFilter;
+
+	private final double compactionThreshold;
+
+	private final MeterRegistry meterRegistry;
+
+	private HnswIndex index;
+
+	private BufferedWriter documentLog;
+
+	/** Guards the documents, then the index is locked by its own operations. */
+	private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+	/**
+	 * Serializes the writes and the compactions, so that a compaction only holds
+	 * the write lock to swap the files while the searches go on.
+	 */
+	private final ReentrantLock writes = new ReentrantLock();
+
+	private final List<StoredDocument> documents = new ArrayList<>();
+
+	private final Map<String, Integer> nodesById = new HashMap<>();
+
+	private final BitSet live = new BitSet();
+
+	private final Map<String, Map<Object, BitSet>> filterIndex = new HashMap<>();
+
+	private record StoredDocument(String id, String text, Map<String, Object> metadata) {
+
+	}
+
+	/**
+	 * An entry of the documents log, the later entries of a node win.
+	 */
+	private record LogEntry(int node, String id, String text, Map<String, Object> metadata, Boolean deleted) {
+
+	}
+
+	protected PhiloAgentsHnswVectorStore(Builder builder) {
+		super(builder);
+
+		Assert.notNull(builder.directory, "Directory must not be null");
+
+		this.directory = builder.directory;
+		this.collectionName = builder.collectionName;
+		this.efConstruction = builder.efConstruction;
+		this.efSearch = builder.efSearch;
+		this.bruteForceThreshold = builder.bruteForceThreshold;
+		this.metadataFieldsToFilter = builder.metadataFieldsToFilter;
+		this.compactionThreshold = builder.compactionThreshold;
+		this.meterRegistry = builder.meterRegistry;
+		this.metadataFieldsToFilter.forEach(field -> this.filterIndex.put(field, new HashMap<>()));
+		try {
+			completeCompaction();
+			this.index = HnswIndex.open(this.directory, this.embeddingModel.dimensions(), builder.m,
+					builder.efConstruction, builder.quantization);
+			replayDocumentLog();
+			this.documentLog = Files.newBufferedWriter(this.directory.resolve(DOCUMENTS_FILE), StandardCharsets.UTF_8,
+					StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+		}
+		catch (IOException e) {
+			throw new IllegalStateException("Unable to open the HNSW vector store of " + this.directory, e);
+		}
+		log.info("Opened the HNSW vector store of {}: {} documents, {} nodes, {} quantization", this.directory,
+				this.live.cardinality(), this.index.size(), this.index.quantization());
+	}
+
+	private void replayDocumentLog() throws IOException {
+		Path file = this.directory.resolve(DOCUMENTS_FILE);
+		if (!Files.exists(file)) {
+			return;
+		}
+		int indexed = this.index.size();
+		try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+			String line;
+			while ((line = reader.readLine()) != null) {
+				if (line.isBlank()) {
+					continue;
+				}
+				LogEntry entry = GSON.fromJson(line, LogEntry.class);
+				// logged before a crash, the index header was not flushed
+				if (entry.node() >= indexed) {
+					continue;
+				}
+				if (Boolean.TRUE.equals(entry.deleted())) {
+					remove(entry.node());
+				}
+				else {
+					put(entry.node(), new StoredDocument(entry.id(), entry.text(),
+							entry.metadata() != null ? entry.metadata() : Map.of()));
+				}
+			}
+		}
+	}
+
+	private void put(int node, StoredDocument document) {
+		Integer previous = this.nodesById.get(document.id());
+		if (previous != null) {
+			remove(previous);
+		}
+		if (node < this.documents.size() && this.documents.get(node) != null) {
+			remove(node);
+		}
+		while (this.documents.size() <= node) {
+			this.documents.add(null);
+		}
+		this.documents.set(node, document);
+		this.nodesById.put(document.id(), node);
+		this.live.set(node);
+		this.filterIndex.forEach((field, values) -> {
+			Object value = document.metadata().get(field);
+			if (value != null) {
+				values.computeIfAbsent(valueKey(value), v -> new BitSet()).set(node);
+			}
+		});
+	}
+
+	private void remove(int node) {
+		if (node >= this.documents.size() || this.documents.get(node) == null) {
+			return;
+		}
+		StoredDocument document = this.documents.get(node);
+		this.documents.set(node, null);
+		this.nodesById.remove(document.id(), node);
+		this.live.clear(node);
+		this.filterIndex.forEach((field, values) -> {
+			Object value = document.metadata().get(field);
+			BitSet nodes = value != null ? values.get(valueKey(value)) : null;
+			if (nodes != null) {
+				nodes.clear(node);
+			}
+		});
+	}
+
+	@Override
+	public void doAdd(List<Document> documents) {
+		long start = System.nanoTime();
+		List<float[]> embeddings = this.embeddingModel.embed(documents, EmbeddingOptionsBuilder.builder().build(),
+				this.batchingStrategy);
+		long embedded = System.nanoTime();
+		this.writes.lock();
+		try {
+			addEmbedded(documents, embeddings);
+		}
+		finally {
+			this.writes.unlock();
+		}
+		long written = System.nanoTime();
+		log.info("Indexed {} documents, embedded in {} ms, indexed in {} ms", documents.size(),
+				(embedded - start) / 1_000_000, (written - embedded) / 1_000_000);
+		if (this.meterRegistry != null) {
+			ingestTimer("embedding").record(embedded - start, TimeUnit.NANOSECONDS);
+			ingestTimer("write").record(written - embedded, TimeUnit.NANOSECONDS);
+			this.meterRegistry.counter("philoagents.vectorstore.ingest.documents", "collection", this.collectionName)
+				.increment(documents.size());
+		}
+		compactIfNeeded();
+	}
+
+	private void addEmbedded(List<Document> documents, List<float[]> embeddings) {
+		for (int i = 0; i < documents.size(); i++) {
+			Document document = documents.get(i);
+			StoredDocument stored = new StoredDocument(document.getId(), document.getText(),
+					new HashMap<>(document.getMetadata()));
+			// one node at a time, the searches run in between
+			this.lock.writeLock().lock();
+			try {
+				int node = this.index.add(embeddings.get(i));
+				put(node, stored);
+				appendLog(new LogEntry(node, stored.id(), stored.text(), stored.metadata(), null));
+			}
+			finally {
+				this.lock.writeLock().unlock();
+			}
+		}
+		flush();
+	}
+
+	@Override
+	public void doDelete(List<String> idList) {
+		this.writes.lock();
+		try {
+			this.lock.writeLock().lock();
+			try {
+				for (String id : idList) {
+					Integer node = this.nodesById.get(id);
+					if (node != null) {
+						delete(node);
+					}
+				}
+			}
+			finally {
+				this.lock.writeLock().unlock();
+			}
+			flush();
+		}
+		finally {
+			this.writes.unlock();
+		}
+		compactIfNeeded();
+	}
+
+	@Override
+	protected void doDelete(Filter.Expression filterExpression) {
+		Assert.notNull(filterExpression, "Filter expression must not be null");
+
+		int deleted;
+		this.writes.lock();
+		try {
+			this.lock.writeLock().lock();
+			try {
+				BitSet nodes = select(filterExpression);
+				deleted = nodes.cardinality();
+				nodes.stream().forEach(this::delete);
+			}
+			finally {
+				this.lock.writeLock().unlock();
+			}
+			flush();
+		}
+		finally {
+			this.writes.unlock();
+		}
+		log.debug("Deleted " + deleted + " documents matching filter expression");
+		compactIfNeeded();
+	}
+
+	private void delete(int node) {
+		remove(node);
+		appendLog(new LogEntry(node, null, null, null, Boolean.TRUE));
+	}
+
+	private void appendLog(LogEntry entry) {
+		try {
+			this.documentLog.write(GSON.toJson(entry));
+			this.documentLog.newLine();
+		}
+		catch (IOException e) {
+			throw new IllegalStateException("Unable to write the documents log of " + this.directory, e);
+		}
+	}
+
+	/**
+	 * Flushes the documents log before the index header, so that the documents
+	 * of every node of a reopened index are in the log.
+	 */
+	private void flush() {
+		this.lock.writeLock().lock();
+		try {
+			this.documentLog.flush();
+			this.index.flush();
+		}
+		catch (IOException e) {
+			throw new IllegalStateException("Unable to flush the HNSW vector store of " + this.directory, e);
+		}
+		finally {
+			this.lock.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * Returns the share of the nodes of the graph whose document was deleted or
+	 * replaced.
+	 * @return the tombstones ratio, 0 for an empty graph
+	 */
+	public double tombstoneRatio() {
+		this.lock.readLock().lock();
+		try {
+			int nodes = this.index.size();
+			return nodes == 0 ? 0 : (nodes - this.live.cardinality()) / (double) nodes;
+		}
+		finally {
+			this.lock.readLock().unlock();
+		}
+	}
+
+	private void compactIfNeeded() {
+		if (tombstoneRatio() > this.compactionThreshold) {
+			compact();
+		}
+	}
+
+	/**
+	 * Rebuilds the graph and the documents log from the live documents, dropping
+	 * the tombstones. The searches go on during the rebuild, the writes wait for
+	 * it.
+	 * @return the number of tombstones removed
+	 * @throws IllegalStateException if the compacted files cannot be written
+	 */
+	public int compact() {
+		long start = System.nanoTime();
+		this.writes.lock();
+		try {
+			int nodes = this.index.size();
+			int documents = this.live.cardinality();
+			if (documents == nodes) {
+				return 0;
+			}
+			Path compaction = this.directory.resolve(COMPACTION_DIRECTORY);
+			try {
+				// without writes, the documents and the index only change under this lock
+				FileSystemUtils.deleteRecursively(compaction);
+				writeCompaction(compaction);
+				this.lock.writeLock().lock();
+				try {
+					this.documentLog.close();
+					this.index.close();
+					completeCompaction();
+					this.documents.clear();
+					this.nodesById.clear();
+					this.live.clear();
+					this.filterIndex.values().forEach(Map::clear);
+					this.index = HnswIndex.open(this.directory, this.index.dimensions(), this.index.m(),
+							this.efConstruction, this.index.quantization());
+					replayDocumentLog();
+					this.documentLog = Files.newBufferedWriter(this.directory.resolve(DOCUMENTS_FILE),
+							StandardCharsets.UTF_8, StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+				}
+				finally {
+					this.lock.writeLock().unlock();
+				}
+			}
+			catch (IOException e) {
+				throw new IllegalStateException("Unable to compact the HNSW vector store of " + this.directory, e);
+			}
+			log.info("Compacted the HNSW vector store of {}: {} documents, {} tombstones removed in {} ms",
+					this.directory, documents, nodes - documents, (System.nanoTime() - start) / 1_000_000);
+			if (this.meterRegistry != null) {
+				this.meterRegistry.counter("philoagents.vectorstore.compactions", "collection", this.collectionName)
+					.increment();
+			}
+			return nodes - documents;
+		}
+		finally {
+			this.writes.unlock();
+		}
+	}
+
+	/**
+	 * Adds the vectors of the live nodes to a new index and their documents to a
+	 * new log, in the order of the nodes, then marks them complete.
+	 */
+	private void writeCompaction(Path compaction) throws IOException {
+		try (HnswIndex compacted = HnswIndex.open(compaction, this.index.dimensions(), this.index.m(),
+				this.efConstruction, this.index.quantization());
+				BufferedWriter compactedLog = Files.newBufferedWriter(compaction.resolve(DOCUMENTS_FILE),
+						StandardCharsets.UTF_8)) {
+			for (int node = this.live.nextSetBit(0); node >= 0; node = this.live.nextSetBit(node + 1)) {
+				StoredDocument document = this.documents.get(node);
+				int compactedNode = compacted.add(this.index.vector(node));
+				compactedLog.write(GSON.toJson(new LogEntry(compactedNode, document.id(), document.text(),
+						document.metadata(), null)));
+				compactedLog.newLine();
+			}
+		}
+		Files.createFile(compaction.resolve(COMPACTED_FILE));
+	}
+
+	/**
+	 * Moves the files of a complete compaction over the store files, or discards
+	 * an incomplete one.
+	 */
+	private void completeCompaction() throws IOException {
+		Path compaction = this.directory.resolve(COMPACTION_DIRECTORY);
+		if (!Files.exists(compaction)) {
+			return;
+		}
+		if (Files.exists(compaction.resolve(COMPACTED_FILE))) {
+			if (Files.exists(compaction.resolve(DOCUMENTS_FILE))) {
+				Files.move(compaction.resolve(DOCUMENTS_FILE), this.directory.resolve(DOCUMENTS_FILE),
+						StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+			}
+			HnswIndex.replace(compaction, this.directory);
+		}
+		FileSystemUtils.deleteRecursively(compaction);
+	}
+
+	@Override
+	public Map<String, ChunkVersion> findChunkVersions(Filter.Expression filterExpression) {
+		Assert.notNull(filterExpression, "Filter expression must not be null");
+
+		this.lock.readLock().lock();
+		try {
+			Map<String, ChunkVersion> versions = new HashMap<>();
+			select(filterExpression).stream().forEach(node -> {
+				StoredDocument document = this.documents.get(node);
+				versions.put(document.id(), new ChunkVersion(stringOf(document, SOURCE_FIELD_NAME),
+						stringOf(document, CONTENT_HASH_FIELD_NAME), stringOf(document, EMBEDDING_MODEL_FIELD_NAME)));
+			});
+			return versions;
+		}
+		finally {
+			this.lock.readLock().unlock();
+		}
+	}
+
+	@Override
+	public void forEachChunk(Consumer<Document> consumer) {
+		List<StoredDocument> chunks = new ArrayList<>();
+		this.lock.readLock().lock();
+		try {
+			this.live.stream().forEach(node -> chunks.add(this.documents.get(node)));
+		}
+		finally {
+			this.lock.readLock().unlock();
+		}
+		// outside of the lock, the consumer may add documents
+		chunks.forEach(chunk -> consumer.accept(
+				Document.builder().id(chunk.id()).text(chunk.text()).metadata(chunk.metadata()).build()));
+	}
+
+	private static String stringOf(StoredDocument document, String field) {
+		Object value = document.metadata().get(field);
+		return value != null ? value.toString() : null;
+	}
+
+	@Override
+	public List<Document> similaritySearch(String query) {
+		return similaritySearch(SearchRequest.builder().query(query).build());
+	}
+
+	@Override
+	public List<Document> doSimilaritySearch(SearchRequest request) {
+		long start = System.nanoTime();
+		float[] queryEmbedding = this.embeddingModel.embed(request.getQuery());
+		recordEmbedding(System.nanoTime() - start);
+		return similaritySearch(request, queryEmbedding);
+	}
+
+	@Override
+	public List<float[]> embedQueries(List<String> queries) {
+		long start = System.nanoTime();
+		List<float[]> embeddings = this.embeddingModel.embed(queries);
+		recordEmbedding(System.nanoTime() - start);
+		return embeddings;
+	}
+
+	@Override
+	public List<Document> similaritySearch(SearchRequest request, float[] queryEmbedding) {
+		long start = System.nanoTime();
+		List<Document> results = new ArrayList<>(request.getTopK());
+		this.lock.readLock().lock();
+		try {
+			BitSet accepted = request.getFilterExpression() != null ? select(request.getFilterExpression()) : this.live;
+			int selected = accepted.cardinality();
+			List<HnswIndex.Neighbor> neighbors;
+			if (selected <= this.bruteForceThreshold) {
+				neighbors = this.index.exactSearch(queryEmbedding, request.getTopK(), accepted::get);
+			}
+			else {
+				// the rejected nodes are only traversed, widen the candidates of a selective filter
+				int ef = Math.max(this.efSearch, request.getTopK());
+				ef = (int) Math.min(this.bruteForceThreshold,
+						Math.ceil(ef * (double) this.live.cardinality() / selected));
+				neighbors = this.index.search(queryEmbedding, request.getTopK(), ef, accepted::get);
+			}
+			for (HnswIndex.Neighbor neighbor : neighbors) {
+				double score = 1 - neighbor.distance() / 2;
+				if (score < request.getSimilarityThreshold()) {
+					continue;
+				}
+				StoredDocument document = this.documents.get(neighbor.node());
+				Map<String, Object> metadata = new HashMap<>(document.metadata());
+				metadata.put(DocumentMetadata.DISTANCE.value(), 1 - score);
+				results.add(Document.builder()
+					.id(document.id())
+					.text(document.text())
+					.metadata(metadata)
+					.score(score)
+					.build());
+			}
+		}
+		finally {
+			this.lock.readLock().unlock();
+		}
+		recordQuery(System.nanoTime() - start, results.size());
+		return results;
+	}
+
+	/**
+	 * Evaluates a filter on the metadata of the live documents.
+	 * @param operand the filter expression or group
+	 * @return the nodes of the matching documents
+	 */
+	private BitSet select(Filter.Operand operand) {
+		if (operand instanceof Filter.Group group) {
+			return select(group.content());
+		}
+		if (!(operand instanceof Filter.Expression expression)) {
+			throw new IllegalArgumentException("Unsupported filter operand: " + operand);
+		}
+		BitSet nodes;
+		switch (expression.type()) {
+			case AND -> {
+				nodes = select(expression.left());
+				nodes.and(select(expression.right()));
+			}
+			case OR -> {
+				nodes = select(expression.left());
+				nodes.or(select(expression.right()));
+			}
+			case NOT -> {
+				nodes = (BitSet) this.live.clone();
+				nodes.andNot(select(expression.left()));
+			}
+			case EQ -> nodes = matching(keyOf(expression), valueOf(expression));
+			case NE -> {
+				nodes = (BitSet) this.live.clone();
+				nodes.andNot(matching(keyOf(expression), valueOf(expression)));
+			}
+			case IN -> nodes = matchingAny(keyOf(expression), valueOf(expression));
+			case NIN -> {
+				nodes = (BitSet) this.live.clone();
+				nodes.andNot(matchingAny(keyOf(expression), valueOf(expression)));
+			}
+			case GT, GTE, LT, LTE -> nodes = comparing(keyOf(expression), valueOf(expression), expression.type());
+			default -> throw new IllegalArgumentException("Unsupported filter operator: " + expression.type());
+		}
+		nodes.and(this.live);
+		return nodes;
+	}
+
+	private BitSet matching(String key, Object value) {
+		Object expected = valueKey(value);
+		if (ID_FIELD_NAME.equals(key)) {
+			BitSet nodes = new BitSet();
+			Integer node = this.nodesById.get(String.valueOf(value));
+			if (node != null) {
+				nodes.set(node);
+			}
+			return nodes;
+		}
+		Map<Object, BitSet> values = this.filterIndex.get(key);
+		if (values != null) {
+			BitSet nodes = values.get(expected);
+			return nodes != null ? (BitSet) nodes.clone() : new BitSet();
+		}
+		BitSet nodes = new BitSet();
+		this.live.stream().forEach(node -> {
+			Object actual = this.documents.get(node).metadata().get(key);
+			if (actual != null && expected.equals(valueKey(actual))) {
+				nodes.set(node);
+			}
+		});
+		return nodes;
+	}
+
+	private BitSet matchingAny(String key, Object values) {
+		Assert.isInstanceOf(List.class, values, "IN and NIN expect a list of values");
+		BitSet nodes = new BitSet();
+		for (Object value : (List<?>) values) {
+			nodes.or(matching(key, value));
+		}
+		return nodes;
+	}
+
+	private BitSet comparing(String key, Object value, Filter.ExpressionType type) {
+		Object expected = valueKey(value);
+		BitSet nodes = new BitSet();
+		this.live.stream().forEach(node -> {
+			Object actual = this.documents.get(node).metadata().get(key);
+			Integer comparison = actual != null ? compare(valueKey(actual), expected) : null;
+			if (comparison != null && switch (type) {
+				case GT -> comparison > 0;
+				case GTE -> comparison >= 0;
+				case LT -> comparison < 0;
+				default -> comparison <= 0;
+			}) {
+				nodes.set(node);
+			}
+		});
+		return nodes;
+	}
+
+	private static Integer compare(Object actual, Object expected) {
+		if (actual instanceof Double a && expected instanceof Double e) {
+			return Double.compare(a, e);
+		}
+		if (actual instanceof String a && expected instanceof String e) {
+			return a.compareTo(e);
+		}
+		return null;
+	}
+
+	private static String keyOf(Filter.Expression expression) {
+		String key = ((Filter.Key) expression.left()).key();
+		// quoted by the text filter parser when the key has special characters
+		boolean quoted = key.length() > 1 && (key.startsWith("\"") && key.endsWith("\"")
+				|| key.startsWith("'") && key.endsWith("'"));
+		return quoted ? key.substring(1, key.length() - 1) : key;
+	}
+
+	private static Object valueOf(Filter.Expression expression) {
+		return ((Filter.Value) expression.right()).value();
+	}
+
+	/**
+	 * Numbers are compared as doubles, the metadata reloaded from the log are.
+	 */
+	private static Object valueKey(Object value) {
+		return value instanceof Number number ? Double.valueOf(number.doubleValue()) : Objects.requireNonNull(value);
+	}
+
+	private void recordEmbedding(long embeddingNanos) {
+		if (this.meterRegistry != null) {
+			searchTimer("embedding").record(embeddingNanos, TimeUnit.NANOSECONDS);
+		}
+	}
+
+	private void recordQuery(long queryNanos, int hits) {
+		if (this.meterRegistry == null) {
+			return;
+		}
+		searchTimer("query").record(queryNanos, TimeUnit.NANOSECONDS);
+		DistributionSummary.builder("philoagents.vectorstore.hits")
+			.description("Documents returned by a similarity search, above the similarity threshold")
+			.tag("collection", this.collectionName)
+			.register(this.meterRegistry)
+			.record(hits);
+	}
+
+	private Timer searchTimer(String phase) {
+		return Timer.builder("philoagents.vectorstore.search")
+			.description("Latency of the similarity search phases")
+			.tag("collection", this.collectionName)
+			.tag("phase", phase)
+			.publishPercentileHistogram()
+			.register(this.meterRegistry);
+	}
+
+	private Timer ingestTimer(String phase) {
+		return Timer.builder("philoagents.vectorstore.ingest.batch")
+			.description("Time spent per ingested batch")
+			.tag("collection", this.collectionName)
+			.tag("phase", phase)
+			.register(this.meterRegistry);
+	}
+
+	@Override
+	public void close() throws IOException {
+		this.writes.lock();
+		this.lock.writeLock().lock();
+		try {
+			this.documentLog.close();
+			this.index.close();
+		}
+		finally {
+			this.lock.writeLock().unlock();
+			this.writes.unlock();
+		}
+	}
+
+	@Override
+	public VectorStoreObservationContext.Builder createObservationContextBuilder(String operationName) {
+
+		return VectorStoreObservationContext.builder(PROVIDER_NAME, operationName)
+			.collectionName(this.collectionName)
+			.dimensions(this.index.dimensions())
+			.similarityMetric(VectorStoreSimilarityMetric.COSINE.value());
+	}
+
+	@Override
+	public <T> Optional<T> getNativeClient() {
+		@SuppressWarnings("unchecked")
+		T client = (T) this.index;
+		return Optional.of(client);
+	}
+
+	/**
+	 * Creates a new builder instance for PhiloAgentsHnswVectorStore.
+	 * @return a new Builder instance
+	 */
+	public static Builder builder(EmbeddingModel embeddingModel) {
+		return new Builder(embeddingModel);
+	}
+
+	public static class Builder extends AbstractVectorStoreBuilder<Builder> {
+
+		private Path directory;
+
+		private String collectionName = DEFAULT_COLLECTION_NAME;
+
+		private int m = DEFAULT_M;
+
+		private int efConstruction = DEFAULT_EF_CONSTRUCTION;
+
+		private int efSearch = DEFAULT_EF_SEARCH;
+
+		private int bruteForceThreshold = DEFAULT_BRUTE_FORCE_THRESHOLD;
+
+		private HnswIndex.Quantization quantization = HnswIndex.Quantization.NONE;
+
+		private List<String> metadataFieldsToFilter = Collections.emptyList();
+
+		private double compactionThreshold = DEFAULT_COMPACTION_THRESHOLD;
+
+		private MeterRegistry meterRegistry;
+
+		private Builder(EmbeddingModel embeddingModel) {
+			super(embeddingModel);
+		}
+
+		/**
+		 * Sets the directory of the index files and of the documents log, created
+		 * when missing.
+		 * @param directory the store directory
+		 * @return the builder instance
+		 */
+		public Builder directory(Path directory) {
+			Assert.notNull(directory, "Directory must not be null");
+			this.directory = directory;
+			return this;
+		}
+
+		/**
+		 * Sets the collection name tagging the metrics and the observations.
+		 * @param collectionName the name of the collection
+		 * @return the builder instance
+		 */
+		public Builder collectionName(String collectionName) {
+			Assert.hasText(collectionName, "Collection Name must not be null or empty");
+			this.collectionName = collectionName;
+			return this;
+		}
+
+		/**
+		 * Sets the maximum number of neighbors of a node, ignored when the index
+		 * already exists.
+		 * @param m the neighbors on the upper levels, twice as many on level 0
+		 * @return the builder instance
+		 */
+		public Builder m(int m) {
+			Assert.isTrue(m > 1, "m must be greater than 1");
+			this.m = m;
+			return this;
+		}
+
+		/**
+		 * Sets the size of the candidate list when inserting a document.
+		 * @param efConstruction the candidates per insertion
+		 * @return the builder instance
+		 */
+		public Builder efConstruction(int efConstruction) {
+			Assert.isTrue(efConstruction > 0, "efConstruction must be positive");
+			this.efConstruction = efConstruction;
+			return this;
+		}
+
+		/**
+		 * Sets the size of the candidate list of a search, at least the top k.
+		 * @param efSearch the candidates per search
+		 * @return the builder instance
+		 */
+		public Builder efSearch(int efSearch) {
+			Assert.isTrue(efSearch > 0, "efSearch must be positive");
+			this.efSearch = efSearch;
+			return this;
+		}
+
+		/**
+		 * Sets the number of documents selected by a filter under which the search
+		 * compares the query with all of them instead of walking the graph.
+		 * @param bruteForceThreshold the documents searched exactly
+		 * @return the builder instance
+		 */
+		public Builder bruteForceThreshold(int bruteForceThreshold) {
+			this.bruteForceThreshold = bruteForceThreshold;
+			return this;
+		}
+
+		/**
+		 * Sets the representation of the vectors in the graph, ignored when the index
+		 * already exists. The candidates found on quantized codes are rescored with
+		 * the full precision vectors.
+		 * @param quantization the quantization of the vectors
+		 * @return the builder instance
+		 */
+		public Builder quantization(HnswIndex.Quantization quantization) {
+			Assert.notNull(quantization, "Quantization must not be null");
+			this.quantization = quantization;
+			return this;
+		}
+
+		/**
+		 * Sets the metadata fields with an inverted index for the filters, the other
+		 * fields are filtered by a scan.
+		 * @param metadataFieldsToFilter list of metadata field names
+		 * @return the builder instance
+		 */
+		public Builder metadataFieldsToFilter(List<String> metadataFieldsToFilter) {
+			Assert.notEmpty(metadataFieldsToFilter, "Fields list must not be empty");
+			this.metadataFieldsToFilter = metadataFieldsToFilter;
+			return this;
+		}
+
+		/**
+		 * Sets the share of tombstones in the graph above which a write compacts the
+		 * store.
+		 * @param compactionThreshold the tombstones ratio, 1 to compact only on
+		 * demand
+		 * @return the builder instance
+		 */
+		public Builder compactionThreshold(double compactionThreshold) {
+			Assert.isTrue(compactionThreshold > 0 && compactionThreshold <= 1,
+					"compactionThreshold must be in (0, 1]");
+			this.compactionThreshold = compactionThreshold;
+			return this;
+		}
+
+		/**
+		 * Sets the meter registry recording the similarity search latency and hits.
+		 * @param meterRegistry the meter registry, null to disable the metrics
+		 * @return the builder instance
+		 */
+		public Builder meterRegistry(MeterRegistry meterRegistry) {
+			this.meterRegistry = meterRegistry;
+			return this;
+		}
+
+		/**
+		 * Opens the store, reloading the index and the documents of the directory.
+		 * @return a new PhiloAgentsHnswVectorStore instance
+		 * @throws IllegalStateException if the store files cannot be opened
+		 */
+		@Override
+		public PhiloAgentsHnswVectorStore build() {
+			return new PhiloAgentsHnswVectorStore(this);
+		}
+
+	}
+
+}
@@ -1,16 +1,34 @@
 package spring.ai.philoagents.override;
 
+import java.time.Duration;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Locale;
 import java.util.Map;
 import java.util.Optional;
-import java.util.stream.Collectors;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
 
 import com.mongodb.MongoCommandException;
+import com.mongodb.client.MongoCursor;
 import com.mongodb.client.result.DeleteResult;
+import org.bson.codecs.configuration.CodecRegistries;
+import org.bson.codecs.configuration.CodecRegistry;
+import org.bson.types.ObjectId;
 import org.springframework.ai.document.Document;
-import org.springframework.ai.document.DocumentMetadata;
 import org.springframework.ai.embedding.EmbeddingModel;
 import org.springframework.ai.embedding.EmbeddingOptionsBuilder;
 import org.springframework.ai.model.EmbeddingUtils;
@@ -21,8 +39,11 @@ import org.springframework.ai.vectorstore.filter.Filter;
 import org.springframework.ai.vectorstore.mongodb.atlas.MongoDBAtlasFilterExpressionConverter;
 import org.springframework.ai.vectorstore.observation.AbstractObservationVectorStore;
 import org.springframework.ai.vectorstore.observation.VectorStoreObservationContext;
+import org.springframework.beans.factory.DisposableBean;
 import org.springframework.beans.factory.InitializingBean;
 import org.springframework.data.mongodb.UncategorizedMongoDbException;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.FindAndReplaceOptions;
 import org.springframework.data.mongodb.core.MongoTemplate;
 import org.springframework.data.mongodb.core.aggregation.Aggregation;
 import org.springframework.data.mongodb.core.aggregation.AggregationOperation;
@@ -32,19 +53,25 @@ import org.springframework.data.mongodb.core.query.Criteria;
 import org.springframework.data.mongodb.core.query.Query;
 import org.springframework.lang.NonNull;
 import org.springframework.util.Assert;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
 import lombok.extern.slf4j.Slf4j;
+import spring.ai.philoagents.override.SearchHitCodec.SearchHit;
 
 @Slf4j
-public class PhiloAgentsMongoDBAtlasVectorStore extends AbstractObservationVectorStore implements InitializingBean {
+public class PhiloAgentsMongoDBAtlasVectorStore extends AbstractObservationVectorStore
+		implements InitializingBean, DisposableBean, ChunkVersionStore, ChunkTextStore, BatchSimilaritySearch {
 
 	public static final String ID_FIELD_NAME = "_id";
 
-	public static final String METADATA_FIELD_NAME = "metadata";
-
 	public static final String CONTENT_FIELD_NAME = "chunk";
 
 	public static final String SCORE_FIELD_NAME = "score";
 
+	static final String QUERY_INDEX_FIELD_NAME = "_query";
+
 	public static final String DEFAULT_VECTOR_COLLECTION_NAME = "vector_store";
 
 	private static final String DEFAULT_VECTOR_INDEX_NAME = "vector_index";
@@ -53,10 +80,20 @@ public class PhiloAgentsMongoDBAtlasVectorStore extends AbstractObservationVecto
 
 	private static final int DEFAULT_NUM_CANDIDATES = 200;
 
+	private static final int DEFAULT_BULK_WRITE_SIZE = 500;
+
+	private static final String PARTITION_SEPARATOR = "__";
+
+	private static final int DEFAULT_PARTITION_THREADS = 8;
+
 	private static final int INDEX_ALREADY_EXISTS_ERROR_CODE = 68;
 
 	private static final String INDEX_ALREADY_EXISTS_ERROR_CODE_NAME = "IndexAlreadyExists";
 
+	private static final Duration DEFAULT_INDEX_READY_TIMEOUT = Duration.ofMinutes(10);
+
+	private static final long INDEX_POLL_MILLIS = 1000;
+
 	private final MongoTemplate mongoTemplate;
 
 	private final String collectionName;
@@ -73,6 +110,24 @@ public class PhiloAgentsMongoDBAtlasVectorStore extends AbstractObservationVecto
 
 	private final boolean initializeSchema;
 
+	private final MeterRegistry meterRegistry;
+
+	private final int bulkWriteSize;
+
+	private final String quantization;
+
+	private final String partitionKey;
+
+	private final Set<String> partitionCollections = ConcurrentHashMap.newKeySet();
+
+	private final ExecutorService scatterExecutor;
+
+	private final CodecRegistry searchHitCodecRegistry;
+
+	private final SearchTuning searchTuning;
+
+	private final Duration indexReadyTimeout;
+
 	protected PhiloAgentsMongoDBAtlasVectorStore(Builder builder) {
 		super(builder);
 
@@ -86,10 +141,34 @@ public class PhiloAgentsMongoDBAtlasVectorStore extends AbstractObservationVecto
 		this.metadataFieldsToFilter = builder.metadataFieldsToFilter;
 		this.filterExpressionConverter = builder.filterExpressionConverter;
 		this.initializeSchema = builder.initializeSchema;
+		this.meterRegistry = builder.meterRegistry;
+		this.bulkWriteSize = builder.bulkWriteSize;
+		this.quantization = builder.quantization;
+		this.partitionKey = builder.partitionKey;
+		this.searchTuning = builder.searchTuning;
+		this.indexReadyTimeout = builder.indexReadyTimeout;
+		this.scatterExecutor = builder.partitionKey == null ? null
+				: Executors.newFixedThreadPool(builder.partitionThreads, r -> {
+					Thread thread = new Thread(r, "vector-store-scatter");
+					thread.setDaemon(true);
+					return thread;
+				});
+		this.searchHitCodecRegistry = CodecRegistries.fromRegistries(
+				CodecRegistries.fromCodecs(new SearchHitCodec(builder.metadataFieldsToFilter)),
+				builder.mongoTemplate.getDb().getCodecRegistry());
 	}
 
 	@Override
 	public void afterPropertiesSet() throws Exception {
+		if (this.partitionKey != null) {
+			// the partitions created by previous runs, or by the migration
+			this.mongoTemplate.getCollectionNames()
+				.stream()
+				.filter(name -> name.startsWith(this.collectionName + PARTITION_SEPARATOR))
+				.forEach(this.partitionCollections::add);
+			log.info("Searching {} partitions of {} by {}", this.partitionCollections.size(), this.collectionName,
+					this.partitionKey);
+		}
 		if (!this.initializeSchema) {
 			return;
 		}
@@ -99,12 +178,19 @@ public class PhiloAgentsMongoDBAtlasVectorStore extends AbstractObservationVecto
 			this.mongoTemplate.createCollection(this.collectionName);
 		}
 		// Create search index
-		createSearchIndex();
+		createSearchIndex(this.collectionName);
+	}
+
+	@Override
+	public void destroy() {
+		if (this.scatterExecutor != null) {
+			this.scatterExecutor.shutdownNow();
+		}
 	}
 
-	private void createSearchIndex() {
+	private void createSearchIndex(String collection) {
 		try {
-			this.mongoTemplate.executeCommand(createSearchIndexDefinition());
+			this.mongoTemplate.executeCommand(createSearchIndexDefinition(collection));
 		}
 		catch (UncategorizedMongoDbException e) {
 			Throwable cause = e.getCause();
@@ -120,21 +206,27 @@ public class PhiloAgentsMongoDBAtlasVectorStore extends AbstractObservationVecto
 	}
 
 	/**
-	 * Provides the Definition for the search index
+	 * Provides the Definition for the search index of a collection, the shared
+	 * collection or a partition
 	 */
-	private org.bson.Document createSearchIndexDefinition() {
+	private org.bson.Document createSearchIndexDefinition(String collection) {
 		List<org.bson.Document> vectorFields = new ArrayList<>();
 
-		vectorFields.add(new org.bson.Document().append("type", "vector")
+		var vectorField = new org.bson.Document().append("type", "vector")
 			.append("path", this.pathName)
 			.append("numDimensions", this.embeddingModel.dimensions())
-			.append("similarity", "cosine"));
+			.append("similarity", "cosine");
+		if (this.quantization != null) {
+			// Atlas searches the quantized vectors and keeps the full precision ones
+			vectorField.append("quantization", this.quantization);
+		}
+		vectorFields.add(vectorField);
 
 		vectorFields.addAll(this.metadataFieldsToFilter.stream()
 			.map(fieldName -> new org.bson.Document().append("type", "filter").append("path", fieldName))
 			.toList());
 
-		return new org.bson.Document().append("createSearchIndexes", this.collectionName)
+		return new org.bson.Document().append("createSearchIndexes", collection)
 			.append("indexes",
 					List.of(new org.bson.Document().append("name", this.vectorIndexName)
 						.append("type", "vectorSearch")
@@ -142,44 +234,196 @@ public class PhiloAgentsMongoDBAtlasVectorStore extends AbstractObservationVecto
 	}
 
 	/**
-	 * Maps a Bson Document to a Spring AI Document
-	 * @param mongoDocument the mongoDocument to map to a Spring AI Document
-	 * @return the Spring AI Document
+	 * Routes a filter to the collections holding its documents: the partitions of
+	 * the values of the partition key it selects, or every partition and the
+	 * shared collection when it does not select any. A partition not migrated yet
+	 * is read from the shared collection, where the filter still applies.
+	 */
+	private List<String> collectionsOf(Filter.Expression filterExpression) {
+		if (this.partitionKey == null) {
+			return List.of(this.collectionName);
+		}
+		Set<String> values = filterExpression != null ? FilterPartitions.valuesOf(filterExpression, this.partitionKey)
+				: null;
+		if (values == null) {
+			return allCollections();
+		}
+		Set<String> collections = new LinkedHashSet<>();
+		for (String value : values) {
+			String partition = partitionCollectionName(value);
+			collections.add(this.partitionCollections.contains(partition) ? partition : this.collectionName);
+		}
+		return List.copyOf(collections);
+	}
+
+	private List<String> allCollections() {
+		List<String> collections = new ArrayList<>(this.partitionCollections.size() + 1);
+		collections.add(this.collectionName);
+		collections.addAll(this.partitionCollections);
+		return collections;
+	}
+
+	/**
+	 * Returns the collection a document is written to: the collection of its
+	 * partition, created with its vector search index on first use, or the shared
+	 * collection when it has no value of the partition key.
 	 */
-	private Document mapMongoDocument(org.bson.Document mongoDocument, float[] queryEmbedding) {
-		String id = mongoDocument.getObjectId(ID_FIELD_NAME).toHexString();
-		String content = mongoDocument.getString(CONTENT_FIELD_NAME);
-		double score = mongoDocument.getDouble(SCORE_FIELD_NAME);
-		Map<String, Object> metadata = metadataFieldsToFilter.isEmpty()
-				? Collections.emptyMap()
-				: metadataFieldsToFilter.stream()
-					.collect(Collectors.toMap(field -> field, field -> mongoDocument.get(field)));
-		metadata.put(DocumentMetadata.DISTANCE.value(), 1 - score);
-
-		// @formatter:off
-		return Document.builder()
-			.id(id)
-			.text(content)
-			.metadata(metadata)
-			.score(score)
-			.build(); // @formatter:on
+	private String collectionOf(Map<String, Object> metadata) {
+		Object value = this.partitionKey != null ? metadata.get(this.partitionKey) : null;
+		if (value == null) {
+			return this.collectionName;
+		}
+		String partition = partitionCollectionName(String.valueOf(value));
+		if (!this.partitionCollections.contains(partition)) {
+			createPartition(partition);
+		}
+		return partition;
+	}
+
+	private synchronized void createPartition(String partition) {
+		if (this.partitionCollections.contains(partition)) {
+			return;
+		}
+		if (!this.mongoTemplate.collectionExists(partition)) {
+			this.mongoTemplate.createCollection(partition);
+		}
+		createSearchIndex(partition);
+		this.partitionCollections.add(partition);
+		log.info("Created the partition {} of {}", partition, this.collectionName);
+	}
+
+	private String partitionCollectionName(String value) {
+		return this.collectionName + PARTITION_SEPARATOR
+				+ value.toLowerCase(Locale.ROOT).replaceAll("[^a-z0-9]+", "_");
+	}
+
+	private static String idOf(org.bson.Document mongoDocument) {
+		// ObjectId when written by the Python ingestion, string when written by add()
+		Object mongoId = mongoDocument.get(ID_FIELD_NAME);
+		return mongoId instanceof ObjectId objectId ? objectId.toHexString() : String.valueOf(mongoId);
 	}
 
 	@Override
 	public void doAdd(List<Document> documents) {
-		List<float[]> embeddings = this.embeddingModel.embed(documents, EmbeddingOptionsBuilder.builder().build(),
-				this.batchingStrategy);
-		for (Document document : documents) {
-			MongoDBDocument mdbDocument = new MongoDBDocument(document.getId(), document.getText(),
-					document.getMetadata(), embeddings.get(documents.indexOf(document)));
-			this.mongoTemplate.save(mdbDocument, this.collectionName);
+		if (this.bulkWriteSize <= 1) {
+			List<float[]> embeddings = this.embeddingModel.embed(documents, EmbeddingOptionsBuilder.builder().build(),
+					this.batchingStrategy);
+			for (int i = 0; i < documents.size(); i++) {
+				this.mongoTemplate.save(toMongoDocument(documents.get(i), embeddings.get(i)),
+						collectionOf(documents.get(i).getMetadata()));
+			}
+			return;
+		}
+		bulkAdd(documents);
+	}
+
+	/**
+	 * Embeds the documents batch by batch, as split by the batching strategy, and
+	 * upserts every batch with unordered bulk writes of {@code bulkWriteSize}
+	 * documents. The write of a batch runs while the next batch is embedded.
+	 */
+	private void bulkAdd(List<Document> documents) {
+		List<List<Document>> batches = this.batchingStrategy.batch(documents);
+		ExecutorService writer = Executors.newSingleThreadExecutor(r -> {
+			Thread thread = new Thread(r, "vector-store-writer");
+			thread.setDaemon(true);
+			return thread;
+		});
+		try {
+			Future<?> pendingWrite = null;
+			for (int i = 0; i < batches.size(); i++) {
+				List<Document> batch = batches.get(i);
+				long start = System.nanoTime();
+				// already split by the batching strategy
+				List<float[]> embeddings = this.embeddingModel.embed(batch, EmbeddingOptionsBuilder.builder().build(),
+						unbatched -> List.of(unbatched));
+				long embeddingNanos = System.nanoTime() - start;
+				if (pendingWrite != null) {
+					awaitWrite(pendingWrite);
+				}
+				int batchNumber = i + 1;
+				pendingWrite = writer.submit(() -> writeBatch(batchNumber, batches.size(), batch, embeddings,
+						embeddingNanos));
+			}
+			if (pendingWrite != null) {
+				awaitWrite(pendingWrite);
+			}
+		}
+		finally {
+			writer.shutdownNow();
 		}
 	}
 
+	private void writeBatch(int batchNumber, int batches, List<Document> batch, List<float[]> embeddings,
+			long embeddingNanos) {
+		long start = System.nanoTime();
+		for (int from = 0; from < batch.size(); from += this.bulkWriteSize) {
+			int to = Math.min(from + this.bulkWriteSize, batch.size());
+			// one bulk write per partition of the documents
+			Map<String, BulkOperations> bulkOperations = new LinkedHashMap<>();
+			for (int i = from; i < to; i++) {
+				org.bson.Document mongoDocument = toMongoDocument(batch.get(i), embeddings.get(i));
+				bulkOperations
+					.computeIfAbsent(collectionOf(batch.get(i).getMetadata()),
+							collection -> this.mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, collection))
+					.replaceOne(new Query(Criteria.where(ID_FIELD_NAME).is(mongoDocument.get(ID_FIELD_NAME))),
+							mongoDocument, FindAndReplaceOptions.options().upsert());
+			}
+			bulkOperations.values().forEach(BulkOperations::execute);
+		}
+		long writeNanos = System.nanoTime() - start;
+		double documentsPerSecond = batch.size() * 1e9 / Math.max(1, embeddingNanos + writeNanos);
+		log.info("Ingested batch {}/{}: {} documents, embedded in {} ms, written in {} ms, {} documents/s",
+				batchNumber, batches, batch.size(), embeddingNanos / 1_000_000, writeNanos / 1_000_000,
+				Math.round(documentsPerSecond));
+		if (this.meterRegistry != null) {
+			ingestTimer("embedding").record(embeddingNanos, TimeUnit.NANOSECONDS);
+			ingestTimer("write").record(writeNanos, TimeUnit.NANOSECONDS);
+			this.meterRegistry.counter("philoagents.vectorstore.ingest.documents", "collection", this.collectionName)
+				.increment(batch.size());
+		}
+	}
+
+	private static void awaitWrite(Future<?> write) {
+		try {
+			write.get();
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("Interrupted while writing the documents", e);
+		}
+		catch (ExecutionException e) {
+			throw new IllegalStateException("Failed to write the documents", e.getCause());
+		}
+	}
+
+	private Timer ingestTimer(String phase) {
+		return Timer.builder("philoagents.vectorstore.ingest.batch")
+			.description("Time spent per ingested batch")
+			.tag("collection", this.collectionName)
+			.tag("phase", phase)
+			.register(this.meterRegistry);
+	}
+
+	/**
+	 * Maps a Spring AI Document to the layout of the Python ingestion: the
+	 * metadata at the top level, next to the chunk and its embedding, so that the
+	 * filters and the {@link SearchHitCodec} read the documents of both.
+	 */
+	private org.bson.Document toMongoDocument(Document document, float[] embedding) {
+		org.bson.Document mongoDocument = new org.bson.Document(document.getMetadata());
+		mongoDocument.put(ID_FIELD_NAME, document.getId());
+		mongoDocument.put(CONTENT_FIELD_NAME, document.getText());
+		mongoDocument.put(this.pathName, EmbeddingUtils.toList(embedding));
+		return mongoDocument;
+	}
+
 	@Override
 	public void doDelete(List<String> idList) {
 		Query query = new Query(org.springframework.data.mongodb.core.query.Criteria.where(ID_FIELD_NAME).in(idList));
-		this.mongoTemplate.remove(query, this.collectionName);
+		for (String collection : allCollections()) {
+			this.mongoTemplate.remove(query, collection);
+		}
 	}
 
 	@Override
@@ -189,15 +433,58 @@ public class PhiloAgentsMongoDBAtlasVectorStore extends AbstractObservationVecto
 		try {
 			String nativeFilterExpression = this.filterExpressionConverter.convertExpression(filterExpression);
 			BasicQuery query = new BasicQuery(nativeFilterExpression);
-			DeleteResult deleteResult = this.mongoTemplate.remove(query, this.collectionName);
+			for (String collection : collectionsOf(filterExpression)) {
+				DeleteResult deleteResult = this.mongoTemplate.remove(query, collection);
 
-			log.debug("Deleted " + deleteResult.getDeletedCount() + " documents matching filter expression");
+				log.debug("Deleted " + deleteResult.getDeletedCount() + " documents matching filter expression from "
+						+ collection);
+			}
 		}
 		catch (Exception e) {
 			throw new IllegalStateException("Failed to delete documents by filter", e);
 		}
 	}
 
+	@Override
+	public Map<String, ChunkVersion> findChunkVersions(Filter.Expression filterExpression) {
+		Assert.notNull(filterExpression, "Filter expression must not be null");
+
+		var fields = new org.bson.Document(SOURCE_FIELD_NAME, 1).append(CONTENT_HASH_FIELD_NAME, 1)
+			.append(EMBEDDING_MODEL_FIELD_NAME, 1);
+		BasicQuery query = new BasicQuery(this.filterExpressionConverter.convertExpression(filterExpression),
+				fields.toJson());
+		Map<String, ChunkVersion> versions = new HashMap<>();
+		for (String collection : collectionsOf(filterExpression)) {
+			for (org.bson.Document mongoDocument : this.mongoTemplate.find(query, org.bson.Document.class,
+					collection)) {
+				versions.put(idOf(mongoDocument), new ChunkVersion(mongoDocument.getString(SOURCE_FIELD_NAME),
+						mongoDocument.getString(CONTENT_HASH_FIELD_NAME),
+						mongoDocument.getString(EMBEDDING_MODEL_FIELD_NAME)));
+			}
+		}
+		return versions;
+	}
+
+	@Override
+	public void forEachChunk(Consumer<Document> consumer) {
+		Query query = new Query();
+		query.fields().exclude(this.pathName);
+		for (String collection : allCollections()) {
+			try (var mongoDocuments = this.mongoTemplate.stream(query, org.bson.Document.class, collection)) {
+				mongoDocuments.forEach(mongoDocument -> {
+					Map<String, Object> metadata = new HashMap<>(mongoDocument);
+					metadata.remove(ID_FIELD_NAME);
+					metadata.remove(CONTENT_FIELD_NAME);
+					consumer.accept(Document.builder()
+						.id(idOf(mongoDocument))
+						.text(mongoDocument.getString(CONTENT_FIELD_NAME))
+						.metadata(metadata)
+						.build());
+				});
+			}
+		}
+	}
+
 	@Override
 	public List<Document> similaritySearch(String query) {
 		return similaritySearch(SearchRequest.builder().query(query).build());
@@ -205,26 +492,302 @@ public class PhiloAgentsMongoDBAtlasVectorStore extends AbstractObservationVecto
 
 	@Override
 	public List<Document> doSimilaritySearch(SearchRequest request) {
+		long start = System.nanoTime();
+		float[] queryEmbedding = this.embeddingModel.embed(request.getQuery());
+		recordEmbedding(System.nanoTime() - start);
+		return similaritySearch(request, queryEmbedding);
+	}
+
+	@Override
+	public List<float[]> embedQueries(List<String> queries) {
+		long start = System.nanoTime();
+		List<float[]> embeddings = this.embeddingModel.embed(queries);
+		recordEmbedding(System.nanoTime() - start);
+		return embeddings;
+	}
+
+	@Override
+	public List<Document> similaritySearch(SearchRequest request, float[] queryEmbedding) {
+		long start = System.nanoTime();
+		String partition = partitionOf(request);
+		List<Document> documents = similaritySearch(request, queryEmbedding, numCandidates(request, partition));
+		if (this.searchTuning != null) {
+			this.searchTuning.recordLatency(partition, System.nanoTime() - start);
+		}
+		return documents;
+	}
+
+	/**
+	 * Searches a request with the embedding of its query and a given number of
+	 * candidates, in place of the tuned one.
+	 * @param request the search request, its query is not embedded again
+	 * @param queryEmbedding the embedding of the query
+	 * @param numCandidates the candidates of the approximate search
+	 * @return the documents found
+	 */
+	public List<Document> similaritySearch(SearchRequest request, float[] queryEmbedding, int numCandidates) {
+		long start = System.nanoTime();
+		List<String> collections = collectionsOf(request.getFilterExpression());
+		List<AggregationOperation> stages = vectorSearchStages(request, queryEmbedding, null, numCandidates);
+		List<Document> documents = collections.size() == 1
+				? aggregate(collections.get(0), stages).stream().map(SearchHit::document).toList()
+				: scatterGather(collections, stages, request.getTopK());
+		recordQuery(System.nanoTime() - start, documents.size(), collections.size());
+		return documents;
+	}
+
+	private int numCandidates(SearchRequest request, String partition) {
+		return this.searchTuning != null ? this.searchTuning.numCandidates(partition, request.getTopK())
+				: Math.max(this.numCandidates, request.getTopK());
+	}
+
+	/**
+	 * Reads the embeddings of the documents matching a filter, to compute the
+	 * exact nearest neighbors the approximate search is measured against.
+	 * @param filterExpression the filter, such as a philosopher
+	 * @return the embeddings by document id
+	 */
+	public Map<String, float[]> findEmbeddings(Filter.Expression filterExpression) {
+		Assert.notNull(filterExpression, "Filter expression must not be null");
+
+		BasicQuery query = new BasicQuery(this.filterExpressionConverter.convertExpression(filterExpression),
+				new org.bson.Document(this.pathName, 1).toJson());
+		Map<String, float[]> embeddings = new HashMap<>();
+		for (String collection : collectionsOf(filterExpression)) {
+			try (var mongoDocuments = this.mongoTemplate.stream(query, org.bson.Document.class, collection)) {
+				mongoDocuments.forEach(mongoDocument -> {
+					List<?> vector = mongoDocument.getList(this.pathName, Object.class);
+					float[] embedding = new float[vector.size()];
+					for (int i = 0; i < embedding.length; i++) {
+						embedding[i] = ((Number) vector.get(i)).floatValue();
+					}
+					embeddings.put(idOf(mongoDocument), embedding);
+				});
+			}
+		}
+		return embeddings;
+	}
+
+	/**
+	 * Runs a search pipeline, its results decoded from the cursor by the
+	 * {@link SearchHitCodec}.
+	 */
+	private List<SearchHit> aggregate(String collection, List<AggregationOperation> stages) {
+		List<org.bson.Document> pipeline = Aggregation.newAggregation(stages).toPipeline(Aggregation.DEFAULT_CONTEXT);
+		return this.mongoTemplate.execute(collection, mongoCollection -> {
+			List<SearchHit> hits = new ArrayList<>();
+			try (MongoCursor<SearchHit> cursor = mongoCollection.withCodecRegistry(this.searchHitCodecRegistry)
+				.aggregate(pipeline, SearchHit.class)
+				.cursor()) {
+				cursor.forEachRemaining(hits::add);
+			}
+			return hits;
+		});
+	}
+
+	/**
+	 * Searches the collections in parallel and merges their results into the
+	 * {@code topK} best documents, the partitions scoring the same similarity.
+	 */
+	private List<Document> scatterGather(List<String> collections, List<AggregationOperation> stages, int topK) {
+		List<CompletableFuture<List<SearchHit>>> searches = collections.stream()
+			.map(collection -> CompletableFuture.supplyAsync(() -> aggregate(collection, stages), this.scatterExecutor))
+			.toList();
+		return searches.stream()
+			.flatMap(search -> search.join().stream())
+			.map(SearchHit::document)
+			.sorted(Comparator.comparing(Document::getScore).reversed())
+			.limit(topK)
+			.toList();
+	}
+
+	/**
+	 * Runs the searches in a single aggregation: the first search, then every
+	 * other one in a {@code $unionWith} sub-pipeline (MongoDB 8.0 or later) on the
+	 * collection of its partition, the documents tagged with the index of their
+	 * request.
+	 */
+	@Override
+	public List<List<Document>> similaritySearch(List<SearchRequest> requests, List<float[]> queryEmbeddings) {
+		List<String> collections = new ArrayList<>(requests.size());
+		for (SearchRequest request : requests) {
+			List<String> routed = collectionsOf(request.getFilterExpression());
+			if (routed.size() != 1) {
+				// a scatter-gather does not fit in a sub-pipeline
+				return BatchSimilaritySearch.super.similaritySearch(requests, queryEmbeddings);
+			}
+			collections.add(routed.get(0));
+		}
+		if (requests.size() == 1) {
+			return List.of(similaritySearch(requests.get(0), queryEmbeddings.get(0)));
+		}
+		long start = System.nanoTime();
+		List<AggregationOperation> stages = new ArrayList<>(vectorSearchStages(requests.get(0), queryEmbeddings.get(0), 0,
+				numCandidates(requests.get(0), partitionOf(requests.get(0)))));
+		for (int i = 1; i < requests.size(); i++) {
+			String collection = collections.get(i);
+			List<AggregationOperation> subPipeline = vectorSearchStages(requests.get(i), queryEmbeddings.get(i), i,
+					numCandidates(requests.get(i), partitionOf(requests.get(i))));
+			stages.add(context -> new org.bson.Document("$unionWith", new org.bson.Document("coll", collection)
+				.append("pipeline", subPipeline.stream().map(stage -> stage.toDocument(context)).toList())));
+		}
+		List<List<Document>> results = new ArrayList<>(requests.size());
+		for (int i = 0; i < requests.size(); i++) {
+			results.add(new ArrayList<>());
+		}
+		int hits = 0;
+		for (SearchHit hit : aggregate(collections.get(0), stages)) {
+			results.get(hit.queryIndex()).add(hit.document());
+			hits++;
+		}
+		long nanos = System.nanoTime() - start;
+		recordQuery(nanos, hits, new LinkedHashSet<>(collections).size());
+		if (this.searchTuning != null) {
+			// the searches of the batch share the aggregation, each is charged its share so
+			// that batches do not push the candidates of the interactive searches down
+			long share = nanos / requests.size();
+			Set<String> partitions = new LinkedHashSet<>();
+			requests.forEach(request -> partitions.add(partitionOf(request)));
+			partitions.forEach(partition -> this.searchTuning.recordLatency(partition, share));
+		}
+		return results;
+	}
+
+	/**
+	 * Moves the documents of the shared collection to the collections of their
+	 * partition, with their embedding, then deletes them from the shared
+	 * collection once the vector search index of every partition is queryable;
+	 * the documents without a value of the partition key stay in it. The copies
+	 * are upserts, so a failed migration can be run again.
+	 * @return the number of documents moved to every partition
+	 * @throws IllegalStateException if an index fails or is not ready in time, the
+	 * documents are then left in the shared collection
+	 */
+	public Map<String, Long> migrateToPartitions() {
+		Assert.state(this.partitionKey != null, "The vector store is not partitioned");
+		long start = System.nanoTime();
+		int bulkSize = Math.max(1, this.bulkWriteSize);
+		Map<String, List<org.bson.Document>> batches = new HashMap<>();
+		Map<String, Long> moved = new TreeMap<>();
+		Query query = new Query(Criteria.where(this.partitionKey).ne(null));
+		try (var mongoDocuments = this.mongoTemplate.stream(query, org.bson.Document.class, this.collectionName)) {
+			mongoDocuments.forEach(mongoDocument -> {
+				String partition = collectionOf(mongoDocument);
+				List<org.bson.Document> batch = batches.computeIfAbsent(partition, p -> new ArrayList<>());
+				batch.add(mongoDocument);
+				if (batch.size() == bulkSize) {
+					writePartition(partition, batch, moved);
+				}
+			});
+		}
+		batches.forEach((partition, batch) -> writePartition(partition, batch, moved));
+		moved.keySet().forEach(this::awaitQueryable);
+		long deleted = this.mongoTemplate.remove(query, this.collectionName).getDeletedCount();
+		log.info("Moved {} documents of {} to {} partitions in {} ms", deleted, this.collectionName, moved.size(),
+				(System.nanoTime() - start) / 1_000_000);
+		return moved;
+	}
+
+	private void writePartition(String partition, List<org.bson.Document> batch, Map<String, Long> moved) {
+		if (batch.isEmpty()) {
+			return;
+		}
+		BulkOperations bulkOperations = this.mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, partition);
+		for (org.bson.Document mongoDocument : batch) {
+			bulkOperations.replaceOne(new Query(Criteria.where(ID_FIELD_NAME).is(mongoDocument.get(ID_FIELD_NAME))),
+					mongoDocument, FindAndReplaceOptions.options().upsert());
+		}
+		bulkOperations.execute();
+		moved.merge(partition, (long) batch.size(), Long::sum);
+		batch.clear();
+	}
+
+	/**
+	 * Polls {@code $listSearchIndexes} until the vector search index of a
+	 * collection is queryable.
+	 */
+	private void awaitQueryable(String collection) {
+		long deadline = System.nanoTime() + this.indexReadyTimeout.toNanos();
+		String status = null;
+		while (System.nanoTime() < deadline) {
+			org.bson.Document index = this.mongoTemplate.getCollection(collection)
+				.aggregate(List.of(new org.bson.Document("$listSearchIndexes",
+						new org.bson.Document("name", this.vectorIndexName))))
+				.first();
+			status = index != null ? index.getString("status") : null;
+			if (index != null && "READY".equals(status) && Boolean.TRUE.equals(index.getBoolean("queryable"))) {
+				return;
+			}
+			if ("FAILED".equals(status)) {
+				throw new IllegalStateException("The vector search index of " + collection + " failed: "
+						+ index.get("message"));
+			}
+			try {
+				Thread.sleep(INDEX_POLL_MILLIS);
+			}
+			catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new IllegalStateException("Interrupted waiting for the vector search index of " + collection, e);
+			}
+		}
+		throw new IllegalStateException("The vector search index of " + collection + " is not queryable after "
+				+ this.indexReadyTimeout + ", last status " + status);
+	}
+
+	private String partitionOf(SearchRequest request) {
+		return this.searchTuning != null ? this.searchTuning.partitionOf(request.getFilterExpression()) : null;
+	}
 
+	private List<AggregationOperation> vectorSearchStages(SearchRequest request, float[] queryEmbedding,
+			Integer queryIndex, int numCandidates) {
 		String nativeFilterExpressions = (request.getFilterExpression() != null)
 				? this.filterExpressionConverter.convertExpression(request.getFilterExpression()) : "";
-
-		float[] queryEmbedding = this.embeddingModel.embed(request.getQuery());
 		var vectorSearch = new VectorSearchAggregation(EmbeddingUtils.toList(queryEmbedding), this.pathName,
-				this.numCandidates, this.vectorIndexName, request.getTopK(), nativeFilterExpressions);
-
-		Aggregation aggregation = Aggregation.newAggregation(vectorSearch,
-				Aggregation.addFields()
-					.addField(SCORE_FIELD_NAME)
-					.withValueOfExpression("{\"$meta\":\"vectorSearchScore\"}")
-					.build(),
+				numCandidates, this.vectorIndexName, request.getTopK(), nativeFilterExpressions);
+		// the chunk and the filterable fields only, the embedding is most of the bytes of a document
+		var projection = new org.bson.Document(CONTENT_FIELD_NAME, 1);
+		this.metadataFieldsToFilter.forEach(field -> projection.append(field, 1));
+		projection.append(SCORE_FIELD_NAME, new org.bson.Document("$meta", "vectorSearchScore"));
+		if (queryIndex != null) {
+			projection.append(QUERY_INDEX_FIELD_NAME, new org.bson.Document("$literal", queryIndex));
+		}
+		AggregationOperation project = context -> new org.bson.Document("$project", projection);
+		return List.of(vectorSearch, project,
 				Aggregation.match(new Criteria(SCORE_FIELD_NAME).gte(request.getSimilarityThreshold())));
+	}
 
-		return this.mongoTemplate.aggregate(aggregation, this.collectionName, org.bson.Document.class)
-			.getMappedResults()
-			.stream()
-			.map(d -> mapMongoDocument(d, queryEmbedding))
-			.toList();
+	private void recordEmbedding(long embeddingNanos) {
+		if (this.meterRegistry != null) {
+			searchTimer("embedding").record(embeddingNanos, TimeUnit.NANOSECONDS);
+		}
+	}
+
+	private void recordQuery(long queryNanos, int hits, int collections) {
+		if (this.meterRegistry == null) {
+			return;
+		}
+		searchTimer("query").record(queryNanos, TimeUnit.NANOSECONDS);
+		DistributionSummary.builder("philoagents.vectorstore.hits")
+			.description("Documents returned by a similarity search, above the similarity threshold")
+			.tag("collection", this.collectionName)
+			.register(this.meterRegistry)
+			.record(hits);
+		if (this.partitionKey != null) {
+			DistributionSummary.builder("philoagents.vectorstore.partitions")
+				.description("Collections searched by a similarity search, more than one for a scatter-gather")
+				.tag("collection", this.collectionName)
+				.register(this.meterRegistry)
+				.record(collections);
+		}
+	}
+
+	private Timer searchTimer(String phase) {
+		return Timer.builder("philoagents.vectorstore.search")
+			.description("Latency of the similarity search phases")
+			.tag("collection", this.collectionName)
+			.tag("phase", phase)
+			.publishPercentileHistogram()
+			.register(this.meterRegistry);
 	}
 
 	@Override
@@ -269,6 +832,20 @@ public class PhiloAgentsMongoDBAtlasVectorStore extends AbstractObservationVecto
 
 		private PhiloAgentsMongoDBAtlasFilterExpressionConverter filterExpressionConverter = new PhiloAgentsMongoDBAtlasFilterExpressionConverter();
 
+		private MeterRegistry meterRegistry;
+
+		private int bulkWriteSize = DEFAULT_BULK_WRITE_SIZE;
+
+		private String quantization;
+
+		private String partitionKey;
+
+		private SearchTuning searchTuning;
+
+		private int partitionThreads = DEFAULT_PARTITION_THREADS;
+
+		private Duration indexReadyTimeout = DEFAULT_INDEX_READY_TIMEOUT;
+
 		/**
 		 * @throws IllegalArgumentException if mongoTemplate is null
 		 */
@@ -361,6 +938,88 @@ public class PhiloAgentsMongoDBAtlasVectorStore extends AbstractObservationVecto
 			return this;
 		}
 
+		/**
+		 * Sets the number of documents per unordered bulk write. A size of 1 or less
+		 * saves the documents one by one.
+		 * @param bulkWriteSize the number of documents per bulk write
+		 * @return the builder instance
+		 */
+		public Builder bulkWriteSize(int bulkWriteSize) {
+			this.bulkWriteSize = bulkWriteSize;
+			return this;
+		}
+
+		/**
+		 * Sets the automatic quantization of the vector search index created by
+		 * {@code initializeSchema}.
+		 * @param quantization {@code scalar} or {@code binary}, null for the full
+		 * precision vectors
+		 * @return the builder instance
+		 */
+		public Builder quantization(String quantization) {
+			this.quantization = quantization;
+			return this;
+		}
+
+		/**
+		 * Partitions the documents by a metadata field, every value in its own
+		 * collection with its own vector search index, named after the collection
+		 * and the value. A search filtering on the field only searches the
+		 * collections of its values, the other ones search every partition in
+		 * parallel and merge their results.
+		 * @param partitionKey the metadata field, null to keep every document in one
+		 * collection
+		 * @return the builder instance
+		 */
+		public Builder partitionKey(String partitionKey) {
+			this.partitionKey = partitionKey;
+			return this;
+		}
+
+		/**
+		 * Sets the number of threads searching the partitions of a scatter-gather.
+		 * @param partitionThreads the number of threads
+		 * @return the builder instance
+		 */
+		public Builder partitionThreads(int partitionThreads) {
+			Assert.isTrue(partitionThreads > 0, "Partition threads must be positive");
+			this.partitionThreads = partitionThreads;
+			return this;
+		}
+
+		/**
+		 * Sets how long the migration to the partitions waits for their vector
+		 * search indexes to be queryable before deleting the shared documents.
+		 * @param indexReadyTimeout the timeout
+		 * @return the builder instance
+		 */
+		public Builder indexReadyTimeout(Duration indexReadyTimeout) {
+			Assert.notNull(indexReadyTimeout, "Index ready timeout must not be null");
+			this.indexReadyTimeout = indexReadyTimeout;
+			return this;
+		}
+
+		/**
+		 * Sets the search parameters of every philosopher, in place of the number of
+		 * candidates of the builder.
+		 * @param searchTuning the search tuning, null for the number of candidates
+		 * @return the builder instance
+		 */
+		public Builder searchTuning(SearchTuning searchTuning) {
+			this.searchTuning = searchTuning;
+			return this;
+		}
+
+		/**
+		 * Sets the meter registry recording the similarity search latency and hits.
+		 * @param meterRegistry the meter registry, null to disable the metrics
+		 * @return the builder instance
+		 */
+		public Builder meterRegistry(MeterRegistry meterRegistry) {
+			this.meterRegistry = meterRegistry;
+			return this;
+		}
+
 		/**
 		 * Builds the MongoDBAtlasVectorStore instance.
 		 * @return a new MongoDBAtlasVectorStore instance
@@ -373,18 +1032,6 @@ public class PhiloAgentsMongoDBAtlasVectorStore extends AbstractObservationVecto
 
 	}
 
-	/**
-	 * The representation of {@link Document} along with its embedding.
-	 *
-	 * @param id The id of the document
-	 * @param content The content of the document
-	 * @param metadata The metadata of the document
-	 * @param embedding The vectors representing the content of the document
-	 */
-	public record MongoDBDocument(String id, String content, Map<String, Object> metadata, float[] embedding) {
-
-	}
-
     record VectorSearchAggregation(List<Float> embeddings, String path, int numCandidates, String index, int count,
 		String filter) implements AggregationOperation {
 
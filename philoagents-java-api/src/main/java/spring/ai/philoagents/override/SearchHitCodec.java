@@ -0,0 +1,110 @@
+package spring.ai.philoagents.override;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.bson.BsonReader;
+import org.bson.BsonType;
+import org.bson.BsonWriter;
+import org.bson.codecs.BsonValueCodec;
+import org.bson.codecs.Codec;
+import org.bson.codecs.DecoderContext;
+import org.bson.codecs.EncoderContext;
+import org.springframework.ai.document.Document;
+import org.springframework.ai.document.DocumentMetadata;
+
+/**
+ * Decodes the results of a vector search from the BSON of the cursor straight
+ * into Spring AI documents: the id, the chunk, the score and the filterable
+ * metadata fields of the projection are read in one pass, without the
+ * intermediate {@link org.bson.Document} of every result.
+ */
+class SearchHitCodec implements Codec<SearchHitCodec.SearchHit> {
+
+	/**
+	 * A document found by a search.
+	 * @param document the document, with its score and distance
+	 * @param queryIndex the index of the request of a batch, -1 for a single search
+	 */
+	record SearchHit(Document document, int queryIndex) {
+	}
+
+	private static final BsonValueCodec VALUE_CODEC = new BsonValueCodec();
+
+	private final Set<String> metadataFields;
+
+	SearchHitCodec(List<String> metadataFields) {
+		this.metadataFields = Set.copyOf(metadataFields);
+	}
+
+	@Override
+	public SearchHit decode(BsonReader reader, DecoderContext decoderContext) {
+		String id = null;
+		String content = null;
+		double score = 0;
+		int queryIndex = -1;
+		Map<String, Object> metadata = new HashMap<>(this.metadataFields.size() + 2);
+		reader.readStartDocument();
+		while (reader.readBsonType() != BsonType.END_OF_DOCUMENT) {
+			String name = reader.readName();
+			switch (name) {
+				// ObjectId when written by the Python ingestion, string when written by add()
+				case PhiloAgentsMongoDBAtlasVectorStore.ID_FIELD_NAME -> id = reader.getCurrentBsonType() == BsonType.OBJECT_ID
+						? reader.readObjectId().toHexString() : String.valueOf(readValue(reader, decoderContext));
+				case PhiloAgentsMongoDBAtlasVectorStore.CONTENT_FIELD_NAME -> content = reader.readString();
+				case PhiloAgentsMongoDBAtlasVectorStore.SCORE_FIELD_NAME -> score = reader.readDouble();
+				case PhiloAgentsMongoDBAtlasVectorStore.QUERY_INDEX_FIELD_NAME -> queryIndex = reader.readInt32();
+				default -> {
+					Object value = this.metadataFields.contains(name) ? readValue(reader, decoderContext) : skip(reader);
+					if (value != null) {
+						metadata.put(name, value);
+					}
+				}
+			}
+		}
+		reader.readEndDocument();
+		metadata.put(DocumentMetadata.DISTANCE.value(), 1 - score);
+
+		// @formatter:off
+		return new SearchHit(Document.builder()
+			.id(id)
+			.text(content)
+			.metadata(metadata)
+			.score(score)
+			.build(), queryIndex); // @formatter:on
+	}
+
+	private static Object readValue(BsonReader reader, DecoderContext decoderContext) {
+		return switch (reader.getCurrentBsonType()) {
+			case STRING -> reader.readString();
+			case INT32 -> reader.readInt32();
+			case INT64 -> reader.readInt64();
+			case DOUBLE -> reader.readDouble();
+			case BOOLEAN -> reader.readBoolean();
+			case OBJECT_ID -> reader.readObjectId().toHexString();
+			case NULL -> {
+				reader.readNull();
+				yield null;
+			}
+			default -> VALUE_CODEC.decode(reader, decoderContext);
+		};
+	}
+
+	private static Object skip(BsonReader reader) {
+		reader.skipValue();
+		return null;
+	}
+
+	@Override
+	public void encode(BsonWriter writer, SearchHit value, EncoderContext encoderContext) {
+		throw new UnsupportedOperationException("Search hits are only decoded");
+	}
+
+	@Override
+	public Class<SearchHit> getEncoderClass() {
+		return SearchHit.class;
+	}
+
+}
@@ -0,0 +1,207 @@
+package spring.ai.philoagents.override;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.Duration;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.springframework.ai.vectorstore.filter.Filter;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+
+/**
+ * Vector search parameters of every philosopher, as chosen by the offline
+ * recall against latency sweep of the {@code SearchTuningRunner}: the number of
+ * candidates of the approximate search, the number of chunks and the similarity
+ * threshold of the context retrieval, and the cut-off of the reranker. The
+ * philosophers without their own parameters use the defaults.
+ * <p>
+ * With a latency budget, the number of candidates of a philosopher is lowered
+ * while its searches are slower than the budget, and raised back up to its tuned
+ * value while they are fast enough again.
+ */
+public class SearchTuning {
+
+	private static final double SMOOTHING = 0.2;
+
+	private static final double DECREASE = 0.75;
+
+	private static final double INCREASE = 1.1;
+
+	/** Headroom under the budget before raising the number of candidates again. */
+	private static final double RECOVERY = 0.8;
+
+	/**
+	 * Search parameters.
+	 * @param numCandidates the candidates of the approximate search
+	 * @param topK the number of chunks of the context retrieval
+	 * @param similarityThreshold the minimum score of these chunks
+	 */
+	public record Params(int numCandidates, int topK, double similarityThreshold) {
+	}
+
+	/**
+	 * The tuning file.
+	 * @param key the metadata field of the philosopher of a chunk
+	 * @param defaults the parameters of the philosophers missing from partitions
+	 * @param partitions the parameters by philosopher
+	 * @param rerankCutoff the score under which the reranker drops a passage, null
+	 * when not learned
+	 */
+	public record Tuning(String key, Params defaults, Map<String, Params> partitions, Double rerankCutoff) {
+	}
+
+	private final Tuning tuning;
+
+	private final long latencyBudgetNanos;
+
+	private final Map<String, Budget> budgets = new ConcurrentHashMap<>();
+
+	/**
+	 * @param tuning the parameters
+	 * @param latencyBudget the target latency of a search, null to keep the tuned
+	 * number of candidates
+	 */
+	public SearchTuning(Tuning tuning, Duration latencyBudget) {
+		this.tuning = new Tuning(tuning.key(), tuning.defaults(),
+				tuning.partitions() != null ? Map.copyOf(tuning.partitions()) : Map.of(), tuning.rerankCutoff());
+		this.latencyBudgetNanos = latencyBudget != null ? latencyBudget.toNanos() : 0;
+	}
+
+	/**
+	 * Reads a tuning file, the defaults given filling what it leaves out.
+	 * @param reader the tuning file, as written by {@link #write(Tuning, Path)}
+	 * @param defaults the default parameters
+	 * @param latencyBudget the target latency of a search, null for none
+	 * @return the search tuning
+	 */
+	public static SearchTuning load(Reader reader, Tuning defaults, Duration latencyBudget) {
+		Tuning tuning = new Gson().fromJson(reader, Tuning.class);
+		if (tuning == null) {
+			return new SearchTuning(defaults, latencyBudget);
+		}
+		return new SearchTuning(new Tuning(tuning.key() != null ? tuning.key() : defaults.key(),
+				tuning.defaults() != null ? tuning.defaults() : defaults.defaults(), tuning.partitions(),
+				tuning.rerankCutoff() != null ? tuning.rerankCutoff() : defaults.rerankCutoff()),
+				latencyBudget);
+	}
+
+	/**
+	 * Writes a tuning file, replacing the previous one at once.
+	 * @param tuning the parameters
+	 * @param file the tuning file
+	 * @throws IOException if the file cannot be written
+	 */
+	public static void write(Tuning tuning, Path file) throws IOException {
+		Path parent = file.toAbsolutePath().getParent();
+		Files.createDirectories(parent);
+		Path temporary = Files.createTempFile(parent, file.getFileName().toString(), ".tmp");
+		try (Writer writer = Files.newBufferedWriter(temporary, StandardCharsets.UTF_8)) {
+			new GsonBuilder().setPrettyPrinting()
+				.create()
+				.toJson(new Tuning(tuning.key(), tuning.defaults(), new TreeMap<>(tuning.partitions()),
+						tuning.rerankCutoff()), writer);
+		}
+		Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+	}
+
+	public Tuning tuning() {
+		return this.tuning;
+	}
+
+	/**
+	 * Returns the philosopher of a search, when its filter selects a single one.
+	 * @param filterExpression the filter of the search, possibly null
+	 * @return the philosopher, null for the defaults
+	 */
+	public String partitionOf(Filter.Expression filterExpression) {
+		if (filterExpression == null) {
+			return null;
+		}
+		Set<String> values = FilterPartitions.valuesOf(filterExpression, this.tuning.key());
+		return values != null && values.size() == 1 ? values.iterator().next() : null;
+	}
+
+	/**
+	 * @param partition the philosopher, null for the defaults
+	 * @return the tuned parameters of the philosopher
+	 */
+	public Params params(String partition) {
+		Params params = partition != null ? this.tuning.partitions().get(partition) : null;
+		return params != null ? params : this.tuning.defaults();
+	}
+
+	/**
+	 * Returns the number of candidates of a search: the tuned one, or the one
+	 * meeting the latency budget.
+	 * @param partition the philosopher, null for the defaults
+	 * @param topK the number of documents of the search, the lower bound
+	 * @return the number of candidates
+	 */
+	public int numCandidates(String partition, int topK) {
+		int tuned = Math.max(topK, params(partition).numCandidates());
+		if (this.latencyBudgetNanos <= 0) {
+			return tuned;
+		}
+		return Math.max(topK, Math.min(tuned, budget(partition, tuned).numCandidates()));
+	}
+
+	/**
+	 * Records the latency of a search, adjusting the number of candidates of the
+	 * philosopher with a latency budget.
+	 * @param partition the philosopher, null for the defaults
+	 * @param nanos the latency of the search
+	 */
+	public void recordLatency(String partition, long nanos) {
+		if (this.latencyBudgetNanos > 0) {
+			budget(partition, params(partition).numCandidates()).record(nanos, this.latencyBudgetNanos,
+					params(partition).numCandidates());
+		}
+	}
+
+	private Budget budget(String partition, int numCandidates) {
+		return this.budgets.computeIfAbsent(partition != null ? partition : "", p -> new Budget(numCandidates));
+	}
+
+	/**
+	 * Number of candidates of a philosopher under the latency budget: lowered by a
+	 * quarter while the smoothed latency is over the budget, raised by a tenth
+	 * while it is well under.
+	 */
+	private static class Budget {
+
+		private double numCandidates;
+
+		private double latencyNanos = -1;
+
+		Budget(int numCandidates) {
+			this.numCandidates = numCandidates;
+		}
+
+		synchronized int numCandidates() {
+			return (int) this.numCandidates;
+		}
+
+		synchronized void record(long nanos, long budgetNanos, int tuned) {
+			this.latencyNanos = this.latencyNanos < 0 ? nanos
+					: SMOOTHING * nanos + (1 - SMOOTHING) * this.latencyNanos;
+			if (this.latencyNanos > budgetNanos) {
+				this.numCandidates = Math.max(1, this.numCandidates * DECREASE);
+			}
+			else if (this.latencyNanos < RECOVERY * budgetNanos) {
+				this.numCandidates = Math.min(tuned, this.numCandidates * INCREASE + 1);
+			}
+		}
+
+	}
+
+}
@@ -0,0 +1,61 @@
+package spring.ai.philoagents.override;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+
+/**
+ * Dot product of the exact rescoring, on the Java Vector API when the
+ * {@code SimdVectorKernels} are compiled in (the {@code vector-api} Maven
+ * profile) and the {@code jdk.incubator.vector} module is added to the JVM
+ * ({@code --add-modules jdk.incubator.vector}), with a scalar loop otherwise.
+ */
+final class VectorKernels {
+
+	private static final MethodHandle SIMD_DOT = simdDot();
+
+	static final boolean SIMD = SIMD_DOT != null;
+
+	private VectorKernels() {
+	}
+
+	static float dot(float[] a, float[] b) {
+		if (SIMD_DOT == null) {
+			return scalarDot(a, b);
+		}
+		try {
+			return (float) SIMD_DOT.invokeExact(a, b);
+		}
+		catch (Throwable e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	static float scalarDot(float[] a, float[] b) {
+		float dot = 0;
+		for (int i = 0; i < a.length; i++) {
+			dot += a[i] * b[i];
+		}
+		return dot;
+	}
+
+	/**
+	 * Looks up the Vector API kernel, the SimdVectorKernels class being only
+	 * loaded when the module is there.
+	 */
+	private static MethodHandle simdDot() {
+		if (ModuleLayer.boot().findModule("jdk.incubator.vector").isEmpty()) {
+			return null;
+		}
+		try {
+			return MethodHandles.lookup()
+				.findStatic(Class.forName("spring.ai.philoagents.override.SimdVectorKernels"), "dot",
+						MethodType.methodType(float.class, float[].class, float[].class));
+		}
+		catch (ReflectiveOperationException e) {
+			// built without the vector-api profile
+			return null;
+		}
+	}
+
+}
@@ -0,0 +1,202 @@
+package spring.ai.philoagents.repository;
+
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.springframework.ai.document.Document;
+import org.springframework.ai.transformers.ResourceCacheService;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import ai.djl.huggingface.tokenizers.Encoding;
+import ai.djl.huggingface.tokenizers.HuggingFaceTokenizer;
+import ai.onnxruntime.OnnxTensor;
+import ai.onnxruntime.OrtEnvironment;
+import ai.onnxruntime.OrtException;
+import ai.onnxruntime.OrtSession;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import spring.ai.philoagents.override.SearchTuning;
+
+/**
+ * In-process cross-encoder scoring the (query, passage) pairs of the retrieved
+ * candidates with a small ONNX model, the MS MARCO MiniLM one by default, in
+ * batches. The passages scoring under the cut-off are dropped: the cut-off
+ * learned by the {@code SearchTuningRunner} when the tuning file has one, the
+ * configured one otherwise.
+ */
+@Component
+@ConditionalOnProperty(name = "philoagents.retrieval.rerank.enabled", havingValue = "true")
+@Slf4j
+public class CrossEncoderReranker implements DisposableBean {
+
+    private static final List<String> INPUT_NAMES = List.of("input_ids", "attention_mask", "token_type_ids");
+
+    private final HuggingFaceTokenizer tokenizer;
+    private final OrtEnvironment environment;
+    private final OrtSession session;
+    private final int batchSize;
+    private final int candidates;
+    private final double cutoff;
+    private final MeterRegistry meterRegistry;
+
+    /** A passage with its cross-encoder score, the probability of its relevance. */
+    public record Scored(Document document, double score) {}
+
+    public CrossEncoderReranker(SearchTuning searchTuning, MeterRegistry meterRegistry,
+            @Value("${philoagents.retrieval.rerank.model-uri:https://huggingface.co/Xenova/ms-marco-MiniLM-L-6-v2/resolve/main/onnx/model.onnx}") String modelUri,
+            @Value("${philoagents.retrieval.rerank.tokenizer-uri:https://huggingface.co/Xenova/ms-marco-MiniLM-L-6-v2/resolve/main/tokenizer.json}") String tokenizerUri,
+            @Value("${spring.ai.embedding.transformer.cache.directory:./embedding-cache}") String cacheDirectory,
+            @Value("${philoagents.retrieval.rerank.maxlength:256}") int maxLength,
+            @Value("${philoagents.retrieval.rerank.batchsize:16}") int batchSize,
+            @Value("${philoagents.retrieval.rerank.candidates:20}") int candidates,
+            @Value("${philoagents.retrieval.rerank.cutoff:0.5}") double cutoff) throws Exception {
+        var cache = new ResourceCacheService(cacheDirectory);
+        try (InputStream tokenizerStream = cache.getCachedResource(tokenizerUri).getInputStream()) {
+            this.tokenizer = HuggingFaceTokenizer.newInstance(tokenizerStream,
+                    Map.of("truncation", "true", "padding", "false", "maxLength", String.valueOf(maxLength)));
+        }
+        this.environment = OrtEnvironment.getEnvironment();
+        this.session = environment.createSession(cache.getCachedResource(modelUri).getFile().getAbsolutePath(),
+                new OrtSession.SessionOptions());
+        this.batchSize = batchSize;
+        this.candidates = candidates;
+        Double learned = searchTuning.tuning().rerankCutoff();
+        this.cutoff = learned != null ? learned : cutoff;
+        this.meterRegistry = meterRegistry;
+        log.info("Reranking {} candidates by batches of {} with {}, cut-off {}{}", candidates, batchSize, modelUri,
+                this.cutoff, learned != null ? " (learned)" : "");
+    }
+
+    /** @return the number of candidates to retrieve for the reranking */
+    public int candidates() {
+        return candidates;
+    }
+
+    /**
+     * Reranks passages and keeps the best ones above the cut-off.
+     *
+     * @param query     the query
+     * @param documents the candidate passages
+     * @param topK      the maximum number of passages
+     * @return the passages above the cut-off, best first, with their
+     *         cross-encoder score
+     */
+    public List<Document> rerank(String query, List<Document> documents, int topK) {
+        return score(query, documents).stream()
+                .filter(scored -> scored.score() >= cutoff)
+                .sorted(Comparator.comparingDouble(Scored::score).reversed())
+                .limit(topK)
+                .map(scored -> scored.document().mutate().score(scored.score()).build())
+                .toList();
+    }
+
+    /**
+     * Scores passages against a query, by batches.
+     *
+     * @param query     the query
+     * @param documents the passages
+     * @return the passages with their score, in the order of the passages
+     */
+    public List<Scored> score(String query, List<Document> documents) {
+        List<Scored> scored = new ArrayList<>(documents.size());
+        for (int from = 0; from < documents.size(); from += batchSize) {
+            List<Document> batch = documents.subList(from, Math.min(from + batchSize, documents.size()));
+            long start = System.nanoTime();
+            float[] scores = scoreBatch(query, batch);
+            Timer.builder("philoagents.retrieval.rerank.batch")
+                    .description("Latency of the cross-encoder by batch size")
+                    .tag("size", String.valueOf(batch.size()))
+                    .publishPercentileHistogram()
+                    .register(meterRegistry)
+                    .record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+            for (int i = 0; i < batch.size(); i++) {
+                scored.add(new Scored(batch.get(i), scores[i]));
+            }
+        }
+        return scored;
+    }
+
+    private float[] scoreBatch(String query, List<Document> batch) {
+        Encoding[] encodings = new Encoding[batch.size()];
+        int length = 0;
+        for (int i = 0; i < batch.size(); i++) {
+            encodings[i] = tokenizer.encode(query, batch.get(i).getText());
+            length = Math.max(length, encodings[i].getIds().length);
+        }
+        // padded to the longest pair of the batch
+        long[][] ids = new long[batch.size()][length];
+        long[][] attentionMask = new long[batch.size()][length];
+        long[][] typeIds = new long[batch.size()][length];
+        for (int i = 0; i < encodings.length; i++) {
+            System.arraycopy(encodings[i].getIds(), 0, ids[i], 0, encodings[i].getIds().length);
+            System.arraycopy(encodings[i].getAttentionMask(), 0, attentionMask[i], 0,
+                    encodings[i].getAttentionMask().length);
+            System.arraycopy(encodings[i].getTypeIds(), 0, typeIds[i], 0, encodings[i].getTypeIds().length);
+        }
+        Map<String, OnnxTensor> inputs = new HashMap<>();
+        try {
+            for (String name : INPUT_NAMES) {
+                if (session.getInputNames().contains(name)) {
+                    long[][] values = switch (name) {
+                        case "input_ids" -> ids;
+                        case "attention_mask" -> attentionMask;
+                        default -> typeIds;
+                    };
+                    inputs.put(name, OnnxTensor.createTensor(environment, values));
+                }
+            }
+            try (OrtSession.Result result = session.run(inputs)) {
+                float[][] logits = (float[][]) result.get(0).getValue();
+                float[] scores = new float[logits.length];
+                for (int i = 0; i < logits.length; i++) {
+                    scores[i] = (float) (1 / (1 + Math.exp(-logits[i][0])));
+                }
+                return scores;
+            }
+        } catch (OrtException e) {
+            throw new IllegalStateException("Unable to run the cross-encoder", e);
+        } finally {
+            inputs.values().forEach(OnnxTensor::close);
+        }
+    }
+
+    /**
+     * Learns the cut-off separating relevant from irrelevant passages: the score
+     * maximizing the F1 of keeping the relevant ones.
+     *
+     * @param relevant   the scores of relevant passages
+     * @param irrelevant the scores of irrelevant passages
+     * @return the cut-off, one of the relevant scores
+     */
+    public static double learnCutoff(List<Double> relevant, List<Double> irrelevant) {
+        double best = 0.5;
+        double bestF1 = -1;
+        for (double candidate : relevant) {
+            long truePositives = relevant.stream().filter(score -> score >= candidate).count();
+            long falsePositives = irrelevant.stream().filter(score -> score >= candidate).count();
+            double precision = truePositives / (double) (truePositives + falsePositives);
+            double recall = truePositives / (double) relevant.size();
+            double f1 = 2 * precision * recall / (precision + recall);
+            if (f1 > bestF1 || f1 == bestF1 && candidate > best) {
+                bestF1 = f1;
+                best = candidate;
+            }
+        }
+        return best;
+    }
+
+    @Override
+    public void destroy() throws Exception {
+        session.close();
+        tokenizer.close();
+    }
+}
@@ -0,0 +1,206 @@
+package spring.ai.philoagents.repository;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import org.springframework.ai.document.Document;
+
+/**
+ * In-memory BM25 inverted index over the chunk text, with one partition per
+ * philosopher so that a search only scores the chunks of the philosopher of
+ * the conversation. Terms are the lower-cased words of the text, without the
+ * English stop words and the plural {@code s}, which is enough for the named
+ * concepts (the Chinese Room, the cave) the vector search misses.
+ */
+public class LexicalIndex {
+
+    private static final double K1 = 1.2;
+    private static final double B = 0.75;
+
+    private static final Set<String> STOP_WORDS = Set.of("a", "an", "and", "are", "as", "at", "be", "but", "by",
+            "did", "do", "does", "for", "from", "had", "has", "have", "he", "her", "his", "how", "i", "in", "is",
+            "it", "its", "me", "my", "of", "on", "or", "she", "so", "that", "the", "their", "them", "there", "they",
+            "this", "to", "was", "we", "were", "what", "when", "where", "which", "who", "why", "with", "you", "your");
+
+    private final String partitionKey;
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private final Map<String, Partition> partitions = new HashMap<>();
+    private final Map<String, String> partitionsById = new HashMap<>();
+
+    private record Entry(Document document, Map<String, Integer> termFrequencies, int length) {}
+
+    private static class Partition {
+
+        private final Map<String, Entry> entries = new HashMap<>();
+        private final Map<String, Set<String>> postings = new HashMap<>();
+        private long totalLength;
+
+        private void add(String id, Entry entry) {
+            entries.put(id, entry);
+            totalLength += entry.length();
+            entry.termFrequencies().keySet()
+                    .forEach(term -> postings.computeIfAbsent(term, t -> new HashSet<>()).add(id));
+        }
+
+        private void remove(String id) {
+            Entry entry = entries.remove(id);
+            if (entry == null) {
+                return;
+            }
+            totalLength -= entry.length();
+            for (String term : entry.termFrequencies().keySet()) {
+                Set<String> ids = postings.get(term);
+                ids.remove(id);
+                if (ids.isEmpty()) {
+                    postings.remove(term);
+                }
+            }
+        }
+    }
+
+    /**
+     * @param partitionKey the metadata key of the philosopher of a chunk
+     */
+    public LexicalIndex(String partitionKey) {
+        this.partitionKey = partitionKey;
+    }
+
+    /**
+     * Indexes chunks, replacing the chunks with the same id.
+     *
+     * @param documents the chunks, with their text and metadata
+     */
+    public void add(Collection<Document> documents) {
+        lock.writeLock().lock();
+        try {
+            for (Document document : documents) {
+                if (document.getText() == null) {
+                    continue;
+                }
+                remove(document.getId());
+                List<String> terms = terms(document.getText());
+                Map<String, Integer> termFrequencies = new HashMap<>();
+                terms.forEach(term -> termFrequencies.merge(term, 1, Integer::sum));
+                String partition = String.valueOf(document.getMetadata().get(partitionKey));
+                partitions.computeIfAbsent(partition, p -> new Partition())
+                        .add(document.getId(), new Entry(document, termFrequencies, terms.size()));
+                partitionsById.put(document.getId(), partition);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Removes chunks from the index.
+     *
+     * @param ids the ids of the chunks
+     */
+    public void remove(Collection<String> ids) {
+        lock.writeLock().lock();
+        try {
+            ids.forEach(this::remove);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private void remove(String id) {
+        String partition = partitionsById.remove(id);
+        if (partition != null) {
+            partitions.get(partition).remove(id);
+        }
+    }
+
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return partitionsById.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Searches the chunks of a philosopher, or of all the philosophers.
+     *
+     * @param query     the query text
+     * @param partition the philosopher, null to search every partition
+     * @param topK      the number of chunks
+     * @return the chunks containing query terms, best BM25 score first, the score
+     *         set on the returned documents
+     */
+    public List<Document> search(String query, String partition, int topK) {
+        Set<String> queryTerms = new LinkedHashSet<>(terms(query));
+        if (queryTerms.isEmpty()) {
+            return List.of();
+        }
+        lock.readLock().lock();
+        try {
+            Collection<Partition> searched = partition != null
+                    ? (partitions.containsKey(partition) ? List.of(partitions.get(partition)) : List.of())
+                    : partitions.values();
+            List<Document> results = new ArrayList<>();
+            for (Partition searchedPartition : searched) {
+                score(searchedPartition, queryTerms).entrySet().stream()
+                        .map(scored -> searchedPartition.entries.get(scored.getKey()).document().mutate()
+                                .score(scored.getValue())
+                                .build())
+                        .forEach(results::add);
+            }
+            results.sort(Comparator.comparing(Document::getScore).reversed());
+            return results.size() > topK ? List.copyOf(results.subList(0, topK)) : results;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private static Map<String, Double> score(Partition partition, Set<String> queryTerms) {
+        Map<String, Double> scores = new HashMap<>();
+        int documents = partition.entries.size();
+        double averageLength = documents == 0 ? 0 : (double) partition.totalLength / documents;
+        for (String term : queryTerms) {
+            Set<String> ids = partition.postings.get(term);
+            if (ids == null) {
+                continue;
+            }
+            double idf = Math.log(1 + (documents - ids.size() + 0.5) / (ids.size() + 0.5));
+            for (String id : ids) {
+                Entry entry = partition.entries.get(id);
+                int frequency = entry.termFrequencies().get(term);
+                double norm = K1 * (1 - B + B * entry.length() / averageLength);
+                scores.merge(id, idf * frequency * (K1 + 1) / (frequency + norm), Double::sum);
+            }
+        }
+        return scores;
+    }
+
+    /**
+     * Splits a text into its index terms.
+     *
+     * @param text the text
+     * @return the terms, in the order of the text
+     */
+    static List<String> terms(String text) {
+        List<String> terms = new ArrayList<>();
+        for (String word : text.toLowerCase(Locale.ROOT).split("[^\\p{L}\\p{N}]+")) {
+            if (word.isEmpty() || STOP_WORDS.contains(word)) {
+                continue;
+            }
+            if (word.length() > 3 && word.endsWith("s") && !word.endsWith("ss")) {
+                word = word.substring(0, word.length() - 1);
+            }
+            terms.add(word);
+        }
+        return terms;
+    }
+}
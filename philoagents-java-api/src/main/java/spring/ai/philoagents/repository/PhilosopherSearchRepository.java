@@ -1,15 +1,56 @@
 package spring.ai.philoagents.repository;
 
 import java.util.List;
+import java.util.Map;
+
 import org.springframework.ai.vectorstore.SearchRequest;
+import org.springframework.ai.vectorstore.filter.Filter;
 import org.springframework.ai.document.Document;
 
+import reactor.core.publisher.Flux;
+import spring.ai.philoagents.override.ChunkVersionStore.ChunkVersion;
+
 public interface PhilosopherSearchRepository {
 
+    /**
+     * The documents found for a request of a batch.
+     *
+     * @param index     the index of the request in the batch
+     * @param documents the documents found
+     */
+    record BatchResult(int index, List<Document> documents) {}
+
     void addDocuments(List<Document> docs);
 
     void deleteDocuments(List<String> ids);
 
+    void deleteDocuments(Filter.Expression filterExpression);
+
+    /**
+     * Returns the versions of the stored chunks matching a filter, empty when the
+     * vector store does not keep them.
+     */
+    Map<String, ChunkVersion> findChunkVersions(Filter.Expression filterExpression);
+
     List<Document> semanticSearchByQuery(SearchRequest searchRequest);
 
+    /**
+     * Searches a batch of requests with the vector store: the queries are
+     * embedded in a single call, then the searches run concurrently, or combined
+     * in {@code $unionWith} aggregations.
+     *
+     * @param searchRequests the search requests
+     * @return the results, emitted as the searches complete and not in the order
+     *         of the requests
+     */
+    Flux<BatchResult> semanticSearchByQueries(List<SearchRequest> searchRequests);
+
+    /**
+     * Searches the request with the vector store and, when the hybrid retrieval
+     * is enabled, with the BM25 index of the chunk text of the philosopher of the
+     * filter, both rankings merged by reciprocal rank fusion. The similarity
+     * threshold only applies to the vector search.
+     */
+    List<Document> hybridSearchByQuery(SearchRequest searchRequest);
+
 }
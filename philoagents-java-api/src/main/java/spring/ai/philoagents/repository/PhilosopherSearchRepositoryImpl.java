@@ -1,28 +1,153 @@
 package spring.ai.philoagents.repository;
 
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
 import org.springframework.ai.document.Document;
 import org.springframework.ai.vectorstore.SearchRequest;
 import org.springframework.ai.vectorstore.VectorStore;
+import org.springframework.ai.vectorstore.filter.Filter;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.ApplicationListener;
+import org.springframework.lang.Nullable;
 import org.springframework.stereotype.Repository;
 
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+import spring.ai.philoagents.override.BatchSimilaritySearch;
+import spring.ai.philoagents.override.ChunkTextStore;
+import spring.ai.philoagents.override.ChunkVersionStore;
+import spring.ai.philoagents.override.ChunkVersionStore.ChunkVersion;
+import spring.ai.philoagents.override.FilterPartitions;
+
 @Repository
-public class PhilosopherSearchRepositoryImpl implements PhilosopherSearchRepository {
+@Slf4j
+public class PhilosopherSearchRepositoryImpl implements PhilosopherSearchRepository,
+        ApplicationListener<ApplicationReadyEvent>, DisposableBean {
 
     private final VectorStore vectorStore;
+    private final MeterRegistry meterRegistry;
+    private final boolean hybrid;
+    private final int candidates;
+    private final int rrfK;
+    private final String partitionKey;
+    private final LexicalIndex lexicalIndex;
+    private final ExecutorService executor;
+    private final int batchParallelism;
+    private final boolean batchUnionWith;
+    private final int batchUnionSize;
+    private final CrossEncoderReranker reranker;
+    private volatile boolean lexicalIndexReady;
 
-    public PhilosopherSearchRepositoryImpl(VectorStore vectorStore) {
+    public PhilosopherSearchRepositoryImpl(VectorStore vectorStore, MeterRegistry meterRegistry,
+            @Value("${philoagents.retrieval.hybrid.enabled:false}") boolean hybrid,
+            @Value("${philoagents.retrieval.hybrid.candidates:10}") int candidates,
+            @Value("${philoagents.retrieval.hybrid.rrfk:60}") int rrfK,
+            @Value("${philoagents.retrieval.hybrid.partitionkey:philosopher_name}") String partitionKey,
+            @Value("${philoagents.retrieval.hybrid.threads:8}") int threads,
+            @Value("${philoagents.query.batch.parallelism:8}") int batchParallelism,
+            @Value("${philoagents.query.batch.mode:concurrent}") String batchMode,
+            @Value("${philoagents.query.batch.unionsize:8}") int batchUnionSize,
+            @Nullable CrossEncoderReranker reranker) {
         this.vectorStore = vectorStore;
+        this.meterRegistry = meterRegistry;
+        this.hybrid = hybrid;
+        this.candidates = candidates;
+        this.rrfK = rrfK;
+        this.partitionKey = partitionKey;
+        this.lexicalIndex = new LexicalIndex(partitionKey);
+        this.batchParallelism = batchParallelism;
+        this.batchUnionWith = "unionwith".equalsIgnoreCase(batchMode);
+        this.batchUnionSize = batchUnionSize;
+        this.reranker = reranker;
+        this.executor = Executors.newFixedThreadPool(threads, r -> {
+            Thread thread = new Thread(r, "hybrid-retrieval");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Loads the chunks of the vector store into the lexical index in the
+     * background, the searches only use the vector store until it is loaded.
+     */
+    @Override
+    public void onApplicationEvent(ApplicationReadyEvent event) {
+        if (!hybrid) {
+            return;
+        }
+        if (!(vectorStore instanceof ChunkTextStore chunkTextStore)) {
+            log.warn("The vector store cannot list its chunks, the hybrid retrieval only uses the vector search");
+            return;
+        }
+        executor.execute(() -> {
+            long start = System.nanoTime();
+            try {
+                List<Document> batch = new ArrayList<>();
+                chunkTextStore.forEachChunk(chunk -> {
+                    batch.add(chunk);
+                    if (batch.size() == 1000) {
+                        lexicalIndex.add(batch);
+                        batch.clear();
+                    }
+                });
+                lexicalIndex.add(batch);
+                lexicalIndexReady = true;
+                log.info("Loaded {} chunks in the lexical index in {} ms", lexicalIndex.size(),
+                        (System.nanoTime() - start) / 1_000_000);
+            } catch (RuntimeException e) {
+                log.error("Unable to load the lexical index, the hybrid retrieval only uses the vector search", e);
+            }
+        });
     }
 
     @Override
     public void addDocuments(List<Document> docs) {
         vectorStore.add(docs);
+        if (hybrid) {
+            lexicalIndex.add(docs);
+        }
     }
 
     @Override
     public void deleteDocuments(List<String> ids) {
         vectorStore.delete(ids);
+        if (hybrid) {
+            lexicalIndex.remove(ids);
+        }
+    }
+
+    @Override
+    public void deleteDocuments(Filter.Expression filterExpression) {
+        // the lexical index does not evaluate filters, the matching ids are read first
+        Collection<String> ids = hybrid ? findChunkVersions(filterExpression).keySet() : List.of();
+        vectorStore.delete(filterExpression);
+        lexicalIndex.remove(ids);
+    }
+
+    @Override
+    public Map<String, ChunkVersion> findChunkVersions(Filter.Expression filterExpression) {
+        if (vectorStore instanceof ChunkVersionStore chunkVersionStore) {
+            return chunkVersionStore.findChunkVersions(filterExpression);
+        }
+        return Map.of();
     }
 
     @Override
@@ -30,4 +155,137 @@ public class PhilosopherSearchRepositoryImpl implements PhilosopherSearchReposit
         return vectorStore.similaritySearch(searchRequest);
     }
 
+    @Override
+    public Flux<BatchResult> semanticSearchByQueries(List<SearchRequest> searchRequests) {
+        if (!(vectorStore instanceof BatchSimilaritySearch batchSearch)) {
+            return Flux.range(0, searchRequests.size())
+                    .flatMap(i -> blocking(() -> new BatchResult(i, semanticSearchByQuery(searchRequests.get(i)))),
+                            batchParallelism);
+        }
+        return blocking(() -> batchSearch.embedQueries(searchRequests.stream().map(SearchRequest::getQuery).toList()))
+                .flatMapMany(embeddings -> {
+                    if (!batchUnionWith) {
+                        return Flux.range(0, searchRequests.size())
+                                .flatMap(i -> blocking(() -> new BatchResult(i,
+                                        batchSearch.similaritySearch(searchRequests.get(i), embeddings.get(i)))),
+                                        batchParallelism);
+                    }
+                    return Flux.range(0, (searchRequests.size() + batchUnionSize - 1) / batchUnionSize)
+                            .flatMap(group -> {
+                                int from = group * batchUnionSize;
+                                int to = Math.min(from + batchUnionSize, searchRequests.size());
+                                return blocking(() -> batchSearch.similaritySearch(searchRequests.subList(from, to),
+                                        embeddings.subList(from, to)))
+                                        .flatMapIterable(results -> {
+                                            List<BatchResult> batchResults = new ArrayList<>(results.size());
+                                            for (int i = 0; i < results.size(); i++) {
+                                                batchResults.add(new BatchResult(from + i, results.get(i)));
+                                            }
+                                            return batchResults;
+                                        });
+                            }, batchParallelism);
+                });
+    }
+
+    private static <T> Mono<T> blocking(Supplier<T> search) {
+        return Mono.fromSupplier(search).subscribeOn(Schedulers.boundedElastic());
+    }
+
+    /**
+     * Retrieves the candidates with the vector and lexical searches, then, with
+     * the reranker, reranks a wider candidate set without the similarity
+     * threshold and keeps the best passages above the cut-off of the reranker.
+     */
+    @Override
+    public List<Document> hybridSearchByQuery(SearchRequest searchRequest) {
+        if (reranker == null) {
+            return retrieve(searchRequest);
+        }
+        List<Document> candidates = retrieve(SearchRequest.from(searchRequest)
+                .topK(Math.max(searchRequest.getTopK(), reranker.candidates()))
+                .similarityThresholdAll()
+                .build());
+        List<Document> reranked = timed("rerank",
+                () -> reranker.rerank(searchRequest.getQuery(), candidates, searchRequest.getTopK()));
+        meterRegistry.summary("philoagents.retrieval.rerank.kept").record(reranked.size());
+        return reranked;
+    }
+
+    private List<Document> retrieve(SearchRequest searchRequest) {
+        if (!hybrid || !lexicalIndexReady) {
+            return semanticSearchByQuery(searchRequest);
+        }
+        int legTopK = Math.max(searchRequest.getTopK(), candidates);
+        var vectorLeg = CompletableFuture.supplyAsync(() -> timed("vector",
+                () -> semanticSearchByQuery(SearchRequest.from(searchRequest).topK(legTopK).build())), executor);
+        List<Document> lexical = timed("lexical", () -> lexicalIndex.search(searchRequest.getQuery(),
+                partitionOf(searchRequest.getFilterExpression()), legTopK));
+        List<Document> vector = vectorLeg.join();
+        List<Document> fused = fuse(vector, lexical, rrfK, searchRequest.getTopK());
+        fused.forEach(document -> meterRegistry.counter("philoagents.retrieval.hybrid.documents", "leg",
+                legOf(document, vector, lexical)).increment());
+        return fused;
+    }
+
+    /**
+     * Merges two rankings with reciprocal rank fusion: a document scores
+     * {@code 1 / (k + rank)} in every ranking it appears in.
+     *
+     * @param vector  the vector search results, best first
+     * @param lexical the lexical search results, best first
+     * @param k       the rank constant, damping the weight of the first ranks
+     * @param topK    the number of documents
+     * @return the fused documents, best first, with their fused score
+     */
+    static List<Document> fuse(List<Document> vector, List<Document> lexical, int k, int topK) {
+        Map<String, Document> documents = new LinkedHashMap<>();
+        Map<String, Double> scores = new HashMap<>();
+        for (List<Document> ranking : List.of(vector, lexical)) {
+            for (int rank = 0; rank < ranking.size(); rank++) {
+                Document document = ranking.get(rank);
+                // the vector results keep their metadata, with the distance
+                documents.putIfAbsent(document.getId(), document);
+                scores.merge(document.getId(), 1.0 / (k + rank + 1), Double::sum);
+            }
+        }
+        return documents.values().stream()
+                .sorted(Comparator.comparing((Document document) -> scores.get(document.getId())).reversed())
+                .limit(topK)
+                .map(document -> document.mutate().score(scores.get(document.getId())).build())
+                .toList();
+    }
+
+    /**
+     * Returns the philosopher of a filter on the partition key, alone or in a
+     * conjunction.
+     */
+    private String partitionOf(Filter.Expression filterExpression) {
+        Set<String> partitions = FilterPartitions.valuesOf(filterExpression, partitionKey);
+        return partitions != null && partitions.size() == 1 ? partitions.iterator().next() : null;
+    }
+
+    private static String legOf(Document document, List<Document> vector, List<Document> lexical) {
+        boolean inVector = vector.stream().anyMatch(d -> d.getId().equals(document.getId()));
+        boolean inLexical = lexical.stream().anyMatch(d -> d.getId().equals(document.getId()));
+        return inVector && inLexical ? "both" : inVector ? "vector" : "lexical";
+    }
+
+    private <T> T timed(String leg, Supplier<T> search) {
+        long start = System.nanoTime();
+        try {
+            return search.get();
+        } finally {
+            Timer.builder("philoagents.retrieval.hybrid")
+                    .description("Latency of the legs of the hybrid retrieval")
+                    .tag("leg", leg)
+                    .register(meterRegistry)
+                    .record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    @Override
+    public void destroy() {
+        executor.shutdownNow();
+    }
+
 }
@@ -0,0 +1,101 @@
+package spring.ai.philoagents.services;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Prompt template parsed once into literal segments and variables, so that
+ * rendering is a plain concatenation. Variables are written {@code {name}} or
+ * {@code {{name}}}, as in the prompt resources. A template can be partially
+ * bound, e.g. to the static persona of a philosopher, leaving the per turn
+ * variables to the render.
+ */
+public final class CompiledPrompt {
+
+    private static final Pattern VARIABLE = Pattern.compile("\\{\\{(\\w+)\\}\\}|\\{(\\w+)\\}");
+
+    /** Literal segments are strings, variables are {@link Variable} instances. */
+    private final List<Object> segments;
+
+    private record Variable(String name) {}
+
+    private CompiledPrompt(List<Object> segments) {
+        this.segments = List.copyOf(segments);
+    }
+
+    /**
+     * Parses a template.
+     *
+     * @param template the template text
+     * @return the compiled template
+     */
+    public static CompiledPrompt compile(String template) {
+        List<Object> segments = new ArrayList<>();
+        Matcher matcher = VARIABLE.matcher(template);
+        int end = 0;
+        while (matcher.find()) {
+            if (matcher.start() > end) {
+                segments.add(template.substring(end, matcher.start()));
+            }
+            segments.add(new Variable(matcher.group(1) != null ? matcher.group(1) : matcher.group(2)));
+            end = matcher.end();
+        }
+        if (end < template.length()) {
+            segments.add(template.substring(end));
+        }
+        return new CompiledPrompt(segments);
+    }
+
+    /**
+     * Binds some variables, merging the literal segments around them.
+     *
+     * @param values the values of the variables to bind
+     * @return the partially rendered template
+     */
+    public CompiledPrompt bind(Map<String, ?> values) {
+        List<Object> bound = new ArrayList<>();
+        StringBuilder literal = new StringBuilder();
+        for (Object segment : segments) {
+            if (!(segment instanceof Variable variable)) {
+                literal.append((String) segment);
+            } else if (values.containsKey(variable.name())) {
+                literal.append(valueOf(values.get(variable.name())));
+            } else {
+                if (literal.length() > 0) {
+                    bound.add(literal.toString());
+                    literal.setLength(0);
+                }
+                bound.add(variable);
+            }
+        }
+        if (literal.length() > 0) {
+            bound.add(literal.toString());
+        }
+        return new CompiledPrompt(bound);
+    }
+
+    /**
+     * Renders the template, missing variables render as empty strings.
+     *
+     * @param values the values of the remaining variables
+     * @return the prompt text
+     */
+    public String render(Map<String, ?> values) {
+        StringBuilder text = new StringBuilder(256);
+        for (Object segment : segments) {
+            if (segment instanceof Variable variable) {
+                text.append(valueOf(values.get(variable.name())));
+            } else {
+                text.append((String) segment);
+            }
+        }
+        return text.toString();
+    }
+
+    private static String valueOf(Object value) {
+        return value == null ? "" : value.toString();
+    }
+}
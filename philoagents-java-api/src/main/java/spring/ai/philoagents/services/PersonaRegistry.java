@@ -0,0 +1,203 @@
+package spring.ai.philoagents.services;
+
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
+
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.Resource;
+import org.springframework.stereotype.Component;
+
+import lombok.extern.slf4j.Slf4j;
+import spring.ai.philoagents.entities.Philosopher;
+import spring.ai.philoagents.entities.PhilosopherFactory;
+import spring.ai.philoagents.workflow.PhilosopherState;
+
+/**
+ * Startup built registry of the philosopher personas and of their prompts.
+ * The prompt templates are compiled once, and the persona of every philosopher
+ * is pre-rendered into its own prompts, so that a turn only fills in the
+ * conversation summary. The personas can be reloaded from
+ * {@code philoagents.personas.location} without restarting, the reload
+ * listeners then get the new philosophers; the returned philosophers are
+ * immutable and shared.
+ */
+@Component
+@Slf4j
+public class PersonaRegistry implements InitializingBean {
+
+    private static final String PHILOSOPHER_NAME = "philosopher_name";
+    private static final String PHILOSOPHER_PERSPECTIVE = "philosopher_perspective";
+    private static final String PHILOSOPHER_STYLE = "philosopher_style";
+    private static final String SUMMARY = "summary";
+
+    private final Resource personas;
+    private final CompiledPrompt philosopherResponse;
+    private final CompiledPrompt conversationSummary;
+    private final CompiledPrompt firstConversationSummary;
+    private final CompiledPrompt contextSummary;
+
+    /** Prompts of a philosopher, with the persona already rendered. */
+    record PersonaPrompts(Philosopher philosopher, CompiledPrompt philosopherResponse,
+            CompiledPrompt conversationSummary, CompiledPrompt firstConversationSummary) {}
+
+    /** Philosophers by lowercase id, in persona data file order. */
+    private volatile Map<String, Philosopher> philosophers = Map.of();
+
+    /** Prompts by philosopher id and lowercase name, the workflow state carries either. */
+    private volatile Map<String, PersonaPrompts> personaPrompts = Map.of();
+
+    private final List<Consumer<Collection<Philosopher>>> reloadListeners = new CopyOnWriteArrayList<>();
+
+    public PersonaRegistry(
+            @Value("${philoagents.personas.location:classpath:" + PhilosopherFactory.DEFAULT_PERSONAS + "}") Resource personas,
+            @Value("classpath:/prompts/philosopher_response.st") Resource philosopherResponse,
+            @Value("classpath:/prompts/conversation_summary.st") Resource conversationSummary,
+            @Value("classpath:/prompts/first_conversation_summary.st") Resource firstConversationSummary,
+            @Value("classpath:/prompts/context_summary.st") Resource contextSummary) throws IOException {
+        this.personas = personas;
+        this.philosopherResponse = compile(philosopherResponse);
+        this.conversationSummary = compile(conversationSummary);
+        this.firstConversationSummary = compile(firstConversationSummary);
+        this.contextSummary = compile(contextSummary);
+    }
+
+    @Override
+    public void afterPropertiesSet() throws IOException {
+        reload();
+    }
+
+    /**
+     * Reloads the personas and pre-renders their prompts. The running turns keep
+     * the prompts they already built.
+     *
+     * @return the ids of the loaded philosophers
+     * @throws IOException if the persona data file cannot be read
+     */
+    public synchronized List<String> reload() throws IOException {
+        Map<String, Philosopher> loaded;
+        try (var reader = new InputStreamReader(personas.getInputStream(), StandardCharsets.UTF_8)) {
+            loaded = PhilosopherFactory.load(reader);
+        }
+        Map<String, PersonaPrompts> prompts = new HashMap<>();
+        for (Philosopher philosopher : loaded.values()) {
+            Map<String, String> persona = Map.of(
+                    PHILOSOPHER_NAME, philosopher.getName(),
+                    PHILOSOPHER_PERSPECTIVE, philosopher.getPerspective(),
+                    PHILOSOPHER_STYLE, philosopher.getStyle());
+            var rendered = new PersonaPrompts(philosopher,
+                    philosopherResponse.bind(persona),
+                    conversationSummary.bind(persona),
+                    firstConversationSummary.bind(persona));
+            prompts.put(philosopher.getId(), rendered);
+            prompts.put(philosopher.getName().toLowerCase(), rendered);
+        }
+        philosophers = loaded;
+        personaPrompts = Map.copyOf(prompts);
+        log.info("Loaded {} philosopher personas from {}", loaded.size(), personas.getDescription());
+        reloadListeners.forEach(listener -> listener.accept(loaded.values()));
+        return List.copyOf(loaded.keySet());
+    }
+
+    /**
+     * Registers a listener called with the philosophers after every reload, e.g.
+     * to rebuild what derives from the personas.
+     *
+     * @param listener the listener
+     */
+    public void addReloadListener(Consumer<Collection<Philosopher>> listener) {
+        reloadListeners.add(listener);
+    }
+
+    /**
+     * Returns a philosopher by id, case insensitive.
+     *
+     * @param id the philosopher id
+     * @return the philosopher
+     * @throws IllegalArgumentException if no philosopher has this id
+     */
+    public Philosopher getPhilosopher(String id) {
+        Philosopher philosopher = philosophers.get(id);
+        if (philosopher != null) {
+            return philosopher;
+        }
+        String idLower = id.toLowerCase();
+        philosopher = philosophers.get(idLower);
+        if (philosopher == null) {
+            throw new IllegalArgumentException("Philosopher name not found: " + idLower);
+        }
+        return philosopher;
+    }
+
+    public List<String> getAvailablePhilosophers() {
+        return new ArrayList<>(philosophers.keySet());
+    }
+
+    public Collection<Philosopher> getPhilosophers() {
+        return philosophers.values();
+    }
+
+    /**
+     * Returns the system prompt of the philosopher answering the conversation.
+     *
+     * @param state the current state of the workflow
+     * @return the system prompt text
+     */
+    public String philosopherResponsePrompt(PhilosopherState state) {
+        PersonaPrompts prompts = personaPrompts(state);
+        if (prompts == null) {
+            return philosopherResponse.render(Map.of(
+                    PHILOSOPHER_NAME, state.getPN(),
+                    PHILOSOPHER_PERSPECTIVE, state.getPP(),
+                    PHILOSOPHER_STYLE, state.getPS(),
+                    SUMMARY, state.getSummary()));
+        }
+        return prompts.philosopherResponse().render(Map.of(SUMMARY, state.getSummary()));
+    }
+
+    /**
+     * Returns the prompt extending the conversation summary, or creating it when
+     * the conversation has no summary yet.
+     *
+     * @param state the current state of the workflow
+     * @return the summary prompt text
+     */
+    public String conversationSummaryPrompt(PhilosopherState state) {
+        String summary = state.getSummary();
+        boolean first = summary == null || summary.isEmpty();
+        PersonaPrompts prompts = personaPrompts(state);
+        if (prompts == null) {
+            var values = Map.of(PHILOSOPHER_NAME, state.getPN(), SUMMARY, first ? "" : summary);
+            return first ? firstConversationSummary.render(values) : conversationSummary.render(values);
+        }
+        return first ? prompts.firstConversationSummary().render(Map.of())
+                : prompts.conversationSummary().render(Map.of(SUMMARY, summary));
+    }
+
+    /**
+     * Returns the prompt summarizing the retrieved philosopher context.
+     *
+     * @param context the retrieved context
+     * @return the context summary prompt text
+     */
+    public String contextSummaryPrompt(String context) {
+        return contextSummary.render(Map.of(PhilosopherState.CONTEXT_KEY, context == null ? "" : context));
+    }
+
+    private PersonaPrompts personaPrompts(PhilosopherState state) {
+        String philosopher = state.getPN();
+        return philosopher == null ? null : personaPrompts.get(philosopher.toLowerCase());
+    }
+
+    private static CompiledPrompt compile(Resource template) throws IOException {
+        return CompiledPrompt.compile(template.getContentAsString(StandardCharsets.UTF_8));
+    }
+}
@@ -2,32 +2,36 @@ package spring.ai.philoagents.services;
 
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
 import java.util.stream.Collectors;
 
 import org.springframework.ai.chat.client.ChatClient;
 import org.springframework.ai.chat.client.advisor.api.Advisor;
-import org.springframework.ai.chat.memory.ChatMemory;
-import org.springframework.ai.chat.memory.ChatMemoryRepository;
+import org.springframework.ai.chat.messages.AssistantMessage;
 import org.springframework.ai.chat.messages.Message;
+import org.springframework.ai.chat.messages.SystemMessage;
+import org.springframework.ai.chat.messages.UserMessage;
+import org.springframework.ai.chat.metadata.ChatResponseMetadata;
 import org.springframework.ai.chat.model.ChatResponse;
+import org.springframework.ai.chat.model.Generation;
 import org.springframework.ai.chat.prompt.Prompt;
-import org.springframework.ai.chat.prompt.PromptTemplate;
-import org.springframework.ai.chat.prompt.SystemPromptTemplate;
 import org.springframework.ai.openai.OpenAiChatOptions;
 import org.springframework.ai.rag.advisor.RetrievalAugmentationAdvisor;
 import org.springframework.ai.rag.generation.augmentation.ContextualQueryAugmenter;
-import org.springframework.ai.rag.retrieval.search.VectorStoreDocumentRetriever;
+import org.springframework.ai.rag.retrieval.search.DocumentRetriever;
 import org.springframework.ai.vectorstore.SearchRequest;
 import org.springframework.ai.vectorstore.VectorStore;
 import org.springframework.ai.vectorstore.filter.FilterExpressionBuilder;
-import org.springframework.beans.factory.annotation.Value;
-import org.springframework.core.io.Resource;
 import org.springframework.stereotype.Service;
+import spring.ai.philoagents.override.SearchTuning;
 import spring.ai.philoagents.repository.PhilosopherSearchRepository;
 import spring.ai.philoagents.tools.RetrievePhilosopherContext;
+import spring.ai.philoagents.tools.SearchPhilosopherContext;
 import spring.ai.philoagents.workflow.PhilosopherState;
 
 import org.springframework.ai.document.Document;
+import reactor.core.publisher.Flux;
 
 @Service
 public class PhilosopherService {
@@ -38,67 +42,130 @@ public class PhilosopherService {
 
         // Currently, this service is empty, but it can be expanded as needed.
 
-        @Value("classpath:/prompts/philosopher_response.st")
-        private Resource philosopher_response_resource;
-
-        @Value("classpath:/prompts/conversation_summary.st")
-        private Resource conversation_summary_resource;
-
-        @Value("classpath:/prompts/context_summary.st")
-        private Resource context_summary_resource;
-
         private final VectorStore vectorStore;
         private final RetrievePhilosopherContext retrievePhilosopherContext;
         private final PhilosopherSearchRepository philosopherSearchRepository;
-        private final ChatMemoryRepository chatMemoryRepository;
         private final ChatClient chatClient;
+        private final TokenStreamRegistry tokenStreamRegistry;
+        private final SearchPhilosopherContext searchPhilosopherContext;
+        private final PersonaRegistry personaRegistry;
+        private final SearchTuning searchTuning;
 
         public PhilosopherService(VectorStore vectorStore, RetrievePhilosopherContext retrievePhilosopherContext,
                         PhilosopherSearchRepository philosopherSearchRepository,
-                        ChatMemoryRepository chatMemoryRepository,
-                        ChatClient chatClient) {
+                        ChatClient chatClient,
+                        TokenStreamRegistry tokenStreamRegistry,
+                        SearchPhilosopherContext searchPhilosopherContext,
+                        PersonaRegistry personaRegistry,
+                        SearchTuning searchTuning) {
                 this.vectorStore = vectorStore;
                 this.retrievePhilosopherContext = retrievePhilosopherContext;
+                this.searchPhilosopherContext = searchPhilosopherContext;
                 this.philosopherSearchRepository = philosopherSearchRepository;
-                this.chatMemoryRepository = chatMemoryRepository;
                 this.chatClient = chatClient;
+                this.tokenStreamRegistry = tokenStreamRegistry;
+                this.personaRegistry = personaRegistry;
+                this.searchTuning = searchTuning;
         }
 
         public ChatResponse getPhilosopherResponse(PhilosopherState state) throws Exception {
-                Message message = new SystemPromptTemplate(philosopher_response_resource).createMessage(
-                                Map.of("philosopher_name", state.getPN(), "philosopher_perspective", state.getPP(),
-                                                "philosopher_style",
-                                                state.getPS(), "summary", state.getSummary(), "messages",
-                                                state.messages()));
+                return getPhilosopherResponse(state, true);
+        }
+
+        /**
+         * Calls the chat model to answer the last message of the conversation.
+         *
+         * @param state         The current state of the workflow
+         * @param retrievalTool whether the model may ask for the philosopher context
+         *                      through the retrieval tool
+         * @return the chat response
+         */
+        public ChatResponse getPhilosopherResponse(PhilosopherState state, boolean retrievalTool) throws Exception {
+                var request = philosopherRequest(state);
+                if (retrievalTool) {
+                        request = request.tools(retrievePhilosopherContext);
+                }
+                return respond(request, state);
+        }
+
+        /**
+         * Calls the chat model to answer the last message of the conversation,
+         * offering a search tool that returns the philosopher passages inline, so
+         * that the model answers in the same exchange.
+         *
+         * @param state The current state of the workflow
+         * @return the chat response
+         */
+        public ChatResponse getPhilosopherResponseWithSearch(PhilosopherState state) throws Exception {
+                var request = philosopherRequest(state)
+                                .tools(searchPhilosopherContext)
+                                .toolContext(Map.of(PhilosopherState.PN_KEY, state.getPN()));
+                return respond(request, state);
+        }
+
+        private ChatClient.ChatClientRequestSpec philosopherRequest(PhilosopherState state) {
+                Message message = new SystemMessage(personaRegistry.philosopherResponsePrompt(state));
                 List<Message> promptMessages = new java.util.ArrayList<>();
                 promptMessages.add(message);
                 promptMessages.addAll(state.messages());
-                return chatClient.prompt(new Prompt(promptMessages))
-                                .advisors(a -> a.param(ChatMemory.CONVERSATION_ID, state.getConversationId()))
-                                .tools(retrievePhilosopherContext)
-                                .call().chatResponse();
+                return chatClient.prompt(new Prompt(promptMessages));
         }
 
-        public ChatResponse getConversationSummary(PhilosopherState state) throws Exception {
-                String summary = state.getSummary();
-                Message message;
-                if (summary == null || summary.isEmpty()) {
-                        message = new PromptTemplate(
-                                        "Create a summary of the conversation between {{philosopher_name}} and the user.\r\n"
-                                                        + //
-                                                        "The summary must be a short description of the conversation so far, but that also captures all the\r\n"
-                                                        + //
-                                                        "relevant information shared between {philosopher_name} and the user: ")
-                                        .createMessage(Map.of("philosopher_name", state.getPN()));
-                } else {
-                        message = new PromptTemplate(conversation_summary_resource)
-                                        .createMessage(Map.of("philosopher_name", state.getPN(), "summary", summary));
+        private ChatResponse respond(ChatClient.ChatClientRequestSpec request, PhilosopherState state) {
+                var tokenListener = tokenStreamRegistry.get(state.getStreamId());
+                if (tokenListener.isEmpty()) {
+                        return request.call().chatResponse();
                 }
+                return streamResponse(request.stream().chatResponse(), tokenListener.get());
+        }
+
+        /**
+         * Forwards the streamed tokens to the listener while they arrive and
+         * aggregates them into a single response.
+         * The tokens are held back while the answer can still be the "true" returned
+         * by the retrieval tool, which is a routing decision and not a reply.
+         *
+         * @param responses     the streamed chat responses
+         * @param tokenListener the consumer of the tokens
+         * @return the aggregated chat response
+         */
+        private ChatResponse streamResponse(Flux<ChatResponse> responses, Consumer<String> tokenListener) {
+                String toolDecision = Boolean.TRUE.toString();
+                StringBuilder text = new StringBuilder();
+                int[] forwarded = { 0 };
+                AtomicReference<ChatResponseMetadata> metadata = new AtomicReference<>();
+                responses.doOnNext(response -> {
+                        if (response.getMetadata() != null) {
+                                metadata.set(response.getMetadata());
+                        }
+                        if (response.getResult() == null || response.getResult().getOutput() == null) {
+                                return;
+                        }
+                        String token = response.getResult().getOutput().getText();
+                        if (token == null || token.isEmpty()) {
+                                return;
+                        }
+                        text.append(token);
+                        if (toolDecision.startsWith(text.toString())) {
+                                return;
+                        }
+                        tokenListener.accept(text.substring(forwarded[0]));
+                        forwarded[0] = text.length();
+                }).blockLast();
+                if (forwarded[0] < text.length() && !toolDecision.equals(text.toString())) {
+                        tokenListener.accept(text.substring(forwarded[0]));
+                }
+                var generations = List.of(new Generation(new AssistantMessage(text.toString())));
+                return metadata.get() == null ? new ChatResponse(generations)
+                                : new ChatResponse(generations, metadata.get());
+        }
+
+        public ChatResponse getConversationSummary(PhilosopherState state) throws Exception {
+                Message message = new UserMessage(personaRegistry.conversationSummaryPrompt(state));
                 List<Message> promptMessages = new java.util.ArrayList<>();
                 promptMessages.addAll(state.messages());
                 promptMessages.add(message);
                 return chatClient.prompt(new Prompt(promptMessages))
-                                .advisors(a -> a.param(ChatMemory.CONVERSATION_ID, state.getConversationId()))
                                 .call().chatResponse();
         }
 
@@ -108,21 +175,59 @@ public class PhilosopherService {
                                 .maxCompletionTokens(1024)
                                 .topP(1.0)
                                 .build();
-                Message message = new PromptTemplate(context_summary_resource)
-                                .createMessage(Map.of(PhilosopherState.CONTEXT_KEY, context));
+                Message message = new UserMessage(personaRegistry.contextSummaryPrompt(context));
                 return chatClient.prompt(new Prompt(message, options)).call().chatResponse();
         }
 
         public ChatResponse getPhilosopherContext(PhilosopherState state) throws Exception {
-                Advisor retrievalAugmentationAdvisor = RetrievalAugmentationAdvisor.builder().documentRetriever(
-                                VectorStoreDocumentRetriever.builder()
-                                                .similarityThreshold(0.80)
-                                                .topK(2)
-                                                .vectorStore(vectorStore)
-                                                .filterExpression(new FilterExpressionBuilder()
-                                                                .eq("philosopher_name", state.getPN())
-                                                                .build())
+                return getPhilosopherContext(state, query -> philosopherSearchRepository
+                                .hybridSearchByQuery(contextSearchRequest(state, query.text())));
+        }
+
+        /**
+         * Same as {@link #getPhilosopherContext(PhilosopherState)}, using documents that
+         * were already retrieved (e.g. speculatively) instead of searching them again.
+         *
+         * @param state     The current state of the workflow
+         * @param documents The retrieved documents
+         * @return the chat response augmented with the documents
+         */
+        public ChatResponse getPhilosopherContext(PhilosopherState state, List<Document> documents)
+                        throws Exception {
+                return getPhilosopherContext(state, query -> documents);
+        }
+
+        /**
+         * Runs the same filtered search used to build the philosopher context, for
+         * the last message of the conversation.
+         *
+         * @param state The current state of the workflow
+         * @return the retrieved documents
+         */
+        public List<Document> searchPhilosopherContext(PhilosopherState state) {
+                Message lastMessage = state.lastMessage()
+                                .orElseThrow(() -> new IllegalArgumentException("No last message found"));
+                return philosopherSearchRepository
+                                .hybridSearchByQuery(contextSearchRequest(state, lastMessage.getText()));
+        }
+
+        private SearchRequest contextSearchRequest(PhilosopherState state, String query) {
+                // the context size and threshold tuned for the philosopher, the defaults otherwise
+                SearchTuning.Params params = searchTuning.params(state.getPN());
+                return SearchRequest.builder()
+                                .query(query)
+                                .similarityThreshold(params.similarityThreshold())
+                                .topK(params.topK())
+                                .filterExpression(new FilterExpressionBuilder()
+                                                .eq("philosopher_name", state.getPN())
                                                 .build())
+                                .build();
+        }
+
+        private ChatResponse getPhilosopherContext(PhilosopherState state, DocumentRetriever documentRetriever)
+                        throws Exception {
+                Advisor retrievalAugmentationAdvisor = RetrievalAugmentationAdvisor.builder()
+                                .documentRetriever(documentRetriever)
                                 .queryAugmenter(ContextualQueryAugmenter.builder()
                                                 .allowEmptyContext(true)
                                                 .build())
@@ -155,7 +260,6 @@ public class PhilosopherService {
                                 .orElseThrow(() -> new IllegalArgumentException("No last message found"));
                 return chatClient.prompt(new Prompt(lastMessage)).advisors(
                                 retrievalAugmentationAdvisor)
-                                .advisors(a -> a.param(ChatMemory.CONVERSATION_ID, state.getConversationId()))
                                 .call().chatResponse();
         }
 
@@ -196,21 +300,43 @@ public class PhilosopherService {
          *         metadata
          */
         public List<Map<String, Object>> searchPhilosopherInfosWithFilter(String query, String philosopher_name) {
-                SearchRequest request = SearchRequest.builder()
+                List<Document> results = philosopherSearchRepository
+                                .semanticSearchByQuery(philosopherInfosRequest(query, philosopher_name));
+
+                return toPhilosopherInfos(results);
+        }
+
+        /**
+         * Same as {@link #searchPhilosopherInfosWithFilter(String, String)} for a
+         * batch of queries, embedded together and searched concurrently.
+         *
+         * @param queries          The search queries
+         * @param philosopherNames The philosopher of every query
+         * @return the results of every query, by index of the query, emitted as the
+         *         searches complete
+         */
+        public Flux<Map.Entry<Integer, List<Map<String, Object>>>> searchPhilosopherInfosWithFilter(
+                        List<String> queries, List<String> philosopherNames) {
+                List<SearchRequest> requests = new java.util.ArrayList<>(queries.size());
+                for (int i = 0; i < queries.size(); i++) {
+                        requests.add(philosopherInfosRequest(queries.get(i), philosopherNames.get(i)));
+                }
+                return philosopherSearchRepository.semanticSearchByQueries(requests)
+                                .map(result -> Map.entry(result.index(), toPhilosopherInfos(result.documents())));
+        }
+
+        private static SearchRequest philosopherInfosRequest(String query, String philosopherName) {
+                return SearchRequest.builder()
                                 .query(query)
-                                .filterExpression("philosopher_name == '" + philosopher_name + "'")
+                                .filterExpression("philosopher_name == '" + philosopherName + "'")
                                 .topK(5)
                                 .similarityThreshold(0.50)
                                 .build();
+        }
 
-                List<Document> results = philosopherSearchRepository.semanticSearchByQuery(request);
-
+        private static List<Map<String, Object>> toPhilosopherInfos(List<Document> results) {
                 return results.stream()
-                                .map(doc -> Map.of("content", doc.getText(), "metadata", doc.getMetadata()))
+                                .map(doc -> Map.<String, Object>of("content", doc.getText(), "metadata", doc.getMetadata()))
                                 .collect(Collectors.toList());
         }
-
-        public void resetPhilosopherMemory(String philosopherId) {
-                chatMemoryRepository.deleteByConversationId(philosopherId);
-        }
 }
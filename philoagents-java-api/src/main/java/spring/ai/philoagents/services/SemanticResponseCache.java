@@ -0,0 +1,282 @@
+package spring.ai.philoagents.services;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+import org.springframework.ai.embedding.EmbeddingModel;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.index.Index;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.stereotype.Component;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Semantic cache of the philosopher answers, in front of the workflow graph.
+ * The user message is embedded with the local embedding model and compared
+ * with the questions already answered by the same philosopher, in the same
+ * summary bucket: a fresh conversation, or a conversation already summarized.
+ * Above {@code philoagents.cache.semantic.similarity} the cached answer is
+ * returned without running the graph.
+ * <p>
+ * Every philosopher and bucket keeps at most
+ * {@code philoagents.cache.semantic.maxentries} answers, evicted least recently
+ * used first, and answers expire after {@code philoagents.cache.semantic.ttl}.
+ * When {@code philoagents.cache.semantic.collection} is set, the answers are
+ * also written to that Mongo collection (with a TTL index) and loaded back at
+ * startup.
+ */
+@Component
+@Slf4j
+public class SemanticResponseCache implements InitializingBean {
+
+    public static final String FRESH_BUCKET = "fresh";
+    public static final String SUMMARIZED_BUCKET = "summarized";
+
+    private final EmbeddingModel embeddingModel;
+    private final MeterRegistry meterRegistry;
+    private final PersonaRegistry personaRegistry;
+    private final ObjectProvider<MongoTemplate> mongoTemplate;
+    private final boolean enabled;
+    private final double similarity;
+    private final int maxEntries;
+    private final Duration ttl;
+    private final String collection;
+
+    private final Map<String, Partition> partitions = new ConcurrentHashMap<>();
+
+    private record Entry(String question, float[] embedding, String answer, long createdAt, long turnNanos) {}
+
+    /**
+     * Answers of a philosopher in a summary bucket, least recently used first.
+     */
+    private final class Partition extends LinkedHashMap<String, Entry> {
+        Partition() {
+            super(16, 0.75f, true);
+        }
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+            return size() > maxEntries;
+        }
+    }
+
+    /**
+     * Result of a lookup, to pass back to {@link #put(Lookup, String, long)} on a miss.
+     *
+     * @param philosopherId the philosopher id
+     * @param bucket        the summary bucket
+     * @param question      the normalized user message
+     * @param embedding     the normalized message embedding, null when the cache is disabled
+     * @param answer        the cached answer, empty on a miss
+     */
+    public record Lookup(String philosopherId, String bucket, String question, float[] embedding,
+            Optional<String> answer) {
+
+        public boolean isHit() {
+            return answer.isPresent();
+        }
+    }
+
+    public SemanticResponseCache(EmbeddingModel embeddingModel, MeterRegistry meterRegistry,
+            PersonaRegistry personaRegistry,
+            ObjectProvider<MongoTemplate> mongoTemplate,
+            @Value("${philoagents.cache.semantic.enabled:false}") boolean enabled,
+            @Value("${philoagents.cache.semantic.similarity:0.92}") double similarity,
+            @Value("${philoagents.cache.semantic.maxentries:256}") int maxEntries,
+            @Value("${philoagents.cache.semantic.ttl:6h}") Duration ttl,
+            @Value("${philoagents.cache.semantic.collection:}") String collection) {
+        this.embeddingModel = embeddingModel;
+        this.meterRegistry = meterRegistry;
+        this.personaRegistry = personaRegistry;
+        this.mongoTemplate = mongoTemplate;
+        this.enabled = enabled;
+        this.similarity = similarity;
+        this.maxEntries = maxEntries;
+        this.ttl = ttl;
+        this.collection = collection;
+    }
+
+    @Override
+    public void afterPropertiesSet() {
+        if (!enabled || collection.isBlank()) {
+            return;
+        }
+        MongoTemplate mongo = mongoTemplate.getObject();
+        mongo.indexOps(collection).ensureIndex(new Index().on("createdAt", Sort.Direction.ASC).expire(ttl));
+        Query recent = new Query(Criteria.where("createdAt").gt(new Date(System.currentTimeMillis() - ttl.toMillis())))
+                .with(Sort.by(Sort.Direction.DESC, "createdAt"))
+                .limit(maxEntries * 2 * personaRegistry.getAvailablePhilosophers().size());
+        // the newest entries, put oldest first so that they are the last to be evicted
+        List<org.bson.Document> documents = new ArrayList<>(mongo.find(recent, org.bson.Document.class, collection));
+        Collections.reverse(documents);
+        int loaded = 0;
+        for (org.bson.Document document : documents) {
+            List<Number> values = document.getList("embedding", Number.class);
+            float[] embedding = new float[values.size()];
+            for (int i = 0; i < embedding.length; i++) {
+                embedding[i] = values.get(i).floatValue();
+            }
+            Entry entry = new Entry(document.getString("question"), embedding, document.getString("answer"),
+                    document.getDate("createdAt").getTime(), document.get("turnNanos", 0L));
+            Partition partition = partition(document.getString("philosopher"), document.getString("bucket"));
+            synchronized (partition) {
+                partition.put(entry.question(), entry);
+            }
+            loaded++;
+        }
+        log.info("Loaded {} cached answers from {}", loaded, collection);
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Looks up the answer of a philosopher to a user message.
+     *
+     * @param philosopherId the philosopher id
+     * @param summary       supplies the conversation summary, read only when the
+     *                      cache is enabled
+     * @param message       the user message
+     * @return the lookup, a hit when a similar enough question was answered
+     */
+    public Lookup lookup(String philosopherId, Supplier<String> summary, String message) {
+        String question = normalize(message);
+        if (!enabled) {
+            return new Lookup(philosopherId, FRESH_BUCKET, question, null, Optional.empty());
+        }
+        long start = System.nanoTime();
+        String conversationSummary = summary.get();
+        String bucket = conversationSummary == null || conversationSummary.isEmpty() ? FRESH_BUCKET
+                : SUMMARIZED_BUCKET;
+        float[] embedding = normalize(embeddingModel.embed(question));
+        Partition partition = partition(philosopherId, bucket);
+        long now = System.currentTimeMillis();
+        Entry best = null;
+        double bestSimilarity = similarity;
+        synchronized (partition) {
+            Entry exact = partition.get(question);
+            if (exact != null && !isExpired(exact, now)) {
+                best = exact;
+                bestSimilarity = 1;
+            } else {
+                partition.values().removeIf(entry -> isExpired(entry, now));
+                for (Entry entry : partition.values()) {
+                    double entrySimilarity = dot(embedding, entry.embedding());
+                    if (entrySimilarity >= bestSimilarity) {
+                        best = entry;
+                        bestSimilarity = entrySimilarity;
+                    }
+                }
+                if (best != null) {
+                    // refresh the recency of the matched entry
+                    partition.get(best.question());
+                }
+            }
+        }
+        String result = best == null ? "miss" : "hit";
+        meterRegistry.counter("philoagents.cache.semantic", "result", result, "bucket", bucket).increment();
+        Timer.builder("philoagents.cache.semantic.lookup")
+                .description("Time spent embedding the message and searching the cached answers")
+                .tag("result", result)
+                .register(meterRegistry)
+                .record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        if (best == null) {
+            return new Lookup(philosopherId, bucket, question, embedding, Optional.empty());
+        }
+        Timer.builder("philoagents.cache.semantic.saved")
+                .description("Turn latency saved by the cached answers")
+                .register(meterRegistry)
+                .record(best.turnNanos(), TimeUnit.NANOSECONDS);
+        log.debug("Semantic cache hit for {} with similarity {}", philosopherId, bestSimilarity);
+        return new Lookup(philosopherId, bucket, question, embedding, Optional.of(best.answer()));
+    }
+
+    /**
+     * Caches the answer of a turn that missed the cache.
+     *
+     * @param lookup    the lookup of the turn
+     * @param answer    the answer of the philosopher
+     * @param turnNanos the turn latency, reported as saved by the future hits
+     */
+    public void put(Lookup lookup, String answer, long turnNanos) {
+        if (!enabled || lookup.embedding() == null || lookup.isHit() || answer == null || answer.isBlank()) {
+            return;
+        }
+        Entry entry = new Entry(lookup.question(), lookup.embedding(), answer, System.currentTimeMillis(), turnNanos);
+        Partition partition = partition(lookup.philosopherId(), lookup.bucket());
+        synchronized (partition) {
+            partition.put(entry.question(), entry);
+        }
+        if (!collection.isBlank()) {
+            List<Float> embedding = new ArrayList<>(entry.embedding().length);
+            for (float value : entry.embedding()) {
+                embedding.add(value);
+            }
+            try {
+                mongoTemplate.getObject().insert(new org.bson.Document()
+                        .append("philosopher", lookup.philosopherId())
+                        .append("bucket", lookup.bucket())
+                        .append("question", entry.question())
+                        .append("answer", answer)
+                        .append("embedding", embedding)
+                        .append("createdAt", new Date(entry.createdAt()))
+                        .append("turnNanos", turnNanos), collection);
+            } catch (RuntimeException e) {
+                log.warn("Unable to persist the cached answer of {}", lookup.philosopherId(), e);
+            }
+        }
+    }
+
+    private Partition partition(String philosopherId, String bucket) {
+        return partitions.computeIfAbsent(philosopherId + "/" + bucket, k -> new Partition());
+    }
+
+    private boolean isExpired(Entry entry, long now) {
+        return now - entry.createdAt() > ttl.toMillis();
+    }
+
+    private static String normalize(String message) {
+        return message.strip().replaceAll("\\s+", " ").toLowerCase();
+    }
+
+    private static float[] normalize(float[] vector) {
+        float[] embedding = vector.clone();
+        double norm = 0;
+        for (float value : embedding) {
+            norm += value * value;
+        }
+        norm = Math.sqrt(norm);
+        if (norm > 0) {
+            for (int i = 0; i < embedding.length; i++) {
+                embedding[i] = (float) (embedding[i] / norm);
+            }
+        }
+        return embedding;
+    }
+
+    private static double dot(float[] a, float[] b) {
+        double dot = 0;
+        for (int i = 0; i < a.length; i++) {
+            dot += a[i] * b[i];
+        }
+        return dot;
+    }
+}
@@ -0,0 +1,44 @@
+package spring.ai.philoagents.services;
+
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+
+import org.springframework.stereotype.Component;
+
+/**
+ * Keeps the token listeners of the graph executions running in streaming mode.
+ * A listener is registered for a single turn and its id travels through the
+ * workflow state, so that the node calling the chat model can forward the
+ * tokens as soon as they arrive.
+ */
+@Component
+public class TokenStreamRegistry {
+
+    private final Map<String, Consumer<String>> listeners = new ConcurrentHashMap<>();
+
+    /**
+     * Registers a token listener.
+     *
+     * @param listener the consumer of the streamed tokens
+     * @return the stream id to put in the workflow state
+     */
+    public String register(Consumer<String> listener) {
+        String streamId = UUID.randomUUID().toString();
+        listeners.put(streamId, listener);
+        return streamId;
+    }
+
+    public Optional<Consumer<String>> get(String streamId) {
+        if (streamId == null || streamId.isEmpty()) {
+            return Optional.empty();
+        }
+        return Optional.ofNullable(listeners.get(streamId));
+    }
+
+    public void unregister(String streamId) {
+        listeners.remove(streamId);
+    }
+}
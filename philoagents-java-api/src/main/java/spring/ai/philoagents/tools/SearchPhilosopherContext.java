@@ -0,0 +1,87 @@
+package spring.ai.philoagents.tools;
+
+import java.util.List;
+
+import org.springframework.ai.chat.model.ToolContext;
+import org.springframework.ai.document.Document;
+import org.springframework.ai.tool.annotation.Tool;
+import org.springframework.ai.tool.annotation.ToolParam;
+import org.springframework.ai.vectorstore.SearchRequest;
+import org.springframework.ai.vectorstore.filter.FilterExpressionBuilder;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import lombok.extern.slf4j.Slf4j;
+import spring.ai.philoagents.repository.PhilosopherSearchRepository;
+import spring.ai.philoagents.workflow.PhilosopherState;
+
+/**
+ * Retrieval tool returning the philosopher passages to the model in the same
+ * tool calling exchange, so that a retrieval turn needs a single model round
+ * trip. The philosopher is taken from the tool context, not from the model.
+ */
+@Component
+@Slf4j
+public class SearchPhilosopherContext {
+
+    private final PhilosopherSearchRepository philosopherSearchRepository;
+    private final int topK;
+    private final double similarityThreshold;
+    private final int maxTokens;
+
+    public SearchPhilosopherContext(PhilosopherSearchRepository philosopherSearchRepository,
+            @Value("${philoagents.tools.context.topk:4}") int topK,
+            @Value("${philoagents.tools.context.similaritythreshold:0.60}") double similarityThreshold,
+            @Value("${philoagents.tools.context.maxtokens:400}") int maxTokens) {
+        this.philosopherSearchRepository = philosopherSearchRepository;
+        this.topK = topK;
+        this.similarityThreshold = similarityThreshold;
+        this.maxTokens = maxTokens;
+    }
+
+    @Tool(
+        name = "retrieve_philosopher_context",
+        description = "Search and return information about a specific philosopher. Always use this tool when the user asks you about a philosopher, their works, ideas or historical context."
+    )
+    String searchPhilosopherContext(
+            @ToolParam(description = "The question of the user about the philosopher") String query,
+            ToolContext toolContext) {
+        String philosopherName = (String) toolContext.getContext().get(PhilosopherState.PN_KEY);
+        List<Document> documents = philosopherSearchRepository.hybridSearchByQuery(SearchRequest.builder()
+                .query(query)
+                .topK(topK)
+                .similarityThreshold(similarityThreshold)
+                .filterExpression(new FilterExpressionBuilder().eq("philosopher_name", philosopherName).build())
+                .build());
+        log.debug("searchPhilosopherContext found {} passages for {}", documents.size(), philosopherName);
+        return formatPassages(documents, maxTokens);
+    }
+
+    /**
+     * Formats the passages as a numbered list, truncated to a token budget.
+     * Tokens are estimated as 4 characters each.
+     *
+     * @param documents the retrieved passages, best first
+     * @param maxTokens the token budget
+     * @return the passages for the model
+     */
+    static String formatPassages(List<Document> documents, int maxTokens) {
+        if (documents.isEmpty()) {
+            return "No information found.";
+        }
+        int budget = maxTokens * 4;
+        StringBuilder passages = new StringBuilder();
+        for (int i = 0; i < documents.size() && passages.length() < budget; i++) {
+            String text = documents.get(i).getText().strip().replaceAll("\\s+", " ");
+            String prefix = "[" + (i + 1) + "] ";
+            int available = budget - passages.length() - prefix.length() - 1;
+            if (available <= 0) {
+                break;
+            }
+            passages.append(prefix)
+                    .append(text.length() > available ? text.substring(0, available) : text)
+                    .append('\n');
+        }
+        return passages.toString();
+    }
+}
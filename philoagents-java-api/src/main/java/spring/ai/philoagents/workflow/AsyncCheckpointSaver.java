@@ -0,0 +1,252 @@
+package spring.ai.philoagents.workflow;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Optional;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.bsc.langgraph4j.RunnableConfig;
+import org.bsc.langgraph4j.checkpoint.BaseCheckpointSaver;
+import org.bsc.langgraph4j.checkpoint.Checkpoint;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Checkpoint saver keeping the most recent checkpoints of every thread in memory
+ * and writing them behind to a persistent saver (e.g. the langgraph4j
+ * PostgresSaver) on a background executor.
+ * Writes of the same thread always go to the same writer so they are applied in
+ * order. Only the last {@code retention} checkpoints of a thread are kept and,
+ * every {@code compactionInterval} writes, the persistent store of that thread is
+ * compacted down to the retained checkpoints.
+ */
+@Slf4j
+public class AsyncCheckpointSaver implements BaseCheckpointSaver, AutoCloseable {
+
+    private final BaseCheckpointSaver delegate;
+    private final int retention;
+    private final int compactionInterval;
+    private final ExecutorService[] writers;
+
+    private final Map<String, LinkedList<Checkpoint>> checkpointsByThread = new ConcurrentHashMap<>();
+    private final Map<String, AtomicInteger> writesByThread = new ConcurrentHashMap<>();
+
+    /**
+     * @param delegate           the persistent saver, or {@code null} to keep checkpoints in memory only
+     * @param retention          the number of checkpoints retained per thread
+     * @param compactionInterval the number of writes after which a thread is compacted in the persistent saver
+     * @param writerThreads      the number of background writers
+     */
+    public AsyncCheckpointSaver(BaseCheckpointSaver delegate, int retention, int compactionInterval,
+            int writerThreads) {
+        if (retention < 1) {
+            throw new IllegalArgumentException("retention must be greater than 0");
+        }
+        if (writerThreads < 1) {
+            throw new IllegalArgumentException("writerThreads must be greater than 0");
+        }
+        this.delegate = delegate;
+        this.retention = retention;
+        this.compactionInterval = compactionInterval;
+        this.writers = new ExecutorService[writerThreads];
+        for (int i = 0; i < writerThreads; i++) {
+            int index = i;
+            this.writers[i] = Executors.newSingleThreadExecutor(r -> {
+                Thread thread = new Thread(r, "checkpoint-writer-" + index);
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+    }
+
+    @Override
+    public Collection<Checkpoint> list(RunnableConfig config) {
+        var checkpoints = checkpoints(config);
+        synchronized (checkpoints) {
+            return List.copyOf(checkpoints);
+        }
+    }
+
+    @Override
+    public Optional<Checkpoint> get(RunnableConfig config) {
+        var checkpoints = checkpoints(config);
+        synchronized (checkpoints) {
+            if (config.checkPointId().isPresent()) {
+                String checkPointId = config.checkPointId().get();
+                return checkpoints.stream().filter(cp -> cp.getId().equals(checkPointId)).findFirst();
+            }
+            return Optional.ofNullable(checkpoints.peek());
+        }
+    }
+
+    @Override
+    public RunnableConfig put(RunnableConfig config, Checkpoint checkpoint) throws Exception {
+        var checkpoints = checkpoints(config);
+        RunnableConfig result;
+        synchronized (checkpoints) {
+            if (config.checkPointId().isPresent()) {
+                String checkPointId = config.checkPointId().get();
+                int index = indexOf(checkpoints, checkPointId);
+                if (index < 0) {
+                    throw new NoSuchElementException("Checkpoint with id " + checkPointId + " not found!");
+                }
+                checkpoints.set(index, checkpoint);
+                result = config;
+            } else {
+                checkpoints.push(checkpoint);
+                while (checkpoints.size() > retention) {
+                    checkpoints.removeLast();
+                }
+                result = RunnableConfig.builder(config).checkPointId(checkpoint.getId()).build();
+            }
+        }
+        writeBehind(config, checkpoint);
+        return result;
+    }
+
+    @Override
+    public boolean clear(RunnableConfig config) {
+        String threadId = threadId(config);
+        checkpointsByThread.remove(threadId);
+        writesByThread.remove(threadId);
+        if (delegate != null) {
+            submit(threadId, () -> delegate.clear(threadConfig(threadId)));
+        }
+        return true;
+    }
+
+    @Override
+    public Tag release(RunnableConfig config) throws Exception {
+        String threadId = threadId(config);
+        var checkpoints = checkpointsByThread.remove(threadId);
+        writesByThread.remove(threadId);
+        if (delegate != null) {
+            // the release must observe every pending write of the thread
+            return submit(threadId, () -> delegate.release(threadConfig(threadId))).get();
+        }
+        return new Tag(threadId, checkpoints == null ? List.of() : checkpoints);
+    }
+
+    /**
+     * Waits for every pending background write to complete.
+     */
+    public void flush() throws Exception {
+        List<Future<?>> barriers = new ArrayList<>(writers.length);
+        for (ExecutorService writer : writers) {
+            barriers.add(writer.submit(() -> null));
+        }
+        for (Future<?> barrier : barriers) {
+            barrier.get();
+        }
+    }
+
+    @Override
+    public void close() throws Exception {
+        flush();
+        for (ExecutorService writer : writers) {
+            writer.shutdown();
+            writer.awaitTermination(10, TimeUnit.SECONDS);
+        }
+    }
+
+    private LinkedList<Checkpoint> checkpoints(RunnableConfig config) {
+        return checkpointsByThread.computeIfAbsent(threadId(config), this::load);
+    }
+
+    /**
+     * Restores the retained checkpoints of a thread from the persistent saver, so a
+     * conversation resumes after a restart.
+     */
+    private LinkedList<Checkpoint> load(String threadId) {
+        var checkpoints = new LinkedList<Checkpoint>();
+        if (delegate == null) {
+            return checkpoints;
+        }
+        try {
+            // pending writes of this thread must land before reading it back
+            submit(threadId, () -> null).get();
+            delegate.list(threadConfig(threadId)).stream().limit(retention).forEach(checkpoints::add);
+        } catch (Exception e) {
+            log.warn("Unable to load checkpoints of thread {}", threadId, e);
+        }
+        return checkpoints;
+    }
+
+    private void writeBehind(RunnableConfig config, Checkpoint checkpoint) {
+        if (delegate == null) {
+            return;
+        }
+        String threadId = threadId(config);
+        submit(threadId, () -> {
+            try {
+                delegate.put(config, checkpoint);
+            } catch (NoSuchElementException e) {
+                // the checkpoint was compacted away before it was persisted, store it as a new one
+                delegate.put(threadConfig(threadId), checkpoint);
+            }
+            return null;
+        });
+        if (compactionInterval > 0
+                && writesByThread.computeIfAbsent(threadId, k -> new AtomicInteger()).incrementAndGet()
+                        % compactionInterval == 0) {
+            submit(threadId, () -> {
+                compact(threadId);
+                return null;
+            });
+        }
+    }
+
+    private void compact(String threadId) throws Exception {
+        var retained = new ArrayList<>(delegate.list(threadConfig(threadId)));
+        if (retained.size() <= retention) {
+            return;
+        }
+        retained = new ArrayList<>(retained.subList(0, retention));
+        Collections.reverse(retained);
+        delegate.clear(threadConfig(threadId));
+        for (Checkpoint checkpoint : retained) {
+            delegate.put(threadConfig(threadId), checkpoint);
+        }
+        log.debug("Compacted checkpoints of thread {} to {}", threadId, retained.size());
+    }
+
+    private <T> Future<T> submit(String threadId, Callable<T> task) {
+        ExecutorService writer = writers[Math.floorMod(threadId.hashCode(), writers.length)];
+        return writer.submit(() -> {
+            try {
+                return task.call();
+            } catch (Exception e) {
+                log.error("Checkpoint write failed for thread {}", threadId, e);
+                throw e;
+            }
+        });
+    }
+
+    private static int indexOf(List<Checkpoint> checkpoints, String checkPointId) {
+        for (int i = 0; i < checkpoints.size(); i++) {
+            if (checkpoints.get(i).getId().equals(checkPointId)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static String threadId(RunnableConfig config) {
+        return config.threadId().orElse(THREAD_ID_DEFAULT);
+    }
+
+    private static RunnableConfig threadConfig(String threadId) {
+        return RunnableConfig.builder().threadId(threadId).build();
+    }
+}
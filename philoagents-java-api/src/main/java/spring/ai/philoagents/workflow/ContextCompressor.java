@@ -0,0 +1,15 @@
+package spring.ai.philoagents.workflow;
+
+/**
+ * Compresses the retrieved philosopher context before the philosopher answers
+ * with it, in the {@code summarizeContext} node.
+ */
+public interface ContextCompressor {
+
+    /**
+     * @param query   the last user message, the context is compressed for
+     * @param context the retrieved context
+     * @return the compressed context
+     */
+    String compress(String query, String context) throws Exception;
+}
@@ -0,0 +1,179 @@
+package spring.ai.philoagents.workflow;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.bsc.langgraph4j.state.RemoveByHash;
+import org.springframework.ai.chat.messages.Message;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import spring.ai.philoagents.services.PhilosopherService;
+
+/**
+ * Summarizes the conversations in background, once the reply of a turn has been
+ * sent, instead of blocking the turn on the summarizeConversation node.
+ * The summary is incremental: only the messages not yet summarized are folded
+ * into the existing summary, and they are then removed from the checkpointed
+ * state. A single job per conversation is in flight, and its result is merged
+ * only while no turn of the same conversation is running, so that it is not
+ * overwritten by the state of that turn.
+ */
+@Component
+@Slf4j
+public class ConversationSummarizer implements DisposableBean {
+
+    private final PhilosopherGraphRegistry graphRegistry;
+    private final PhilosopherService philosopherService;
+    private final MeterRegistry meterRegistry;
+    private final boolean enabled;
+    private final ExecutorService executor;
+
+    private final Set<String> inFlight = ConcurrentHashMap.newKeySet();
+    private final Map<String, Object> locks = new ConcurrentHashMap<>();
+    private final Map<String, Integer> runningTurns = new ConcurrentHashMap<>();
+    private final Map<String, Summary> pendingSummaries = new ConcurrentHashMap<>();
+
+    record Summary(String text, List<Message> summarizedMessages, long scheduledAt) {}
+
+    public ConversationSummarizer(PhilosopherGraphRegistry graphRegistry, PhilosopherService philosopherService,
+            MeterRegistry meterRegistry,
+            @Value("${philoagents.workflow.summarization:inline}") String summarization,
+            @Value("${philoagents.workflow.summarization.threads:2}") int threads) {
+        this.graphRegistry = graphRegistry;
+        this.philosopherService = philosopherService;
+        this.meterRegistry = meterRegistry;
+        this.enabled = PhilosopherGraphRegistry.ASYNC_SUMMARIZATION.equals(summarization);
+        this.executor = Executors.newFixedThreadPool(threads, r -> {
+            Thread thread = new Thread(r, "conversation-summarizer");
+            thread.setDaemon(true);
+            return thread;
+        });
+        Gauge.builder("philoagents.summarization.queue", inFlight, Set::size)
+                .description("Conversation summaries scheduled or running")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Marks the beginning of a turn of the conversation.
+     *
+     * @param conversationId the conversation id
+     */
+    public void beforeTurn(String conversationId) {
+        if (!enabled) {
+            return;
+        }
+        synchronized (lock(conversationId)) {
+            runningTurns.merge(conversationId, 1, Integer::sum);
+        }
+    }
+
+    /**
+     * Marks the end of a turn of the conversation, once the reply was sent. Merges
+     * the summary computed meanwhile, or schedules a new one when the conversation
+     * grew too long.
+     *
+     * @param conversationId the conversation id
+     */
+    public void afterTurn(String conversationId) {
+        if (!enabled) {
+            return;
+        }
+        synchronized (lock(conversationId)) {
+            runningTurns.computeIfPresent(conversationId, (k, turns) -> turns > 1 ? turns - 1 : null);
+            var summary = pendingSummaries.remove(conversationId);
+            if (summary != null) {
+                merge(conversationId, summary);
+                return;
+            }
+        }
+        schedule(conversationId);
+    }
+
+    private void schedule(String conversationId) {
+        if (!inFlight.add(conversationId)) {
+            // coalesced with the job already in flight
+            return;
+        }
+        long scheduledAt = System.nanoTime();
+        try {
+            executor.execute(() -> summarize(conversationId, scheduledAt));
+        } catch (RuntimeException e) {
+            inFlight.remove(conversationId);
+            throw e;
+        }
+    }
+
+    private void summarize(String conversationId, long scheduledAt) {
+        try {
+            var state = graphRegistry.getCompiledGraph()
+                    .getState(graphRegistry.runnableConfig(conversationId))
+                    .state();
+            List<Message> messages = state.messages();
+            if (messages.size() <= PhilosopherAgentExecutor.SUMMARIZE_AFTER_MESSAGES) {
+                inFlight.remove(conversationId);
+                return;
+            }
+            // fold everything but the most recent messages into the existing summary
+            List<Message> summarizedMessages = List.copyOf(messages.subList(0,
+                    messages.size() - PhilosopherAgentExecutor.MESSAGES_KEPT_AFTER_SUMMARY));
+            var summaryState = new PhilosopherState(Map.of(
+                    PhilosopherState.PN_KEY, state.getPN(),
+                    PhilosopherState.SUMMARY_KEY, state.getSummary(),
+                    PhilosopherState.CONVERSATION_ID_KEY, conversationId,
+                    "messages", summarizedMessages));
+            String text = philosopherService.getConversationSummary(summaryState).getResult().getOutput().getText();
+            var summary = new Summary(text, summarizedMessages, scheduledAt);
+            synchronized (lock(conversationId)) {
+                if (runningTurns.containsKey(conversationId)) {
+                    // merged by afterTurn, the running turn would overwrite it
+                    pendingSummaries.put(conversationId, summary);
+                } else {
+                    merge(conversationId, summary);
+                }
+            }
+        } catch (Exception e) {
+            log.error("Conversation summary failed for {}", conversationId, e);
+            meterRegistry.counter("philoagents.summarization.jobs", "outcome", "failed").increment();
+            inFlight.remove(conversationId);
+        }
+    }
+
+    private void merge(String conversationId, Summary summary) {
+        try {
+            graphRegistry.getCompiledGraph().updateState(graphRegistry.runnableConfig(conversationId), Map.of(
+                    PhilosopherState.SUMMARY_KEY, summary.text(),
+                    "messages", summary.summarizedMessages().stream().map(RemoveByHash::of).toList()));
+            Timer.builder("philoagents.summarization.lag")
+                    .description("Time from the end of a turn to the summary merged into the conversation")
+                    .register(meterRegistry)
+                    .record(System.nanoTime() - summary.scheduledAt(), TimeUnit.NANOSECONDS);
+            meterRegistry.counter("philoagents.summarization.jobs", "outcome", "merged").increment();
+            log.info("Summarized {} messages of conversation {}", summary.summarizedMessages().size(), conversationId);
+        } catch (Exception e) {
+            log.error("Unable to merge the summary of conversation {}", conversationId, e);
+            meterRegistry.counter("philoagents.summarization.jobs", "outcome", "failed").increment();
+        } finally {
+            inFlight.remove(conversationId);
+        }
+    }
+
+    private Object lock(String conversationId) {
+        return locks.computeIfAbsent(conversationId, k -> new Object());
+    }
+
+    @Override
+    public void destroy() {
+        executor.shutdownNow();
+    }
+}
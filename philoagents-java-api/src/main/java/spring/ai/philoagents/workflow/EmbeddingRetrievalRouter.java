@@ -0,0 +1,149 @@
+package spring.ai.philoagents.workflow;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.springframework.ai.chat.messages.UserMessage;
+import org.springframework.ai.embedding.EmbeddingModel;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import spring.ai.philoagents.entities.Philosopher;
+import spring.ai.philoagents.services.PersonaRegistry;
+
+/**
+ * Retrieval router deciding locally, with the ONNX embedding model, whether the
+ * last user message needs the philosopher context. The message embedding is
+ * compared with a topic centroid per philosopher, built at startup from the
+ * philosopher persona and a few prototype questions about a philosopher life,
+ * works, ideas and historical context (the same scope of the retrieval tool),
+ * and built again when the personas are reloaded.
+ */
+@Slf4j
+public class EmbeddingRetrievalRouter implements RetrievalRouter {
+
+    private static final List<String> PROTOTYPE_QUESTIONS = List.of(
+            "Tell me about the life of %s.",
+            "What are the most important works of %s?",
+            "What are the main ideas and theories of %s?",
+            "Who influenced %s and who was influenced by %s?",
+            "What was the historical context in which %s lived?",
+            "Can you tell me about your experiences, %s?");
+
+    private final EmbeddingModel embeddingModel;
+    private final double threshold;
+    private final MeterRegistry meterRegistry;
+
+    /** Centroids by philosopher id and lowercase name, replaced at once on a reload. */
+    private volatile Map<String, float[]> centroids = Map.of();
+
+    /**
+     * @param embeddingModel  the embedding model
+     * @param personaRegistry the philosopher personas
+     * @param threshold       the minimum cosine similarity to the philosopher centroid
+     *                        to retrieve the context
+     * @param meterRegistry   the meter registry
+     */
+    public EmbeddingRetrievalRouter(EmbeddingModel embeddingModel, PersonaRegistry personaRegistry, double threshold,
+            MeterRegistry meterRegistry) {
+        this.embeddingModel = embeddingModel;
+        this.threshold = threshold;
+        this.meterRegistry = meterRegistry;
+        buildCentroids(personaRegistry.getPhilosophers());
+        personaRegistry.addReloadListener(this::buildCentroids);
+        log.info("Embedding retrieval router ready with threshold {}", threshold);
+    }
+
+    private void buildCentroids(Collection<Philosopher> philosophers) {
+        Map<String, float[]> built = new HashMap<>();
+        for (Philosopher philosopher : philosophers) {
+            float[] centroid = centroid(philosopher);
+            // the workflow state carries the philosopher name or id depending on the caller
+            built.put(philosopher.getId(), centroid);
+            built.put(philosopher.getName().toLowerCase(), centroid);
+        }
+        centroids = Map.copyOf(built);
+    }
+
+    @Override
+    public Decision route(PhilosopherState state) {
+        if (!(state.lastMessage().orElse(null) instanceof UserMessage userMessage)) {
+            return Decision.ANSWER;
+        }
+        float[] embedding = embeddingModel.embed(userMessage.getText());
+        long start = System.nanoTime();
+        Decision decision = score(state.getPN(), embedding) >= threshold ? Decision.RETRIEVE : Decision.ANSWER;
+        Timer.builder("philoagents.router.decision")
+                .description("Time spent deciding the route once the message embedding is available")
+                .tag("router", "embedding")
+                .tag("decision", decision.name().toLowerCase())
+                .register(meterRegistry)
+                .record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        return decision;
+    }
+
+    /**
+     * Scores a message against the centroid of a philosopher.
+     *
+     * @param philosopher the philosopher id or name
+     * @param text        the message
+     * @return the cosine similarity, -1 when the philosopher is unknown
+     */
+    public double score(String philosopher, String text) {
+        return score(philosopher, embeddingModel.embed(text));
+    }
+
+    public double getThreshold() {
+        return threshold;
+    }
+
+    private double score(String philosopher, float[] embedding) {
+        float[] centroid = centroids.get(philosopher.toLowerCase());
+        if (centroid == null) {
+            return -1;
+        }
+        double dot = 0;
+        double norm = 0;
+        for (int i = 0; i < embedding.length; i++) {
+            dot += embedding[i] * centroid[i];
+            norm += embedding[i] * embedding[i];
+        }
+        // centroids are normalized
+        return norm == 0 ? 0 : dot / Math.sqrt(norm);
+    }
+
+    private float[] centroid(Philosopher philosopher) {
+        List<String> texts = new ArrayList<>();
+        texts.add(philosopher.getPerspective());
+        texts.add(philosopher.getStyle());
+        for (String question : PROTOTYPE_QUESTIONS) {
+            texts.add(question.replace("%s", philosopher.getName()));
+        }
+        List<float[]> embeddings = embeddingModel.embed(texts);
+        float[] centroid = new float[embeddings.get(0).length];
+        for (float[] embedding : embeddings) {
+            double norm = 0;
+            for (float value : embedding) {
+                norm += value * value;
+            }
+            norm = Math.sqrt(norm);
+            for (int i = 0; i < centroid.length; i++) {
+                centroid[i] += (float) (embedding[i] / norm);
+            }
+        }
+        double norm = 0;
+        for (float value : centroid) {
+            norm += value * value;
+        }
+        norm = Math.sqrt(norm);
+        for (int i = 0; i < centroid.length; i++) {
+            centroid[i] = (float) (centroid[i] / norm);
+        }
+        return centroid;
+    }
+}
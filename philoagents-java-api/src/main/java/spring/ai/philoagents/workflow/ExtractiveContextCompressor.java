@@ -0,0 +1,189 @@
+package spring.ai.philoagents.workflow;
+
+import java.text.BreakIterator;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import org.springframework.ai.embedding.EmbeddingModel;
+
+import ai.djl.huggingface.tokenizers.HuggingFaceTokenizer;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Local and deterministic compression of the philosopher context, replacing
+ * the context summary of the chat model: the sentences of the context are
+ * scored against the user message with the ONNX embedding model, then picked by
+ * maximal marginal relevance, skipping the ones repeating a picked sentence,
+ * until the token budget is spent. The picked sentences are kept in the order
+ * of the context. Tokens are counted with the tokenizer of the embedding model,
+ * MiniLM by default.
+ */
+@Slf4j
+public class ExtractiveContextCompressor implements ContextCompressor {
+
+    private final EmbeddingModel embeddingModel;
+    private final HuggingFaceTokenizer tokenizer;
+    private final int maxTokens;
+    private final double lambda;
+    private final double redundancy;
+    private final MeterRegistry meterRegistry;
+
+    private record Sentence(int index, String text, int tokens, float[] embedding, double relevance) {}
+
+    /**
+     * @param embeddingModel the embedding model
+     * @param tokenizer      the tokenizer counting the tokens of the budget
+     * @param maxTokens      the token budget of the compressed context
+     * @param lambda         the weight of the relevance to the user message against
+     *                       the novelty, between 0 and 1
+     * @param redundancy     the cosine similarity to a picked sentence above which a
+     *                       sentence is dropped
+     * @param meterRegistry  the meter registry
+     */
+    public ExtractiveContextCompressor(EmbeddingModel embeddingModel, HuggingFaceTokenizer tokenizer, int maxTokens,
+            double lambda, double redundancy, MeterRegistry meterRegistry) {
+        this.embeddingModel = embeddingModel;
+        this.tokenizer = tokenizer;
+        this.maxTokens = maxTokens;
+        this.lambda = lambda;
+        this.redundancy = redundancy;
+        this.meterRegistry = meterRegistry;
+        log.info("Extractive context compression to {} tokens, lambda {}, redundancy {}", maxTokens, lambda,
+                redundancy);
+    }
+
+    @Override
+    public String compress(String query, String context) {
+        if (context == null || context.isBlank()) {
+            return "";
+        }
+        List<String> texts = sentences(context);
+        long start = System.nanoTime();
+        // the query and the sentences are embedded in a single call
+        List<String> inputs = new ArrayList<>(texts.size() + 1);
+        inputs.add(query == null ? "" : query);
+        inputs.addAll(texts);
+        List<float[]> embeddings = embeddingModel.embed(inputs);
+        long embedded = System.nanoTime();
+
+        List<Sentence> candidates = new ArrayList<>(texts.size());
+        for (int i = 0; i < texts.size(); i++) {
+            candidates.add(new Sentence(i, texts.get(i), tokens(texts.get(i)), embeddings.get(i + 1),
+                    cosine(embeddings.get(0), embeddings.get(i + 1))));
+        }
+        List<Sentence> picked = select(candidates);
+        String compressed = picked.isEmpty() ? truncate(bestOf(candidates).text())
+                : picked.stream()
+                        .sorted(Comparator.comparingInt(Sentence::index))
+                        .map(Sentence::text)
+                        .collect(Collectors.joining(" "));
+        long end = System.nanoTime();
+
+        timer("embed").record(embedded - start, TimeUnit.NANOSECONDS);
+        timer("select").record(end - embedded, TimeUnit.NANOSECONDS);
+        tokensSummary("in").record(candidates.stream().mapToInt(Sentence::tokens).sum());
+        tokensSummary("out").record(tokens(compressed));
+        return compressed;
+    }
+
+    /**
+     * Picks the sentences by maximal marginal relevance within the token budget.
+     */
+    private List<Sentence> select(List<Sentence> candidates) {
+        List<Sentence> remaining = new ArrayList<>(candidates);
+        List<Sentence> picked = new ArrayList<>();
+        int budget = maxTokens;
+        while (!remaining.isEmpty()) {
+            Sentence best = null;
+            double bestScore = Double.NEGATIVE_INFINITY;
+            for (Sentence sentence : remaining) {
+                double score = lambda * sentence.relevance() - (1 - lambda) * maxSimilarity(sentence, picked);
+                // ties go to the first sentence of the context
+                if (score > bestScore) {
+                    bestScore = score;
+                    best = sentence;
+                }
+            }
+            remaining.remove(best);
+            if (best.tokens() <= budget && maxSimilarity(best, picked) < redundancy) {
+                picked.add(best);
+                budget -= best.tokens();
+            }
+        }
+        return picked;
+    }
+
+    private static double maxSimilarity(Sentence sentence, List<Sentence> picked) {
+        double max = 0;
+        for (Sentence other : picked) {
+            max = Math.max(max, cosine(sentence.embedding(), other.embedding()));
+        }
+        return max;
+    }
+
+    private static Sentence bestOf(List<Sentence> candidates) {
+        return candidates.stream().max(Comparator.comparingDouble(Sentence::relevance)).orElseThrow();
+    }
+
+    /** Cuts a sentence longer than the budget on a word boundary. */
+    private String truncate(String text) {
+        String[] words = text.split("\\s+");
+        int count = words.length;
+        while (count > 1 && tokens(String.join(" ", List.of(words).subList(0, count))) > maxTokens) {
+            count--;
+        }
+        return String.join(" ", List.of(words).subList(0, count));
+    }
+
+    static List<String> sentences(String text) {
+        BreakIterator iterator = BreakIterator.getSentenceInstance(Locale.ENGLISH);
+        iterator.setText(text);
+        List<String> sentences = new ArrayList<>();
+        int start = iterator.first();
+        for (int end = iterator.next(); end != BreakIterator.DONE; start = end, end = iterator.next()) {
+            String sentence = text.substring(start, end).strip();
+            if (!sentence.isEmpty()) {
+                sentences.add(sentence);
+            }
+        }
+        return sentences;
+    }
+
+    private int tokens(String text) {
+        // without the [CLS] and [SEP] of the embedding input
+        return tokenizer.encode(text, false, false).getIds().length;
+    }
+
+    private static double cosine(float[] a, float[] b) {
+        double dot = 0;
+        double normA = 0;
+        double normB = 0;
+        for (int i = 0; i < a.length; i++) {
+            dot += a[i] * b[i];
+            normA += a[i] * a[i];
+            normB += b[i] * b[i];
+        }
+        return normA == 0 || normB == 0 ? 0 : dot / Math.sqrt(normA * normB);
+    }
+
+    private Timer timer(String stage) {
+        return Timer.builder("philoagents.context.compression.stage")
+                .description("Latency of the stages of the extractive context compression")
+                .tag("stage", stage)
+                .register(meterRegistry);
+    }
+
+    private DistributionSummary tokensSummary(String side) {
+        return DistributionSummary.builder("philoagents.context.compression.tokens")
+                .description("MiniLM tokens of the context before and after the compression")
+                .tag("side", side)
+                .register(meterRegistry);
+    }
+}
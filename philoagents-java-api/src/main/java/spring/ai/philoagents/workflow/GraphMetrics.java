@@ -0,0 +1,221 @@
+package spring.ai.philoagents.workflow;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.bsc.langgraph4j.action.EdgeAction;
+import org.bsc.langgraph4j.action.NodeAction;
+import org.springframework.ai.chat.metadata.Usage;
+import org.springframework.stereotype.Component;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+
+/**
+ * Graph level instrumentation of the philosopher workflow:
+ * <ul>
+ * <li>{@code philoagents.graph.node}: latency of every node, tagged by variant,
+ * node and philosopher</li>
+ * <li>{@code philoagents.graph.route}: routes taken by the conditional edges</li>
+ * <li>{@code philoagents.llm.call} and {@code philoagents.llm.tokens}: latency
+ * and tokens of every chat model call, tagged by model and calling node</li>
+ * <li>{@code philoagents.turn.llm.calls} and {@code philoagents.turn.tokens}:
+ * chat model calls and tokens per turn, tagged by variant and route</li>
+ * </ul>
+ * The chat model calls are attributed to the node running on the calling
+ * thread, and to the turn of its conversation.
+ */
+@Component
+public class GraphMetrics {
+
+    public static final String RETRIEVAL_ROUTE = "retrieval";
+    public static final String DIRECT_ROUTE = "direct";
+
+    private static final ThreadLocal<NodeScope> CURRENT_NODE = new ThreadLocal<>();
+
+    private final MeterRegistry meterRegistry;
+
+    private final Map<String, Turn> turns = new ConcurrentHashMap<>();
+
+    /**
+     * Node running on the current thread, with the turn it belongs to (null
+     * outside of a turn, e.g. from LangGraph Studio).
+     */
+    public record NodeScope(String node, Turn turn) {}
+
+    /**
+     * Chat model usage accumulated over a turn.
+     */
+    public static final class Turn {
+        private final String conversationId;
+        private final long start = System.nanoTime();
+        private final AtomicInteger llmCalls = new AtomicInteger();
+        private final AtomicLong promptTokens = new AtomicLong();
+        private final AtomicLong completionTokens = new AtomicLong();
+        private volatile String variant = "unknown";
+        private volatile boolean retrieval;
+
+        Turn(String conversationId) {
+            this.conversationId = conversationId;
+        }
+
+        public String getRoute() {
+            return retrieval ? RETRIEVAL_ROUTE : DIRECT_ROUTE;
+        }
+    }
+
+    public GraphMetrics(MeterRegistry meterRegistry) {
+        this.meterRegistry = meterRegistry;
+    }
+
+    /**
+     * Starts accounting the chat model calls of a turn of the conversation.
+     *
+     * @param conversationId the conversation id
+     * @return the turn, to pass to {@link #endTurn(Turn)}
+     */
+    public Turn beginTurn(String conversationId) {
+        Turn turn = new Turn(conversationId);
+        turns.put(conversationId, turn);
+        return turn;
+    }
+
+    /**
+     * Records the chat model calls and tokens of the turn.
+     *
+     * @param turn the turn returned by {@link #beginTurn(String)}
+     */
+    public void endTurn(Turn turn) {
+        turns.remove(turn.conversationId, turn);
+        String route = turn.getRoute();
+        DistributionSummary.builder("philoagents.turn.llm.calls")
+                .description("Chat model calls per turn")
+                .tag("variant", turn.variant)
+                .tag("route", route)
+                .register(meterRegistry)
+                .record(turn.llmCalls.get());
+        turnTokens(turn, route, "prompt").record(turn.promptTokens.get());
+        turnTokens(turn, route, "completion").record(turn.completionTokens.get());
+        Timer.builder("philoagents.turn.duration")
+                .description("Turn latency by route")
+                .tag("variant", turn.variant)
+                .tag("route", route)
+                .publishPercentileHistogram()
+                .register(meterRegistry)
+                .record(System.nanoTime() - turn.start, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Wraps a node, timing it and binding it to the current thread so that its
+     * chat model calls are attributed to it.
+     *
+     * @param variant the workflow variant
+     * @param node    the node id
+     * @param action  the node action
+     * @return the instrumented node action
+     */
+    public NodeAction<PhilosopherState> node(String variant, String node, NodeAction<PhilosopherState> action) {
+        return state -> {
+            Turn turn = state.getConversationId() == null ? null : turns.get(state.getConversationId());
+            if (turn != null) {
+                turn.variant = variant;
+                if ("retrieve_philosopher_context".equals(node)) {
+                    turn.retrieval = true;
+                }
+            }
+            NodeScope previous = CURRENT_NODE.get();
+            CURRENT_NODE.set(new NodeScope(node, turn));
+            long start = System.nanoTime();
+            try {
+                return action.apply(state);
+            } finally {
+                Timer.builder("philoagents.graph.node")
+                        .description("Latency of the workflow nodes")
+                        .tag("variant", variant)
+                        .tag("node", node)
+                        .tag("philosopher", String.valueOf(state.getPN()))
+                        .publishPercentileHistogram()
+                        .register(meterRegistry)
+                        .record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+                if (previous == null) {
+                    CURRENT_NODE.remove();
+                } else {
+                    CURRENT_NODE.set(previous);
+                }
+            }
+        };
+    }
+
+    /**
+     * Wraps a conditional edge, counting the routes it takes.
+     *
+     * @param variant the workflow variant
+     * @param from    the source node id
+     * @param action  the edge action
+     * @return the instrumented edge action
+     */
+    public EdgeAction<PhilosopherState> edge(String variant, String from, EdgeAction<PhilosopherState> action) {
+        return state -> {
+            String route = action.apply(state);
+            meterRegistry.counter("philoagents.graph.route",
+                    "variant", variant,
+                    "from", from,
+                    "route", route,
+                    "philosopher", String.valueOf(state.getPN())).increment();
+            return route;
+        };
+    }
+
+    /**
+     * Returns the node running on the current thread.
+     *
+     * @return the node scope, null outside of the workflow nodes
+     */
+    public NodeScope currentNode() {
+        return CURRENT_NODE.get();
+    }
+
+    /**
+     * Records a chat model call.
+     *
+     * @param scope the node issuing the call, null outside of the workflow nodes
+     * @param model the model name
+     * @param nanos the call latency
+     * @param usage the token usage, null when not reported
+     */
+    public void recordModelCall(NodeScope scope, String model, long nanos, Usage usage) {
+        String node = scope == null ? "none" : scope.node();
+        Timer.builder("philoagents.llm.call")
+                .description("Latency of the chat model calls")
+                .tag("model", model)
+                .tag("node", node)
+                .publishPercentileHistogram()
+                .register(meterRegistry)
+                .record(nanos, TimeUnit.NANOSECONDS);
+        long promptTokens = usage == null || usage.getPromptTokens() == null ? 0 : usage.getPromptTokens();
+        long completionTokens = usage == null || usage.getCompletionTokens() == null ? 0
+                : usage.getCompletionTokens();
+        meterRegistry.counter("philoagents.llm.tokens", "model", model, "node", node, "type", "prompt")
+                .increment(promptTokens);
+        meterRegistry.counter("philoagents.llm.tokens", "model", model, "node", node, "type", "completion")
+                .increment(completionTokens);
+        if (scope != null && scope.turn() != null) {
+            scope.turn().llmCalls.incrementAndGet();
+            scope.turn().promptTokens.addAndGet(promptTokens);
+            scope.turn().completionTokens.addAndGet(completionTokens);
+        }
+    }
+
+    private DistributionSummary turnTokens(Turn turn, String route, String type) {
+        return DistributionSummary.builder("philoagents.turn.tokens")
+                .description("Chat model tokens per turn")
+                .tag("variant", turn.variant)
+                .tag("route", route)
+                .tag("type", type)
+                .register(meterRegistry);
+    }
+}
@@ -0,0 +1,79 @@
+package spring.ai.philoagents.workflow;
+
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.springframework.ai.chat.client.ChatClientRequest;
+import org.springframework.ai.chat.client.ChatClientResponse;
+import org.springframework.ai.chat.client.advisor.api.CallAdvisor;
+import org.springframework.ai.chat.client.advisor.api.CallAdvisorChain;
+import org.springframework.ai.chat.client.advisor.api.StreamAdvisor;
+import org.springframework.ai.chat.client.advisor.api.StreamAdvisorChain;
+import org.springframework.ai.chat.metadata.ChatResponseMetadata;
+import org.springframework.ai.chat.metadata.Usage;
+import org.springframework.ai.chat.model.ChatResponse;
+import org.springframework.core.Ordered;
+
+import reactor.core.publisher.Flux;
+
+/**
+ * Chat client advisor reporting the latency and tokens of every chat model
+ * call to {@link GraphMetrics}. It runs first, so that the latency includes
+ * the other advisors (chat memory, retrieval augmentation).
+ */
+public class ModelMetricsAdvisor implements CallAdvisor, StreamAdvisor {
+
+    private final GraphMetrics graphMetrics;
+
+    public ModelMetricsAdvisor(GraphMetrics graphMetrics) {
+        this.graphMetrics = graphMetrics;
+    }
+
+    @Override
+    public ChatClientResponse adviseCall(ChatClientRequest request, CallAdvisorChain chain) {
+        var scope = graphMetrics.currentNode();
+        long start = System.nanoTime();
+        ChatClientResponse response = chain.nextCall(request);
+        ChatResponseMetadata metadata = response.chatResponse() == null ? null
+                : response.chatResponse().getMetadata();
+        graphMetrics.recordModelCall(scope, model(metadata), System.nanoTime() - start,
+                metadata == null ? null : metadata.getUsage());
+        return response;
+    }
+
+    @Override
+    public Flux<ChatClientResponse> adviseStream(ChatClientRequest request, StreamAdvisorChain chain) {
+        // captured on the subscribing thread, the node thread
+        var scope = graphMetrics.currentNode();
+        long start = System.nanoTime();
+        AtomicReference<ChatResponseMetadata> metadata = new AtomicReference<>();
+        return chain.nextStream(request)
+                .doOnNext(response -> {
+                    ChatResponse chatResponse = response.chatResponse();
+                    // the usage, when reported, comes with the last chunk
+                    if (chatResponse != null && chatResponse.getMetadata() != null) {
+                        metadata.set(chatResponse.getMetadata());
+                    }
+                })
+                .doOnComplete(() -> graphMetrics.recordModelCall(scope, model(metadata.get()),
+                        System.nanoTime() - start, usage(metadata.get())));
+    }
+
+    private static String model(ChatResponseMetadata metadata) {
+        return metadata == null || metadata.getModel() == null || metadata.getModel().isEmpty() ? "unknown"
+                : metadata.getModel();
+    }
+
+    private static Usage usage(ChatResponseMetadata metadata) {
+        return metadata == null ? null : metadata.getUsage();
+    }
+
+    @Override
+    public String getName() {
+        return "ModelMetricsAdvisor";
+    }
+
+    @Override
+    public int getOrder() {
+        return Ordered.HIGHEST_PRECEDENCE;
+    }
+}
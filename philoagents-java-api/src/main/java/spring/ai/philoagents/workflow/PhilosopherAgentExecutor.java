@@ -2,9 +2,17 @@ package spring.ai.philoagents.workflow;
 
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+
 import org.bsc.langgraph4j.GraphStateException;
 import org.bsc.langgraph4j.StateGraph;
+import org.bsc.langgraph4j.action.AsyncNodeAction;
 import org.bsc.langgraph4j.action.EdgeAction;
+import org.bsc.langgraph4j.action.NodeAction;
+import org.bsc.langgraph4j.state.RemoveByHash;
 import org.bsc.langgraph4j.spring.ai.serializer.std.SpringAIStateSerializer;
 
 import static org.bsc.langgraph4j.StateGraph.END;
@@ -12,6 +20,7 @@ import static org.bsc.langgraph4j.StateGraph.START;
 import static org.bsc.langgraph4j.action.AsyncEdgeAction.edge_async;
 import static org.bsc.langgraph4j.action.AsyncNodeAction.node_async;
 
+import org.springframework.ai.chat.messages.AssistantMessage;
 import org.springframework.ai.chat.messages.Message;
 import org.springframework.ai.chat.messages.UserMessage;
 import spring.ai.philoagents.services.PhilosopherService;
@@ -25,6 +34,12 @@ public interface PhilosopherAgentExecutor {
 
         org.slf4j.Logger log = org.slf4j.LoggerFactory.getLogger(PhilosopherAgentExecutor.class);
 
+        /** Number of messages above which the conversation is summarized. */
+        int SUMMARIZE_AFTER_MESSAGES = 30;
+
+        /** Number of most recent messages kept once the conversation is summarized. */
+        int MESSAGES_KEPT_AFTER_SUMMARY = 5;
+
         /**
          * Calls the Conversation Agent to retrieve conversation details based on user
          * input.
@@ -35,11 +50,33 @@ public interface PhilosopherAgentExecutor {
          */
         static Map<String, Object> get_conversation_node(PhilosopherState state, PhilosopherService philosopherService)
                         throws Exception {
+                return get_conversation_node(state, philosopherService, RetrievalRouter.MODEL);
+        }
+
+        /**
+         * Same as {@link #get_conversation_node(PhilosopherState, PhilosopherService)},
+         * asking the retrieval router whether the philosopher context is needed. The
+         * retrieval tool is only offered to the model when the router delegates the
+         * decision to it.
+         *
+         * @param state The current state of the workflow.
+         * @return A map containing the conversation details as output.
+         * @throws Exception
+         */
+        static Map<String, Object> get_conversation_node(PhilosopherState state, PhilosopherService philosopherService,
+                        RetrievalRouter retrievalRouter) throws Exception {
                 log.debug("get_conversation_node state: {}", state);
                 log.info("get_conversation_node last_message: {}", state.lastMessage().orElse(null));
                 String summary = state.getSummary();
                 log.debug("get_conversation_node summary: {}", summary);
-                var response = philosopherService.getPhilosopherResponse(state);
+                var decision = retrievalRouter.route(state);
+                log.debug("get_conversation_node route: {}", decision);
+                if (decision == RetrievalRouter.Decision.RETRIEVE) {
+                        return Map.of("messages", state.lastMessage(), PhilosopherState.SUMMARY_KEY, summary,
+                                        PhilosopherState.CONTEXT_KEY, "needed");
+                }
+                var response = philosopherService.getPhilosopherResponse(state,
+                                decision == RetrievalRouter.Decision.MODEL);
                 log.debug("get_conversation_node Output: {}", response);
                 if (response.getResult().getOutput().getText().equals(Boolean.TRUE.toString())) {
                         return Map.of("messages", state.lastMessage(), PhilosopherState.SUMMARY_KEY, summary,
@@ -48,6 +85,29 @@ public interface PhilosopherAgentExecutor {
                 return Map.of("messages", response.getResult().getOutput());
         }
 
+        /**
+         * Same as {@link #get_conversation_node(PhilosopherState, PhilosopherService, RetrievalRouter)},
+         * running the context retrieval speculatively while the route is decided.
+         *
+         * @param state The current state of the workflow.
+         * @return A map containing the conversation details as output.
+         * @throws Exception
+         */
+        static Map<String, Object> get_conversation_node(PhilosopherState state, PhilosopherService philosopherService,
+                        RetrievalRouter retrievalRouter, SpeculativeRetrieval speculativeRetrieval) throws Exception {
+                speculativeRetrieval.start(state);
+                try {
+                        var output = get_conversation_node(state, philosopherService, retrievalRouter);
+                        if (!"needed".equals(output.get(PhilosopherState.CONTEXT_KEY))) {
+                                speculativeRetrieval.discard(state);
+                        }
+                        return output;
+                } catch (Exception e) {
+                        speculativeRetrieval.discard(state);
+                        throw e;
+                }
+        }
+
         /**
          * Calls the Conversation Agent to retrieve conversation summary based on user
          * input.
@@ -66,12 +126,13 @@ public interface PhilosopherAgentExecutor {
                 var response = philosopherService.getConversationSummary(state);
                 log.debug("get_summarize_conversation_node Output: {}", response);
 
+                // messages is an appender channel: the summarized messages are removed, the last ones kept
                 List<Message> messages = state.messages();
-                List<Message> trimmedMessages = messages.size() > 5
-                                ? messages.subList(messages.size() - 5, messages.size())
+                List<Message> summarizedMessages = messages.size() > MESSAGES_KEPT_AFTER_SUMMARY
+                                ? messages.subList(0, messages.size() - MESSAGES_KEPT_AFTER_SUMMARY)
                                 : List.of();
                 return Map.of(PhilosopherState.SUMMARY_KEY, response.getResult().getOutput().getText(), "messages",
-                                trimmedMessages);
+                                summarizedMessages.stream().map(RemoveByHash::of).toList());
         }
 
         /**
@@ -94,6 +155,30 @@ public interface PhilosopherAgentExecutor {
                 return Map.of("messages", response.getResult().getOutput());
         }
 
+        /**
+         * Same as {@link #get_summarize_context_node(PhilosopherState, PhilosopherService)},
+         * compressing the context for the last user message with the given compressor.
+         *
+         * @param state The current state of the workflow.
+         * @return A map containing the compressed context as output.
+         * @throws Exception
+         */
+        static Map<String, Object> get_summarize_context_node(PhilosopherState state,
+                        ContextCompressor contextCompressor) throws Exception {
+                log.info("get_summarize_context_node lastMessage: {}", state.lastMessage().orElse(null));
+                List<Message> messages = state.messages();
+                String query = null;
+                for (int i = messages.size() - 1; i >= 0 && query == null; i--) {
+                        if (messages.get(i) instanceof UserMessage userMessage) {
+                                query = userMessage.getText();
+                        }
+                }
+                String context = contextCompressor.compress(query, state.lastMessage().orElse(null).getText());
+                log.debug("get_summarize_context_node Output: {}", context);
+
+                return Map.of("messages", new AssistantMessage(context));
+        }
+
         static Map<String, Object> retrieve_philosopher_context(PhilosopherState state,
                         PhilosopherService philosopherService) throws Exception {
                 log.debug("retrieve_philosopher_context state: {}", state);
@@ -108,6 +193,26 @@ public interface PhilosopherAgentExecutor {
                                 response.getResult().getOutput().getText());
         }
 
+        /**
+         * Same as {@link #retrieve_philosopher_context(PhilosopherState, PhilosopherService)},
+         * using the documents of the speculative retrieval when available.
+         */
+        static Map<String, Object> retrieve_philosopher_context(PhilosopherState state,
+                        PhilosopherService philosopherService, SpeculativeRetrieval speculativeRetrieval)
+                        throws Exception {
+                var documents = speculativeRetrieval.take(state);
+                if (documents.isEmpty()) {
+                        return retrieve_philosopher_context(state, philosopherService);
+                }
+                log.info("retrieve_philosopher_context using {} speculatively retrieved documents",
+                                documents.get().size());
+                var response = philosopherService.getPhilosopherContext(state, documents.get());
+                log.debug("retrieve_philosopher_context Output: {}", response);
+
+                return Map.of("messages", response.getResult().getOutput(), PhilosopherState.CONTEXT_KEY,
+                                response.getResult().getOutput().getText());
+        }
+
         static String toolsCondition(PhilosopherState state) {
                 log.debug("toolsCondition state: {}", state);
                 log.info("toolsCondition lastMessage: {}", state.lastMessage().orElse(null));
@@ -118,6 +223,27 @@ public interface PhilosopherAgentExecutor {
                 return "no-tools";
         };
 
+        /**
+         * Calls the Conversation Agent with the search tool returning the philosopher
+         * passages inline, so the retrieval happens within the same model exchange.
+         *
+         * @param state The current state of the workflow.
+         * @return A map containing the conversation details as output.
+         * @throws Exception
+         */
+        static Map<String, Object> get_single_pass_conversation_node(PhilosopherState state,
+                        PhilosopherService philosopherService) throws Exception {
+                log.debug("get_single_pass_conversation_node state: {}", state);
+                log.info("get_single_pass_conversation_node last_message: {}", state.lastMessage().orElse(null));
+                var response = philosopherService.getPhilosopherResponseWithSearch(state);
+                log.debug("get_single_pass_conversation_node Output: {}", response);
+                return Map.of("messages", response.getResult().getOutput());
+        }
+
+        static String summarizeCondition(PhilosopherState state) {
+                return (state.messages().size() > SUMMARIZE_AFTER_MESSAGES) ? "summarize" : "end";
+        }
+
         static Map<String, Object> get_connector_node(PhilosopherState state) {
                 log.debug("get_connector_node state: {}", state);
                 log.info("get_connector_node lastMessage: {}", state.lastMessage().orElse(null));
@@ -141,6 +267,93 @@ public interface PhilosopherAgentExecutor {
          */
         public class GraphBuilder extends AgentExecutorBuilder<GraphBuilder, PhilosopherState> {
 
+                private SpeculativeRetrieval speculativeRetrieval;
+
+                private RetrievalRouter retrievalRouter = RetrievalRouter.MODEL;
+
+                private ContextCompressor contextCompressor;
+
+                private boolean asyncSummarization = false;
+
+                private Executor executor;
+
+                private GraphMetrics graphMetrics;
+
+                private String variant = PhilosopherGraphRegistry.DEFAULT_VARIANT;
+
+                /**
+                 * Instruments the nodes and the conditional edges of the graph.
+                 *
+                 * @param graphMetrics the graph metrics
+                 * @param variant      the workflow variant, used as metrics tag
+                 * @return the current instance of GraphBuilder for method chaining
+                 */
+                public GraphBuilder metrics(GraphMetrics graphMetrics, String variant) {
+                        this.graphMetrics = graphMetrics;
+                        this.variant = variant;
+                        return this;
+                }
+
+                /**
+                 * Runs the blocking nodes (model calls and retrieval) on the given
+                 * executor, e.g. a virtual thread per task executor, instead of the
+                 * thread invoking the graph. The executor must not be a bounded pool
+                 * shared with the callers of the graph, which wait on the node tasks.
+                 *
+                 * @param executor the executor of the blocking nodes, null for the calling thread
+                 * @return the current instance of GraphBuilder for method chaining
+                 */
+                public GraphBuilder executor(Executor executor) {
+                        this.executor = executor;
+                        return this;
+                }
+
+                /**
+                 * Ends the turn at the connector node, leaving the conversation summary to
+                 * the {@link ConversationSummarizer}.
+                 *
+                 * @param asyncSummarization true to summarize the conversation off the request path
+                 * @return the current instance of GraphBuilder for method chaining
+                 */
+                public GraphBuilder asyncSummarization(boolean asyncSummarization) {
+                        this.asyncSummarization = asyncSummarization;
+                        return this;
+                }
+
+                /**
+                 * Sets the router deciding whether the philosopher context is needed.
+                 *
+                 * @param retrievalRouter the retrieval router to use
+                 * @return the current instance of GraphBuilder for method chaining
+                 */
+                public GraphBuilder retrievalRouter(RetrievalRouter retrievalRouter) {
+                        this.retrievalRouter = Objects.requireNonNull(retrievalRouter, "retrievalRouter cannot be null!");
+                        return this;
+                }
+
+                /**
+                 * Sets the compression of the philosopher context, replacing the context
+                 * summary of the chat model.
+                 *
+                 * @param contextCompressor the context compressor, null for the context summary
+                 * @return the current instance of GraphBuilder for method chaining
+                 */
+                public GraphBuilder contextCompressor(ContextCompressor contextCompressor) {
+                        this.contextCompressor = contextCompressor;
+                        return this;
+                }
+
+                /**
+                 * Enables the speculative retrieval of the philosopher context.
+                 *
+                 * @param speculativeRetrieval the speculative retrieval to use
+                 * @return the current instance of GraphBuilder for method chaining
+                 */
+                public GraphBuilder speculativeRetrieval(SpeculativeRetrieval speculativeRetrieval) {
+                        this.speculativeRetrieval = speculativeRetrieval;
+                        return this;
+                }
+
                 /**
                  * Builds the workflow graph by defining nodes and transitions.
                  *
@@ -153,36 +366,108 @@ public interface PhilosopherAgentExecutor {
                         if (stateSerializer == null) {
                                 stateSerializer = new SpringAIStateSerializer<>(PhilosopherState::new);
                         }
-                        return new StateGraph<>(PhilosopherState.SCHEMA, stateSerializer)
+                        NodeAction<PhilosopherState> conversationNode = (speculativeRetrieval == null)
+                                        ? state -> get_conversation_node(state, philosopherService, retrievalRouter)
+                                        : state -> get_conversation_node(state, philosopherService,
+                                                        retrievalRouter, speculativeRetrieval);
+                        NodeAction<PhilosopherState> retrieveNode = (speculativeRetrieval == null)
+                                        ? state -> retrieve_philosopher_context(state, philosopherService)
+                                        : state -> retrieve_philosopher_context(state, philosopherService,
+                                                        speculativeRetrieval);
+                        NodeAction<PhilosopherState> summarizeContextNode = (contextCompressor == null)
+                                        ? state -> get_summarize_context_node(state, philosopherService)
+                                        : state -> get_summarize_context_node(state, contextCompressor);
+                        StateGraph<PhilosopherState> graph = new StateGraph<>(PhilosopherState.SCHEMA, stateSerializer)
                                         // define nodes
-                                        .addNode("conversationNode",
-                                                        node_async(state -> get_conversation_node(state,
-                                                                        philosopherService)))
+                                        .addNode("conversationNode", blocking_node("conversationNode", conversationNode))
                                         .addNode("retrieve_philosopher_context",
-                                                        node_async(state -> retrieve_philosopher_context(state,
-                                                                        philosopherService)))
+                                                        blocking_node("retrieve_philosopher_context", retrieveNode))
                                         .addNode("summarizeContext",
-                                                        node_async(state -> get_summarize_context_node(state,
-                                                                        philosopherService)))
-                                        .addNode("summarizeConversation",
-                                                        node_async(state -> get_summarize_conversation_node(state,
-                                                                        philosopherService)))
-                                        .addNode("connector_node", node_async(state -> get_connector_node(state)))
+                                                        blocking_node("summarizeContext", summarizeContextNode))
+                                        .addNode("connector_node", node_async(instrumented_node("connector_node",
+                                                        state -> get_connector_node(state))))
                                         // define flow
                                         // .addEdge(START, "retrieve_philosopher_context")
                                         .addEdge(START, "conversationNode")
                                         .addConditionalEdges("conversationNode",
-                                                        edge_async(state -> toolsCondition(state)), Map.of(
+                                                        edge_async(instrumented_edge("conversationNode", state -> toolsCondition(state))), Map.of(
                                                                         "tools", "retrieve_philosopher_context",
                                                                         "no-tools", "connector_node"))
                                         .addEdge("retrieve_philosopher_context", "summarizeContext")
-                                        .addEdge("summarizeContext", "conversationNode")
+                                        .addEdge("summarizeContext", "conversationNode");
                                         // .addEdge("summarizeContext", "connector_node")
+                        return withSummarization(graph, philosopherService);
+                }
+
+                /**
+                 * Builds the single pass workflow graph, where the conversation node
+                 * retrieves the philosopher context through a tool within the same model
+                 * exchange, without the retrieval and context summary nodes.
+                 *
+                 * @return The constructed StateGraph.
+                 * @throws GraphStateException If the graph cannot be constructed.
+                 */
+                public StateGraph<PhilosopherState> buildSinglePass(PhilosopherService philosopherService)
+                                throws GraphStateException {
+
+                        if (stateSerializer == null) {
+                                stateSerializer = new SpringAIStateSerializer<>(PhilosopherState::new);
+                        }
+                        StateGraph<PhilosopherState> graph = new StateGraph<>(PhilosopherState.SCHEMA, stateSerializer)
+                                        // define nodes
+                                        .addNode("conversationNode",
+                                                        blocking_node("conversationNode", state -> get_single_pass_conversation_node(state,
+                                                                        philosopherService)))
+                                        .addNode("connector_node", node_async(instrumented_node("connector_node",
+                                                        state -> get_connector_node(state))))
+                                        // define flow
+                                        .addEdge(START, "conversationNode")
+                                        .addEdge("conversationNode", "connector_node");
+                        return withSummarization(graph, philosopherService);
+                }
+
+                /**
+                 * Wraps a node calling the model or the vector store, running it on the
+                 * configured executor.
+                 */
+                private AsyncNodeAction<PhilosopherState> blocking_node(String node, NodeAction<PhilosopherState> nodeAction) {
+                        NodeAction<PhilosopherState> action = instrumented_node(node, nodeAction);
+                        if (executor == null) {
+                                return node_async(action);
+                        }
+                        return state -> CompletableFuture.supplyAsync(() -> {
+                                try {
+                                        return action.apply(state);
+                                } catch (Exception e) {
+                                        throw new CompletionException(e);
+                                }
+                        }, executor);
+                }
+
+                private NodeAction<PhilosopherState> instrumented_node(String node, NodeAction<PhilosopherState> action) {
+                        return graphMetrics == null ? action : graphMetrics.node(variant, node, action);
+                }
+
+                private EdgeAction<PhilosopherState> instrumented_edge(String from, EdgeAction<PhilosopherState> action) {
+                        return graphMetrics == null ? action : graphMetrics.edge(variant, from, action);
+                }
+
+                /**
+                 * Adds the conversation summary after the connector node. With the
+                 * asynchronous summarization the turn ends at the connector node and the
+                 * summary is computed off the request path.
+                 */
+                private StateGraph<PhilosopherState> withSummarization(StateGraph<PhilosopherState> graph,
+                                PhilosopherService philosopherService) throws GraphStateException {
+                        if (asyncSummarization) {
+                                return graph.addEdge("connector_node", END);
+                        }
+                        return graph
+                                        .addNode("summarizeConversation",
+                                                        blocking_node("summarizeConversation", state -> get_summarize_conversation_node(state,
+                                                                        philosopherService)))
                                         .addConditionalEdges("connector_node",
-                                                        edge_async((EdgeAction<PhilosopherState>) state -> {
-                                                                return (state.messages().size() > 30) ? "summarize"
-                                                                                : "end";
-                                                        }), Map.of(
+                                                        edge_async(instrumented_edge("connector_node", state -> summarizeCondition(state))), Map.of(
                                                                         "summarize", "summarizeConversation",
                                                                         "end", END))
                                         .addEdge("summarizeConversation", END);
@@ -0,0 +1,299 @@
+package spring.ai.philoagents.workflow;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+
+import org.bsc.langgraph4j.CompileConfig;
+import org.bsc.langgraph4j.CompiledGraph;
+import org.bsc.langgraph4j.GraphStateException;
+import org.bsc.langgraph4j.RunnableConfig;
+import org.bsc.langgraph4j.StateGraph;
+import org.bsc.langgraph4j.checkpoint.Checkpoint;
+import org.springframework.ai.chat.messages.AssistantMessage;
+import org.springframework.ai.chat.messages.Message;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import spring.ai.philoagents.config.ExecutorConfig;
+import spring.ai.philoagents.services.PhilosopherService;
+
+/**
+ * Application scoped registry of the philosopher workflow graphs.
+ * Every graph variant is built and compiled once at startup and the same
+ * {@link CompiledGraph} instance is then shared by the REST controller, the
+ * websocket handler and LangGraph Studio.
+ */
+@Component
+@Slf4j
+public class PhilosopherGraphRegistry implements InitializingBean {
+
+    public static final String DEFAULT_VARIANT = "default";
+    public static final String SPECULATIVE_VARIANT = "speculative";
+    public static final String SINGLE_PASS_VARIANT = "single_pass";
+    public static final String ASYNC_SUMMARIZATION = "async";
+
+    /** The graph variants, the only values of the variant tag of the metrics. */
+    public static final Set<String> VARIANTS = Set.of(DEFAULT_VARIANT, SPECULATIVE_VARIANT, SINGLE_PASS_VARIANT);
+
+    private final PhilosopherService philosopherService;
+    private final MeterRegistry meterRegistry;
+    private final AsyncCheckpointSaver checkpointSaver;
+    private final SpeculativeRetrieval speculativeRetrieval;
+    private final RetrievalRouter retrievalRouter;
+    private final ContextCompressor contextCompressor;
+    private final String activeVariant;
+    private final boolean asyncSummarization;
+    private final Executor agentExecutor;
+    private final GraphMetrics graphMetrics;
+
+    private final Map<String, StateGraph<PhilosopherState>> stateGraphs = new ConcurrentHashMap<>();
+    private final Map<String, CompiledGraph<PhilosopherState>> compiledGraphs = new ConcurrentHashMap<>();
+
+    public PhilosopherGraphRegistry(PhilosopherService philosopherService, MeterRegistry meterRegistry,
+            AsyncCheckpointSaver checkpointSaver, SpeculativeRetrieval speculativeRetrieval,
+            RetrievalRouter retrievalRouter, ContextCompressor contextCompressor,
+            @Qualifier(ExecutorConfig.AGENT_EXECUTOR) Executor agentExecutor,
+            GraphMetrics graphMetrics,
+            @Value("${philoagents.workflow.variant:" + DEFAULT_VARIANT + "}") String activeVariant,
+            @Value("${philoagents.workflow.summarization:inline}") String summarization,
+            @Value("${philoagents.executor.mode:" + ExecutorConfig.DIRECT_MODE + "}") String executorMode) {
+        this.philosopherService = philosopherService;
+        this.meterRegistry = meterRegistry;
+        this.checkpointSaver = checkpointSaver;
+        this.speculativeRetrieval = speculativeRetrieval;
+        this.graphMetrics = graphMetrics;
+        this.retrievalRouter = retrievalRouter;
+        this.contextCompressor = contextCompressor;
+        this.activeVariant = activeVariant;
+        this.asyncSummarization = ASYNC_SUMMARIZATION.equals(summarization);
+        // nodes are offloaded only to virtual threads: a bounded pool also running
+        // the turns would starve waiting on its own node tasks
+        this.agentExecutor = ExecutorConfig.VIRTUAL_MODE.equals(executorMode) && ExecutorConfig.supportsVirtualThreads()
+                ? agentExecutor
+                : null;
+    }
+
+    @Override
+    public void afterPropertiesSet() throws Exception {
+        compile(requireVariant(activeVariant));
+    }
+
+    /**
+     * Rejects the unknown variants before they are used as metric tags, so that
+     * the requested names do not create unbounded metric series.
+     */
+    private static String requireVariant(String variant) {
+        if (!VARIANTS.contains(variant)) {
+            throw new IllegalArgumentException("Unknown workflow variant: " + variant);
+        }
+        return variant;
+    }
+
+    /**
+     * Returns the name of the variant selected for this deployment.
+     *
+     * @return the active variant name
+     */
+    public String getActiveVariant() {
+        return activeVariant;
+    }
+
+    /**
+     * Returns the compiled graph for the variant selected by
+     * {@code philoagents.workflow.variant}.
+     *
+     * @return the shared compiled graph
+     */
+    public CompiledGraph<PhilosopherState> getCompiledGraph() {
+        return getCompiledGraph(activeVariant);
+    }
+
+    /**
+     * Returns the compiled graph for the given variant, compiling it on first use.
+     *
+     * @param variant the graph variant name
+     * @return the shared compiled graph
+     * @throws IllegalArgumentException if the variant is unknown
+     */
+    public CompiledGraph<PhilosopherState> getCompiledGraph(String variant) {
+        requireVariant(variant);
+        CompiledGraph<PhilosopherState> compiledGraph = compiledGraphs.get(variant);
+        if (compiledGraph != null) {
+            cacheCounter(variant, "hit").increment();
+            return compiledGraph;
+        }
+        cacheCounter(variant, "miss").increment();
+        return compile(variant);
+    }
+
+    /**
+     * Returns the (not compiled) state graph for the given variant, as required by
+     * LangGraph Studio.
+     *
+     * @param variant the graph variant name
+     * @return the shared state graph
+     */
+    public StateGraph<PhilosopherState> getStateGraph(String variant) {
+        getCompiledGraph(variant);
+        return stateGraphs.get(variant);
+    }
+
+    /**
+     * Returns the timer of the turns executed by the active variant, to compare the
+     * latency of the graph topologies.
+     *
+     * @return the turn timer
+     */
+    public Timer turnTimer() {
+        return Timer.builder("philoagents.graph.turn")
+                .description("Time spent executing a conversation turn")
+                .tag("variant", activeVariant)
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+    }
+
+    /**
+     * Returns the id of the conversation of a client with a philosopher, so that
+     * every client keeps its own checkpoint thread with every philosopher.
+     *
+     * @param philosopherId        the philosopher id
+     * @param clientConversationId the conversation id sent by the client, or its
+     *                             session id
+     * @return the conversation id
+     */
+    public static String conversationId(String philosopherId, String clientConversationId) {
+        if (clientConversationId == null || clientConversationId.isBlank()) {
+            throw new IllegalArgumentException("The conversation id must not be blank");
+        }
+        return philosopherId + ":" + clientConversationId;
+    }
+
+    /**
+     * Builds the runnable config of a conversation, so that every turn resumes from
+     * the last checkpoint of its thread.
+     *
+     * @param conversationId the conversation id, used as checkpoint thread id
+     * @return the runnable config
+     */
+    public RunnableConfig runnableConfig(String conversationId) {
+        return RunnableConfig.builder().threadId(conversationId).build();
+    }
+
+    /**
+     * Releases the checkpoint thread of a conversation, the next turn starts from an
+     * empty state.
+     *
+     * @param conversationId the conversation id
+     */
+    public void releaseConversation(String conversationId) throws Exception {
+        checkpointSaver.release(runnableConfig(conversationId));
+    }
+
+    /**
+     * Returns the summary of a conversation from its last checkpoint.
+     *
+     * @param conversationId the conversation id
+     * @return the summary, empty for a new or not yet summarized conversation
+     */
+    public String getSummary(String conversationId) {
+        return checkpointSaver.get(runnableConfig(conversationId))
+                .map(checkpoint -> (String) checkpoint.getState().get(PhilosopherState.SUMMARY_KEY))
+                .orElse("");
+    }
+
+    /**
+     * Records in the conversation a turn answered without running the graph, e.g.
+     * from the semantic cache, so that the next turns see it.
+     *
+     * @param conversationId the conversation id
+     * @param inputs         the graph inputs of the turn, with the user message
+     * @param answer         the answer of the philosopher
+     */
+    public void appendExchange(String conversationId, Map<String, Object> inputs, String answer) throws Exception {
+        var config = runnableConfig(conversationId);
+        List<Message> exchange = List.of((Message) inputs.get("messages"), new AssistantMessage(answer));
+        if (checkpointSaver.get(config).isPresent()) {
+            getCompiledGraph().updateState(config, Map.of("messages", exchange));
+            return;
+        }
+        Map<String, Object> state = new HashMap<>(inputs);
+        state.put("messages", exchange);
+        checkpointSaver.put(config, Checkpoint.builder()
+                .nodeId("connector_node")
+                .nextNodeId(StateGraph.END)
+                .state(state)
+                .build());
+    }
+
+    private synchronized CompiledGraph<PhilosopherState> compile(String variant) {
+        CompiledGraph<PhilosopherState> compiledGraph = compiledGraphs.get(variant);
+        if (compiledGraph != null) {
+            return compiledGraph;
+        }
+        Timer.Sample sample = Timer.start(meterRegistry);
+        try {
+            StateGraph<PhilosopherState> stateGraph = buildStateGraph(variant);
+            compiledGraph = stateGraph.compile(compileConfig(variant));
+            stateGraphs.put(variant, stateGraph);
+            compiledGraphs.put(variant, compiledGraph);
+        } catch (GraphStateException e) {
+            log.error("Failed to compile workflow variant {}", variant, e);
+            throw new IllegalStateException("Failed to compile workflow variant " + variant, e);
+        } finally {
+            long nanos = sample.stop(Timer.builder("philoagents.graph.compile")
+                    .description("Time spent building and compiling a workflow graph")
+                    .tag("variant", variant)
+                    .register(meterRegistry));
+            log.info("Compiled workflow variant {} in {} ms", variant, nanos / 1_000_000);
+        }
+        return compiledGraph;
+    }
+
+    private StateGraph<PhilosopherState> buildStateGraph(String variant) throws GraphStateException {
+        return switch (variant) {
+            case DEFAULT_VARIANT -> PhilosopherAgentExecutor.graphBuilder()
+                    .retrievalRouter(retrievalRouter)
+                    .contextCompressor(contextCompressor)
+                    .asyncSummarization(asyncSummarization)
+                    .executor(agentExecutor)
+                    .metrics(graphMetrics, variant)
+                    .build(philosopherService);
+            case SPECULATIVE_VARIANT -> PhilosopherAgentExecutor.graphBuilder()
+                    .retrievalRouter(retrievalRouter)
+                    .contextCompressor(contextCompressor)
+                    .speculativeRetrieval(speculativeRetrieval)
+                    .asyncSummarization(asyncSummarization)
+                    .executor(agentExecutor)
+                    .metrics(graphMetrics, variant)
+                    .build(philosopherService);
+            case SINGLE_PASS_VARIANT -> PhilosopherAgentExecutor.graphBuilder()
+                    .asyncSummarization(asyncSummarization)
+                    .executor(agentExecutor)
+                    .metrics(graphMetrics, variant)
+                    .buildSinglePass(philosopherService);
+            default -> throw new IllegalArgumentException("Unknown workflow variant: " + variant);
+        };
+    }
+
+    private CompileConfig compileConfig(String variant) {
+        return CompileConfig.builder().checkpointSaver(checkpointSaver).build();
+    }
+
+    private Counter cacheCounter(String variant, String result) {
+        return Counter.builder("philoagents.graph.cache")
+                .description("Compiled workflow graph lookups")
+                .tag("variant", variant)
+                .tag("result", result)
+                .register(meterRegistry);
+    }
+}
@@ -17,6 +17,7 @@ public class PhilosopherState extends MessagesState<Message>{
     public static final String SUMMARY_KEY = "summary";
     public static final String CONTEXT_KEY = "context";
     public static final String CONVERSATION_ID_KEY = "conversation_id";
+    public static final String STREAM_ID_KEY = "stream_id";
 
     // Define the schema for the state.
     // MESSAGES_KEY will hold a list of strings, and new messages will be appended.
@@ -26,7 +27,8 @@ public class PhilosopherState extends MessagesState<Message>{
             PS_KEY, Channels.<String>base(() -> ""),
             SUMMARY_KEY, Channels.<String>base(() -> ""),
             CONTEXT_KEY, Channels.<String>base(() -> ""),
-            CONVERSATION_ID_KEY, Channels.<String>base(() -> ""))
+            CONVERSATION_ID_KEY, Channels.<String>base(() -> ""),
+            STREAM_ID_KEY, Channels.<String>base(() -> ""))
     );
 
     public PhilosopherState(Map<String, Object> initData) {
@@ -50,7 +52,10 @@ public class PhilosopherState extends MessagesState<Message>{
     }
     public String getConversationId() {
         return (String) value(CONVERSATION_ID_KEY).orElse("");
-    }    
+    }
+    public String getStreamId() {
+        return (String) value(STREAM_ID_KEY).orElse("");
+    }
     public Optional<String> next() {
         return this.value("next");
     }
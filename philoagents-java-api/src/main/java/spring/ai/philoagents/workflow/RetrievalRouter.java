@@ -0,0 +1,25 @@
+package spring.ai.philoagents.workflow;
+
+/**
+ * Decides whether the philosopher context must be retrieved before answering
+ * the last message of the conversation.
+ */
+public interface RetrievalRouter {
+
+    enum Decision {
+        /** Retrieve the philosopher context before answering. */
+        RETRIEVE,
+        /** Answer directly, without offering the retrieval tool to the model. */
+        ANSWER,
+        /** Let the chat model decide through the retrieval tool. */
+        MODEL
+    }
+
+    /**
+     * The router delegating every decision to the chat model, through the
+     * {@code retrieve_philosopher_context} tool.
+     */
+    RetrievalRouter MODEL = state -> Decision.MODEL;
+
+    Decision route(PhilosopherState state);
+}
@@ -0,0 +1,95 @@
+package spring.ai.philoagents.workflow;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.List;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+
+/**
+ * Threshold of the {@link EmbeddingRetrievalRouter}, as chosen by the offline
+ * sweep of the {@code RouterTuningRunner} against the decisions of the chat
+ * model through the retrieval tool.
+ *
+ * @param threshold the minimum cosine similarity to the philosopher centroid to
+ *                  retrieve the context
+ * @param agreement the share of the evaluated messages on which the router
+ *                  agreed with the chat model at this threshold
+ * @param messages  the number of evaluated messages
+ */
+public record RouterTuning(double threshold, double agreement, int messages) {
+
+    /**
+     * The router score of a message and the decision of the chat model on it.
+     *
+     * @param score    the cosine similarity to the philosopher centroid
+     * @param retrieve whether the chat model asked for the context
+     */
+    public record Decision(double score, boolean retrieve) {}
+
+    /**
+     * Sweeps the thresholds from 0.10 to 0.90 and keeps the one agreeing most
+     * often with the chat model, the given one on a tie.
+     *
+     * @param decisions the decisions of the chat model
+     * @param threshold the current threshold
+     * @return the tuning of the best threshold
+     */
+    public static RouterTuning tune(List<Decision> decisions, double threshold) {
+        double bestThreshold = threshold;
+        double bestAgreement = agreement(decisions, threshold);
+        for (double candidate = 0.10; candidate <= 0.90; candidate += 0.01) {
+            double candidateAgreement = agreement(decisions, candidate);
+            if (candidateAgreement > bestAgreement) {
+                bestAgreement = candidateAgreement;
+                bestThreshold = candidate;
+            }
+        }
+        return new RouterTuning(bestThreshold, bestAgreement, decisions.size());
+    }
+
+    /**
+     * Share of the decisions the router takes alike at a threshold.
+     *
+     * @param decisions the decisions of the chat model
+     * @param threshold the router threshold
+     * @return the agreement, between 0 and 1
+     */
+    public static double agreement(List<Decision> decisions, double threshold) {
+        long agreements = decisions.stream().filter(d -> (d.score() >= threshold) == d.retrieve()).count();
+        return (double) agreements / decisions.size();
+    }
+
+    /**
+     * Reads a tuning file.
+     *
+     * @param reader the tuning file, as written by {@link #write(RouterTuning, Path)}
+     * @return the router tuning, null for an empty file
+     */
+    public static RouterTuning load(Reader reader) {
+        return new Gson().fromJson(reader, RouterTuning.class);
+    }
+
+    /**
+     * Writes a tuning file, replacing the previous one at once.
+     *
+     * @param tuning the router tuning
+     * @param file   the tuning file
+     * @throws IOException if the file cannot be written
+     */
+    public static void write(RouterTuning tuning, Path file) throws IOException {
+        Path parent = file.toAbsolutePath().getParent();
+        Files.createDirectories(parent);
+        Path temporary = Files.createTempFile(parent, file.getFileName().toString(), ".tmp");
+        try (Writer writer = Files.newBufferedWriter(temporary, StandardCharsets.UTF_8)) {
+            new GsonBuilder().setPrettyPrinting().create().toJson(tuning, writer);
+        }
+        Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+}
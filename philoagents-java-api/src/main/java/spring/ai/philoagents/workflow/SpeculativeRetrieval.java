@@ -0,0 +1,117 @@
+package spring.ai.philoagents.workflow;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.springframework.ai.chat.messages.UserMessage;
+import org.springframework.ai.document.Document;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import spring.ai.philoagents.services.PhilosopherService;
+
+/**
+ * Starts the filtered vector search of a user message while the conversation
+ * node is still waiting for the model to decide whether retrieval is needed.
+ * When the graph routes to the retrieval node the documents are already there,
+ * otherwise the search is cancelled.
+ */
+@Component
+@Slf4j
+public class SpeculativeRetrieval implements DisposableBean {
+
+    private final PhilosopherService philosopherService;
+    private final MeterRegistry meterRegistry;
+    private final ExecutorService executor;
+
+    private final Map<String, Future<List<Document>>> pending = new ConcurrentHashMap<>();
+
+    public SpeculativeRetrieval(PhilosopherService philosopherService, MeterRegistry meterRegistry,
+            @Value("${philoagents.workflow.speculative.threads:8}") int threads) {
+        this.philosopherService = philosopherService;
+        this.meterRegistry = meterRegistry;
+        this.executor = Executors.newFixedThreadPool(threads, r -> {
+            Thread thread = new Thread(r, "speculative-retrieval");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Starts the search for the last message, if it is a user message.
+     *
+     * @param state The current state of the workflow.
+     */
+    public void start(PhilosopherState state) {
+        if (!(state.lastMessage().orElse(null) instanceof UserMessage)) {
+            return;
+        }
+        var previous = pending.put(key(state),
+                executor.submit(() -> philosopherService.searchPhilosopherContext(state)));
+        if (previous != null) {
+            previous.cancel(true);
+        }
+    }
+
+    /**
+     * Takes the documents searched for the last message.
+     *
+     * @param state The current state of the workflow.
+     * @return the documents, or empty when no speculative search was started or it failed
+     */
+    public Optional<List<Document>> take(PhilosopherState state) {
+        var future = pending.remove(key(state));
+        if (future == null) {
+            outcome("miss");
+            return Optional.empty();
+        }
+        try {
+            var documents = future.get();
+            outcome("hit");
+            return Optional.of(documents);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            outcome("miss");
+            return Optional.empty();
+        } catch (ExecutionException e) {
+            log.warn("Speculative retrieval failed, falling back to a regular search", e.getCause());
+            outcome("miss");
+            return Optional.empty();
+        }
+    }
+
+    /**
+     * Cancels the search of the last message, the model did not ask for retrieval.
+     *
+     * @param state The current state of the workflow.
+     */
+    public void discard(PhilosopherState state) {
+        var future = pending.remove(key(state));
+        if (future != null) {
+            future.cancel(true);
+            outcome("waste");
+        }
+    }
+
+    @Override
+    public void destroy() {
+        executor.shutdownNow();
+    }
+
+    private void outcome(String outcome) {
+        meterRegistry.counter("philoagents.retrieval.speculative", "outcome", outcome).increment();
+    }
+
+    private static String key(PhilosopherState state) {
+        return state.getConversationId() + ":" + state.lastMessage().map(message -> message.getText()).orElse("");
+    }
+}
@@ -0,0 +1,177 @@
+package spring.ai.philoagents;
+
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.ai.chat.client.ChatClient;
+import org.springframework.ai.chat.evaluation.FactCheckingEvaluator;
+import org.springframework.ai.chat.messages.AssistantMessage;
+import org.springframework.ai.chat.messages.Message;
+import org.springframework.ai.chat.messages.UserMessage;
+import org.springframework.ai.document.Document;
+import org.springframework.ai.embedding.EmbeddingModel;
+import org.springframework.ai.evaluation.EvaluationRequest;
+import org.springframework.ai.rag.advisor.RetrievalAugmentationAdvisor;
+import org.springframework.ai.transformers.ResourceCacheService;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.context.SpringBootTest.WebEnvironment;
+import org.springframework.context.annotation.Import;
+import org.springframework.core.io.Resource;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.ContextConfiguration;
+
+import com.google.gson.Gson;
+
+import ai.djl.huggingface.tokenizers.HuggingFaceTokenizer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import spring.ai.philoagents.entities.Philosopher;
+import spring.ai.philoagents.services.PersonaRegistry;
+import spring.ai.philoagents.services.PhilosopherService;
+import spring.ai.philoagents.workflow.ExtractiveContextCompressor;
+import spring.ai.philoagents.workflow.PhilosopherState;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Offline comparison of the extractive context compression with the context
+ * summary of the chat model, on the philosopher context retrieved for the user
+ * messages of the evaluation dataset: grounding in the retrieved documents
+ * according to the evaluation model, similarity to the user message, MiniLM
+ * tokens and latency.
+ */
+@Slf4j
+@SpringBootTest(webEnvironment = WebEnvironment.RANDOM_PORT)
+@ActiveProfiles("test")
+@Import(PhiloTestConfiguration.class)
+@ContextConfiguration(classes=TestApplication.class)
+public class ContextCompressionEvaluationTest {
+
+    @Autowired
+    private PhilosopherService philosopherService;
+
+    @Autowired
+    private EmbeddingModel embeddingModel;
+
+    @Autowired
+    private PersonaRegistry personaRegistry;
+
+    @Autowired
+    private ChatClient contentEvaluator;
+
+    @Value("classpath:/evaluation_dataset.json")
+    private Resource evaluationDataset;
+
+    @Value("${spring.ai.embedding.transformer.tokenizer.uri}")
+    private String tokenizerUri;
+
+    @Value("${philoagents.workflow.contextcompression.maxtokens:96}")
+    private int maxTokens;
+
+    record Sample(String philosopher_id, List<Map<String, String>> messages) {}
+
+    record Dataset(List<Sample> samples) {}
+
+    /** The measures of a compressor over the dataset. */
+    static class Report {
+        final List<Long> nanos = new ArrayList<>();
+        int grounded;
+        double similarity;
+        long tokens;
+
+        String format(String compressor, int samples) {
+            List<Long> sorted = nanos.stream().sorted().toList();
+            return String.format("%s: grounded %.3f, similarity %.3f, %.1f tokens, p50 %d ms, p95 %d ms", compressor,
+                    grounded / (double) samples, similarity / samples, tokens / (double) samples,
+                    sorted.get(sorted.size() / 2) / 1_000_000,
+                    sorted.get(Math.min(sorted.size() - 1, sorted.size() * 95 / 100)) / 1_000_000);
+        }
+    }
+
+    @Test
+    void extractiveCompressionAgainstContextSummary() throws Exception {
+        HuggingFaceTokenizer tokenizer;
+        try (InputStream stream = new ResourceCacheService("./embedding-cache").getCachedResource(tokenizerUri)
+                .getInputStream()) {
+            tokenizer = HuggingFaceTokenizer.newInstance(stream, Map.of("truncation", "false", "padding", "false"));
+        }
+        var extractive = new ExtractiveContextCompressor(embeddingModel, tokenizer, maxTokens, 0.7, 0.9,
+                new SimpleMeterRegistry());
+        var evaluator = new FactCheckingEvaluator(contentEvaluator.mutate());
+        Dataset dataset;
+        try (var reader = new InputStreamReader(evaluationDataset.getInputStream(), StandardCharsets.UTF_8)) {
+            dataset = new Gson().fromJson(reader, Dataset.class);
+        }
+
+        Report model = new Report();
+        Report local = new Report();
+        int samples = 0;
+        for (Sample sample : dataset.samples()) {
+            Philosopher philosopher = personaRegistry.getPhilosopher(sample.philosopher_id());
+            List<Message> history = new ArrayList<>();
+            for (Map<String, String> message : sample.messages()) {
+                if (!"user".equals(message.get("role"))) {
+                    history.add(new AssistantMessage(message.get("content")));
+                    continue;
+                }
+                String query = message.get("content");
+                history.add(new UserMessage(query));
+                var state = new PhilosopherState(Map.of(
+                        PhilosopherState.PN_KEY, philosopher.getName(),
+                        PhilosopherState.PS_KEY, philosopher.getStyle(),
+                        PhilosopherState.PP_KEY, philosopher.getPerspective(),
+                        "messages", List.copyOf(history)));
+                // the input of the summarizeContext node
+                var response = philosopherService.getPhilosopherContext(state);
+                String context = response.getResult().getOutput().getText();
+                List<Document> documents = response.getMetadata().get(RetrievalAugmentationAdvisor.DOCUMENT_CONTEXT);
+                if (documents == null || documents.isEmpty()) {
+                    continue;
+                }
+                samples++;
+
+                long start = System.nanoTime();
+                String summary = philosopherService.getContextSummary(context).getResult().getOutput().getText();
+                model.nanos.add(System.nanoTime() - start);
+                start = System.nanoTime();
+                String compressed = extractive.compress(query, context);
+                local.nanos.add(System.nanoTime() - start);
+
+                float[] queryEmbedding = embeddingModel.embed(query);
+                for (var measure : List.of(Map.entry(model, summary), Map.entry(local, compressed))) {
+                    Report report = measure.getKey();
+                    String text = measure.getValue();
+                    if (evaluator.evaluate(new EvaluationRequest(query, documents, text)).isPass()) {
+                        report.grounded++;
+                    }
+                    report.similarity += cosine(queryEmbedding, embeddingModel.embed(text));
+                    report.tokens += tokenizer.encode(text, false, false).getIds().length;
+                }
+                assertThat(tokenizer.encode(compressed, false, false).getIds().length).isLessThanOrEqualTo(maxTokens);
+            }
+        }
+        assertThat(samples).isPositive();
+        log.info("Context compression report: {} retrievals, budget of {} tokens", samples, maxTokens);
+        log.info("Context compression report: {}", model.format("model", samples));
+        log.info("Context compression report: {}", local.format("extractive", samples));
+    }
+
+    private static double cosine(float[] a, float[] b) {
+        double dot = 0;
+        double normA = 0;
+        double normB = 0;
+        for (int i = 0; i < a.length; i++) {
+            dot += a[i] * b[i];
+            normA += a[i] * a[i];
+            normB += b[i] * b[i];
+        }
+        return dot / Math.sqrt(normA * normB);
+    }
+}
@@ -11,6 +11,7 @@ import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.test.context.TestConfiguration;
 import org.springframework.context.annotation.Bean;
 import org.springframework.test.context.DynamicPropertyRegistrar;
+import org.testcontainers.containers.PostgreSQLContainer;
 import org.testcontainers.ollama.OllamaContainer;
 
 @TestConfiguration(proxyBeanMethods = false)
@@ -22,9 +23,20 @@ public class PhiloTestConfiguration {
     }
 
     @Bean
-    public DynamicPropertyRegistrar dynamicPropertyRegistrar(OllamaContainer ollamaContainer) {
+    public PostgreSQLContainer<?> postgresContainer() {
+        return new PostgreSQLContainer<>("postgres:16-alpine");
+    }
+
+    @Bean
+    public DynamicPropertyRegistrar dynamicPropertyRegistrar(OllamaContainer ollamaContainer,
+            PostgreSQLContainer<?> postgresContainer) {
         return registry -> {
             registry.add("spring.ai.ollama.base-url", ollamaContainer::getEndpoint);
+            registry.add("philoagents.langgraph.postgressaver.host", postgresContainer::getHost);
+            registry.add("philoagents.langgraph.postgressaver.port", () -> postgresContainer.getMappedPort(PostgreSQLContainer.POSTGRESQL_PORT));
+            registry.add("philoagents.langgraph.postgressaver.database", postgresContainer::getDatabaseName);
+            registry.add("philoagents.langgraph.postgressaver.username", postgresContainer::getUsername);
+            registry.add("philoagents.langgraph.postgressaver.password", postgresContainer::getPassword);
         };
     }
 
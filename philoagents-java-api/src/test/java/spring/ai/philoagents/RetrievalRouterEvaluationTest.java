@@ -0,0 +1,91 @@
+package spring.ai.philoagents;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.ai.embedding.EmbeddingModel;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.context.SpringBootTest.WebEnvironment;
+import org.springframework.context.annotation.Import;
+import org.springframework.core.io.Resource;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.ContextConfiguration;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import spring.ai.philoagents.ingestion.RouterTuningRunner;
+import spring.ai.philoagents.services.PersonaRegistry;
+import spring.ai.philoagents.services.PhilosopherService;
+import spring.ai.philoagents.workflow.RouterTuning;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Offline accuracy report of the embedding retrieval router, using the
+ * decision of the chat model through the retrieval tool as reference, on the
+ * user messages of the evaluation dataset: the threshold is tuned on every
+ * other message and the agreement is measured on the remaining ones. The
+ * production threshold is written by the {@link RouterTuningRunner}. Needs the
+ * chat and embedding models, tagged evaluation.
+ */
+@Slf4j
+@SpringBootTest(webEnvironment = WebEnvironment.RANDOM_PORT)
+@ActiveProfiles("test")
+@Import(PhiloTestConfiguration.class)
+@ContextConfiguration(classes=TestApplication.class)
+@Tag("evaluation")
+public class RetrievalRouterEvaluationTest {
+
+    @Autowired
+    private PhilosopherService philosopherService;
+
+    @Autowired
+    private EmbeddingModel embeddingModel;
+
+    @Autowired
+    private PersonaRegistry personaRegistry;
+
+    @Value("classpath:/evaluation_dataset.json")
+    private Resource evaluationDataset;
+
+    @Value("${philoagents.workflow.router.threshold:0.45}")
+    private double threshold;
+
+    @TempDir
+    Path directory;
+
+    /** Minimum share of the held out messages on which the router must agree with the chat model. */
+    private static final double MIN_AGREEMENT = 0.7;
+
+    @Test
+    void embeddingRouterAgreesWithToolDecision() throws Exception {
+        var runner = new RouterTuningRunner(philosopherService, embeddingModel, personaRegistry,
+                new SimpleMeterRegistry(), threshold, evaluationDataset, directory.resolve("router_tuning.json"));
+        List<RouterTuning.Decision> decisions = runner.decisions();
+        assertThat(decisions).hasSizeGreaterThan(1);
+
+        List<RouterTuning.Decision> tuning = new ArrayList<>();
+        List<RouterTuning.Decision> heldOut = new ArrayList<>();
+        for (int i = 0; i < decisions.size(); i++) {
+            (i % 2 == 0 ? tuning : heldOut).add(decisions.get(i));
+        }
+        RouterTuning tuned = RouterTuning.tune(tuning, threshold);
+        double agreement = RouterTuning.agreement(heldOut, tuned.threshold());
+        long retrievals = decisions.stream().filter(RouterTuning.Decision::retrieve).count();
+        log.info("Retrieval router report: {} messages, {} retrievals according to the tool decision", decisions.size(),
+                retrievals);
+        log.info("Retrieval router report: agreement {} at threshold {}",
+                String.format("%.3f", RouterTuning.agreement(heldOut, threshold)), threshold);
+        log.info("Retrieval router report: threshold {} tuned on {} messages, agreement {} on {} held out messages",
+                String.format("%.2f", tuned.threshold()), tuning.size(), String.format("%.3f", agreement),
+                heldOut.size());
+
+        assertThat(agreement).isGreaterThanOrEqualTo(MIN_AGREEMENT);
+    }
+}
@@ -0,0 +1,33 @@
+package spring.ai.philoagents.benchmarks;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs the JMH benchmarks with the GC profiler, reporting the allocation rate
+ * and the bytes allocated by operation next to the scores, and writes the
+ * results as JSON so that the runs can be compared.
+ *
+ * <pre>
+ * mvn -Pbenchmarks test -Djmh.include=StateSerializerBenchmark
+ * </pre>
+ */
+public class BenchmarkRunner {
+
+    public static void main(String[] args) throws Exception {
+        String include = args.length > 0 ? args[0] : "spring\\.ai\\.philoagents\\..*Benchmark";
+        Path result = Path.of(args.length > 1 ? args[1] : "target/jmh/jmh-result.json");
+        Files.createDirectories(result.toAbsolutePath().getParent());
+        new Runner(new OptionsBuilder()
+                .include(include)
+                .addProfiler(GCProfiler.class)
+                .resultFormat(ResultFormatType.JSON)
+                .result(result.toString())
+                .build()).run();
+    }
+}
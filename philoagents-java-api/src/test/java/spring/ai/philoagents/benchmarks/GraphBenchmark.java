@@ -0,0 +1,152 @@
+package spring.ai.philoagents.benchmarks;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+import org.bsc.langgraph4j.CompiledGraph;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.ai.chat.client.ChatClient;
+import org.springframework.ai.chat.messages.AssistantMessage;
+import org.springframework.ai.chat.messages.Message;
+import org.springframework.ai.chat.messages.UserMessage;
+import org.springframework.ai.chat.model.ChatModel;
+import org.springframework.ai.chat.model.ChatResponse;
+import org.springframework.ai.chat.model.Generation;
+import org.springframework.ai.document.Document;
+import org.springframework.ai.vectorstore.SearchRequest;
+import org.springframework.ai.vectorstore.filter.Filter;
+import org.springframework.core.io.ClassPathResource;
+
+import reactor.core.publisher.Flux;
+import spring.ai.philoagents.entities.Philosopher;
+import spring.ai.philoagents.override.ChunkVersionStore.ChunkVersion;
+import spring.ai.philoagents.override.SearchTuning;
+import spring.ai.philoagents.repository.PhilosopherSearchRepository;
+import spring.ai.philoagents.services.PersonaRegistry;
+import spring.ai.philoagents.services.PhilosopherService;
+import spring.ai.philoagents.services.TokenStreamRegistry;
+import spring.ai.philoagents.tools.RetrievePhilosopherContext;
+import spring.ai.philoagents.tools.SearchPhilosopherContext;
+import spring.ai.philoagents.workflow.PhilosopherAgentExecutor;
+import spring.ai.philoagents.workflow.PhilosopherState;
+
+/**
+ * Overhead of the workflow graph around the model calls, with a stub chat
+ * model answering at once: building and compiling the default graph, against
+ * invoking the compiled graph for a turn answered directly or after the
+ * retrieval and the context summary.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class GraphBenchmark {
+
+    private static final String QUESTION = "Can machines think?";
+
+    @Param({ "answer", "retrieve" })
+    private String route;
+
+    private PhilosopherService philosopherService;
+    private CompiledGraph<PhilosopherState> compiledGraph;
+    private Map<String, Object> inputs;
+
+    @Setup
+    public void setup() throws Exception {
+        boolean retrieve = "retrieve".equals(route);
+        // "true" is the decision of the retrieval tool, asked for the question only
+        ChatModel chatModel = prompt -> {
+            List<Message> messages = prompt.getInstructions();
+            String text = messages.get(messages.size() - 1).getText();
+            String answer = retrieve && QUESTION.equals(text) ? Boolean.TRUE.toString()
+                    : "That depends on what you mean by thinking. Let us play a game.";
+            return new ChatResponse(List.of(new Generation(new AssistantMessage(answer))));
+        };
+        PhilosopherSearchRepository searchRepository = new StubSearchRepository(List.of(
+                new Document("Alan Turing proposed the imitation game in Computing Machinery and Intelligence."),
+                new Document("The imitation game replaces the question whether machines can think.")));
+        var personaRegistry = new PersonaRegistry(
+                new ClassPathResource("personas/philosophers.json"),
+                new ClassPathResource("prompts/philosopher_response.st"),
+                new ClassPathResource("prompts/conversation_summary.st"),
+                new ClassPathResource("prompts/first_conversation_summary.st"),
+                new ClassPathResource("prompts/context_summary.st"));
+        personaRegistry.afterPropertiesSet();
+        philosopherService = new PhilosopherService(null, new RetrievePhilosopherContext(), searchRepository,
+                ChatClient.builder(chatModel).build(), new TokenStreamRegistry(),
+                new SearchPhilosopherContext(searchRepository, 4, 0.6, 400), personaRegistry,
+                new SearchTuning(new SearchTuning.Tuning("philosopher_name", new SearchTuning.Params(100, 2, 0.5),
+                        Map.of(), null), null));
+        compiledGraph = PhilosopherAgentExecutor.graphBuilder().build(philosopherService).compile();
+        Philosopher philosopher = personaRegistry.getPhilosopher("turing");
+        inputs = Map.of(
+                PhilosopherState.PN_KEY, philosopher.getName(),
+                PhilosopherState.PS_KEY, philosopher.getStyle(),
+                PhilosopherState.PP_KEY, philosopher.getPerspective(),
+                PhilosopherState.CONVERSATION_ID_KEY, philosopher.getId(),
+                "messages", new UserMessage(QUESTION));
+    }
+
+    @Benchmark
+    public CompiledGraph<PhilosopherState> compile() throws Exception {
+        return PhilosopherAgentExecutor.graphBuilder().build(philosopherService).compile();
+    }
+
+    @Benchmark
+    public Optional<PhilosopherState> invoke() throws Exception {
+        return compiledGraph.invoke(inputs);
+    }
+
+    /** Returns the same passages for every context search. */
+    private record StubSearchRepository(List<Document> documents) implements PhilosopherSearchRepository {
+
+        @Override
+        public void addDocuments(List<Document> docs) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void deleteDocuments(List<String> ids) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void deleteDocuments(Filter.Expression filterExpression) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public Map<String, ChunkVersion> findChunkVersions(Filter.Expression filterExpression) {
+            return Map.of();
+        }
+
+        @Override
+        public List<Document> semanticSearchByQuery(SearchRequest searchRequest) {
+            return documents;
+        }
+
+        @Override
+        public Flux<BatchResult> semanticSearchByQueries(List<SearchRequest> searchRequests) {
+            return Flux.range(0, searchRequests.size()).map(i -> new BatchResult(i, documents));
+        }
+
+        @Override
+        public List<Document> hybridSearchByQuery(SearchRequest searchRequest) {
+            return documents;
+        }
+    }
+}
@@ -0,0 +1,99 @@
+package spring.ai.philoagents.benchmarks;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.springframework.ai.chat.messages.AssistantMessage;
+import org.springframework.ai.chat.messages.Message;
+import org.springframework.ai.chat.messages.SystemMessage;
+import org.springframework.ai.chat.messages.UserMessage;
+import org.springframework.ai.chat.prompt.SystemPromptTemplate;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.core.io.Resource;
+
+import spring.ai.philoagents.entities.Philosopher;
+import spring.ai.philoagents.services.PersonaRegistry;
+import spring.ai.philoagents.workflow.PhilosopherState;
+
+/**
+ * Per turn cost of building the philosopher system prompt: parsing the
+ * template resource and copying the persona on every turn, as before the
+ * persona registry, against the pre-rendered persona prompts.
+ *
+ * <pre>
+ * mvn -Pbenchmarks test -Djmh.include=PromptBuildBenchmark
+ * </pre>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PromptBuildBenchmark {
+
+    private Resource philosopherResponse;
+    private PersonaRegistry personaRegistry;
+    private PhilosopherState state;
+
+    @Setup
+    public void setup() throws Exception {
+        philosopherResponse = new ClassPathResource("prompts/philosopher_response.st");
+        personaRegistry = new PersonaRegistry(
+                new ClassPathResource("personas/philosophers.json"),
+                philosopherResponse,
+                new ClassPathResource("prompts/conversation_summary.st"),
+                new ClassPathResource("prompts/first_conversation_summary.st"),
+                new ClassPathResource("prompts/context_summary.st"));
+        personaRegistry.afterPropertiesSet();
+        Philosopher philosopher = personaRegistry.getPhilosopher("turing");
+        List<Message> messages = List.of(
+                new UserMessage("Can machines think?"),
+                new AssistantMessage("That depends on what you mean by thinking. Let us play a game."),
+                new UserMessage("What game?"));
+        state = new PhilosopherState(Map.of(
+                PhilosopherState.PN_KEY, philosopher.getName(),
+                PhilosopherState.PP_KEY, philosopher.getPerspective(),
+                PhilosopherState.PS_KEY, philosopher.getStyle(),
+                PhilosopherState.SUMMARY_KEY, "The user asked Turing whether machines can think.",
+                "messages", messages));
+    }
+
+    @Benchmark
+    public Message templatePerTurn() {
+        Philosopher philosopher = personaRegistry.getPhilosopher("Turing");
+        Philosopher copy = new Philosopher(philosopher.getId(), philosopher.getName(), philosopher.getPerspective(),
+                philosopher.getStyle());
+        return new SystemPromptTemplate(philosopherResponse).createMessage(Map.of(
+                "philosopher_name", copy.getName(),
+                "philosopher_perspective", copy.getPerspective(),
+                "philosopher_style", copy.getStyle(),
+                "summary", state.getSummary(),
+                "messages", state.messages()));
+    }
+
+    @Benchmark
+    public Message precompiledPersona() {
+        personaRegistry.getPhilosopher("turing");
+        return new SystemMessage(personaRegistry.philosopherResponsePrompt(state));
+    }
+
+    public static void main(String[] args) throws Exception {
+        new Runner(new OptionsBuilder()
+                .include(PromptBuildBenchmark.class.getSimpleName())
+                .build()).run();
+    }
+}
@@ -0,0 +1,87 @@
+package spring.ai.philoagents.benchmarks;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.ai.chat.messages.AssistantMessage;
+import org.springframework.ai.chat.messages.Message;
+import org.springframework.ai.chat.messages.UserMessage;
+import org.springframework.core.io.ClassPathResource;
+
+import spring.ai.philoagents.entities.Philosopher;
+import spring.ai.philoagents.services.PersonaRegistry;
+import spring.ai.philoagents.workflow.PhilosopherState;
+
+/**
+ * Rendering of the prompts the {@code PhilosopherService} sends to the chat
+ * model by conversation length: the philosopher response, the conversation
+ * summary and the context summary.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PromptRenderingBenchmark {
+
+    @Param({ "1", "10", "30" })
+    private int historyLength;
+
+    private PersonaRegistry personaRegistry;
+    private PhilosopherState state;
+    private String context;
+
+    @Setup
+    public void setup() throws Exception {
+        personaRegistry = new PersonaRegistry(
+                new ClassPathResource("personas/philosophers.json"),
+                new ClassPathResource("prompts/philosopher_response.st"),
+                new ClassPathResource("prompts/conversation_summary.st"),
+                new ClassPathResource("prompts/first_conversation_summary.st"),
+                new ClassPathResource("prompts/context_summary.st"));
+        personaRegistry.afterPropertiesSet();
+        Philosopher philosopher = personaRegistry.getPhilosopher("turing");
+        List<Message> messages = new ArrayList<>(historyLength);
+        for (int i = 0; i < historyLength; i++) {
+            messages.add(i % 2 == 0 ? new UserMessage("Can machines think? (" + i + ")")
+                    : new AssistantMessage("That depends on what you mean by thinking. Let us play a game. (" + i + ")"));
+        }
+        state = new PhilosopherState(Map.of(
+                PhilosopherState.PN_KEY, philosopher.getName(),
+                PhilosopherState.PP_KEY, philosopher.getPerspective(),
+                PhilosopherState.PS_KEY, philosopher.getStyle(),
+                PhilosopherState.SUMMARY_KEY, "The user asked Turing whether machines can think.",
+                "messages", messages));
+        context = ("Alan Turing proposed the imitation game in Computing Machinery and Intelligence, published in"
+                + " Mind in 1950. ").repeat(8);
+    }
+
+    @Benchmark
+    public String philosopherResponse() {
+        return personaRegistry.philosopherResponsePrompt(state);
+    }
+
+    @Benchmark
+    public String conversationSummary() {
+        return personaRegistry.conversationSummaryPrompt(state);
+    }
+
+    @Benchmark
+    public String contextSummary() {
+        return personaRegistry.contextSummaryPrompt(context);
+    }
+}
@@ -0,0 +1,97 @@
+package spring.ai.philoagents.benchmarks;
+
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.bsc.langgraph4j.spring.ai.serializer.std.SpringAIStateSerializer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.ai.chat.messages.AssistantMessage;
+import org.springframework.ai.chat.messages.Message;
+import org.springframework.ai.chat.messages.UserMessage;
+import org.springframework.core.io.ClassPathResource;
+
+import spring.ai.philoagents.entities.Philosopher;
+import spring.ai.philoagents.entities.PhilosopherFactory;
+import spring.ai.philoagents.workflow.PhilosopherState;
+
+/**
+ * Cost of the workflow state by conversation length: building a
+ * {@link PhilosopherState}, as every node does, and its serialization round
+ * trip, as every checkpoint does.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class StateSerializerBenchmark {
+
+    @Param({ "0", "5", "30", "100" })
+    private int historyLength;
+
+    private final SpringAIStateSerializer<PhilosopherState> serializer = new SpringAIStateSerializer<>(
+            PhilosopherState::new);
+    private Map<String, Object> data;
+    private PhilosopherState state;
+    private byte[] bytes;
+
+    @Setup
+    public void setup() throws Exception {
+        Philosopher philosopher;
+        try (var reader = new InputStreamReader(new ClassPathResource("personas/philosophers.json").getInputStream(),
+                StandardCharsets.UTF_8)) {
+            philosopher = PhilosopherFactory.load(reader).get("turing");
+        }
+        List<Message> messages = new ArrayList<>(historyLength);
+        for (int i = 0; i < historyLength; i++) {
+            messages.add(i % 2 == 0
+                    ? new UserMessage("Can machines think, and how would we know if they did? (" + i + ")")
+                    : new AssistantMessage("That depends on what you mean by thinking. Let us play a game in which"
+                            + " an interrogator questions a machine and a person through a teleprinter. (" + i + ")"));
+        }
+        data = Map.of(
+                PhilosopherState.PN_KEY, philosopher.getName(),
+                PhilosopherState.PP_KEY, philosopher.getPerspective(),
+                PhilosopherState.PS_KEY, philosopher.getStyle(),
+                PhilosopherState.SUMMARY_KEY, "The user asked Turing whether machines can think.",
+                PhilosopherState.CONVERSATION_ID_KEY, "turing-benchmark",
+                "messages", messages);
+        state = new PhilosopherState(data);
+        bytes = serializer.objectToBytes(state);
+    }
+
+    @Benchmark
+    public PhilosopherState construct() {
+        return new PhilosopherState(data);
+    }
+
+    @Benchmark
+    public byte[] serialize() throws Exception {
+        return serializer.objectToBytes(state);
+    }
+
+    @Benchmark
+    public PhilosopherState deserialize() throws Exception {
+        return serializer.bytesToObject(bytes);
+    }
+
+    @Benchmark
+    public PhilosopherState roundTrip() throws Exception {
+        return serializer.bytesToObject(serializer.objectToBytes(state));
+    }
+}
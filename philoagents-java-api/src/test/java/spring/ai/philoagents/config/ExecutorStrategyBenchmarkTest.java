@@ -0,0 +1,110 @@
+package spring.ai.philoagents.config;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.bsc.langgraph4j.CompiledGraph;
+import org.bsc.langgraph4j.StateGraph;
+import org.bsc.langgraph4j.action.AsyncNodeAction;
+import org.bsc.langgraph4j.state.AgentState;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import lombok.extern.slf4j.Slf4j;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assumptions.assumeThat;
+import static org.bsc.langgraph4j.StateGraph.END;
+import static org.bsc.langgraph4j.StateGraph.START;
+import static org.bsc.langgraph4j.action.AsyncNodeAction.node_async;
+
+/**
+ * Runs 1000 concurrent conversations through a graph shaped like the default
+ * workflow (model call, retrieval, context summary, model call), where every
+ * node blocks as a remote call would, and reports the turn latency of each
+ * executor mode.
+ */
+@Slf4j
+@Tag("benchmark")
+public class ExecutorStrategyBenchmarkTest {
+
+    private static final int CONVERSATIONS = 1000;
+    private static final long REMOTE_CALL_MILLIS = 50;
+
+    @Test
+    void platformThreads() throws Exception {
+        var executor = (ExecutorService) ExecutorConfig.newExecutor(ExecutorConfig.PLATFORM_MODE, 200);
+        try {
+            run(ExecutorConfig.PLATFORM_MODE, executor, null);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    void virtualThreads() throws Exception {
+        assumeThat(ExecutorConfig.supportsVirtualThreads()).isTrue();
+        var executor = ExecutorConfig.newVirtualThreadPerTaskExecutor().orElseThrow();
+        try {
+            run(ExecutorConfig.VIRTUAL_MODE, executor, executor);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private void run(String mode, Executor turnExecutor, Executor nodeExecutor) throws Exception {
+        CompiledGraph<AgentState> graph = new StateGraph<>(AgentState::new)
+                .addNode("conversationNode", blockingNode(nodeExecutor))
+                .addNode("retrieve_philosopher_context", blockingNode(nodeExecutor))
+                .addNode("summarizeContext", blockingNode(nodeExecutor))
+                .addNode("answerNode", blockingNode(nodeExecutor))
+                .addEdge(START, "conversationNode")
+                .addEdge("conversationNode", "retrieve_philosopher_context")
+                .addEdge("retrieve_philosopher_context", "summarizeContext")
+                .addEdge("summarizeContext", "answerNode")
+                .addEdge("answerNode", END)
+                .compile();
+
+        long start = System.nanoTime();
+        List<CompletableFuture<Long>> turns = new ArrayList<>();
+        for (int i = 0; i < CONVERSATIONS; i++) {
+            turns.add(CompletableFuture.supplyAsync(() -> {
+                long turnStart = System.nanoTime();
+                graph.invoke(Map.of());
+                return System.nanoTime() - turnStart;
+            }, turnExecutor));
+        }
+        List<Long> latencies = new ArrayList<>();
+        for (var turn : turns) {
+            latencies.add(turn.get(5, TimeUnit.MINUTES));
+        }
+        long elapsed = System.nanoTime() - start;
+        latencies.sort(Long::compare);
+        log.info("{} mode: {} conversations in {} ms, turn latency p50 {} ms, p99 {} ms", mode, CONVERSATIONS,
+                elapsed / 1_000_000,
+                latencies.get(latencies.size() / 2) / 1_000_000,
+                latencies.get(latencies.size() * 99 / 100) / 1_000_000);
+        assertThat(latencies).hasSize(CONVERSATIONS);
+    }
+
+    private static AsyncNodeAction<AgentState> blockingNode(Executor executor) {
+        if (executor == null) {
+            return node_async(state -> remoteCall());
+        }
+        return state -> CompletableFuture.supplyAsync(ExecutorStrategyBenchmarkTest::remoteCall, executor);
+    }
+
+    private static Map<String, Object> remoteCall() {
+        try {
+            Thread.sleep(REMOTE_CALL_MILLIS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        return Map.of();
+    }
+}
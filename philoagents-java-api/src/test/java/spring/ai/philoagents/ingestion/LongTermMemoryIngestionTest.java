@@ -0,0 +1,186 @@
+package spring.ai.philoagents.ingestion;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.ai.document.Document;
+import org.springframework.ai.vectorstore.SearchRequest;
+import org.springframework.ai.vectorstore.filter.Filter;
+import org.springframework.core.io.ByteArrayResource;
+import org.springframework.core.io.ClassPathResource;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import reactor.core.publisher.Flux;
+import spring.ai.philoagents.entities.PhilosopherExtract;
+import spring.ai.philoagents.override.ChunkVersionStore;
+import spring.ai.philoagents.override.ChunkVersionStore.ChunkVersion;
+import spring.ai.philoagents.repository.PhilosopherSearchRepository;
+import spring.ai.philoagents.services.PersonaRegistry;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class LongTermMemoryIngestionTest {
+
+    private static final String SHARED =
+            "Wonder is the feeling of a philosopher, and philosophy begins in wonder, as Socrates tells young Theaetetus.";
+
+    @TempDir
+    Path sources;
+
+    private final StubRepository repository = new StubRepository();
+    private PersonaRegistry personaRegistry;
+
+    /** Keeps the documents in memory, with the filters of the ingestion evaluated on their metadata. */
+    static class StubRepository implements PhilosopherSearchRepository {
+
+        final Map<String, Document> documents = new ConcurrentHashMap<>();
+
+        @Override
+        public void addDocuments(List<Document> docs) {
+            docs.forEach(document -> documents.put(document.getId(), document));
+        }
+
+        @Override
+        public void deleteDocuments(List<String> ids) {
+            ids.forEach(documents::remove);
+        }
+
+        @Override
+        public void deleteDocuments(Filter.Expression filterExpression) {
+            documents.values().removeIf(document -> matches(filterExpression, document));
+        }
+
+        @Override
+        public Map<String, ChunkVersion> findChunkVersions(Filter.Expression filterExpression) {
+            return documents.values().stream()
+                    .filter(document -> matches(filterExpression, document))
+                    .collect(Collectors.toMap(Document::getId, document -> new ChunkVersion(
+                            (String) document.getMetadata().get(ChunkVersionStore.SOURCE_FIELD_NAME),
+                            (String) document.getMetadata().get(ChunkVersionStore.CONTENT_HASH_FIELD_NAME),
+                            (String) document.getMetadata().get(ChunkVersionStore.EMBEDDING_MODEL_FIELD_NAME))));
+        }
+
+        @Override
+        public List<Document> semanticSearchByQuery(SearchRequest searchRequest) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public Flux<BatchResult> semanticSearchByQueries(List<SearchRequest> searchRequests) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public List<Document> hybridSearchByQuery(SearchRequest searchRequest) {
+            throw new UnsupportedOperationException();
+        }
+
+        private static boolean matches(Filter.Expression expression, Document document) {
+            if (expression.type() == Filter.ExpressionType.AND) {
+                return matches((Filter.Expression) expression.left(), document)
+                        && matches((Filter.Expression) expression.right(), document);
+            }
+            String key = ((Filter.Key) expression.left()).key();
+            Object actual = ChunkVersionStore.ID_FIELD_NAME.equals(key) ? document.getId()
+                    : document.getMetadata().get(key);
+            Object expected = ((Filter.Value) expression.right()).value();
+            return switch (expression.type()) {
+                case EQ -> expected.equals(actual);
+                case NIN -> !((Collection<?>) expected).contains(actual);
+                default -> throw new UnsupportedOperationException(expression.type().name());
+            };
+        }
+    }
+
+    @BeforeEach
+    void setUp() throws Exception {
+        personaRegistry = new PersonaRegistry(
+                new ClassPathResource("personas/philosophers.json"),
+                new ClassPathResource("prompts/philosopher_response.st"),
+                new ClassPathResource("prompts/conversation_summary.st"),
+                new ClassPathResource("prompts/first_conversation_summary.st"),
+                new ClassPathResource("prompts/context_summary.st"));
+        personaRegistry.afterPropertiesSet();
+        Files.createDirectories(sources.resolve("plato"));
+    }
+
+    private IngestionReport ingest(int parseThreads) throws Exception {
+        var ingestion = new LongTermMemoryIngestion(repository, new SimpleMeterRegistry(), personaRegistry,
+                new ByteArrayResource(new byte[0]), sources, "test-model", 24, 0, parseThreads, 2, 4, 4);
+        var extract = new PhilosopherExtract();
+        extract.setId("plato");
+        return ingestion.ingest(List.of(extract), false);
+    }
+
+    private void write(String file, List<String> paragraphs) throws Exception {
+        Files.writeString(sources.resolve("plato").resolve(file), String.join("\n\n", paragraphs));
+    }
+
+    private static List<String> paragraphs(String source, int count) {
+        return IntStream.range(0, count)
+                .mapToObj(i -> "Paragraph " + i + " of the " + source + " is about the forms and the good.")
+                .toList();
+    }
+
+    @Test
+    void storesOnlyTheNewChunksAndDeletesTheOnesNoLongerProduced() throws Exception {
+        List<String> dialogue = paragraphs("dialogue", 10);
+        write("republic.txt", dialogue);
+
+        IngestionReport first = ingest(2);
+        assertThat(first.newChunks()).isEqualTo(10);
+        assertThat(first.storedChunks()).isEqualTo(10);
+        assertThat(repository.documents).hasSize(10);
+
+        IngestionReport unchanged = ingest(2);
+        assertThat(unchanged.unchangedChunks()).isEqualTo(10);
+        assertThat(unchanged.newChunks() + unchanged.updatedChunks() + unchanged.deletedChunks()).isZero();
+
+        var edited = new ArrayList<>(dialogue);
+        edited.set(3, "Paragraph 3 now speaks of the cave and of the shadows on its wall.");
+        edited.remove(7);
+        write("republic.txt", edited);
+        IngestionReport changed = ingest(2);
+        assertThat(changed.newChunks()).isEqualTo(1);
+        assertThat(changed.unchangedChunks()).isEqualTo(8);
+        assertThat(changed.deletedChunks()).isEqualTo(2);
+        assertThat(repository.documents.values()).extracting(Document::getText)
+                .containsExactlyInAnyOrderElementsOf(edited);
+
+        Files.delete(sources.resolve("plato").resolve("republic.txt"));
+        assertThat(ingest(2).deletedChunks()).isEqualTo(9);
+        assertThat(repository.documents).isEmpty();
+    }
+
+    @Test
+    void aChunkSharedBySourcesStaysWithTheFirstOne() throws Exception {
+        // the first source takes longer to chunk than the second one
+        List<String> first = new ArrayList<>(paragraphs("apology", 200));
+        first.add(SHARED);
+        write("apology.txt", first);
+        write("theaetetus.txt", List.of(SHARED, "Knowledge is true judgement with an account."));
+
+        for (int run = 0; run < 5; run++) {
+            IngestionReport report = ingest(4);
+            assertThat(report.duplicateChunks()).isEqualTo(1);
+            if (run > 0) {
+                assertThat(report.newChunks() + report.deletedChunks()).isZero();
+            }
+            assertThat(repository.documents.values())
+                    .filteredOn(document -> SHARED.equals(document.getText()))
+                    .singleElement()
+                    .satisfies(document -> assertThat((String) document.getMetadata()
+                            .get(ChunkVersionStore.SOURCE_FIELD_NAME)).endsWith("apology.txt"));
+        }
+    }
+}
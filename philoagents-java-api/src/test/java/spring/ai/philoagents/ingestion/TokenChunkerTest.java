@@ -0,0 +1,45 @@
+package spring.ai.philoagents.ingestion;
+
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.ai.tokenizer.JTokkitTokenCountEstimator;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class TokenChunkerTest {
+
+    private final JTokkitTokenCountEstimator tokens = new JTokkitTokenCountEstimator();
+
+    @Test
+    void keepsShortTextsInOneChunk() {
+        var chunker = new TokenChunker(64, 8);
+
+        assertThat(chunker.split("The unexamined life is not worth living.\n\nKnow thyself."))
+                .containsExactly("The unexamined life is not worth living.\n\nKnow thyself.");
+        assertThat(chunker.split("  \n ")).isEmpty();
+    }
+
+    @Test
+    void splitsLongTextsIntoOverlappingChunksWithinTheTokenBudget() {
+        var chunker = new TokenChunker(64, 16);
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < 40; i++) {
+            text.append("Sentence number ").append(i).append(" is about the forms and the good. ");
+            if (i % 10 == 9) {
+                text.append("\n\n");
+            }
+        }
+
+        List<String> chunks = chunker.split(text.toString());
+
+        assertThat(chunks).hasSizeGreaterThan(1);
+        assertThat(chunks).allSatisfy(chunk -> assertThat(tokens.estimate(chunk)).isLessThanOrEqualTo(64));
+        for (int i = 1; i < chunks.size(); i++) {
+            String previous = chunks.get(i - 1);
+            String firstSentence = chunks.get(i).split("\\. ")[0];
+            assertThat(previous).contains(firstSentence);
+        }
+        assertThat(chunks.get(chunks.size() - 1)).contains("Sentence number 39");
+    }
+}
@@ -0,0 +1,335 @@
+package spring.ai.philoagents.override;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.function.Function;
+import java.util.stream.IntStream;
+
+import org.junit.jupiter.api.Assumptions;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.ai.document.Document;
+import org.springframework.ai.embedding.Embedding;
+import org.springframework.ai.embedding.EmbeddingModel;
+import org.springframework.ai.embedding.EmbeddingRequest;
+import org.springframework.ai.embedding.EmbeddingResponse;
+import org.springframework.ai.vectorstore.SearchRequest;
+import org.springframework.ai.vectorstore.VectorStore;
+import org.springframework.ai.vectorstore.filter.FilterExpressionBuilder;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.testcontainers.DockerClientFactory;
+import org.testcontainers.mongodb.MongoDBAtlasLocalContainer;
+
+import com.mongodb.client.MongoClients;
+
+import lombok.extern.slf4j.Slf4j;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Recall and latency of the embedded HNSW vector store against an exact search
+ * over the same vectors, of its int8 and binary quantized graphs against the
+ * float32 one, and of the Atlas vector search of a local Atlas
+ * container when Docker is available. The vectors are clustered like the
+ * chunks of a handful of philosophers, the embedding model stub maps every text
+ * to its precomputed vector.
+ */
+@Slf4j
+@Tag("benchmark")
+public class HnswVectorStoreBenchmarkTest {
+
+    static final int DOCUMENTS = 10_000;
+    private static final int DIMENSIONS = 384;
+    private static final int CLUSTERS = 40;
+    static final int PHILOSOPHERS = 10;
+    static final int QUERIES = 200;
+    static final int TOP_K = 10;
+
+    @TempDir
+    Path directory;
+
+    /** Looks up the vector of a text, the texts are the document and query keys. */
+    static class StubEmbeddingModel implements EmbeddingModel {
+
+        private final Map<String, float[]> vectors;
+
+        StubEmbeddingModel(Map<String, float[]> vectors) {
+            this.vectors = vectors;
+        }
+
+        @Override
+        public EmbeddingResponse call(EmbeddingRequest request) {
+            List<Embedding> embeddings = new ArrayList<>();
+            for (int i = 0; i < request.getInstructions().size(); i++) {
+                embeddings.add(new Embedding(vectors.get(request.getInstructions().get(i)), i));
+            }
+            return new EmbeddingResponse(embeddings);
+        }
+
+        @Override
+        public float[] embed(Document document) {
+            return vectors.get(document.getText());
+        }
+
+        @Override
+        public int dimensions() {
+            return DIMENSIONS;
+        }
+    }
+
+    record Dataset(Map<String, float[]> vectors, List<Document> documents, List<String> queries) {}
+
+    @Test
+    void hnswRecallAndLatencyAgainstExactSearch() throws Exception {
+        Dataset dataset = dataset();
+        var filter = new FilterExpressionBuilder();
+
+        PhiloAgentsHnswVectorStore vectorStore = open(dataset);
+        long start = System.nanoTime();
+        vectorStore.doAdd(dataset.documents());
+        long buildMillis = (System.nanoTime() - start) / 1_000_000;
+        HnswIndex index = vectorStore.<HnswIndex>getNativeClient().orElseThrow();
+
+        List<Long> hnswNanos = new ArrayList<>();
+        List<Long> exactNanos = new ArrayList<>();
+        List<Long> filteredNanos = new ArrayList<>();
+        double recall = 0;
+        double filteredRecall = 0;
+        for (int q = 0; q < QUERIES; q++) {
+            String query = dataset.queries().get(q);
+            String philosopherId = "philosopher_" + (q % PHILOSOPHERS);
+
+            long t0 = System.nanoTime();
+            List<Document> hits = vectorStore.similaritySearch(SearchRequest.builder().query(query).topK(TOP_K).build());
+            long t1 = System.nanoTime();
+            index.exactSearch(dataset.vectors().get(query), TOP_K, node -> true);
+            long t2 = System.nanoTime();
+            List<Document> filteredHits = vectorStore.similaritySearch(SearchRequest.builder()
+                    .query(query)
+                    .topK(TOP_K)
+                    .filterExpression(filter.eq("philosopher_id", philosopherId).build())
+                    .build());
+            long t3 = System.nanoTime();
+            hnswNanos.add(t1 - t0);
+            exactNanos.add(t2 - t1);
+            filteredNanos.add(t3 - t2);
+
+            recall += recall(hits, groundTruth(dataset, query, null));
+            filteredRecall += recall(filteredHits, groundTruth(dataset, query, philosopherId));
+            assertThat(filteredHits).allMatch(hit -> philosopherId.equals(hit.getMetadata().get("philosopher_id")));
+        }
+        recall /= QUERIES;
+        filteredRecall /= QUERIES;
+        log.info("HNSW store of {} documents built in {} ms", DOCUMENTS, buildMillis);
+        log.info("recall@{}: {} unfiltered, {} filtered by philosopher", TOP_K, recall, filteredRecall);
+        log.info("latency p50/p99: HNSW {}/{} us, exact {}/{} us, filtered HNSW {}/{} us",
+                percentile(hnswNanos, 50), percentile(hnswNanos, 99), percentile(exactNanos, 50),
+                percentile(exactNanos, 99), percentile(filteredNanos, 50), percentile(filteredNanos, 99));
+        assertThat(recall).isGreaterThanOrEqualTo(0.9);
+        assertThat(filteredRecall).isGreaterThanOrEqualTo(0.9);
+
+        // reopened from the memory-mapped files and the documents log
+        String query = dataset.queries().get(0);
+        List<String> before = ids(vectorStore.similaritySearch(SearchRequest.builder().query(query).topK(TOP_K).build()));
+        String deleted = before.get(0);
+        vectorStore.doDelete(List.of(deleted));
+        vectorStore.close();
+        PhiloAgentsHnswVectorStore reopened = open(dataset);
+        List<String> after = ids(reopened.similaritySearch(SearchRequest.builder().query(query).topK(TOP_K).build()));
+        assertThat(after).doesNotContain(deleted).containsAll(before.subList(1, before.size()));
+        assertThat(reopened.findChunkVersions(filter.eq("philosopher_id", "philosopher_" + philosopherOf(deleted)).build()))
+                .hasSize(DOCUMENTS / PHILOSOPHERS - 1);
+        reopened.close();
+    }
+
+    @Test
+    void quantizedRecallAndLatencyAgainstFloat32() throws Exception {
+        Dataset dataset = dataset();
+        log.info("Vector API kernels: {}", VectorKernels.SIMD);
+        Map<HnswIndex.Quantization, Double> recalls = new HashMap<>();
+        for (HnswIndex.Quantization quantization : HnswIndex.Quantization.values()) {
+            try (HnswIndex index = HnswIndex.open(directory.resolve(quantization.name()), DIMENSIONS, 16, 100,
+                    quantization)) {
+                long start = System.nanoTime();
+                for (Document document : dataset.documents()) {
+                    index.add(dataset.vectors().get(document.getText()));
+                }
+                long buildMillis = (System.nanoTime() - start) / 1_000_000;
+
+                List<Long> nanos = new ArrayList<>();
+                double recall = 0;
+                for (String query : dataset.queries()) {
+                    long t0 = System.nanoTime();
+                    List<HnswIndex.Neighbor> neighbors = index.search(dataset.vectors().get(query), TOP_K, 64,
+                            node -> true);
+                    nanos.add(System.nanoTime() - t0);
+                    Set<String> expected = groundTruth(dataset, query, null);
+                    // the nodes are added in the order of the documents
+                    recall += neighbors.stream().filter(neighbor -> expected.contains("doc-" + neighbor.node())).count()
+                            / (double) expected.size();
+                }
+                recall /= QUERIES;
+                recalls.put(quantization, recall);
+                int bytes = switch (quantization) {
+                    case NONE -> DIMENSIONS * Float.BYTES;
+                    case INT8 -> DIMENSIONS + Float.BYTES;
+                    case BINARY -> DIMENSIONS / Byte.SIZE;
+                };
+                log.info("{}: {} bytes per searched vector, built in {} ms, recall@{} {}, latency p50/p99 {}/{} us",
+                        quantization, bytes, buildMillis, TOP_K, recall, percentile(nanos, 50), percentile(nanos, 99));
+            }
+        }
+        assertThat(recalls.get(HnswIndex.Quantization.NONE)).isGreaterThanOrEqualTo(0.9);
+        assertThat(recalls.get(HnswIndex.Quantization.INT8)).isGreaterThanOrEqualTo(0.9);
+        // the signs lose most of the ranking, the rescoring of the oversampled candidates recovers it
+        assertThat(recalls.get(HnswIndex.Quantization.BINARY)).isGreaterThanOrEqualTo(0.95);
+    }
+
+    @Test
+    void atlasVectorSearchRecallAndLatency() throws Exception {
+        Assumptions.assumeTrue(DockerClientFactory.instance().isDockerAvailable(), "Docker is not available");
+        Dataset dataset = dataset();
+        try (var atlas = new MongoDBAtlasLocalContainer("mongodb/mongodb-atlas-local:7.0.9")) {
+            atlas.start();
+            var mongoTemplate = new MongoTemplate(MongoClients.create(atlas.getConnectionString()), "benchmark");
+            var vectorStore = PhiloAgentsMongoDBAtlasVectorStore
+                    .builder(mongoTemplate, new StubEmbeddingModel(dataset.vectors()))
+                    .collectionName("long_term_memory")
+                    .metadataFieldsToFilter(List.of("philosopher_id", "philosopher_name"))
+                    .initializeSchema(true)
+                    .build();
+            vectorStore.afterPropertiesSet();
+            vectorStore.doAdd(dataset.documents());
+            awaitIndexed(vectorStore, dataset.queries().get(0), Duration.ofMinutes(2));
+
+            List<Long> nanos = new ArrayList<>();
+            double recall = 0;
+            for (int q = 0; q < QUERIES; q++) {
+                String query = dataset.queries().get(q);
+                long start = System.nanoTime();
+                List<Document> hits = vectorStore.similaritySearch(SearchRequest.builder().query(query).topK(TOP_K).build());
+                nanos.add(System.nanoTime() - start);
+                recall += recall(hits, groundTruth(dataset, query, null));
+            }
+            log.info("Atlas vector search recall@{}: {}, latency p50/p99 {}/{} us", TOP_K, recall / QUERIES,
+                    percentile(nanos, 50), percentile(nanos, 99));
+        }
+    }
+
+    private PhiloAgentsHnswVectorStore open(Dataset dataset) {
+        return PhiloAgentsHnswVectorStore.builder(new StubEmbeddingModel(dataset.vectors()))
+                .directory(directory)
+                .metadataFieldsToFilter(List.of("philosopher_id", "philosopher_name"))
+                // a philosopher selects 1000 documents, walk the graph for the filtered searches too
+                .bruteForceThreshold(256)
+                .build();
+    }
+
+    static void awaitIndexed(VectorStore vectorStore, String query, Duration timeout) throws InterruptedException {
+        awaitIndexed(vectorStore, SearchRequest.builder().query(query).topK(TOP_K).build(), timeout);
+    }
+
+    static void awaitIndexed(VectorStore vectorStore, SearchRequest request, Duration timeout)
+            throws InterruptedException {
+        long deadline = System.nanoTime() + timeout.toNanos();
+        while (System.nanoTime() < deadline) {
+            if (vectorStore.similaritySearch(request).size() == TOP_K) {
+                return;
+            }
+            Thread.sleep(1000);
+        }
+        throw new IllegalStateException("The vector search index was not ready in " + timeout);
+    }
+
+    static Dataset dataset() {
+        Random random = new Random(7);
+        float[][] centroids = new float[CLUSTERS][];
+        for (int c = 0; c < CLUSTERS; c++) {
+            centroids[c] = gaussian(random, 1.0f, null);
+        }
+        Map<String, float[]> vectors = new HashMap<>();
+        List<Document> documents = new ArrayList<>(DOCUMENTS);
+        for (int i = 0; i < DOCUMENTS; i++) {
+            String text = "doc-" + i;
+            vectors.put(text, gaussian(random, 0.35f, centroids[random.nextInt(CLUSTERS)]));
+            int philosopher = philosopherOf(text);
+            documents.add(Document.builder()
+                    .id(text)
+                    .text(text)
+                    .metadata(Map.of("philosopher_id", "philosopher_" + philosopher, "philosopher_name",
+                            "Philosopher " + philosopher, "source", "https://example.org/" + philosopher))
+                    .build());
+        }
+        List<String> queries = new ArrayList<>(QUERIES);
+        for (int q = 0; q < QUERIES; q++) {
+            String query = "query-" + q;
+            vectors.put(query, gaussian(random, 0.35f, centroids[random.nextInt(CLUSTERS)]));
+            queries.add(query);
+        }
+        return new Dataset(vectors, documents, queries);
+    }
+
+    private static int philosopherOf(String id) {
+        return Integer.parseInt(id.substring("doc-".length())) % PHILOSOPHERS;
+    }
+
+    private static float[] gaussian(Random random, float scale, float[] mean) {
+        float[] vector = new float[DIMENSIONS];
+        for (int i = 0; i < DIMENSIONS; i++) {
+            vector[i] = (float) (random.nextGaussian() * scale / Math.sqrt(DIMENSIONS)) + (mean != null ? mean[i] : 0);
+        }
+        return vector;
+    }
+
+    /** Brute force over the raw vectors, independently of the index. */
+    static Set<String> groundTruth(Dataset dataset, String query, String philosopherId) {
+        float[] q = normalized(dataset.vectors().get(query));
+        Function<Document, Double> similarity = document -> {
+            float[] v = normalized(dataset.vectors().get(document.getText()));
+            double dot = 0;
+            for (int i = 0; i < DIMENSIONS; i++) {
+                dot += q[i] * v[i];
+            }
+            return dot;
+        };
+        return new HashSet<>(dataset.documents().stream()
+                .filter(document -> philosopherId == null
+                        || philosopherId.equals(document.getMetadata().get("philosopher_id")))
+                .sorted(Comparator.comparing(similarity).reversed())
+                .limit(TOP_K)
+                .map(Document::getId)
+                .toList());
+    }
+
+    private static float[] normalized(float[] vector) {
+        double norm = Math.sqrt(IntStream.range(0, vector.length).mapToDouble(i -> vector[i] * vector[i]).sum());
+        float[] normalized = Arrays.copyOf(vector, vector.length);
+        for (int i = 0; i < normalized.length; i++) {
+            normalized[i] /= norm;
+        }
+        return normalized;
+    }
+
+    static double recall(List<Document> hits, Set<String> expected) {
+        return hits.stream().filter(hit -> expected.contains(hit.getId())).count() / (double) expected.size();
+    }
+
+    private static List<String> ids(List<Document> documents) {
+        return documents.stream().map(Document::getId).toList();
+    }
+
+    static long percentile(List<Long> nanos, int percentile) {
+        List<Long> sorted = nanos.stream().sorted().toList();
+        return sorted.get(Math.min(sorted.size() - 1, sorted.size() * percentile / 100)) / 1000;
+    }
+}
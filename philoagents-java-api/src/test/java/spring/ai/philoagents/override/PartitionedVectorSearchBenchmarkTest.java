@@ -0,0 +1,123 @@
+package spring.ai.philoagents.override;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.Assumptions;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.ai.document.Document;
+import org.springframework.ai.vectorstore.SearchRequest;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.testcontainers.DockerClientFactory;
+import org.testcontainers.mongodb.MongoDBAtlasLocalContainer;
+
+import com.mongodb.client.MongoClients;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import spring.ai.philoagents.override.HnswVectorStoreBenchmarkTest.Dataset;
+import spring.ai.philoagents.override.HnswVectorStoreBenchmarkTest.StubEmbeddingModel;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static spring.ai.philoagents.override.HnswVectorStoreBenchmarkTest.DOCUMENTS;
+import static spring.ai.philoagents.override.HnswVectorStoreBenchmarkTest.PHILOSOPHERS;
+import static spring.ai.philoagents.override.HnswVectorStoreBenchmarkTest.QUERIES;
+import static spring.ai.philoagents.override.HnswVectorStoreBenchmarkTest.TOP_K;
+import static spring.ai.philoagents.override.HnswVectorStoreBenchmarkTest.awaitIndexed;
+import static spring.ai.philoagents.override.HnswVectorStoreBenchmarkTest.dataset;
+import static spring.ai.philoagents.override.HnswVectorStoreBenchmarkTest.groundTruth;
+import static spring.ai.philoagents.override.HnswVectorStoreBenchmarkTest.percentile;
+import static spring.ai.philoagents.override.HnswVectorStoreBenchmarkTest.recall;
+
+/**
+ * Recall and latency of the searches of one philosopher in the shared
+ * collection, with a filter on the philosopher, against the same searches in the
+ * collection of the philosopher after the migration to the partitioned layout,
+ * and of the searches across the philosophers gathered from every partition.
+ * Needs Docker for the local Atlas container.
+ */
+@Slf4j
+@Tag("benchmark")
+public class PartitionedVectorSearchBenchmarkTest {
+
+    private static final String PARTITION_KEY = "philosopher_name";
+
+    @Test
+    void partitionedAgainstFilteredSearch() throws Exception {
+        Assumptions.assumeTrue(DockerClientFactory.instance().isDockerAvailable(), "Docker is not available");
+        Dataset dataset = dataset();
+        try (var atlas = new MongoDBAtlasLocalContainer("mongodb/mongodb-atlas-local:7.0.9")) {
+            atlas.start();
+            var mongoTemplate = new MongoTemplate(MongoClients.create(atlas.getConnectionString()), "benchmark");
+            var shared = PhiloAgentsMongoDBAtlasVectorStore
+                    .builder(mongoTemplate, new StubEmbeddingModel(dataset.vectors()))
+                    .collectionName("long_term_memory")
+                    .metadataFieldsToFilter(List.of("philosopher_id", PARTITION_KEY))
+                    .initializeSchema(true)
+                    .build();
+            shared.afterPropertiesSet();
+            shared.doAdd(dataset.documents());
+            awaitIndexed(shared, dataset.queries().get(0), Duration.ofMinutes(2));
+            double[] filtered = measure(shared, dataset, "filtered");
+
+            var partitioned = PhiloAgentsMongoDBAtlasVectorStore
+                    .builder(mongoTemplate, new StubEmbeddingModel(dataset.vectors()))
+                    .collectionName("long_term_memory")
+                    .metadataFieldsToFilter(List.of("philosopher_id", PARTITION_KEY))
+                    .partitionKey(PARTITION_KEY)
+                    .meterRegistry(new SimpleMeterRegistry())
+                    .build();
+            partitioned.afterPropertiesSet();
+            Map<String, Long> moved = partitioned.migrateToPartitions();
+            assertThat(moved).hasSize(PHILOSOPHERS);
+            assertThat(moved.values().stream().mapToLong(Long::longValue).sum()).isEqualTo(DOCUMENTS);
+            for (int p = 0; p < PHILOSOPHERS; p++) {
+                awaitIndexed(partitioned, request(dataset.queries().get(0), p), Duration.ofMinutes(2));
+            }
+            double[] partitionedResults = measure(partitioned, dataset, "partitioned");
+
+            List<Long> nanos = new ArrayList<>();
+            double recall = 0;
+            for (int q = 0; q < QUERIES; q++) {
+                String query = dataset.queries().get(q);
+                long start = System.nanoTime();
+                List<Document> hits = partitioned.similaritySearch(SearchRequest.builder().query(query).topK(TOP_K).build());
+                nanos.add(System.nanoTime() - start);
+                assertThat(hits).hasSize(TOP_K);
+                recall += recall(hits, groundTruth(dataset, query, null));
+            }
+            log.info("scatter-gather over {} partitions: recall@{} {}, latency p50/p99 {}/{} us", PHILOSOPHERS, TOP_K,
+                    recall / QUERIES, percentile(nanos, 50), percentile(nanos, 99));
+            assertThat(partitionedResults[0]).isGreaterThanOrEqualTo(filtered[0] - 0.02);
+            partitioned.destroy();
+        }
+    }
+
+    /** Searches every query in the documents of one philosopher, returns the recall and the p50 latency. */
+    private static double[] measure(PhiloAgentsMongoDBAtlasVectorStore vectorStore, Dataset dataset, String layout) {
+        List<Long> nanos = new ArrayList<>();
+        double recall = 0;
+        for (int q = 0; q < QUERIES; q++) {
+            String query = dataset.queries().get(q);
+            int philosopher = q % PHILOSOPHERS;
+            long start = System.nanoTime();
+            List<Document> hits = vectorStore.similaritySearch(request(query, philosopher));
+            nanos.add(System.nanoTime() - start);
+            recall += recall(hits, groundTruth(dataset, query, "philosopher_" + philosopher));
+        }
+        log.info("{}: recall@{} {}, latency p50/p99 {}/{} us", layout, TOP_K, recall / QUERIES, percentile(nanos, 50),
+                percentile(nanos, 99));
+        return new double[] { recall / QUERIES, percentile(nanos, 50) };
+    }
+
+    private static SearchRequest request(String query, int philosopher) {
+        return SearchRequest.builder()
+                .query(query)
+                .topK(TOP_K)
+                .filterExpression(PARTITION_KEY + " == 'Philosopher " + philosopher + "'")
+                .build();
+    }
+}
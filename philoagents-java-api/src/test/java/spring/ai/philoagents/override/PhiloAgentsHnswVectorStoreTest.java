@@ -0,0 +1,148 @@
+package spring.ai.philoagents.override;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.ai.document.Document;
+import org.springframework.ai.embedding.Embedding;
+import org.springframework.ai.embedding.EmbeddingModel;
+import org.springframework.ai.embedding.EmbeddingRequest;
+import org.springframework.ai.embedding.EmbeddingResponse;
+import org.springframework.ai.vectorstore.SearchRequest;
+import org.springframework.ai.vectorstore.filter.FilterExpressionBuilder;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class PhiloAgentsHnswVectorStoreTest {
+
+    private static final int DIMENSIONS = 16;
+    private static final int DOCUMENTS = 200;
+
+    @TempDir
+    Path directory;
+
+    /** Maps every text to a random vector seeded by the text. */
+    static class StubEmbeddingModel implements EmbeddingModel {
+
+        @Override
+        public EmbeddingResponse call(EmbeddingRequest request) {
+            List<Embedding> embeddings = new ArrayList<>();
+            for (int i = 0; i < request.getInstructions().size(); i++) {
+                embeddings.add(new Embedding(vector(request.getInstructions().get(i)), i));
+            }
+            return new EmbeddingResponse(embeddings);
+        }
+
+        @Override
+        public float[] embed(Document document) {
+            return vector(document.getText());
+        }
+
+        @Override
+        public int dimensions() {
+            return DIMENSIONS;
+        }
+
+        private static float[] vector(String text) {
+            Random random = new Random(text.hashCode());
+            float[] vector = new float[DIMENSIONS];
+            for (int i = 0; i < DIMENSIONS; i++) {
+                vector[i] = (float) random.nextGaussian();
+            }
+            return vector;
+        }
+    }
+
+    private PhiloAgentsHnswVectorStore open(double compactionThreshold) {
+        return PhiloAgentsHnswVectorStore.builder(new StubEmbeddingModel())
+                .directory(directory)
+                .metadataFieldsToFilter(List.of("philosopher_id"))
+                .compactionThreshold(compactionThreshold)
+                .build();
+    }
+
+    private static List<Document> documents() {
+        List<Document> documents = new ArrayList<>(DOCUMENTS);
+        for (int i = 0; i < DOCUMENTS; i++) {
+            documents.add(Document.builder()
+                    .id("chunk-" + i)
+                    .text("chunk " + i)
+                    .metadata(Map.of("philosopher_id", i % 2 == 0 ? "plato" : "aristotle"))
+                    .build());
+        }
+        return documents;
+    }
+
+    private static List<String> ids(List<Document> documents) {
+        return documents.stream().map(Document::getId).toList();
+    }
+
+    @Test
+    void compactionDropsTheTombstonesAndKeepsTheLiveDocuments() throws Exception {
+        var filter = new FilterExpressionBuilder();
+        var request = SearchRequest.builder().query("chunk 42").topK(5).build();
+        try (var vectorStore = open(1)) {
+            vectorStore.doAdd(documents());
+            vectorStore.delete(filter.eq("philosopher_id", "aristotle").build());
+            List<String> before = ids(vectorStore.similaritySearch(request));
+            assertThat(vectorStore.tombstoneRatio()).isEqualTo(0.5);
+
+            assertThat(vectorStore.compact()).isEqualTo(DOCUMENTS / 2);
+
+            assertThat(vectorStore.tombstoneRatio()).isZero();
+            assertThat(ids(vectorStore.similaritySearch(request))).isEqualTo(before);
+            assertThat(vectorStore.findChunkVersions(filter.eq("philosopher_id", "plato").build()))
+                    .hasSize(DOCUMENTS / 2);
+            // the compacted store keeps taking writes
+            vectorStore.doAdd(List.of(Document.builder().id("chunk-new").text("chunk new")
+                    .metadata(Map.of("philosopher_id", "aristotle")).build()));
+        }
+        assertThat(directory.resolve("compaction")).doesNotExist();
+        assertThat(Files.readAllLines(directory.resolve("documents.jsonl"))).hasSize(DOCUMENTS / 2 + 1);
+
+        try (var reopened = open(1)) {
+            assertThat(reopened.tombstoneRatio()).isZero();
+            assertThat(reopened.findChunkVersions(filter.eq("philosopher_id", "aristotle").build()))
+                    .containsOnlyKeys("chunk-new");
+            assertThat(reopened.similaritySearch(request)).extracting(Document::getId).contains("chunk-42");
+        }
+    }
+
+    @Test
+    void writesCompactPastTheThreshold() throws Exception {
+        try (var vectorStore = open(0.3)) {
+            List<Document> documents = documents();
+            vectorStore.doAdd(documents);
+            vectorStore.delete(ids(documents.subList(0, DOCUMENTS / 4)));
+            assertThat(vectorStore.tombstoneRatio()).isEqualTo(0.25);
+
+            // replacing documents leaves tombstones too
+            vectorStore.doAdd(documents.subList(DOCUMENTS / 4, DOCUMENTS / 2));
+            assertThat(vectorStore.tombstoneRatio()).isZero();
+            assertThat(vectorStore.similaritySearch(SearchRequest.builder().query("chunk 60").topK(1).build()))
+                    .extracting(Document::getId)
+                    .containsExactly("chunk-60");
+        }
+    }
+
+    @Test
+    void reopeningDiscardsAnIncompleteCompaction() throws Exception {
+        try (var vectorStore = open(1)) {
+            vectorStore.doAdd(documents());
+        }
+        Files.createDirectories(directory.resolve("compaction"));
+        Files.writeString(directory.resolve("compaction").resolve("documents.jsonl"), "{}");
+
+        try (var reopened = open(1)) {
+            assertThat(directory.resolve("compaction")).doesNotExist();
+            assertThat(reopened.findChunkVersions(new FilterExpressionBuilder().eq("philosopher_id", "plato").build()))
+                    .hasSize(DOCUMENTS / 2);
+        }
+    }
+}
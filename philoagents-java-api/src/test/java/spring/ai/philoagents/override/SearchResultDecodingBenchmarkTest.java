@@ -0,0 +1,151 @@
+package spring.ai.philoagents.override;
+
+import java.lang.management.ManagementFactory;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+import org.bson.BsonDocument;
+import org.bson.RawBsonDocument;
+import org.bson.codecs.BsonDocumentCodec;
+import org.junit.jupiter.api.Assumptions;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.ai.document.Document;
+import org.springframework.ai.document.DocumentMetadata;
+import org.springframework.ai.model.EmbeddingUtils;
+import org.springframework.ai.vectorstore.SearchRequest;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.aggregation.Aggregation;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.testcontainers.DockerClientFactory;
+import org.testcontainers.mongodb.MongoDBAtlasLocalContainer;
+
+import com.mongodb.ConnectionString;
+import com.mongodb.MongoClientSettings;
+import com.mongodb.client.MongoClients;
+import com.mongodb.event.CommandListener;
+import com.mongodb.event.CommandSucceededEvent;
+
+import lombok.extern.slf4j.Slf4j;
+import spring.ai.philoagents.override.HnswVectorStoreBenchmarkTest.Dataset;
+import spring.ai.philoagents.override.HnswVectorStoreBenchmarkTest.StubEmbeddingModel;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static spring.ai.philoagents.override.HnswVectorStoreBenchmarkTest.QUERIES;
+import static spring.ai.philoagents.override.HnswVectorStoreBenchmarkTest.TOP_K;
+import static spring.ai.philoagents.override.HnswVectorStoreBenchmarkTest.awaitIndexed;
+import static spring.ai.philoagents.override.HnswVectorStoreBenchmarkTest.dataset;
+
+/**
+ * Bytes received from the server and bytes allocated per similarity search of
+ * the full documents mapped through {@link org.bson.Document}, as the searches
+ * did before, against the projected results decoded by the
+ * {@link SearchHitCodec}. Needs Docker for the local Atlas container.
+ */
+@Slf4j
+@Tag("benchmark")
+public class SearchResultDecodingBenchmarkTest {
+
+    private static final String COLLECTION = "long_term_memory";
+    private static final List<String> METADATA_FIELDS = List.of("philosopher_id", "philosopher_name");
+
+    private final AtomicLong replyBytes = new AtomicLong();
+    private volatile boolean countingReplies;
+
+    @Test
+    void projectedAndDecodedAgainstFullDocuments() throws Exception {
+        Assumptions.assumeTrue(DockerClientFactory.instance().isDockerAvailable(), "Docker is not available");
+        Dataset dataset = dataset();
+        try (var atlas = new MongoDBAtlasLocalContainer("mongodb/mongodb-atlas-local:7.0.9")) {
+            atlas.start();
+            var settings = MongoClientSettings.builder()
+                    .applyConnectionString(new ConnectionString(atlas.getConnectionString()))
+                    .addCommandListener(new CommandListener() {
+                        @Override
+                        public void commandSucceeded(CommandSucceededEvent event) {
+                            if (countingReplies && List.of("aggregate", "getMore").contains(event.getCommandName())) {
+                                replyBytes.addAndGet(sizeOf(event.getResponse()));
+                            }
+                        }
+                    })
+                    .build();
+            var mongoTemplate = new MongoTemplate(MongoClients.create(settings), "benchmark");
+            var vectorStore = PhiloAgentsMongoDBAtlasVectorStore
+                    .builder(mongoTemplate, new StubEmbeddingModel(dataset.vectors()))
+                    .collectionName(COLLECTION)
+                    .metadataFieldsToFilter(METADATA_FIELDS)
+                    .initializeSchema(true)
+                    .build();
+            vectorStore.afterPropertiesSet();
+            vectorStore.doAdd(dataset.documents());
+            awaitIndexed(vectorStore, dataset.queries().get(0), Duration.ofMinutes(2));
+
+            Function<String, List<Document>> fullDocuments = query -> fullDocumentSearch(mongoTemplate,
+                    dataset.vectors().get(query));
+            Function<String, List<Document>> decoded = query -> vectorStore.similaritySearch(
+                    SearchRequest.builder().query(query).topK(TOP_K).build(), dataset.vectors().get(query));
+
+            for (String query : dataset.queries().subList(0, 10)) {
+                assertThat(ids(decoded.apply(query))).isEqualTo(ids(fullDocuments.apply(query)));
+            }
+            long[] before = measure("full documents", fullDocuments, dataset);
+            long[] after = measure("projected and decoded", decoded, dataset);
+            assertThat(after[0]).isLessThan(before[0]);
+        }
+    }
+
+    /** Returns the bytes received and allocated per search. */
+    private long[] measure(String path, Function<String, List<Document>> search, Dataset dataset) {
+        // warm up
+        dataset.queries().forEach(search::apply);
+        replyBytes.set(0);
+        countingReplies = true;
+        dataset.queries().forEach(search::apply);
+        countingReplies = false;
+        long bytesPerSearch = replyBytes.get() / QUERIES;
+
+        var threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long allocatedBefore = threads.getCurrentThreadAllocatedBytes();
+        dataset.queries().forEach(search::apply);
+        long allocatedPerSearch = (threads.getCurrentThreadAllocatedBytes() - allocatedBefore) / QUERIES;
+        log.info("{}: {} bytes received and {} bytes allocated per search of {} documents", path, bytesPerSearch,
+                allocatedPerSearch, TOP_K);
+        return new long[] { bytesPerSearch, allocatedPerSearch };
+    }
+
+    /** The search of the store before the projection, the whole documents mapped into Spring AI documents. */
+    private static List<Document> fullDocumentSearch(MongoTemplate mongoTemplate, float[] queryEmbedding) {
+        var aggregation = Aggregation.newAggregation(
+                new PhiloAgentsMongoDBAtlasVectorStore.VectorSearchAggregation(EmbeddingUtils.toList(queryEmbedding),
+                        "embedding", 200, "vector_index", TOP_K, ""),
+                Aggregation.addFields().addField("score").withValueOfExpression("{\"$meta\":\"vectorSearchScore\"}").build(),
+                Aggregation.match(new Criteria("score").gte(0.0)));
+        return mongoTemplate.aggregate(aggregation, COLLECTION, org.bson.Document.class)
+                .getMappedResults()
+                .stream()
+                .map(mongoDocument -> {
+                    Map<String, Object> metadata = METADATA_FIELDS.stream()
+                            .collect(Collectors.toMap(field -> field, field -> mongoDocument.get(field)));
+                    metadata.put(DocumentMetadata.DISTANCE.value(), 1 - mongoDocument.getDouble("score"));
+                    return Document.builder()
+                            .id(String.valueOf(mongoDocument.get("_id")))
+                            .text(mongoDocument.getString("chunk"))
+                            .metadata(metadata)
+                            .score(mongoDocument.getDouble("score"))
+                            .build();
+                })
+                .toList();
+    }
+
+    private static long sizeOf(BsonDocument document) {
+        return new RawBsonDocument(document, new BsonDocumentCodec()).getByteBuffer().remaining();
+    }
+
+    private static List<String> ids(List<Document> documents) {
+        return documents.stream().map(Document::getId).toList();
+    }
+}
@@ -0,0 +1,61 @@
+package spring.ai.philoagents.override;
+
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.ai.vectorstore.filter.FilterExpressionBuilder;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class SearchTuningTest {
+
+    private static final SearchTuning.Tuning DEFAULTS = new SearchTuning.Tuning("philosopher_name",
+            new SearchTuning.Params(200, 2, 0.80), Map.of(), null);
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void readsThePhilosophersOfTheTuningFile() throws Exception {
+        var tuning = new SearchTuning.Tuning("philosopher_name", DEFAULTS.defaults(),
+                Map.of("Plato", new SearchTuning.Params(50, 3, 0.7)), 0.3);
+        Path file = directory.resolve("search_tuning.json");
+        SearchTuning.write(tuning, file);
+
+        SearchTuning searchTuning = SearchTuning.load(Files.newBufferedReader(file, StandardCharsets.UTF_8), DEFAULTS,
+                null);
+        assertThat(searchTuning.params("Plato")).isEqualTo(new SearchTuning.Params(50, 3, 0.7));
+        assertThat(searchTuning.params("Aristotle")).isEqualTo(DEFAULTS.defaults());
+        assertThat(searchTuning.tuning().rerankCutoff()).isEqualTo(0.3);
+        assertThat(searchTuning.numCandidates("Plato", 5)).isEqualTo(50);
+        assertThat(searchTuning.partitionOf(new FilterExpressionBuilder().eq("philosopher_name", "Plato").build()))
+                .isEqualTo("Plato");
+        assertThat(searchTuning.partitionOf(null)).isNull();
+
+        assertThat(SearchTuning.load(new StringReader("{\"partitions\":{}}"), DEFAULTS, null).params("Plato"))
+                .isEqualTo(DEFAULTS.defaults());
+    }
+
+    @Test
+    void latencyBudgetLowersThenRestoresTheCandidates() {
+        SearchTuning searchTuning = new SearchTuning(DEFAULTS, Duration.ofMillis(20));
+        for (int i = 0; i < 5; i++) {
+            searchTuning.recordLatency("Plato", Duration.ofMillis(40).toNanos());
+        }
+        int lowered = searchTuning.numCandidates("Plato", 2);
+        assertThat(lowered).isLessThan(200).isGreaterThanOrEqualTo(2);
+        // the other philosophers keep their own budget
+        assertThat(searchTuning.numCandidates("Aristotle", 2)).isEqualTo(200);
+
+        for (int i = 0; i < 100; i++) {
+            searchTuning.recordLatency("Plato", Duration.ofMillis(5).toNanos());
+        }
+        assertThat(searchTuning.numCandidates("Plato", 2)).isEqualTo(200);
+    }
+}
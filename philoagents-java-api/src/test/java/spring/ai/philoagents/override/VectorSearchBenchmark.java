@@ -0,0 +1,121 @@
+package spring.ai.philoagents.override;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.bson.BsonBinaryReader;
+import org.bson.RawBsonDocument;
+import org.bson.codecs.DecoderContext;
+import org.bson.codecs.DocumentCodec;
+import org.bson.types.ObjectId;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.ai.document.Document;
+import org.springframework.ai.document.DocumentMetadata;
+import org.springframework.ai.vectorstore.filter.Filter;
+import org.springframework.ai.vectorstore.filter.FilterExpressionBuilder;
+import org.springframework.data.mongodb.core.aggregation.Aggregation;
+
+/**
+ * Per search work of the MongoDB Atlas vector store outside of the database:
+ * the conversion of the filter expression, the {@code $vectorSearch} stage,
+ * and the decoding of a result, with the {@link SearchHitCodec} from the
+ * projected BSON against the full {@link org.bson.Document} mapped to a Spring
+ * AI document as before the projection.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class VectorSearchBenchmark {
+
+    private static final int DIMENSIONS = 384;
+
+    private static final List<String> METADATA_FIELDS = List.of("philosopher_id", "philosopher_name");
+
+    private final PhiloAgentsMongoDBAtlasFilterExpressionConverter converter =
+            new PhiloAgentsMongoDBAtlasFilterExpressionConverter();
+    private final SearchHitCodec searchHitCodec = new SearchHitCodec(METADATA_FIELDS);
+    private final DocumentCodec documentCodec = new DocumentCodec();
+    private final DecoderContext decoderContext = DecoderContext.builder().build();
+
+    private Filter.Expression filter;
+    private String nativeFilter;
+    private List<Float> queryEmbedding;
+    private RawBsonDocument projectedHit;
+    private RawBsonDocument fullHit;
+
+    @Setup
+    public void setup() {
+        var b = new FilterExpressionBuilder();
+        filter = b.and(b.eq("philosopher_name", "Alan Turing"), b.in("philosopher_id", "turing", "searle")).build();
+        nativeFilter = converter.convertExpression(filter);
+        Random random = new Random(42);
+        queryEmbedding = new ArrayList<>(DIMENSIONS);
+        List<Double> embedding = new ArrayList<>(DIMENSIONS);
+        for (int i = 0; i < DIMENSIONS; i++) {
+            queryEmbedding.add(random.nextFloat());
+            embedding.add(random.nextDouble());
+        }
+        var hit = new org.bson.Document("_id", new ObjectId())
+                .append("chunk", "Alan Turing proposed the imitation game in Computing Machinery and Intelligence,"
+                        + " published in Mind in 1950, as a replacement for the question whether machines can think.")
+                .append("philosopher_id", "turing")
+                .append("philosopher_name", "Alan Turing")
+                .append("score", 0.87);
+        projectedHit = raw(hit);
+        // the stored fields the search returned before the projection
+        fullHit = raw(new org.bson.Document(hit).append("embedding", embedding)
+                .append("source", "https://en.wikipedia.org/wiki/Alan_Turing"));
+    }
+
+    private static RawBsonDocument raw(org.bson.Document document) {
+        return new RawBsonDocument(document, new DocumentCodec());
+    }
+
+    @Benchmark
+    public String filterConversion() {
+        return converter.convertExpression(filter);
+    }
+
+    @Benchmark
+    public org.bson.Document vectorSearchStage() {
+        return new PhiloAgentsMongoDBAtlasVectorStore.VectorSearchAggregation(queryEmbedding, "embedding", 100,
+                "vector_index", 4, nativeFilter).toDocument(Aggregation.DEFAULT_CONTEXT);
+    }
+
+    @Benchmark
+    public Document decodeProjectedHit() {
+        return searchHitCodec.decode(new BsonBinaryReader(projectedHit.getByteBuffer().asNIO()), decoderContext)
+                .document();
+    }
+
+    @Benchmark
+    public Document decodeFullDocument() {
+        org.bson.Document mongoDocument = documentCodec.decode(new BsonBinaryReader(fullHit.getByteBuffer().asNIO()),
+                decoderContext);
+        Map<String, Object> metadata = new HashMap<>();
+        METADATA_FIELDS.forEach(field -> metadata.put(field, mongoDocument.get(field)));
+        metadata.put(DocumentMetadata.DISTANCE.value(), 1 - mongoDocument.getDouble("score"));
+        return Document.builder()
+                .id(String.valueOf(mongoDocument.get("_id")))
+                .text(mongoDocument.getString("chunk"))
+                .metadata(metadata)
+                .score(mongoDocument.getDouble("score"))
+                .build();
+    }
+}
@@ -0,0 +1,121 @@
+package spring.ai.philoagents.override;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.ai.document.Document;
+import org.springframework.ai.embedding.Embedding;
+import org.springframework.ai.embedding.EmbeddingModel;
+import org.springframework.ai.embedding.EmbeddingRequest;
+import org.springframework.ai.embedding.EmbeddingResponse;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.testcontainers.containers.MongoDBContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+
+import com.mongodb.client.MongoClients;
+
+import lombok.extern.slf4j.Slf4j;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Write throughput of doAdd saving the documents one by one, as before, against
+ * the pipelined unordered bulk writes, with an embedding model stub taking a
+ * fixed time per document.
+ */
+@Slf4j
+@Testcontainers(disabledWithoutDocker = true)
+@Tag("benchmark")
+public class VectorStoreBulkWriteBenchmarkTest {
+
+    private static final int DOCUMENTS = 20_000;
+    private static final int DIMENSIONS = 384;
+
+    @Container
+    static MongoDBContainer mongo = new MongoDBContainer("mongo:7.0");
+
+    /** Embeds a text in about 50 microseconds, like a small local model on a batch. */
+    static class StubEmbeddingModel implements EmbeddingModel {
+
+        private final Random random = new Random(42);
+
+        @Override
+        public EmbeddingResponse call(EmbeddingRequest request) {
+            List<Embedding> embeddings = new ArrayList<>();
+            for (int i = 0; i < request.getInstructions().size(); i++) {
+                embeddings.add(new Embedding(vector(), i));
+            }
+            sleepMicros(50L * request.getInstructions().size());
+            return new EmbeddingResponse(embeddings);
+        }
+
+        @Override
+        public float[] embed(Document document) {
+            sleepMicros(50);
+            return vector();
+        }
+
+        @Override
+        public int dimensions() {
+            return DIMENSIONS;
+        }
+
+        private synchronized float[] vector() {
+            float[] vector = new float[DIMENSIONS];
+            for (int i = 0; i < DIMENSIONS; i++) {
+                vector[i] = random.nextFloat();
+            }
+            return vector;
+        }
+
+        private static void sleepMicros(long micros) {
+            try {
+                Thread.sleep(micros / 1000, (int) (micros % 1000) * 1000);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    @Test
+    void bulkWritesOutperformSingleSaves() {
+        var mongoTemplate = new MongoTemplate(MongoClients.create(mongo.getReplicaSetUrl()), "benchmark");
+        List<Document> documents = documents();
+
+        long single = ingest(mongoTemplate, "single_saves", 1, documents);
+        long bulk = ingest(mongoTemplate, "bulk_writes", 500, documents);
+
+        log.info("doAdd of {} documents: single saves {} ms ({} documents/s), bulk writes {} ms ({} documents/s)",
+                DOCUMENTS, single, DOCUMENTS * 1000L / Math.max(1, single), bulk,
+                DOCUMENTS * 1000L / Math.max(1, bulk));
+        assertThat(mongoTemplate.getCollection("single_saves").countDocuments()).isEqualTo(DOCUMENTS);
+        assertThat(mongoTemplate.getCollection("bulk_writes").countDocuments()).isEqualTo(DOCUMENTS);
+    }
+
+    private long ingest(MongoTemplate mongoTemplate, String collection, int bulkWriteSize, List<Document> documents) {
+        var vectorStore = PhiloAgentsMongoDBAtlasVectorStore.builder(mongoTemplate, new StubEmbeddingModel())
+                .collectionName(collection)
+                .bulkWriteSize(bulkWriteSize)
+                .build();
+        long start = System.nanoTime();
+        vectorStore.doAdd(documents);
+        return (System.nanoTime() - start) / 1_000_000;
+    }
+
+    private static List<Document> documents() {
+        List<Document> documents = new ArrayList<>(DOCUMENTS);
+        String text = "The unexamined life is not worth living. ".repeat(12);
+        for (int i = 0; i < DOCUMENTS; i++) {
+            documents.add(Document.builder()
+                    .text(i + " " + text)
+                    .metadata(Map.of("philosopher_id", "socrates", "philosopher_name", "Socrates"))
+                    .build());
+        }
+        return documents;
+    }
+}
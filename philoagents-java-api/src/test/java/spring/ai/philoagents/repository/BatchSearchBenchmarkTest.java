@@ -0,0 +1,145 @@
+package spring.ai.philoagents.repository;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.ai.document.Document;
+import org.springframework.ai.embedding.Embedding;
+import org.springframework.ai.embedding.EmbeddingModel;
+import org.springframework.ai.embedding.EmbeddingRequest;
+import org.springframework.ai.embedding.EmbeddingResponse;
+import org.springframework.ai.vectorstore.SearchRequest;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import spring.ai.philoagents.override.PhiloAgentsHnswVectorStore;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Throughput of a batch of similarity searches, embedded in one call and
+ * searched concurrently, against the same searches made one by one, as N calls
+ * of the single query endpoint do. The embedding model stub has the fixed cost
+ * per call and the smaller cost per text of a local ONNX model, and counts the
+ * calls: the batch embeds all of its queries in one call.
+ */
+@Slf4j
+@Tag("benchmark")
+public class BatchSearchBenchmarkTest {
+
+    private static final int DOCUMENTS = 5_000;
+    private static final int QUERIES = 500;
+    private static final int DIMENSIONS = 384;
+    private static final String[] PHILOSOPHERS = { "Plato", "Aristotle", "Socrates", "Descartes", "Searle" };
+
+    @TempDir
+    Path directory;
+
+    /** 2 ms per call plus 100 microseconds per text. */
+    static class StubEmbeddingModel implements EmbeddingModel {
+
+        final AtomicInteger calls = new AtomicInteger();
+
+        @Override
+        public EmbeddingResponse call(EmbeddingRequest request) {
+            calls.incrementAndGet();
+            sleepMicros(2000 + 100L * request.getInstructions().size());
+            List<Embedding> embeddings = new ArrayList<>();
+            for (int i = 0; i < request.getInstructions().size(); i++) {
+                embeddings.add(new Embedding(vector(request.getInstructions().get(i)), i));
+            }
+            return new EmbeddingResponse(embeddings);
+        }
+
+        @Override
+        public float[] embed(Document document) {
+            return call(new EmbeddingRequest(List.of(document.getText()), null)).getResult().getOutput();
+        }
+
+        @Override
+        public int dimensions() {
+            return DIMENSIONS;
+        }
+
+        private static float[] vector(String text) {
+            Random random = new Random(text.hashCode());
+            float[] vector = new float[DIMENSIONS];
+            for (int i = 0; i < DIMENSIONS; i++) {
+                vector[i] = (float) random.nextGaussian();
+            }
+            return vector;
+        }
+
+        private static void sleepMicros(long micros) {
+            try {
+                Thread.sleep(micros / 1000, (int) (micros % 1000) * 1000);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    @Test
+    void batchedSearchesEmbedTheQueriesAtOnce() throws Exception {
+        var embeddingModel = new StubEmbeddingModel();
+        var vectorStore = PhiloAgentsHnswVectorStore.builder(embeddingModel)
+                .directory(directory)
+                .metadataFieldsToFilter(List.of("philosopher_name"))
+                .build();
+        List<Document> documents = new ArrayList<>(DOCUMENTS);
+        for (int i = 0; i < DOCUMENTS; i++) {
+            documents.add(Document.builder()
+                    .text("chunk " + i)
+                    .metadata(Map.of("philosopher_name", PHILOSOPHERS[i % PHILOSOPHERS.length]))
+                    .build());
+        }
+        vectorStore.doAdd(documents);
+        var repository = new PhilosopherSearchRepositoryImpl(vectorStore, new SimpleMeterRegistry(), false, 10, 60,
+                "philosopher_name", 2, 8, "concurrent", 8, null);
+
+        List<SearchRequest> requests = new ArrayList<>(QUERIES);
+        for (int i = 0; i < QUERIES; i++) {
+            requests.add(SearchRequest.builder()
+                    .query("question " + i)
+                    .topK(5)
+                    .filterExpression("philosopher_name == '" + PHILOSOPHERS[i % PHILOSOPHERS.length] + "'")
+                    .build());
+        }
+
+        embeddingModel.calls.set(0);
+        long start = System.nanoTime();
+        List<List<Document>> single = new ArrayList<>();
+        for (SearchRequest request : requests) {
+            single.add(repository.semanticSearchByQuery(request));
+        }
+        long singleMillis = (System.nanoTime() - start) / 1_000_000;
+        int singleCalls = embeddingModel.calls.getAndSet(0);
+
+        start = System.nanoTime();
+        List<PhilosopherSearchRepository.BatchResult> batch = repository.semanticSearchByQueries(requests)
+                .collectList()
+                .block();
+        long batchMillis = (System.nanoTime() - start) / 1_000_000;
+        int batchCalls = embeddingModel.calls.get();
+
+        log.info("{} searches: single calls {} ms ({} queries/s), batch {} ms ({} queries/s)", QUERIES,
+                singleMillis, QUERIES * 1000L / Math.max(1, singleMillis), batchMillis,
+                QUERIES * 1000L / Math.max(1, batchMillis));
+        assertThat(batch).hasSize(QUERIES);
+        for (var result : batch) {
+            assertThat(result.documents()).extracting(Document::getId)
+                    .containsExactlyElementsOf(single.get(result.index()).stream().map(Document::getId).toList());
+        }
+        assertThat(singleCalls).isEqualTo(QUERIES);
+        assertThat(batchCalls).isEqualTo(1);
+        repository.destroy();
+        vectorStore.close();
+    }
+}
@@ -0,0 +1,82 @@
+package spring.ai.philoagents.repository;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.ai.document.Document;
+
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import spring.ai.philoagents.override.SearchTuning;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Relevance and latency by batch size of the cross-encoder, downloading the
+ * default model to the embedding cache on the first run, tagged benchmark; the
+ * cut-off learning runs with the unit tests.
+ */
+@Slf4j
+public class CrossEncoderRerankerTest {
+
+    private static final String QUERY = "What is the Chinese Room argument?";
+
+    private static final List<String> PASSAGES = List.of(
+            "The Chinese Room argument holds that running a program is not understanding: a man following rules to"
+                    + " answer Chinese questions does not understand Chinese.",
+            "Searle argues that syntax is not sufficient for semantics, so a computer program cannot have a mind.",
+            "In the allegory of the cave, the prisoners see only shadows on the wall.",
+            "Descartes served in the Dutch States Army at Breda.");
+
+    @Test
+    void learnsTheCutoffMaximizingTheF1() {
+        assertThat(CrossEncoderReranker.learnCutoff(List.of(0.9, 0.8, 0.7), List.of(0.2, 0.1))).isEqualTo(0.7);
+        // keeping 0.4 lets two irrelevant passages in for one relevant one
+        assertThat(CrossEncoderReranker.learnCutoff(List.of(0.9, 0.8, 0.4), List.of(0.6, 0.5, 0.3))).isEqualTo(0.8);
+    }
+
+    @Test
+    @Tag("benchmark")
+    void ranksTheRelevantPassagesFirstAndReportsTheLatencyByBatchSize() throws Exception {
+        var tuning = new SearchTuning(new SearchTuning.Tuning("philosopher_name",
+                new SearchTuning.Params(100, 2, 0.5), Map.of(), null), null);
+        var meterRegistry = new SimpleMeterRegistry();
+        var reranker = new CrossEncoderReranker(tuning, meterRegistry,
+                "https://huggingface.co/Xenova/ms-marco-MiniLM-L-6-v2/resolve/main/onnx/model.onnx",
+                "https://huggingface.co/Xenova/ms-marco-MiniLM-L-6-v2/resolve/main/tokenizer.json",
+                "./embedding-cache", 256, 32, 20, 0.5);
+        try {
+            List<Document> documents = PASSAGES.stream().map(text -> Document.builder().text(text).build()).toList();
+            List<Document> shuffled = new ArrayList<>(documents);
+            Collections.reverse(shuffled);
+            List<Document> reranked = reranker.rerank(QUERY, shuffled, 4);
+            assertThat(reranked).isNotEmpty();
+            assertThat(reranked.get(0).getText()).isEqualTo(PASSAGES.get(0));
+            assertThat(reranked).extracting(Document::getText).doesNotContain(PASSAGES.get(3));
+
+            for (int batchSize : List.of(1, 4, 8, 16, 32)) {
+                List<Document> batch = new ArrayList<>();
+                for (int i = 0; i < batchSize; i++) {
+                    batch.add(documents.get(i % documents.size()));
+                }
+                for (int run = 0; run < 20; run++) {
+                    reranker.score(QUERY, batch);
+                }
+                Timer timer = meterRegistry.get("philoagents.retrieval.rerank.batch")
+                        .tag("size", String.valueOf(batchSize)).timer();
+                log.info("batch of {}: mean {} ms, {} ms by passage", batchSize,
+                        String.format("%.2f", timer.mean(TimeUnit.MILLISECONDS)),
+                        String.format("%.2f", timer.mean(TimeUnit.MILLISECONDS) / batchSize));
+            }
+        } finally {
+            reranker.destroy();
+        }
+    }
+
+}
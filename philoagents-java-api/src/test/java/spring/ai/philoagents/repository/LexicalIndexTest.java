@@ -0,0 +1,61 @@
+package spring.ai.philoagents.repository;
+
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.ai.document.Document;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class LexicalIndexTest {
+
+    private static Document chunk(String id, String philosopher, String text) {
+        return Document.builder().id(id).text(text).metadata(Map.of("philosopher_name", philosopher)).build();
+    }
+
+    private final LexicalIndex index = new LexicalIndex("philosopher_name");
+
+    {
+        index.add(List.of(
+                chunk("searle-1", "John Searle", "The Chinese Room argument holds that running a program is not understanding."),
+                chunk("searle-2", "John Searle", "Speech acts and the construction of social reality."),
+                chunk("plato-1", "Plato", "In the allegory of the cave, the prisoners see only shadows on the wall."),
+                chunk("plato-2", "Plato", "The Republic describes the philosopher king and the forms."),
+                chunk("descartes-1", "Rene Descartes", "Descartes served in the Dutch States Army at Breda.")));
+    }
+
+    @Test
+    void findsNamedConceptsInThePartitionOfThePhilosopher() {
+        assertThat(index.search("What is the Chinese Room?", "John Searle", 2))
+                .extracting(Document::getId).containsExactly("searle-1");
+        assertThat(index.search("Tell me about the caves", "Plato", 2))
+                .extracting(Document::getId).containsExactly("plato-1");
+        assertThat(index.search("Chinese Room", "Plato", 2)).isEmpty();
+        assertThat(index.search("Dutch States Army", null, 2))
+                .extracting(Document::getId).containsExactly("descartes-1");
+    }
+
+    @Test
+    void replacesAndRemovesChunks() {
+        index.add(List.of(chunk("plato-1", "Plato", "The divided line.")));
+        assertThat(index.search("cave", "Plato", 2)).isEmpty();
+        assertThat(index.search("divided line", "Plato", 2)).extracting(Document::getId).containsExactly("plato-1");
+
+        index.remove(List.of("plato-1"));
+        assertThat(index.search("divided line", "Plato", 2)).isEmpty();
+        assertThat(index.size()).isEqualTo(4);
+    }
+
+    @Test
+    void fusesTheRankingsByReciprocalRank() {
+        Document a = chunk("a", "Plato", "a");
+        Document b = chunk("b", "Plato", "b");
+        Document c = chunk("c", "Plato", "c");
+
+        List<Document> fused = PhilosopherSearchRepositoryImpl.fuse(List.of(a, b), List.of(c, b), 60, 2);
+
+        assertThat(fused).extracting(Document::getId).containsExactly("b", "a");
+        assertThat(fused.get(0).getScore()).isEqualTo(1.0 / 62 + 1.0 / 62);
+    }
+}
@@ -0,0 +1,34 @@
+package spring.ai.philoagents.tools;
+
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.ai.document.Document;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class SearchPhilosopherContextTest {
+
+    @Test
+    void saysSoWhenNothingIsFound() {
+        assertThat(SearchPhilosopherContext.formatPassages(List.of(), 400)).isEqualTo("No information found.");
+    }
+
+    @Test
+    void numbersThePassagesAndCutsThemAtTheTokenBudget() {
+        String second = "Wisdom begins in wonder, and the wonder of the philosopher never ends with an answer.";
+        var documents = List.of(
+                new Document("  The   unexamined life\nis not worth living. "),
+                new Document(second),
+                new Document("Know thyself."));
+
+        // 20 tokens of 4 characters: the first passage whole, the second one cut, the third one left out
+        String passages = SearchPhilosopherContext.formatPassages(documents, 20);
+
+        assertThat(passages).isEqualTo("[1] The unexamined life is not worth living.\n"
+                + "[2] " + second.substring(0, 30) + "\n");
+        assertThat(passages).hasSize(80);
+        assertThat(SearchPhilosopherContext.formatPassages(documents, 400))
+                .endsWith("[2] " + second + "\n[3] Know thyself.\n");
+    }
+}
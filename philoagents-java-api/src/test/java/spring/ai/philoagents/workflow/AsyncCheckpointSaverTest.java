@@ -0,0 +1,77 @@
+package spring.ai.philoagents.workflow;
+
+import java.util.Map;
+
+import org.bsc.langgraph4j.RunnableConfig;
+import org.bsc.langgraph4j.checkpoint.Checkpoint;
+import org.bsc.langgraph4j.checkpoint.PostgresSaver;
+import org.bsc.langgraph4j.spring.ai.serializer.std.SpringAIStateSerializer;
+import org.junit.jupiter.api.Test;
+import org.testcontainers.containers.PostgreSQLContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@Testcontainers
+public class AsyncCheckpointSaverTest {
+
+    @Container
+    static PostgreSQLContainer<?> postgres = new PostgreSQLContainer<>("postgres:16-alpine");
+
+    private PostgresSaver postgresSaver(boolean dropTablesFirst) throws Exception {
+        return PostgresSaver.builder()
+                .host(postgres.getHost())
+                .port(postgres.getMappedPort(PostgreSQLContainer.POSTGRESQL_PORT))
+                .database(postgres.getDatabaseName())
+                .user(postgres.getUsername())
+                .password(postgres.getPassword())
+                .stateSerializer(new SpringAIStateSerializer<>(PhilosopherState::new))
+                .dropTablesFirst(dropTablesFirst)
+                .createTables(true)
+                .build();
+    }
+
+    private Checkpoint checkpoint(int turn) {
+        return Checkpoint.builder()
+                .nodeId("connector_node")
+                .nextNodeId("__END__")
+                .state(Map.of(PhilosopherState.SUMMARY_KEY, "turn " + turn))
+                .build();
+    }
+
+    @Test
+    void resumesConversationFromPersistedCheckpoints() throws Exception {
+        var config = RunnableConfig.builder().threadId("plato").build();
+
+        try (var saver = new AsyncCheckpointSaver(postgresSaver(true), 3, 0, 2)) {
+            for (int turn = 1; turn <= 5; turn++) {
+                saver.put(config, checkpoint(turn));
+            }
+            assertThat(saver.list(config)).hasSize(3);
+            assertThat(saver.get(config)).get()
+                    .extracting(cp -> cp.getState().get(PhilosopherState.SUMMARY_KEY)).isEqualTo("turn 5");
+        }
+
+        // a new saver, as after a restart, resumes from the last persisted checkpoint
+        try (var saver = new AsyncCheckpointSaver(postgresSaver(false), 3, 0, 2)) {
+            assertThat(saver.get(config)).get()
+                    .extracting(cp -> cp.getState().get(PhilosopherState.SUMMARY_KEY)).isEqualTo("turn 5");
+        }
+    }
+
+    @Test
+    void compactsPersistedCheckpointsToRetention() throws Exception {
+        var config = RunnableConfig.builder().threadId("socrates").build();
+        var postgresSaver = postgresSaver(true);
+
+        try (var saver = new AsyncCheckpointSaver(postgresSaver, 2, 4, 1)) {
+            for (int turn = 1; turn <= 8; turn++) {
+                saver.put(config, checkpoint(turn));
+            }
+            saver.flush();
+        }
+
+        assertThat(postgresSaver.list(config)).hasSize(2);
+    }
+}
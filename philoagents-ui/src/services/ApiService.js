@@ -1,3 +1,5 @@
+import { getConversationId } from './ConversationId';
+
 class ApiService {
   constructor() {
     const isHttps = window.location.protocol === 'https:';
@@ -34,7 +36,8 @@ class ApiService {
     try {
       const data = await this.request('/chat', 'POST', {
         message,
-        philosopher_id: philosopher.id
+        philosopher_id: philosopher.id,
+        conversation_id: getConversationId()
       });
       
       return data.response;
@@ -0,0 +1,14 @@
+const STORAGE_KEY = 'philoagents.conversation_id';
+
+// The id of the conversations of this browser with the philosophers, kept
+// across the websocket sessions and the page reloads.
+export function getConversationId() {
+  let conversationId = window.localStorage.getItem(STORAGE_KEY);
+  
+  if (!conversationId) {
+    conversationId = crypto.randomUUID();
+    window.localStorage.setItem(STORAGE_KEY, conversationId);
+  }
+  
+  return conversationId;
+}
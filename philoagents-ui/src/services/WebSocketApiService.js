@@ -1,3 +1,5 @@
+import { getConversationId } from './ConversationId';
+
 class WebSocketApiService {
   constructor() {
     // Initialize connection-related properties
@@ -116,7 +118,8 @@ class WebSocketApiService {
 
       this.socket.send(JSON.stringify({
         message: message,
-        philosopher_id: philosopher.id
+        philosopher_id: philosopher.id,
+        conversation_id: getConversationId()
       }));
     } catch (error) {
       console.error('Error sending message via WebSocket:', error);